@@ -0,0 +1,83 @@
+/*
+ * Copyright 2007 Sun Microsystems, Inc.
+ *
+ * This file is part of jVoiceBridge.
+ *
+ * jVoiceBridge is free software: you can redistribute it and/or modify 
+ * it under the terms of the GNU General Public License version 2 as 
+ * published by the Free Software Foundation and distributed hereunder 
+ * to you.
+ *
+ * jVoiceBridge is distributed in the hope that it will be useful, 
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Sun designates this particular file as subject to the "Classpath"
+ * exception as provided by Sun in the License file that accompanied this 
+ * code. 
+ */
+
+
+package com.sun.voip.benchmark;
+
+import com.sun.voip.AudioConversion;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/*
+ * ulaw <-> linear conversion for one packet.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class AudioConversionBenchmark {
+
+    @Param({"160", "320"})
+    public int samples;
+
+    private byte[] ulaw;
+    private int[] ints;
+    private short[] shorts;
+
+    @Setup
+    public void setup() {
+	ints = Samples.generate(samples, 0);
+	shorts = Samples.generateShorts(samples, 0);
+
+	ulaw = new byte[samples];
+
+	AudioConversion.linearToUlaw(ints, ulaw, 0);
+    }
+
+    @Benchmark
+    public int[] ulawToLinearInts() {
+	AudioConversion.ulawToLinear(ulaw, 0, ulaw.length, ints);
+	return ints;
+    }
+
+    @Benchmark
+    public short[] ulawToLinearShorts() {
+	AudioConversion.ulawToLinear(ulaw, 0, ulaw.length, shorts);
+	return shorts;
+    }
+
+    @Benchmark
+    public byte[] linearToUlawInts() {
+	AudioConversion.linearToUlaw(ints, ulaw, 0);
+	return ulaw;
+    }
+
+}
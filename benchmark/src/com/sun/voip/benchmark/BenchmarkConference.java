@@ -0,0 +1,363 @@
+/*
+ * Copyright 2007 Sun Microsystems, Inc.
+ *
+ * This file is part of jVoiceBridge.
+ *
+ * jVoiceBridge is free software: you can redistribute it and/or modify 
+ * it under the terms of the GNU General Public License version 2 as 
+ * published by the Free Software Foundation and distributed hereunder 
+ * to you.
+ *
+ * jVoiceBridge is distributed in the hope that it will be useful, 
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Sun designates this particular file as subject to the "Classpath"
+ * exception as provided by Sun in the License file that accompanied this 
+ * code. 
+ */
+
+
+package com.sun.voip.benchmark;
+
+import com.sun.voip.AudioConversion;
+import com.sun.voip.CallEvent;
+import com.sun.voip.CallEventListener;
+import com.sun.voip.CallParticipant;
+import com.sun.voip.Logger;
+import com.sun.voip.MediaInfo;
+import com.sun.voip.RtpPacket;
+import com.sun.voip.RtpSenderPacket;
+import com.sun.voip.SdpManager;
+import com.sun.voip.TickerException;
+
+import com.sun.voip.server.Bridge;
+import com.sun.voip.server.CallHandler;
+import com.sun.voip.server.ConferenceManager;
+import com.sun.voip.server.ConferenceMember;
+import com.sun.voip.server.ConferenceTopology;
+import com.sun.voip.server.MixManager;
+import com.sun.voip.server.WhisperGroup;
+
+import java.io.IOException;
+
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+
+import java.nio.channels.DatagramChannel;
+
+import java.text.ParseException;
+
+import java.util.Vector;
+
+/*
+ * A conference of synthetic members for the benchmarks.
+ *
+ * The conference is created the way the bridge creates one, with
+ * its own ConferenceSender and a SteppedTicker so the benchmarks
+ * decide when the sender ticks.  The members are real ConferenceMembers
+ * with their own sockets.  They all send to one socket which is never
+ * read so the kernel drops the packets.
+ *
+ * receive() gives each member one RTP packet the way the
+ * ConferenceReceiver does and tick() runs the sender for one tick.
+ *
+ * Members send 16-bit PCM at the conference sample rate so nothing
+ * is resampled and receive ulaw.
+ */
+public class BenchmarkConference {
+
+    public static final int SAMPLE_RATE = 16000;
+    public static final int CHANNELS = 2;
+
+    private static final int MAX_STARTUP_TICKS = 50;
+    private static final int TOPOLOGY_TIMEOUT = 10000;	// ms
+
+    private ConferenceManager conferenceManager;
+    private SteppedTicker ticker;
+
+    private DatagramChannel sink;
+    private InetSocketAddress sinkAddress;
+
+    private ConferenceMember[] members;
+    private RtpSenderPacket[] packets;
+
+    /*
+     * data[i] is the data member i sends every tick.
+     */
+    public BenchmarkConference(String conferenceId, short[][] data)
+	    throws IOException, TickerException {
+
+	MediaInfo receiveMediaInfo = MediaInfo.findMediaInfo(
+	    RtpPacket.PCM_ENCODING, SAMPLE_RATE, CHANNELS);
+
+	MediaInfo sendMediaInfo = MediaInfo.findMediaInfo(
+	    RtpPacket.PCMU_ENCODING, SAMPLE_RATE, CHANNELS);
+
+	/*
+	 * The bridge sets its addresses and the media it supports
+	 * when it starts, which it doesn't here.
+	 */
+	if (Bridge.getPrivateHost() == null) {
+	    if (System.getProperty("javax.sip.IP_ADDRESS") == null) {
+		System.setProperty("javax.sip.IP_ADDRESS", "127.0.0.1");
+	    }
+
+	    Bridge.initAddresses();
+	}
+
+	Vector supportedMedia = new Vector();
+
+	supportedMedia.add(receiveMediaInfo);
+	supportedMedia.add(sendMediaInfo);
+
+	SdpManager.setSupportedMedia(supportedMedia);
+
+	/*
+	 * Give the conference its own sender so it can be ended
+	 * with the conference.
+	 */
+	System.setProperty("com.sun.voip.TICKER", 
+	    SteppedTicker.class.getName());
+
+	ConferenceManager.useSingleSender(false);
+
+	conferenceManager = ConferenceManager.getConference(conferenceId,
+	    "PCM/" + SAMPLE_RATE + "/" + CHANNELS, null);
+
+	if (conferenceManager == null) {
+	    throw new IOException("Can't create conference " + conferenceId);
+	}
+
+	ticker = SteppedTicker.waitForTicker(
+	    conferenceManager.getConferenceSender().getName());
+
+	sink = DatagramChannel.open();
+	sink.socket().bind(
+	    new InetSocketAddress(InetAddress.getByName("127.0.0.1"), 0));
+
+	sinkAddress = (InetSocketAddress) sink.socket().getLocalSocketAddress();
+
+	members = new ConferenceMember[data.length];
+	packets = new RtpSenderPacket[data.length];
+
+	for (int i = 0; i < data.length; i++) {
+	    CallParticipant cp = new CallParticipant();
+
+	    cp.setCallId("member" + i);
+	    cp.setPhoneNumber("member" + i);
+	    cp.setConferenceId(conferenceId);
+
+	    members[i] = conferenceManager.joinConference(cp);
+
+	    new BenchmarkCallHandler(conferenceManager, members[i]).
+		setEndpointAddress(sinkAddress, sendMediaInfo.getPayload(),
+		receiveMediaInfo.getPayload(), (byte) 0);
+
+	    packets[i] = new RtpSenderPacket(RtpPacket.PCM_ENCODING,
+		SAMPLE_RATE, CHANNELS);
+
+	    packets[i].setRtpPayload(receiveMediaInfo.getPayload());
+
+	    AudioConversion.shortsToBytes(data[i], packets[i].getData(),
+		RtpPacket.HEADER_SIZE);
+
+	    packets[i].setLength(RtpPacket.HEADER_SIZE + 2 * data[i].length);
+	}
+
+	waitForTopology();
+
+	/*
+	 * The jitter buffers start with silence.  Run the conference
+	 * until the members contribute the data they receive.
+	 */
+	for (int i = 0; i < MAX_STARTUP_TICKS; i++) {
+	    receive();
+	    tick();
+
+	    if (isContributing()) {
+		return;
+	    }
+	}
+
+	throw new IOException(conferenceId + ":  members aren't contributing"
+	    + " after " + MAX_STARTUP_TICKS + " ticks");
+    }
+
+    /*
+     * Wait for the topology publisher to give the sender all the members.
+     */
+    private void waitForTopology() throws IOException {
+	long timeout = System.currentTimeMillis() + TOPOLOGY_TIMEOUT;
+
+	while (true) {
+	    ConferenceTopology topology = conferenceManager.getTopology();
+
+	    if (topology != null && 
+		    topology.getMemberList().size() == members.length) {
+
+		return;
+	    }
+
+	    if (System.currentTimeMillis() > timeout) {
+		throw new IOException(conferenceManager.getId()
+		    + ":  topology wasn't published");
+	    }
+
+	    try {
+		Thread.sleep(1);
+	    } catch (InterruptedException e) {
+	    }
+	}
+    }
+
+    private boolean isContributing() {
+	for (int i = 0; i < members.length; i++) {
+	    if (members[i].getMemberReceiver().hadContribution() == false) {
+		return false;
+	    }
+	}
+
+	return true;
+    }
+
+    public ConferenceManager getConferenceManager() {
+	return conferenceManager;
+    }
+
+    /*
+     * Set the private mix member has for source.
+     */
+    public void setPrivateMix(int member, int source,
+	    double[] spatialValues) {
+
+	members[member].setPrivateMix(members[source], spatialValues);
+
+	ConferenceMember.applyPrivateMixes();
+    }
+
+    /*
+     * Each member receives its next packet.
+     */
+    public void receive() {
+	for (int i = 0; i < members.length; i++) {
+	    RtpSenderPacket packet = packets[i];
+
+	    members[i].getMemberReceiver().receive(sinkAddress,
+		packet.getData(), packet.getLength());
+
+	    packet.updateRtpHeader(packet.getLength());
+	}
+    }
+
+    /*
+     * Save the members' contributions and the whisper groups' mixes
+     * the way the sender does at the start of a tick.  They stay
+     * valid until the next tick.
+     */
+    public void saveContributions() {
+	ConferenceTopology topology = conferenceManager.getTopology();
+
+	conferenceManager.getMixPlanner().startTick();
+
+	WhisperGroup[] whisperGroups = topology.getWhisperGroups();
+
+	for (int i = 0; i < whisperGroups.length; i++) {
+	    ConferenceMember[] ml = topology.getWhisperGroupMembers(i);
+
+	    for (int j = 0; j < ml.length; j++) {
+		if (ml[j].getWhisperGroup() == whisperGroups[i]) {
+		    ml[j].saveCurrentContribution();
+		}
+	    }
+
+	    whisperGroups[i].saveCurrentContribution();
+	}
+    }
+
+    /*
+     * One tick of the sender.
+     */
+    public void tick() throws TickerException {
+	ticker.step();
+    }
+
+    /*
+     * Mix the data for member as the sender does.  Shared mixes are
+     * computed again each time.  The buffer returned has been released
+     * so it's only good for consuming the result.
+     */
+    public int[] mix(int member) {
+	conferenceManager.getMixPlanner().startTick();
+
+	MixManager mixManager = members[member].getMixManager();
+
+	synchronized (mixManager) {
+	    try {
+		return mixManager.mix();
+	    } finally {
+		mixManager.releaseBuffers();
+	    }
+	}
+    }
+
+    /*
+     * Remove the members, end the conference and stop its sender.
+     */
+    public void end() {
+	for (int i = 0; i < members.length; i++) {
+	    conferenceManager.leave(members[i]);
+	}
+
+	conferenceManager.getConferenceSender().end();
+
+	try {
+	    ConferenceManager.endConference(conferenceManager.getId());
+	} catch (ParseException e) {
+	    Logger.println(conferenceManager.getId()
+		+ ":  Can't end conference " + e.getMessage());
+	}
+
+	try {
+	    sink.close();
+	} catch (IOException e) {
+	}
+    }
+
+    /*
+     * A call which is established as soon as the member is initialized.
+     */
+    private static class BenchmarkCallHandler extends CallHandler {
+
+	public BenchmarkCallHandler(ConferenceManager conferenceManager,
+		ConferenceMember member) {
+
+	    this.conferenceManager = conferenceManager;
+	    this.member = member;
+
+	    cp = member.getCallParticipant();
+	    memberSender = member.getMemberSender();
+	    memberReceiver = member.getMemberReceiver();
+	}
+
+	public boolean isCallEstablished() {
+	    return true;
+	}
+
+	public CallEventListener getRequestHandler() {
+	    return null;
+	}
+
+	public void callEventNotification(CallEvent callEvent) {
+	}
+
+	public void run() {
+	}
+
+    }
+
+}
@@ -0,0 +1,149 @@
+/*
+ * Copyright 2007 Sun Microsystems, Inc.
+ *
+ * This file is part of jVoiceBridge.
+ *
+ * jVoiceBridge is free software: you can redistribute it and/or modify 
+ * it under the terms of the GNU General Public License version 2 as 
+ * published by the Free Software Foundation and distributed hereunder 
+ * to you.
+ *
+ * jVoiceBridge is distributed in the hope that it will be useful, 
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Sun designates this particular file as subject to the "Classpath"
+ * exception as provided by Sun in the License file that accompanied this 
+ * code. 
+ */
+
+
+package com.sun.voip.benchmark;
+
+import com.sun.voip.TickerException;
+
+import com.sun.voip.server.ConferenceSender;
+import com.sun.voip.server.EncodedAudioCache;
+import com.sun.voip.server.MixPlanner;
+
+import java.io.IOException;
+
+import java.util.Random;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+/*
+ * One 20ms tick of the ConferenceSender of a conference of synthetic
+ * members.  The sender's thread runs the tick, stepped by a SteppedTicker.
+ *
+ * Each tick every member receives one packet, as the ConferenceReceiver
+ * would between ticks, then the sender 
+ *	- saves every member's contribution and the whisper group's mix
+ *	  from the published topology snapshot
+ *	- for each member, mixes the common mix minus its own contribution, 
+ *	  with private mixes for privateMixPercent of the members,
+ *	  encodes the packet as ulaw and sends it to a socket
+ *	  which isn't read
+ *
+ * sender is "single" for one sender thread or "workStealing" for the
+ * SenderWorkerPool with 4 threads.  shareWork turns on shared MixPlans
+ * and the EncodedAudioCache.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class ConferenceTickBenchmark {
+
+    private static final int PRIVATE_SOURCES = 2;
+
+    private static final int WORK_STEALING_THREADS = 4;
+
+    @Param({"10", "100", "500"})
+    public int members;
+
+    @Param({"0", "20"})
+    public int privateMixPercent;
+
+    @Param({"single", "workStealing"})
+    public String sender;
+
+    @Param({"false", "true"})
+    public boolean shareWork;
+
+    private BenchmarkConference conference;
+
+    @Setup
+    public void setup() throws IOException, TickerException {
+	int length = Samples.packetLength(BenchmarkConference.SAMPLE_RATE, 
+	    BenchmarkConference.CHANNELS);
+
+	MixPlanner.setUseSharedMixes(shareWork);
+	EncodedAudioCache.setUseEncodeOnce(shareWork);
+
+	short[][] data = new short[members][];
+
+	for (int i = 0; i < members; i++) {
+	    data[i] = Samples.generateShorts(length, i);
+	}
+
+	conference = new BenchmarkConference("ConferenceTickBenchmark", data);
+
+	/*
+	 * A new sender sets the number of sender threads from the
+	 * number of processors so set it after the conference is created.
+	 */
+	if (sender.equals("workStealing")) {
+	    ConferenceSender.setSenderThreads(WORK_STEALING_THREADS);
+	    ConferenceSender.setUseWorkStealing(true);
+	} else {
+	    ConferenceSender.setSenderThreads(1);
+	    ConferenceSender.setUseWorkStealing(false);
+	}
+
+	Random random = new Random(Samples.SEED);
+
+	for (int i = 0; i < members; i++) {
+	    if (random.nextInt(100) >= privateMixPercent) {
+		continue;
+	    }
+
+	    double[] spatialValues = new double[] {
+		0, 2 * random.nextDouble() - 1, 0, .8
+	    };
+
+	    for (int j = 0; j < PRIVATE_SOURCES; j++) {
+		int source = random.nextInt(members);
+
+		if (source != i) {
+		    conference.setPrivateMix(i, source, spatialValues);
+		}
+	    }
+	}
+    }
+
+    @TearDown
+    public void tearDown() {
+	conference.end();
+    }
+
+    @Benchmark
+    public void tick() throws TickerException {
+	conference.receive();
+	conference.tick();
+    }
+
+}
@@ -0,0 +1,118 @@
+/*
+ * Copyright 2007 Sun Microsystems, Inc.
+ *
+ * This file is part of jVoiceBridge.
+ *
+ * jVoiceBridge is free software: you can redistribute it and/or modify 
+ * it under the terms of the GNU General Public License version 2 as 
+ * published by the Free Software Foundation and distributed hereunder 
+ * to you.
+ *
+ * jVoiceBridge is distributed in the hope that it will be useful, 
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Sun designates this particular file as subject to the "Classpath"
+ * exception as provided by Sun in the License file that accompanied this 
+ * code. 
+ */
+
+
+package com.sun.voip.benchmark;
+
+import com.sun.voip.JitterManager;
+import com.sun.voip.JitterObject;
+import com.sun.voip.RingJitterManager;
+
+import java.util.NoSuchElementException;
+import java.util.Random;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/*
+ * One receive and one playout per invocation, the steady state of a member.
+ * reorderPercent of the packets are swapped with the next one.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class JitterManagerBenchmark {
+
+    private static final int SEQUENCES = 4096;
+
+    @Param({"list", "ring"})
+    public String implementation;
+
+    @Param({"0", "5"})
+    public int reorderPercent;
+
+    private JitterManager jitterManager;
+
+    private short[] sequences = new short[SEQUENCES];
+
+    private int[] data;
+
+    private int next;
+
+    @Setup
+    public void setup() {
+	if (implementation.equals("ring")) {
+	    jitterManager = new RingJitterManager("benchmark");
+	} else {
+	    jitterManager = new JitterManager("benchmark");
+	}
+
+	Random random = new Random(Samples.SEED);
+
+	for (int i = 0; i < SEQUENCES; i++) {
+	    sequences[i] = (short) i;
+	}
+
+	for (int i = 0; i < SEQUENCES - 1; i++) {
+	    if (random.nextInt(100) < reorderPercent) {
+		short s = sequences[i];
+		sequences[i] = sequences[i + 1];
+		sequences[i + 1] = s;
+		i++;
+	    }
+	}
+
+	data = Samples.generate(160, 2);
+    }
+
+    @Benchmark
+    public Object insertAndGet() {
+	/*
+	 * Sequence numbers keep increasing across passes over the table.
+	 */
+	int pass = next / SEQUENCES;
+
+	short sequence = (short) (sequences[next % SEQUENCES] + 
+	    pass * SEQUENCES);
+
+	next++;
+
+	jitterManager.insertPacket(sequence, data);
+
+	try {
+	    JitterObject jo = jitterManager.getFirstPacket();
+	    return jo.data;
+	} catch (NoSuchElementException e) {
+	    return null;
+	}
+    }
+
+}
@@ -0,0 +1,113 @@
+/*
+ * Copyright 2007 Sun Microsystems, Inc.
+ *
+ * This file is part of jVoiceBridge.
+ *
+ * jVoiceBridge is free software: you can redistribute it and/or modify 
+ * it under the terms of the GNU General Public License version 2 as 
+ * published by the Free Software Foundation and distributed hereunder 
+ * to you.
+ *
+ * jVoiceBridge is distributed in the hope that it will be useful, 
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Sun designates this particular file as subject to the "Classpath"
+ * exception as provided by Sun in the License file that accompanied this 
+ * code. 
+ */
+
+
+package com.sun.voip.benchmark;
+
+import com.sun.voip.TickerException;
+
+import com.sun.voip.server.MixPlanner;
+
+import java.io.IOException;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+/*
+ * MixManager.mix() for one member of a conference of synthetic members.
+ *
+ * Member 0 has private mixes for the next privateSources members,
+ * member 1 has none so it uses the fast mix.  Each member receives
+ * one packet and the contributions are saved as the sender does at
+ * the start of a tick, then the benchmarks mix the same tick over
+ * and over:
+ *
+ *	fastMix		common mix minus the member's own contribution
+ *	privateMix	common mix minus own contribution, then for each
+ *			private source subtract its common contribution
+ *			and add it back spatialized, or the same through
+ *			a shared MixPlan if sharedMixes is true
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class MixBenchmark {
+
+    @Param({"1", "4", "16"})
+    public int privateSources;
+
+    @Param({"false", "true"})
+    public boolean sharedMixes;
+
+    private BenchmarkConference conference;
+
+    @Setup
+    public void setup() throws IOException, TickerException {
+	int length = Samples.packetLength(BenchmarkConference.SAMPLE_RATE, 
+	    BenchmarkConference.CHANNELS);
+
+	short[][] data = new short[privateSources + 1][];
+
+	for (int i = 0; i < data.length; i++) {
+	    data[i] = Samples.generateShorts(length, i);
+	}
+
+	MixPlanner.setUseSharedMixes(sharedMixes);
+
+	conference = new BenchmarkConference("MixBenchmark", data);
+
+	for (int i = 1; i <= privateSources; i++) {
+	    conference.setPrivateMix(0, i, new double[] {
+		0, -1 + 2. * i / privateSources, 0, .8
+	    });
+	}
+
+	conference.receive();
+	conference.saveContributions();
+    }
+
+    @TearDown
+    public void tearDown() {
+	conference.end();
+    }
+
+    @Benchmark
+    public int[] fastMix() {
+	return conference.mix(1);
+    }
+
+    @Benchmark
+    public int[] privateMix() {
+	return conference.mix(0);
+    }
+
+}
@@ -0,0 +1,92 @@
+/*
+ * Copyright 2007 Sun Microsystems, Inc.
+ *
+ * This file is part of jVoiceBridge.
+ *
+ * jVoiceBridge is free software: you can redistribute it and/or modify 
+ * it under the terms of the GNU General Public License version 2 as 
+ * published by the Free Software Foundation and distributed hereunder 
+ * to you.
+ *
+ * jVoiceBridge is distributed in the hope that it will be useful, 
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Sun designates this particular file as subject to the "Classpath"
+ * exception as provided by Sun in the License file that accompanied this 
+ * code. 
+ */
+
+
+package com.sun.voip.benchmark;
+
+import com.sun.voip.SampleRateConverter;
+
+import java.io.IOException;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/*
+ * Upsampler and Downsampler on one packet.
+ * conversion is <in rate>/<in channels>:<out rate>/<out channels>.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class ResamplerBenchmark {
+
+    @Param({"8000/1:16000/1", "16000/1:8000/1", "8000/1:44100/2",
+	"44100/2:16000/1"})
+    public String conversion;
+
+    private SampleRateConverter intConverter;
+    private SampleRateConverter shortConverter;
+
+    private int[] ints;
+    private short[] shorts;
+
+    @Setup
+    public void setup() throws IOException {
+	String[] tokens = conversion.split("[/:]");
+
+	int inSampleRate = Integer.parseInt(tokens[0]);
+	int inChannels = Integer.parseInt(tokens[1]);
+	int outSampleRate = Integer.parseInt(tokens[2]);
+	int outChannels = Integer.parseInt(tokens[3]);
+
+	intConverter = new SampleRateConverter("ints", inSampleRate,
+	    inChannels, outSampleRate, outChannels);
+
+	shortConverter = new SampleRateConverter("shorts", inSampleRate,
+	    inChannels, outSampleRate, outChannels);
+
+	int length = Samples.packetLength(inSampleRate, inChannels);
+
+	ints = Samples.generate(length, 1);
+	shorts = Samples.generateShorts(length, 1);
+    }
+
+    @Benchmark
+    public int[] resampleInts() throws IOException {
+	return intConverter.resample(ints);
+    }
+
+    @Benchmark
+    public short[] resampleShorts() throws IOException {
+	return shortConverter.resample(shorts);
+    }
+
+}
@@ -0,0 +1,81 @@
+/*
+ * Copyright 2007 Sun Microsystems, Inc.
+ *
+ * This file is part of jVoiceBridge.
+ *
+ * jVoiceBridge is free software: you can redistribute it and/or modify 
+ * it under the terms of the GNU General Public License version 2 as 
+ * published by the Free Software Foundation and distributed hereunder 
+ * to you.
+ *
+ * jVoiceBridge is distributed in the hope that it will be useful, 
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Sun designates this particular file as subject to the "Classpath"
+ * exception as provided by Sun in the License file that accompanied this 
+ * code. 
+ */
+
+
+package com.sun.voip.benchmark;
+
+import java.util.Random;
+
+/*
+ * Reproducible synthetic audio for the benchmarks.
+ * Everything is generated from fixed seeds so runs can be compared.
+ */
+class Samples {
+
+    public static final long SEED = 0x5eed;
+
+    private Samples() {
+    }
+
+    /*
+     * Speech-like 16-bit data:  a few tones plus noise.
+     */
+    public static int[] generate(int length, int seed) {
+	Random random = new Random(SEED + seed);
+
+	double f1 = 200 + random.nextInt(200);
+	double f2 = 700 + random.nextInt(700);
+
+	int[] data = new int[length];
+
+	for (int i = 0; i < length; i++) {
+	    double s = 6000 * Math.sin(2 * Math.PI * f1 * i / 8000)
+		+ 3000 * Math.sin(2 * Math.PI * f2 * i / 8000)
+		+ 1000 * random.nextGaussian();
+
+	    data[i] = (int) s;
+	}
+
+	return data;
+    }
+
+    public static short[] generateShorts(int length, int seed) {
+	int[] data = generate(length, seed);
+
+	short[] shorts = new short[length];
+
+	for (int i = 0; i < length; i++) {
+	    shorts[i] = (short) data[i];
+	}
+
+	return shorts;
+    }
+
+    /*
+     * Samples per 20ms packet.
+     */
+    public static int packetLength(int sampleRate, int channels) {
+	return sampleRate / 50 * channels;
+    }
+
+}
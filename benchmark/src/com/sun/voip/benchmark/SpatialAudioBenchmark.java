@@ -0,0 +1,100 @@
+/*
+ * Copyright 2007 Sun Microsystems, Inc.
+ *
+ * This file is part of jVoiceBridge.
+ *
+ * jVoiceBridge is free software: you can redistribute it and/or modify 
+ * it under the terms of the GNU General Public License version 2 as 
+ * published by the Free Software Foundation and distributed hereunder 
+ * to you.
+ *
+ * jVoiceBridge is distributed in the hope that it will be useful, 
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Sun designates this particular file as subject to the "Classpath"
+ * exception as provided by Sun in the License file that accompanied this 
+ * code. 
+ */
+
+
+package com.sun.voip.benchmark;
+
+import com.sun.voip.server.MixBufferPool;
+import com.sun.voip.server.SunSpatialAudio;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/*
+ * SunSpatialAudio.generateSpatialAudio for one source in a 
+ * 16k stereo conference.
+ *
+ * position is one of
+ *	center	volume change only
+ *	side	left / right delay
+ *	behind	left / right delay plus front / back echo
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class SpatialAudioBenchmark {
+
+    private static final int SAMPLE_RATE = 16000;
+    private static final int CHANNELS = 2;
+
+    @Param({"center", "side", "behind"})
+    public String position;
+
+    private SunSpatialAudio spatialAudio;
+
+    private double[] spatialValues;
+
+    private short[] previousContribution;
+    private short[] currentContribution;
+
+    @Setup
+    public void setup() {
+	spatialAudio = new SunSpatialAudio();
+
+	int samplesPerPacket = SAMPLE_RATE / 50;
+
+	spatialAudio.initialize("benchmark", "benchmark", SAMPLE_RATE,
+	    CHANNELS, samplesPerPacket);
+
+	if (position.equals("center")) {
+	    spatialValues = new double[] {0, 0, 0, .5};
+	} else if (position.equals("side")) {
+	    spatialValues = new double[] {0, .7, 0, .8};
+	} else {
+	    spatialValues = new double[] {-.5, -.4, 0, .8};
+	}
+
+	int length = Samples.packetLength(SAMPLE_RATE, CHANNELS);
+
+	previousContribution = Samples.generateShorts(length, 4);
+	currentContribution = Samples.generateShorts(length, 5);
+    }
+
+    @Benchmark
+    public int[] generateSpatialAudio() {
+	int[] data = spatialAudio.generateSpatialAudio("source", 
+	    previousContribution, currentContribution, spatialValues);
+
+	MixBufferPool.releaseBuffers();
+	return data;
+    }
+
+}
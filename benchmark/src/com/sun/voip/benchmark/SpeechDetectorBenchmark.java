@@ -0,0 +1,81 @@
+/*
+ * Copyright 2007 Sun Microsystems, Inc.
+ *
+ * This file is part of jVoiceBridge.
+ *
+ * jVoiceBridge is free software: you can redistribute it and/or modify 
+ * it under the terms of the GNU General Public License version 2 as 
+ * published by the Free Software Foundation and distributed hereunder 
+ * to you.
+ *
+ * jVoiceBridge is distributed in the hope that it will be useful, 
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Sun designates this particular file as subject to the "Classpath"
+ * exception as provided by Sun in the License file that accompanied this 
+ * code. 
+ */
+
+
+package com.sun.voip.benchmark;
+
+import com.sun.voip.MediaInfo;
+import com.sun.voip.RtpPacket;
+import com.sun.voip.SpeechDetector;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/*
+ * Speech detection on one received packet.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class SpeechDetectorBenchmark {
+
+    @Param({"8000", "16000"})
+    public int sampleRate;
+
+    private SpeechDetector speechDetector;
+
+    private int[] ints;
+    private short[] shorts;
+
+    @Setup
+    public void setup() {
+	MediaInfo mediaInfo = new MediaInfo((byte) 0, 
+	    RtpPacket.PCM_ENCODING, sampleRate, 1, false);
+
+	speechDetector = new SpeechDetector("benchmark", mediaInfo);
+
+	int length = Samples.packetLength(sampleRate, 1);
+
+	ints = Samples.generate(length, 3);
+	shorts = Samples.generateShorts(length, 3);
+    }
+
+    @Benchmark
+    public boolean processInts() {
+	return speechDetector.processData(ints);
+    }
+
+    @Benchmark
+    public boolean processShorts() {
+	return speechDetector.processData(shorts);
+    }
+
+}
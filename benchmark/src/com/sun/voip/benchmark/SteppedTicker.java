@@ -0,0 +1,143 @@
+/*
+ * Copyright 2007 Sun Microsystems, Inc.
+ *
+ * This file is part of jVoiceBridge.
+ *
+ * jVoiceBridge is free software: you can redistribute it and/or modify 
+ * it under the terms of the GNU General Public License version 2 as 
+ * published by the Free Software Foundation and distributed hereunder 
+ * to you.
+ *
+ * jVoiceBridge is distributed in the hope that it will be useful, 
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Sun designates this particular file as subject to the "Classpath"
+ * exception as provided by Sun in the License file that accompanied this 
+ * code. 
+ */
+
+
+package com.sun.voip.benchmark;
+
+import com.sun.voip.Ticker;
+import com.sun.voip.TickerException;
+
+import java.util.HashMap;
+
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+/*
+ * A Ticker which lets a ConferenceSender run one tick each time
+ * step() is called so the benchmarks can time the sender's ticks.
+ *
+ * The sender creates its ticker by name when it starts, so set
+ * com.sun.voip.TICKER to this class before the conference is created.
+ * waitForTicker() then finds the ticker once its sender is waiting
+ * for the first step.
+ */
+public class SteppedTicker implements Ticker {
+
+    private static final int TIMEOUT_SECONDS = 10;
+
+    private static HashMap<String, SteppedTicker> tickers =
+	new HashMap<String, SteppedTicker>();
+
+    private String id;
+
+    private Semaphore tickAllowed = new Semaphore(0);
+    private Semaphore tickDone = new Semaphore(0);
+
+    public SteppedTicker(String id) {
+	this.id = id;
+
+	synchronized (tickers) {
+	    tickers.put(id, this);
+	    tickers.notifyAll();
+	}
+    }
+
+    /*
+     * Get the ticker of the sender named id when the sender has
+     * finished its first tick.
+     */
+    public static SteppedTicker waitForTicker(String id) 
+	    throws TickerException {
+
+	long timeout = System.currentTimeMillis() + TIMEOUT_SECONDS * 1000;
+
+	SteppedTicker ticker;
+
+	synchronized (tickers) {
+	    while ((ticker = tickers.get(id)) == null) {
+		long wait = timeout - System.currentTimeMillis();
+
+		if (wait <= 0) {
+		    throw new TickerException(id + ":  sender didn't start, "
+			+ "is com.sun.voip.TICKER set to " 
+			+ SteppedTicker.class.getName() + "?");
+		}
+
+		try {
+		    tickers.wait(wait);
+		} catch (InterruptedException e) {
+		    throw new TickerException(id + ":  interrupted");
+		}
+	    }
+	}
+
+	ticker.waitForTickDone();
+	return ticker;
+    }
+
+    public void arm(long delay, long timePeriod) {
+    }
+
+    public void disarm() {
+	synchronized (tickers) {
+	    tickers.remove(id);
+	}
+    }
+
+    /*
+     * Called by the sender at the end of each tick.
+     */
+    public void tick() throws TickerException {
+	tickDone.release();
+
+	try {
+	    tickAllowed.acquire();
+	} catch (InterruptedException e) {
+	    throw new TickerException(id + ":  interrupted");
+	}
+    }
+
+    /*
+     * Let the sender run one tick and wait for it to finish.
+     */
+    public void step() throws TickerException {
+	tickAllowed.release();
+
+	waitForTickDone();
+    }
+
+    private void waitForTickDone() throws TickerException {
+	try {
+	    if (tickDone.tryAcquire(TIMEOUT_SECONDS, TimeUnit.SECONDS)) {
+		return;
+	    }
+	} catch (InterruptedException e) {
+	}
+
+	throw new TickerException(id + ":  sender didn't finish a tick");
+    }
+
+    public void printStatistics() {
+    }
+
+}
@@ -148,6 +148,25 @@ public class AudioConversion {
 	}
     }
 
+    /**
+     * Convert a ulaw byte array to a short array of linearData.
+     *
+     * @param ulawData   byte array with ulaw data
+     * @param ulawOffset offset from the start of ulawData
+     * @param length	 length of ulawData
+     * @param linearData short array in which linear data will be placed
+     */
+    public static void ulawToLinear(byte[] ulawData, int ulawOffset, int length,
+            short[] linearData) {
+
+	int inIx = ulawOffset;
+
+        for (int i = 0; i < length; i++) {
+	    linearData[i] = (short) ulawToLinearTable[ulawData[inIx] + 128];
+	    inIx++;
+	}
+    }
+
     public static void ulawToLinear(byte[] ulawData, int ulawOffset, int length,
             byte[] linearData) {
 
@@ -210,6 +229,22 @@ public class AudioConversion {
         }
     }
 
+    /**
+     * Convert a linear short array to a ulaw byte array starting from offset
+     * @param linearData short array of linear data
+     * @param ulawData   byte array in which ulaw data will be placed
+     * @param ulawOffset integer offset from start of ulawData
+     */
+    public static void linearToUlaw(short[] linearData, byte[] ulawData, 
+	int ulawOffset) {
+
+	int outIx = ulawOffset;
+
+        for (int inIx = 0; inIx < linearData.length; inIx++) {
+            ulawData[outIx++] = linearToUlawTable[linearData[inIx] & 0xffff];
+        }
+    }
+
     /**
      * Convert a linear int to a ulaw byte
      *
@@ -290,6 +325,95 @@ public class AudioConversion {
 	return shortData;
     }
 
+    /*
+     * 16-bit sample API.
+     *
+     * Samples are kept in short arrays which halves the memory
+     * traffic compared to int arrays.  Sums which can overflow 
+     * 16 bits, like a mix, should be accumulated in an int and 
+     * then stored back with clipToShorts().
+     */
+    public static void bytesToShorts(byte[] byteData, int byteDataOffset,
+            int byteDataLength, short[] shortData) {
+
+        int inIx = byteDataOffset;
+
+	int n = Math.min(shortData.length, byteDataLength / 2);
+
+        for (int i = 0; i < n; i++) {
+            shortData[i] = (short) (((byteData[inIx] << 8) & 0xff00) |
+                (byteData[inIx + 1] & 0xff));
+
+            inIx += 2;
+        }
+    }
+
+    public static short[] bytesToShorts(byte[] byteData) {
+	short[] shortData = new short[byteData.length / 2];
+
+	bytesToShorts(byteData, 0, byteData.length, shortData);
+	return shortData;
+    }
+
+    public static void shortsToBytes(short[] shortData, byte[] byteData, 
+	    int outOffset) {
+
+	shortsToBytes(shortData, 0, shortData.length, byteData, outOffset);
+    }
+
+    public static void shortsToBytes(short[] shortData, int offset, int length,
+	    byte[] byteData, int outOffset) {
+
+        int outIx = outOffset;
+
+        for (int i = offset; i < offset + length; i++) {
+            byteData[outIx] = (byte) ((shortData[i] >> 8) & 0xff);
+            byteData[outIx + 1] = (byte) (shortData[i] & 0xff);
+
+            outIx += 2;
+        }
+    }
+
+    public static byte[] shortsToBytes(short[] shortData) {
+	byte[] byteData = new byte[shortData.length * 2];
+
+	shortsToBytes(shortData, byteData, 0);
+	return byteData;
+    }
+
+    /*
+     * Compatibility adapters between the short and int sample APIs.
+     */
+    public static void shortsToInts(short[] shortData, int[] intData) {
+	for (int i = 0; i < shortData.length; i++) {
+	    intData[i] = shortData[i];
+	}
+    }
+
+    public static int[] shortsToInts(short[] shortData) {
+	int[] intData = new int[shortData.length];
+
+	shortsToInts(shortData, intData);
+	return intData;
+    }
+
+    /*
+     * Store int samples, typically a mix sum, as clipped 16-bit samples.
+     */
+    public static void clipToShorts(int[] intData, short[] shortData) {
+	for (int i = 0; i < intData.length; i++) {
+	    int sample = intData[i];
+
+	    if (sample > 32767) {
+		sample = 32767;
+	    } else if (sample < -32768) {
+		sample = -32768;
+	    }
+
+	    shortData[i] = (short) sample;
+	}
+    }
+
     public static int clip(int sample) {
         if (sample > 32767) {
 	    if (Logger.logLevel == -49) {
@@ -31,7 +31,8 @@ import java.io.InputStream;
  * Read audio samples from a Sun .au file.
  * Up/down sample as necessary.
  */
-public class DotAuAudioSource extends FileAudioSource {
+public class DotAuAudioSource extends FileAudioSource
+	implements ShortAudioSource {
     
     private String path;
     private int sampleRate;
@@ -146,27 +147,31 @@ public class DotAuAudioSource extends FileAudioSource {
     }
 
     public int[] getLinearData(int sampleTime) throws IOException {
+	short[] data = getShortLinearData(sampleTime);
+
+	if (data == null) {
+	    return null;
+	}
+
+	return AudioConversion.shortsToInts(data);
+    }
+
+    public short[] getShortLinearData(int sampleTime) throws IOException {
 	byte[] fileData = readAudioFile(sampleTime);
 
 	if (fileData == null) {
 	    return null;
 	}
 
-	int[] linearData;
+	short[] linearData;
 	if (encoding == ULAW) {
-            // 1 ulaw byte for each int
-            linearData = new int[fileData.length];
+            // 1 ulaw byte for each short
+            linearData = new short[fileData.length];
 	    AudioConversion.ulawToLinear(fileData, 0, fileData.length, 
 		linearData);
 	} else {
-            // 2 linear bytes for each int
-            linearData = new int[fileData.length / 2];
-
-	    for (int i = 0; i < linearData.length; i++) {
-	        linearData[i] = (int) 
-		    ((short)(((fileData[2 * i] << 8) & 0xff00) |
-	            (fileData[(2 * i) + 1] & 0xff)));
-	    }
+            // 2 linear bytes for each short
+            linearData = AudioConversion.bytesToShorts(fileData);
 	}
 
 	return linearData;
@@ -64,15 +64,15 @@ public class Downsampler extends Resampler {
 
 	length = length & ~1;	// round down
 
-	int[] ints = new int[length / 2];
+	short[] shorts = new short[length / 2];
 
-	AudioConversion.bytesToInts(inSamples, offset, length, ints);
+	AudioConversion.bytesToShorts(inSamples, offset, length, shorts);
 
-	ints = resample(ints);
+	shorts = resample(shorts);
 
-	byte[] bytes = new byte[ints.length * 2];
+	byte[] bytes = new byte[shorts.length * 2];
 
-	AudioConversion.intsToBytes(ints, bytes, offset);
+	AudioConversion.shortsToBytes(shorts, bytes, 0);
 
 	return bytes;
     }
@@ -103,6 +103,85 @@ public class Downsampler extends Resampler {
 	return outSamples;
     }
 
+    public short[] resample(short[] inSamples) throws IOException {
+	if (inSampleRate == outSampleRate && inChannels == outChannels) {
+	    return inSamples;
+	}
+
+	resampleCount++;
+
+	long start = CurrentTime.getTime();
+
+	short[] outSamples = reChannel(inSamples);
+
+	if (inSampleRate == outSampleRate) {
+	    return outSamples;				// no need to resample
+	}
+
+	outSamples = lowPassFilter.lpf(outSamples);
+
+	outSamples = downsample(outSamples);
+
+	totalTime += (CurrentTime.getTime() - start);
+
+	return outSamples;
+    }
+
+    /*
+     * Same interpolation as downsample(int[]) for 16-bit samples.
+     */
+    public short[] downsample(short[] inSamples) {
+	int nFrames = inSamples.length / outChannels;
+
+	int sampleTime = nFrames * 1000 / inSampleRate;
+
+	if (sampleTime == 0) {
+	    sampleTime = 1;
+	}
+
+	int outLength = 
+	    (sampleTime * outSampleRate * outChannels / 1000);
+
+	if ((outLength & 1) != 0) {
+	    outLength++;
+	}
+
+	short[] outSamples = new short[outLength];
+
+	double frameIncr = (double)inSampleRate / (double)outSampleRate;
+
+	double i = 0;
+
+	int outIx = 0;
+
+	while (true) {
+	    int ix = (int)i * outChannels;
+
+	    if (ix >= inSamples.length - outChannels) {
+		break;
+	    }
+
+	    double fraction = i - (int)i;
+
+	    for (int c = 0; c < outChannels; c++) {
+		int s1 = inSamples[ix + c];
+		int s2 = inSamples[ix + c + outChannels];
+
+		outSamples[outIx] = (short) (s1 + ((s2 - s1) * fraction));
+
+		outIx++;
+	    }
+
+	    if (outIx >= outLength) {
+		break;
+	    }
+
+	    i += frameIncr;
+	}
+
+	return outSamples;
+    }
+
     public int[] downsample(int[] inSamples) {
 	int nFrames = inSamples.length / outChannels;
 
@@ -30,20 +30,134 @@ public class JitterManager {
     public static int DEFAULT_MIN_JITTER_BUFFER_SIZE = 3; // packets
     public static int DEFAULT_MAX_JITTER_BUFFER_SIZE = 9;
 
-    private int minJitterBufferSize = DEFAULT_MIN_JITTER_BUFFER_SIZE;
-    private int maxJitterBufferSize = DEFAULT_MAX_JITTER_BUFFER_SIZE;
+    private static final String RING_JITTER_BUFFER =
+	"com.sun.voip.RING_JITTER_BUFFER";
+
+    private static boolean useRingJitterBuffer;
+
+    private static final String ADAPTIVE_JITTER_BUFFER =
+	"com.sun.voip.ADAPTIVE_JITTER_BUFFER";
+
+    private static final String JITTER_PERCENTILE =
+	"com.sun.voip.JITTER_PERCENTILE";
+
+    private static boolean useAdaptiveJitterBuffer;
+
+    private static int jitterPercentile = 95;
+
+    /*
+     * Number of recent inter-arrival times used to choose the
+     * adaptive playout depth.  256 packets is about 5 seconds.
+     */
+    private static final int ARRIVAL_WINDOW = 256;
+
+    /*
+     * Bridge wide metrics for all jitter buffers
+     */
+    private static final MetricsRegistry.Histogram playoutDepthMetric =
+	MetricsRegistry.histogram("jitter_buffer_depth",
+	"Packets buffered when a packet is played",
+	new long[] {0, 1, 2, 3, 4, 5, 6, 7, 8, 9, 10, 12, 15, 20});
+
+    protected static final MetricsRegistry.Counter latePacketsMetric =
+	MetricsRegistry.counter("jitter_late_packets_total",
+	"Packets which arrived too late to be played");
+
+    protected static final MetricsRegistry.Counter lostPacketsMetric =
+	MetricsRegistry.counter("jitter_lost_packets_total",
+	"Packets which never arrived in time to be played");
+
+    protected static final MetricsRegistry.Counter plcMetric =
+	MetricsRegistry.counter("plc_invocations_total",
+	"Packets repaired by packet loss concealment");
+
+    static {
+	String s = System.getProperty(RING_JITTER_BUFFER);
+
+	if (s != null && s.equalsIgnoreCase("true")) {
+	    useRingJitterBuffer = true;
+	}
+
+	s = System.getProperty(ADAPTIVE_JITTER_BUFFER);
+
+	if (s != null && s.equalsIgnoreCase("true")) {
+	    useAdaptiveJitterBuffer = true;
+	}
+
+	s = System.getProperty(JITTER_PERCENTILE);
+
+	if (s != null) {
+	    try {
+		setJitterPercentile(Integer.parseInt(s));
+	    } catch (NumberFormatException e) {
+		Logger.println("Invalid jitter percentile:  " + s);
+	    }
+	}
+    }
+
+    protected int minJitterBufferSize = DEFAULT_MIN_JITTER_BUFFER_SIZE;
+    protected int maxJitterBufferSize = DEFAULT_MAX_JITTER_BUFFER_SIZE;
 
     private int jitter;
     private int maxJitter;
 
-    private int elapsed;
+    protected int elapsed;
 
-    private String id;
+    protected String id;
 
-    private Plc plc;
+    protected Plc plc;
     private PlcFactory plcFactory;
     private String plcClassName = "com.sun.voip.PlcCompress";
 
+    /*
+     * Create a jitter manager using the implementation currently selected.
+     * Changing the selection only affects jitter managers created later.
+     */
+    public static JitterManager createJitterManager(String id) {
+	if (useRingJitterBuffer) {
+	    return new RingJitterManager(id);
+	}
+
+	return new JitterManager(id);
+    }
+
+    public static void setUseRingJitterBuffer(boolean useRingJitterBuffer) {
+	JitterManager.useRingJitterBuffer = useRingJitterBuffer;
+    }
+
+    public static boolean useRingJitterBuffer() {
+	return useRingJitterBuffer;
+    }
+
+    /*
+     * In adaptive mode the playout depth is chosen from the configured
+     * percentile of recent inter-arrival times instead of the decaying
+     * max jitter.
+     */
+    public static void setUseAdaptiveJitterBuffer(
+	    boolean useAdaptiveJitterBuffer) {
+
+	JitterManager.useAdaptiveJitterBuffer = useAdaptiveJitterBuffer;
+    }
+
+    public static boolean useAdaptiveJitterBuffer() {
+	return useAdaptiveJitterBuffer;
+    }
+
+    public static void setJitterPercentile(int jitterPercentile) {
+	if (jitterPercentile < 1 || jitterPercentile > 100) {
+	    Logger.println("Invalid jitter percentile " + jitterPercentile
+		+ ".  Must be 1 - 100");
+	    return;
+	}
+
+	JitterManager.jitterPercentile = jitterPercentile;
+    }
+
+    public static int getJitterPercentile() {
+	return jitterPercentile;
+    }
+
     /*
      * Manage jitter and lost or out of order packets.
      */ 
@@ -66,7 +180,7 @@ public class JitterManager {
      * Keep track of max jitter
      * When there's no jitter, elapsed is RtpPacket.PACKET_PERIOD
      */
-    private void updateJitter(int elapsed) {
+    protected void updateJitter(int elapsed) {
 	if (elapsed < 0) {
 	    if (Logger.logLevel >= Logger.LOG_DETAILINFO) {
 	        Logger.println(id + ":  bad elapsed! " + elapsed);
@@ -88,9 +202,30 @@ public class JitterManager {
 	}
 
 	packetArrivalDistribution[elapsed]++;
+
+	addRecentArrival(elapsed);
 	
 	int jitter = elapsed - RtpPacket.PACKET_PERIOD;
 
+	if (useAdaptiveJitterBuffer) {
+	    /*
+	     * Grow right away when a packet arrives later than the
+	     * current target allows.  The target only shrinks back
+	     * at the start of a talk spurt.
+	     */
+	    int depth = clampDepth(getDepth(jitter));
+
+	    if (depth > targetDepth) {
+		if (Logger.logLevel >= Logger.LOG_MOREINFO) {
+		    Logger.println(id + ":  adaptive target depth "
+			+ targetDepth + " -> " + depth + ", elapsed " + elapsed);
+		}
+
+		targetDepth = depth;
+		targetIncreases++;
+	    }
+	}
+
 	if (jitter > maxJitter) {
 	    maxJitter = jitter;
 	}
@@ -115,17 +250,151 @@ public class JitterManager {
 	}
     }
 
+    private void addRecentArrival(int elapsed) {
+	if (recentArrivalsCount == ARRIVAL_WINDOW) {
+	    recentArrivalDistribution[recentArrivals[recentArrivalsIndex]]--;
+	} else {
+	    recentArrivalsCount++;
+	}
+
+	recentArrivals[recentArrivalsIndex] = elapsed;
+	recentArrivalDistribution[elapsed]++;
+
+	recentArrivalsIndex = (recentArrivalsIndex + 1) % ARRIVAL_WINDOW;
+    }
+
+    /*
+     * Number of packets needed to cover the given jitter in milliseconds.
+     */
+    private int getDepth(int jitter) {
+	if (jitter <= 0) {
+	    return 0;
+	}
+
+	return (jitter + RtpPacket.PACKET_PERIOD - 1) / RtpPacket.PACKET_PERIOD;
+    }
+
+    private int clampDepth(int depth) {
+	if (depth > maxJitterBufferSize / 2) {
+	    depth = maxJitterBufferSize / 2;
+	}
+
+	if (depth < minJitterBufferSize) {
+	    depth = minJitterBufferSize;
+	}
+
+	return depth;
+    }
+
+    /*
+     * Depth covering jitterPercentile percent of the recent 
+     * inter-arrival times.
+     */
+    private int getPercentileDepth() {
+	if (recentArrivalsCount == 0) {
+	    return clampDepth(0);
+	}
+
+	int needed = (recentArrivalsCount * jitterPercentile + 99) / 100;
+
+	int count = 0;
+
+	int elapsed;
+
+	for (elapsed = 0; elapsed < recentArrivalDistribution.length - 1; 
+		elapsed++) {
+
+	    count += recentArrivalDistribution[elapsed];
+
+	    if (count >= needed) {
+		break;
+	    }
+	}
+
+	return clampDepth(getDepth(elapsed - RtpPacket.PACKET_PERIOD));
+    }
+
+    /*
+     * Called when a packet with the MARK bit arrives, i.e. after
+     * silence suppression or comfort payloads.  The gap is the time 
+     * to shrink the adaptive target back to the recent percentile.
+     */
+    public void startTalkSpurt() {
+	talkSpurts++;
+
+	if (useAdaptiveJitterBuffer == false) {
+	    return;
+	}
+
+	int depth = getPercentileDepth();
+
+	if (depth != targetDepth && Logger.logLevel >= Logger.LOG_MOREINFO) {
+	    Logger.println(id + ":  talk spurt, adaptive target depth "
+		+ targetDepth + " -> " + depth);
+	}
+
+	targetDepth = depth;
+    }
+
+    public int getTargetDepth() {
+	return targetDepth;
+    }
+
+    /*
+     * Leading silence is removed when the buffer is deeper than needed.
+     */
+    protected boolean canRemoveSilence(int size) {
+	if (useAdaptiveJitterBuffer) {
+	    return size > targetDepth;
+	}
+
+	return size >= minJitterBufferSize;
+    }
+
+    /*
+     * Record how many packets are still buffered when a packet is played.
+     */
+    protected void recordPlayoutDepth(int depth) {
+	playoutDepthTotal += depth;
+	packetsPlayed++;
+
+	playoutDepthMetric.record(depth);
+    }
+
+    /*
+     * Average time in milliseconds packets spend in the jitter buffer.
+     */
+    public int getAveragePlayoutDelay() {
+	if (packetsPlayed == 0) {
+	    return 0;
+	}
+
+	return (int) (playoutDepthTotal * RtpPacket.PACKET_PERIOD / 
+	    packetsPlayed);
+    }
+
+    /*
+     * Packets which arrived after their playout time.
+     */
+    public int getLatePackets() {
+	return oldTossed;
+    }
+
     /*
      * Determine where to place the next packet based on the
      * amount of jitter.  The packet will only be placed at this index
      * if the jitter buffer is empty.  Otherwise the packet is inserted
      * at its correct place in the buffer based on its sequence number.
      */
-    private int getJitterIndex() {
+    protected int getJitterIndex() {
 	if (maxJitterBufferSize == 0) {
 	    return 0;
 	}
 
+	if (useAdaptiveJitterBuffer) {
+	    return clampDepth(targetDepth);
+	}
+
 	int jitter = this.jitter;
 
 	jitter = (jitter + RtpPacket.PACKET_PERIOD - 1) / 
@@ -215,7 +484,17 @@ public class JitterManager {
 	Logger.writeFile(id + ":  " + (outOfOrderPackets - failedToRecover)
 	    + " recovered missing packets");
 	Logger.writeFile(id + ":  " + oldTossed + " old packets tossed");
-	Logger.writeFile(id + ":  " + packetList.size() 
+	Logger.writeFile(id + ":  " + getAveragePlayoutDelay() 
+	    + " average playout delay milliseconds");
+	Logger.writeFile(id + ":  " + talkSpurts + " talk spurts");
+
+	if (useAdaptiveJitterBuffer) {
+	    Logger.writeFile(id + ":  " + targetDepth
+		+ " adaptive target depth, " + jitterPercentile 
+		+ " percentile depth " + getPercentileDepth()
+		+ ", " + targetIncreases + " target increases");
+	}
+	Logger.writeFile(id + ":  " + getPacketListSize()
 	    + " packets in jitter buffer");
 
 	Logger.writeFile(id + "");
@@ -244,13 +523,26 @@ public class JitterManager {
 
     private short firstSequence;
 
-    private int insertedSilence;
-    private int outOfOrderPackets;
-    private int failedToRecover;
-    private int oldTossed;
+    protected int insertedSilence;
+    protected int outOfOrderPackets;
+    protected int failedToRecover;
+    protected int oldTossed;
 
     private int[] packetArrivalDistribution = new int[500];
 
+    private int[] recentArrivals = new int[ARRIVAL_WINDOW];
+    private int recentArrivalsIndex;
+    private int recentArrivalsCount;
+    private int[] recentArrivalDistribution = 
+	new int[packetArrivalDistribution.length];
+
+    private int targetDepth = DEFAULT_MIN_JITTER_BUFFER_SIZE;
+    private int targetIncreases;
+    private int talkSpurts;
+
+    private long playoutDepthTotal;
+    private long packetsPlayed;
+
     /*
      * packetList holds JitterObjects
      *
@@ -280,11 +572,15 @@ public class JitterManager {
 	return insertPacket(sequence, (Object) data);
     }
 
+    public int insertPacket(short sequence, short[] data) {
+	return insertPacket(sequence, (Object) data);
+    }
+
     public int insertPacket(short sequence, int[] data) {
 	return insertPacket(sequence, (Object) data);
     }
 
-    private int insertPacket(short sequence, Object data) {
+    protected int insertPacket(short sequence, Object data) {
 	JitterObject jitterObject = new JitterObject(
 	    sequence, false, data);
 
@@ -336,7 +632,7 @@ public class JitterManager {
 	     * Set firstSequence appropriately.
 	     */
 	    silenceCount = insertSilence(jitterObject);
-	} else if (size >= minJitterBufferSize) {
+	} else if (canRemoveSilence(size)) {
 	    /*
 	     * If we get a burst of packets, try to remove
 	     * the silence packets we inserted
@@ -371,6 +667,7 @@ public class JitterManager {
 	    }
 
 	    oldTossed++;
+	    latePacketsMetric.increment();
 	}
 
 	return silenceCount;
@@ -586,12 +883,14 @@ public class JitterManager {
 	         * Try to repair the damage.
 	         */
 	        failedToRecover++;
+	        lostPacketsMetric.increment();
 
 		if (Logger.logLevel >= Logger.LOG_INFO) {
 		    Logger.println(id + ":  Failed to recover packet "
 			+ (jo.sequence & 0xffff));
 		}
 
+	        plcMetric.increment();
 	        jo = plc.repair(jo);
 
 		if (jo != null) {
@@ -618,12 +917,13 @@ public class JitterManager {
 	    }
 	}
 
+	recordPlayoutDepth(packetList.size());
 	return jo;
     }
 
     public int getJitterBufferSize() {
 	synchronized (this) {
-	    return packetList.size();
+	    return getPacketListSize();
 	}
     }
 
@@ -26,11 +26,10 @@ package com.sun.voip;
 /*
  * The JitterManager maintains a list of JitterObjects.
  * data is kept as Object because it can be either a byte[] when used
- * byte the softphone or int[] when used by the bridge.
+ * byte the softphone or short[] when used by the bridge.
  * 
- * Only the JitterManager creates JitterObjects and it has two
- * separate insertPacket() methods, one with a byte[] argument and
- * the other with a int[] argument.
+ * Only the JitterManager creates JitterObjects and it has
+ * separate insertPacket() methods for byte[], short[] and int[] data.
  */
 public class JitterObject {
 
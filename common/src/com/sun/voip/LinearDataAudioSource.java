@@ -29,9 +29,9 @@ import java.io.IOException;
  * Return samples from a linear data array.
  * FreeTTS generates a linear data array.
  */
-public class LinearDataAudioSource implements AudioSource {
+public class LinearDataAudioSource implements ShortAudioSource {
 
-    private int[] linearData;
+    private short[] linearData;
     private int sampleRate;
     private int channels;
 
@@ -40,22 +40,34 @@ public class LinearDataAudioSource implements AudioSource {
     public LinearDataAudioSource(int[] linearData, 
 	    int sampleRate, int channels) {
 
-	this.linearData = linearData;
+	this.linearData = new short[linearData.length];
+
+	AudioConversion.clipToShorts(linearData, this.linearData);
 	this.sampleRate = sampleRate;
 	this.channels = channels;
     }
 
+    public int[] getLinearData(int sampleTime) throws IOException {
+	short[] data = getShortLinearData(sampleTime);
+
+	if (data == null) {
+	    return null;
+	}
+
+	return AudioConversion.shortsToInts(data);
+    }
+
     /*
      * Get linear data from the linear data array.
      */
-    public int[] getLinearData(int sampleTime) throws IOException {
+    public short[] getShortLinearData(int sampleTime) throws IOException {
         if (linearOffset >= linearData.length) {
             return null;
         }
 
         int byteLen = sampleRate * sampleTime * channels * 2 / 1000;
 
-	int[] data = new int[byteLen / 2];
+	short[] data = new short[byteLen / 2];
 
 	int dataOffset = 0;
 
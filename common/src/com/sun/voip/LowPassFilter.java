@@ -100,19 +100,127 @@ public class LowPassFilter {
     public byte[] lpf(byte[] inSamples) {
 	int length = inSamples.length & ~1;	// round down
 
-	int[] ints = new int[length / 2];
+	short[] shorts = new short[length / 2];
 
-	AudioConversion.bytesToInts(inSamples, 0, length, ints);
+	AudioConversion.bytesToShorts(inSamples, 0, length, shorts);
 
-	ints = lpf(ints);
+	shorts = lpf(shorts);
 
-	byte[] bytes = new byte[ints.length * 2];
+	byte[] bytes = new byte[shorts.length * 2];
 
-	AudioConversion.intsToBytes(ints, bytes, 0);
+	AudioConversion.shortsToBytes(shorts, bytes, 0);
 
 	return bytes;
     }
 
+    /*
+     * Same moving average as lpf(int[]) for 16-bit samples.
+     * The sums are kept in ints and the previous samples are
+     * shared with the int version.
+     */
+    public short[] lpf(short[] inSamples) {
+	long start = CurrentTime.getTime();
+	
+	if (nAvg > inSamples.length / channels) {
+	    nAvg = inSamples.length / channels;
+	}
+
+	if (nAvg < 2) {
+	    return inSamples;
+	}
+
+	if (previousSamples == null || 
+		previousSamples.length != (nAvg -1) * channels) {
+
+	    previousSamples = new int[(nAvg - 1) * channels];
+	}
+
+	short[] outSamples = new short[inSamples.length];
+
+	/*
+	 * Save next set of previous samples
+	 */
+	int[] p = new int[previousSamples.length];
+
+	for (int i = 0; i < p.length; i++) {
+	    p[i] = inSamples[inSamples.length - p.length + i];
+	}
+
+	double volumeAdjustment = 1.0D + (lpfVolumeAdjustment * nAvg);
+
+	int sum1 = 0;
+	int sum2 = 0;
+
+	int ix = 0;
+
+        for (int i = 0; i < nAvg - 1; i++) {
+            sum1 += previousSamples[ix];
+
+	    ix++;
+
+            if (channels == 2) {
+                sum2 += previousSamples[ix];
+		ix++;
+            }
+        }
+
+	ix = 0;
+
+	for (int i = 0; i < nAvg - 1; i++) {
+            sum1 += inSamples[ix];
+
+            outSamples[ix] = (short) AudioConversion.clip(
+                (int) (volumeAdjustment * sum1 / nAvg));
+
+            sum1 -= previousSamples[ix];
+
+	    ix++;
+
+            if (channels == 2) {
+                sum2 += inSamples[ix];
+
+                outSamples[ix] = (short) AudioConversion.clip(
+                    (int) (volumeAdjustment * sum2 / nAvg));
+
+                sum2 -= previousSamples[ix];
+                ix++;
+            }
+	}
+
+	int indexToSubtract = 0;
+
+	while (ix < inSamples.length) {
+	    sum1 += inSamples[ix];
+
+            outSamples[ix] = (short) AudioConversion.clip(
+		(int) (volumeAdjustment * sum1 / nAvg));
+
+	    sum1 -= inSamples[indexToSubtract];
+
+	    ix++;
+	    indexToSubtract++;
+
+            if (channels == 2) {
+		sum2 += inSamples[ix];
+
+                outSamples[ix] = (short) AudioConversion.clip(
+		    (int) (volumeAdjustment * sum2 / nAvg));
+
+		sum2 -= inSamples[indexToSubtract];
+
+		ix++;
+	        indexToSubtract++;
+	    }
+        }
+
+	previousSamples = p;
+
+	totalLpfTime += (CurrentTime.getTime() - start);
+	lpfCount++;
+
+	return outSamples;
+    }
+
     public int[] lpf(int[] inSamples) {
 	long start = CurrentTime.getTime();
 	
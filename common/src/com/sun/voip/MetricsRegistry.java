@@ -0,0 +1,432 @@
+/*
+ * Copyright 2007 Sun Microsystems, Inc.
+ *
+ * This file is part of jVoiceBridge.
+ *
+ * jVoiceBridge is free software: you can redistribute it and/or modify 
+ * it under the terms of the GNU General Public License version 2 as 
+ * published by the Free Software Foundation and distributed hereunder 
+ * to you.
+ *
+ * jVoiceBridge is distributed in the hope that it will be useful, 
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Sun designates this particular file as subject to the "Classpath"
+ * exception as provided by Sun in the License file that accompanied this 
+ * code. 
+ */
+
+package com.sun.voip;
+
+import java.lang.management.ManagementFactory;
+
+import java.util.ArrayList;
+
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import javax.management.Attribute;
+import javax.management.AttributeList;
+import javax.management.AttributeNotFoundException;
+import javax.management.DynamicMBean;
+import javax.management.MBeanAttributeInfo;
+import javax.management.MBeanInfo;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+/**
+ * Bridge wide counters, gauges and latency histograms.
+ *
+ * Metrics are created once, usually in a static field of the class
+ * which updates them.  Updating a counter or histogram is a few atomic
+ * adds so they can be used on the media threads.  Readers only read
+ * the atomics and never take a lock the media threads use.
+ *
+ * All metrics are attributes of the MBean com.sun.voip:type=Metrics
+ * and can be read as text from the MetricsServer.
+ */
+public class MetricsRegistry {
+
+    public static final String OBJECT_NAME = "com.sun.voip:type=Metrics";
+
+    /*
+     * Default histogram bucket upper bounds for times in microseconds
+     */
+    public static final long[] TIME_BUCKETS = {
+	10, 20, 50, 100, 200, 500, 1000, 2000, 5000, 10000, 20000, 50000
+    };
+
+    private static CopyOnWriteArrayList<Metric> metrics =
+	new CopyOnWriteArrayList<Metric>();
+
+    private static boolean registered;
+
+    private MetricsRegistry() {
+    }
+
+    public static Counter counter(String name, String help) {
+	Counter counter = new Counter(name, help);
+
+	add(counter);
+	return counter;
+    }
+
+    public static void gauge(String name, String help, Gauge gauge) {
+	add(new GaugeMetric(name, help, gauge));
+    }
+
+    public static Histogram histogram(String name, String help,
+	    long[] buckets) {
+
+	Histogram histogram = new Histogram(name, help, buckets);
+
+	add(histogram);
+	return histogram;
+    }
+
+    /*
+     * Histogram of times in microseconds.  Record with recordNanos().
+     */
+    public static Histogram timeHistogram(String name, String help) {
+	return histogram(name, help, TIME_BUCKETS);
+    }
+
+    private static synchronized void add(Metric metric) {
+	for (Metric m : metrics) {
+	    if (m.name.equals(metric.name)) {
+		Logger.println("Metric " + metric.name
+		    + " is already registered, replacing it");
+
+		metrics.remove(m);
+		break;
+	    }
+	}
+
+	metrics.add(metric);
+
+	if (registered == false) {
+	    registered = true;
+	    registerMBean();
+	}
+    }
+
+    private static void registerMBean() {
+	try {
+	    MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+
+	    ObjectName objectName = new ObjectName(OBJECT_NAME);
+
+	    if (server.isRegistered(objectName) == false) {
+		server.registerMBean(new MetricsMBean(), objectName);
+	    }
+	} catch (Exception e) {
+	    Logger.println("Unable to register metrics MBean:  "
+		+ e.getMessage());
+	}
+    }
+
+    /*
+     * Write all metrics in the Prometheus text format.
+     */
+    public static String toText() {
+	StringBuffer sb = new StringBuffer();
+
+	for (Metric metric : metrics) {
+	    sb.append("# HELP ").append(metric.name).append(" ")
+		.append(metric.help).append("\n");
+	    sb.append("# TYPE ").append(metric.name).append(" ")
+		.append(metric.getType()).append("\n");
+
+	    metric.appendText(sb);
+	}
+
+	return sb.toString();
+    }
+
+    public static abstract class Metric {
+	protected String name;
+	protected String help;
+
+	protected Metric(String name, String help) {
+	    this.name = name;
+	    this.help = help;
+	}
+
+	public String getName() {
+	    return name;
+	}
+
+	protected abstract String getType();
+
+	protected abstract void appendText(StringBuffer sb);
+
+	protected abstract void addAttributes(ArrayList<Attribute> attributes);
+    }
+
+    public static class Counter extends Metric {
+	private AtomicLong count = new AtomicLong();
+
+	private Counter(String name, String help) {
+	    super(name, help);
+	}
+
+	public void increment() {
+	    count.incrementAndGet();
+	}
+
+	public void add(long n) {
+	    count.addAndGet(n);
+	}
+
+	public long get() {
+	    return count.get();
+	}
+
+	protected String getType() {
+	    return "counter";
+	}
+
+	protected void appendText(StringBuffer sb) {
+	    sb.append(name).append(" ").append(count.get()).append("\n");
+	}
+
+	protected void addAttributes(ArrayList<Attribute> attributes) {
+	    attributes.add(new Attribute(name, Long.valueOf(count.get())));
+	}
+    }
+
+    public interface Gauge {
+	public long getValue();
+    }
+
+    private static class GaugeMetric extends Metric {
+	private Gauge gauge;
+
+	public GaugeMetric(String name, String help, Gauge gauge) {
+	    super(name, help);
+
+	    this.gauge = gauge;
+	}
+
+	protected String getType() {
+	    return "gauge";
+	}
+
+	protected void appendText(StringBuffer sb) {
+	    sb.append(name).append(" ").append(gauge.getValue()).append("\n");
+	}
+
+	protected void addAttributes(ArrayList<Attribute> attributes) {
+	    attributes.add(new Attribute(name, Long.valueOf(gauge.getValue())));
+	}
+    }
+
+    /*
+     * Fixed bucket histogram.  A value is counted in the first bucket
+     * whose upper bound is greater than or equal to it.  The last
+     * bucket counts everything larger than the last bound.
+     */
+    public static class Histogram extends Metric {
+	private long[] buckets;
+	private AtomicLongArray counts;
+	private AtomicLong sum = new AtomicLong();
+	private AtomicLong max = new AtomicLong();
+
+	private Histogram(String name, String help, long[] buckets) {
+	    super(name, help);
+
+	    this.buckets = buckets;
+
+	    counts = new AtomicLongArray(buckets.length + 1);
+	}
+
+	public void record(long value) {
+	    int i = 0;
+
+	    while (i < buckets.length && value > buckets[i]) {
+		i++;
+	    }
+
+	    counts.incrementAndGet(i);
+	    sum.addAndGet(value);
+
+	    long m;
+
+	    while (value > (m = max.get())) {
+		if (max.compareAndSet(m, value)) {
+		    break;
+		}
+	    }
+	}
+
+	public void recordNanos(long nanos) {
+	    record(nanos / 1000);
+	}
+
+	public long getCount() {
+	    long count = 0;
+
+	    for (int i = 0; i < counts.length(); i++) {
+		count += counts.get(i);
+	    }
+
+	    return count;
+	}
+
+	public double getMean() {
+	    long count = getCount();
+
+	    if (count == 0) {
+		return 0;
+	    }
+
+	    return (double) sum.get() / count;
+	}
+
+	/*
+	 * Upper bound of the bucket containing the percentile.
+	 * The maximum is returned for values beyond the last bucket.
+	 */
+	public long getPercentile(double percentile) {
+	    long count = getCount();
+
+	    if (count == 0) {
+		return 0;
+	    }
+
+	    long target = (long) Math.ceil(count * percentile / 100.);
+	    long n = 0;
+
+	    for (int i = 0; i < buckets.length; i++) {
+		n += counts.get(i);
+
+		if (n >= target) {
+		    return buckets[i];
+		}
+	    }
+
+	    return max.get();
+	}
+
+	protected String getType() {
+	    return "histogram";
+	}
+
+	protected void appendText(StringBuffer sb) {
+	    long n = 0;
+
+	    for (int i = 0; i < buckets.length; i++) {
+		n += counts.get(i);
+
+		sb.append(name).append("_bucket{le=\"").append(buckets[i])
+		    .append("\"} ").append(n).append("\n");
+	    }
+
+	    n += counts.get(buckets.length);
+
+	    sb.append(name).append("_bucket{le=\"+Inf\"} ").append(n)
+		.append("\n");
+	    sb.append(name).append("_sum ").append(sum.get()).append("\n");
+	    sb.append(name).append("_count ").append(n).append("\n");
+	}
+
+	protected void addAttributes(ArrayList<Attribute> attributes) {
+	    attributes.add(new Attribute(name + "_count",
+		Long.valueOf(getCount())));
+	    attributes.add(new Attribute(name + "_mean",
+		Double.valueOf(getMean())));
+	    attributes.add(new Attribute(name + "_p50",
+		Long.valueOf(getPercentile(50))));
+	    attributes.add(new Attribute(name + "_p99",
+		Long.valueOf(getPercentile(99))));
+	    attributes.add(new Attribute(name + "_max",
+		Long.valueOf(max.get())));
+	}
+    }
+
+    /*
+     * Exposes every metric as a read only attribute.
+     * The attributes are computed each time they are read so new
+     * metrics show up without registering the MBean again.
+     */
+    private static class MetricsMBean implements DynamicMBean {
+
+	private ArrayList<Attribute> getAllAttributes() {
+	    ArrayList<Attribute> attributes = new ArrayList<Attribute>();
+
+	    for (Metric metric : metrics) {
+		metric.addAttributes(attributes);
+	    }
+
+	    return attributes;
+	}
+
+	public Object getAttribute(String name)
+		throws AttributeNotFoundException {
+
+	    for (Attribute attribute : getAllAttributes()) {
+		if (attribute.getName().equals(name)) {
+		    return attribute.getValue();
+		}
+	    }
+
+	    throw new AttributeNotFoundException(name);
+	}
+
+	public AttributeList getAttributes(String[] names) {
+	    AttributeList list = new AttributeList();
+
+	    ArrayList<Attribute> attributes = getAllAttributes();
+
+	    for (int i = 0; i < names.length; i++) {
+		for (Attribute attribute : attributes) {
+		    if (attribute.getName().equals(names[i])) {
+			list.add(attribute);
+			break;
+		    }
+		}
+	    }
+
+	    return list;
+	}
+
+	public MBeanInfo getMBeanInfo() {
+	    ArrayList<Attribute> attributes = getAllAttributes();
+
+	    MBeanAttributeInfo[] info = new MBeanAttributeInfo[attributes.size()];
+
+	    for (int i = 0; i < info.length; i++) {
+		Attribute attribute = attributes.get(i);
+
+		info[i] = new MBeanAttributeInfo(attribute.getName(),
+		    attribute.getValue().getClass().getName(),
+		    attribute.getName(), true, false, false);
+	    }
+
+	    return new MBeanInfo(MetricsRegistry.class.getName(),
+		"Voice bridge metrics", info, null, null, null);
+	}
+
+	public void setAttribute(Attribute attribute) {
+	    throw new UnsupportedOperationException("Metrics are read only");
+	}
+
+	public AttributeList setAttributes(AttributeList attributes) {
+	    return new AttributeList();
+	}
+
+	public Object invoke(String actionName, Object[] params,
+		String[] signature) {
+
+	    throw new UnsupportedOperationException(actionName);
+	}
+
+    }
+
+}
@@ -0,0 +1,176 @@
+/*
+ * Copyright 2007 Sun Microsystems, Inc.
+ *
+ * This file is part of jVoiceBridge.
+ *
+ * jVoiceBridge is free software: you can redistribute it and/or modify 
+ * it under the terms of the GNU General Public License version 2 as 
+ * published by the Free Software Foundation and distributed hereunder 
+ * to you.
+ *
+ * jVoiceBridge is distributed in the hope that it will be useful, 
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Sun designates this particular file as subject to the "Classpath"
+ * exception as provided by Sun in the License file that accompanied this 
+ * code. 
+ */
+
+package com.sun.voip;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+
+/**
+ * Serves the MetricsRegistry as plain text on the loopback interface.
+ *
+ *	curl http://localhost:<port>/metrics
+ *
+ * The port is com.sun.voip.METRICS_PORT.  There's no server if it isn't set.
+ *
+ * Requests are rare so they're handled one at a time by this thread.
+ */
+public class MetricsServer implements Runnable {
+
+    private static final String METRICS_PORT_PROPERTY =
+	"com.sun.voip.METRICS_PORT";
+
+    private static final int READ_TIMEOUT = 5000;	// ms
+
+    private static MetricsServer metricsServer;
+
+    private ServerSocket serverSocket;
+
+    private MetricsServer(int port) throws IOException {
+	serverSocket = new ServerSocket();
+
+	serverSocket.bind(new InetSocketAddress(
+	    InetAddress.getByName("127.0.0.1"), port));
+
+	Logger.println("Metrics available at http://127.0.0.1:"
+	    + serverSocket.getLocalPort() + "/metrics");
+
+	Thread thread = new Thread(this, "MetricsServer");
+
+	thread.setDaemon(true);
+	thread.start();
+    }
+
+    /*
+     * Start the server if the port property is set.
+     */
+    public static synchronized void start() {
+	if (metricsServer != null) {
+	    return;
+	}
+
+	String s = System.getProperty(METRICS_PORT_PROPERTY);
+
+	if (s == null || s.length() == 0) {
+	    return;
+	}
+
+	try {
+	    metricsServer = new MetricsServer(Integer.parseInt(s));
+	} catch (NumberFormatException e) {
+	    Logger.println("Invalid metrics port " + s);
+	} catch (IOException e) {
+	    Logger.println("Unable to start metrics server on port " + s
+		+ ":  " + e.getMessage());
+	}
+    }
+
+    public void run() {
+	while (true) {
+	    Socket socket;
+
+	    try {
+		socket = serverSocket.accept();
+	    } catch (IOException e) {
+		Logger.println("Metrics server can't accept connections:  "
+		    + e.getMessage());
+		return;
+	    }
+
+	    try {
+		handle(socket);
+	    } catch (IOException e) {
+		if (Logger.logLevel >= Logger.LOG_INFO) {
+		    Logger.println("Metrics request failed:  "
+			+ e.getMessage());
+		}
+	    } finally {
+		try {
+		    socket.close();
+		} catch (IOException e) {
+		}
+	    }
+	}
+    }
+
+    private void handle(Socket socket) throws IOException {
+	socket.setSoTimeout(READ_TIMEOUT);
+
+	BufferedReader reader = new BufferedReader(
+	    new InputStreamReader(socket.getInputStream(), "ISO-8859-1"));
+
+	String requestLine = reader.readLine();
+
+	if (requestLine == null) {
+	    return;
+	}
+
+	/*
+	 * Skip the headers
+	 */
+	String line;
+
+	while ((line = reader.readLine()) != null && line.length() > 0) {
+	}
+
+	String[] tokens = requestLine.split(" ");
+
+	String status;
+	String contentType = "text/plain; charset=utf-8";
+	byte[] response;
+
+	if (tokens.length < 2 || tokens[0].equals("GET") == false) {
+	    status = "405 Method Not Allowed";
+	    response = new byte[0];
+	} else if (tokens[1].equals("/metrics") == false
+		&& tokens[1].startsWith("/metrics?") == false) {
+
+	    status = "404 Not Found";
+	    response = new byte[0];
+	} else {
+	    status = "200 OK";
+	    contentType = "text/plain; version=0.0.4; charset=utf-8";
+	    response = MetricsRegistry.toText().getBytes("UTF-8");
+	}
+
+	String header = "HTTP/1.0 " + status + "\r\n"
+	    + "Content-Type: " + contentType + "\r\n"
+	    + "Content-Length: " + response.length + "\r\n"
+	    + "Connection: close\r\n"
+	    + "\r\n";
+
+	OutputStream out = socket.getOutputStream();
+
+	out.write(header.getBytes("ISO-8859-1"));
+	out.write(response);
+	out.flush();
+    }
+
+}
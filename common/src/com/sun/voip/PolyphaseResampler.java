@@ -0,0 +1,544 @@
+/*
+ * Copyright 2007 Sun Microsystems, Inc.
+ *
+ * This file is part of jVoiceBridge.
+ *
+ * jVoiceBridge is free software: you can redistribute it and/or modify 
+ * it under the terms of the GNU General Public License version 2 as 
+ * published by the Free Software Foundation and distributed hereunder 
+ * to you.
+ *
+ * jVoiceBridge is distributed in the hope that it will be useful, 
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Sun designates this particular file as subject to the "Classpath"
+ * exception as provided by Sun in the License file that accompanied this 
+ * code. 
+ */
+
+package com.sun.voip;
+
+import java.io.IOException;
+
+import java.util.HashMap;
+
+/**
+ * Polyphase FIR sample rate converter.
+ *
+ * The rate change is reduced to an interpolation factor L and a
+ * decimation factor M.  A windowed sinc low pass filter is designed
+ * once at L times the input rate and split into L phases.  Each output
+ * sample is a dot product of one phase with the most recent input
+ * frames, so the zero samples of the upsampled signal and the samples
+ * discarded by the decimator are never computed.
+ *
+ * Filter banks depend only on L and M and are shared by every
+ * resampler with the same rate pair.  Each resampler keeps its own
+ * input history so packets can be converted one at a time without
+ * clicks at the boundaries.  Channels are mixed down or duplicated
+ * while the input is copied into the history and the output is
+ * written, so there is no separate pass for rechanneling.
+ */
+public class PolyphaseResampler extends Resampler {
+    private static final String POLYPHASE_RESAMPLER_PROPERTY =
+	"com.sun.voip.POLYPHASE_RESAMPLER";
+
+    private static boolean usePolyphaseResampler = true;
+
+    static {
+	String s = System.getProperty(POLYPHASE_RESAMPLER_PROPERTY);
+
+	if (s != null && s.equalsIgnoreCase("false")) {
+	    usePolyphaseResampler = false;
+	}
+    }
+
+    /*
+     * Zero crossings of the sinc on each side of the center
+     * at the lower of the two sample rates.
+     */
+    private static final int ZERO_CROSSINGS = 16;
+
+    /*
+     * Cutoff as a fraction of the Nyquist frequency of the lower rate.
+     */
+    private static final double CUTOFF = .9;
+
+    private static final double KAISER_BETA = 7.;
+
+    private static final int COEFFICIENT_SHIFT = 15;
+
+    private static HashMap<String, FilterBank> filterBanks =
+	new HashMap<String, FilterBank>();
+
+    private FilterBank filterBank;
+
+    private int filterChannels;
+
+    /*
+     * Per channel input history followed by the input frames
+     * of the current packet.
+     */
+    private int[][] work;
+
+    private int history;
+
+    /*
+     * Position of the next output sample, as an input frame index
+     * relative to the start of the next packet plus a phase in
+     * units of 1 / L input frames.
+     */
+    private int nextFrame;
+    private int phase;
+
+    private long totalTime;
+    private int resampleCount;
+
+    public PolyphaseResampler(String id, int inSampleRate, int inChannels,
+	    int outSampleRate, int outChannels) throws IOException {
+
+	super(id, inSampleRate, inChannels, outSampleRate, outChannels);
+
+	filterBank = getFilterBank(inSampleRate, outSampleRate);
+
+	filterChannels = Math.min(inChannels, outChannels);
+
+	history = filterBank.taps - 1;
+
+	work = new int[filterChannels][history];
+
+	if (Logger.logLevel >= Logger.LOG_MOREINFO) {
+	    Logger.println("New PolyphaseResampler:  from "
+	        + inSampleRate + "/" + inChannels + " to "
+	        + outSampleRate + "/" + outChannels + ", " + filterBank);
+	}
+    }
+
+    public static void setUsePolyphaseResampler(
+	    boolean usePolyphaseResampler) {
+
+	PolyphaseResampler.usePolyphaseResampler = usePolyphaseResampler;
+    }
+
+    public static boolean usePolyphaseResampler() {
+	return usePolyphaseResampler;
+    }
+
+    private static synchronized FilterBank getFilterBank(int inSampleRate,
+	    int outSampleRate) {
+
+	int gcd = gcd(inSampleRate, outSampleRate);
+
+	int upFactor = outSampleRate / gcd;
+	int downFactor = inSampleRate / gcd;
+
+	String key = upFactor + ":" + downFactor;
+
+	FilterBank filterBank = filterBanks.get(key);
+
+	if (filterBank == null) {
+	    filterBank = new FilterBank(upFactor, downFactor);
+	    filterBanks.put(key, filterBank);
+
+	    if (Logger.logLevel >= Logger.LOG_INFO) {
+		Logger.println("New polyphase filter bank " + filterBank);
+	    }
+	}
+
+	return filterBank;
+    }
+
+    public static synchronized int getFilterBankCount() {
+	return filterBanks.size();
+    }
+
+    private static int gcd(int a, int b) {
+	while (b != 0) {
+	    int t = a % b;
+	    a = b;
+	    b = t;
+	}
+
+	return a;
+    }
+
+    public void reset() {
+	for (int c = 0; c < filterChannels; c++) {
+	    int[] w = work[c];
+
+	    for (int i = 0; i < history; i++) {
+		w[i] = 0;
+	    }
+	}
+
+	nextFrame = 0;
+	phase = 0;
+    }
+
+    /**
+     * Number of output samples the next call to resample will produce
+     * for <code>inLength</code> input samples.  This depends on the
+     * current phase when the rates are not integer multiples.
+     */
+    public int getOutputLength(int inLength) {
+	if (inSampleRate == outSampleRate && inChannels == outChannels) {
+	    return inLength;
+	}
+
+	return getOutputFrames(inLength / inChannels) * outChannels;
+    }
+
+    private int getOutputFrames(int inFrames) {
+	long remaining = (long) (inFrames - nextFrame) * filterBank.upFactor
+	    - phase;
+
+	if (remaining <= 0) {
+	    return 0;
+	}
+
+	return (int) ((remaining + filterBank.downFactor - 1)
+	    / filterBank.downFactor);
+    }
+
+    public int[] resample(int[] inSamples) throws IOException {
+	if (inSampleRate == outSampleRate && inChannels == outChannels) {
+	    return inSamples;
+	}
+
+	int[] outSamples = new int[getOutputLength(inSamples.length)];
+
+	resample(inSamples, 0, inSamples.length, outSamples, 0);
+	return outSamples;
+    }
+
+    public short[] resample(short[] inSamples) throws IOException {
+	if (inSampleRate == outSampleRate && inChannels == outChannels) {
+	    return inSamples;
+	}
+
+	short[] outSamples = new short[getOutputLength(inSamples.length)];
+
+	resample(inSamples, 0, inSamples.length, outSamples, 0);
+	return outSamples;
+    }
+
+    /**
+     * Resample <code>inLength</code> samples into the caller's buffer.
+     *
+     * @return the number of samples written to <code>outSamples</code>
+     */
+    public int resample(int[] inSamples, int inOffset, int inLength,
+	    int[] outSamples, int outOffset) throws IOException {
+
+	int inFrames = checkLengths(inLength, outSamples.length - outOffset);
+
+	resampleCount++;
+
+	long start = System.nanoTime();
+
+	/*
+	 * Copy the input after the history, mixing down to mono if needed.
+	 */
+	ensureCapacity(inFrames);
+
+	if (inChannels > filterChannels) {
+	    int[] w = work[0];
+
+	    for (int f = 0, ix = inOffset; f < inFrames; f++, ix += 2) {
+		w[history + f] = (inSamples[ix] + inSamples[ix + 1]) >> 1;
+	    }
+	} else {
+	    for (int c = 0; c < filterChannels; c++) {
+		int[] w = work[c];
+
+		for (int f = 0, ix = inOffset + c; f < inFrames;
+			f++, ix += inChannels) {
+
+		    w[history + f] = inSamples[ix];
+		}
+	    }
+	}
+
+	int outIx = outOffset;
+
+	while (nextFrame < inFrames) {
+	    for (int c = 0; c < filterChannels; c++) {
+		outSamples[outIx++] = filter(work[c]);
+	    }
+
+	    if (outChannels > filterChannels) {
+		outSamples[outIx] = outSamples[outIx - 1];
+		outIx++;
+	    }
+
+	    advance();
+	}
+
+	endPacket(inFrames);
+
+	totalTime += (System.nanoTime() - start);
+
+	return outIx - outOffset;
+    }
+
+    /**
+     * Resample <code>inLength</code> samples into the caller's buffer,
+     * clipping the output to 16 bits.
+     *
+     * @return the number of samples written to <code>outSamples</code>
+     */
+    public int resample(short[] inSamples, int inOffset, int inLength,
+	    short[] outSamples, int outOffset) throws IOException {
+
+	int inFrames = checkLengths(inLength, outSamples.length - outOffset);
+
+	resampleCount++;
+
+	long start = System.nanoTime();
+
+	ensureCapacity(inFrames);
+
+	if (inChannels > filterChannels) {
+	    int[] w = work[0];
+
+	    for (int f = 0, ix = inOffset; f < inFrames; f++, ix += 2) {
+		w[history + f] = (inSamples[ix] + inSamples[ix + 1]) >> 1;
+	    }
+	} else {
+	    for (int c = 0; c < filterChannels; c++) {
+		int[] w = work[c];
+
+		for (int f = 0, ix = inOffset + c; f < inFrames;
+			f++, ix += inChannels) {
+
+		    w[history + f] = inSamples[ix];
+		}
+	    }
+	}
+
+	int outIx = outOffset;
+
+	while (nextFrame < inFrames) {
+	    for (int c = 0; c < filterChannels; c++) {
+		int s = filter(work[c]);
+
+		if (s > 32767) {
+		    s = 32767;
+		} else if (s < -32768) {
+		    s = -32768;
+		}
+
+		outSamples[outIx++] = (short) s;
+	    }
+
+	    if (outChannels > filterChannels) {
+		outSamples[outIx] = outSamples[outIx - 1];
+		outIx++;
+	    }
+
+	    advance();
+	}
+
+	endPacket(inFrames);
+
+	totalTime += (System.nanoTime() - start);
+
+	return outIx - outOffset;
+    }
+
+    private int checkLengths(int inLength, int outSpace) throws IOException {
+	if ((inLength % inChannels) != 0) {
+	    Logger.println("length " + inLength
+		+ " is not a multiple of the frame size " + inChannels);
+
+	    throw new IOException("length " + inLength
+		+ " is not a multiple of the frame size " + inChannels);
+	}
+
+	int inFrames = inLength / inChannels;
+
+	int outLength = getOutputFrames(inFrames) * outChannels;
+
+	if (outLength > outSpace) {
+	    throw new IOException("PolyphaseResampler:  output buffer has room "
+		+ "for " + outSpace + " samples, " + outLength + " needed");
+	}
+
+	return inFrames;
+    }
+
+    private void ensureCapacity(int inFrames) {
+	if (work[0].length >= history + inFrames) {
+	    return;
+	}
+
+	for (int c = 0; c < filterChannels; c++) {
+	    int[] w = new int[history + inFrames];
+
+	    System.arraycopy(work[c], 0, w, 0, history);
+	    work[c] = w;
+	}
+    }
+
+    private int filter(int[] w) {
+	int[] coefficients = filterBank.coefficients;
+
+	int taps = filterBank.taps;
+
+	int cIx = phase * taps;
+	int wIx = history + nextFrame;
+
+	long sum = 0;
+
+	for (int k = 0; k < taps; k++) {
+	    sum += (long) coefficients[cIx + k] * w[wIx - k];
+	}
+
+	return (int) ((sum + (1 << (COEFFICIENT_SHIFT - 1)))
+	    >> COEFFICIENT_SHIFT);
+    }
+
+    private void advance() {
+	phase += filterBank.downFactor;
+
+	if (phase >= filterBank.upFactor) {
+	    nextFrame += phase / filterBank.upFactor;
+	    phase %= filterBank.upFactor;
+	}
+    }
+
+    /*
+     * Keep the last frames of this packet as history for the next one.
+     */
+    private void endPacket(int inFrames) {
+	for (int c = 0; c < filterChannels; c++) {
+	    System.arraycopy(work[c], inFrames, work[c], 0, history);
+	}
+
+	nextFrame -= inFrames;
+    }
+
+    public void printStatistics() {
+	if (resampleCount == 0) {
+	    return;
+	}
+
+	double avg = (double) totalTime / resampleCount / 1000000.;
+
+	String s = "";
+
+	if (id != null) {
+	    s += "Call " + id + ":  ";
+	}
+
+	Logger.writeFile(s
+	    + avg + "ms avg polyphase resample time from "
+	    + inSampleRate + "/" + inChannels + " to " + outSampleRate + "/"
+	    + outChannels + ", " + filterBank + ", "
+	    + getFilterBankCount() + " shared filter banks");
+    }
+
+    /*
+     * Coefficients for all L phases of the prototype filter,
+     * in Q15, stored phase by phase.
+     */
+    private static class FilterBank {
+	public int upFactor;
+	public int downFactor;
+	public int taps;
+	public int[] coefficients;
+
+	public FilterBank(int upFactor, int downFactor) {
+	    this.upFactor = upFactor;
+	    this.downFactor = downFactor;
+
+	    if (upFactor == 1 && downFactor == 1) {
+		/*
+		 * Same rate, only the channels are changing.
+		 */
+		taps = 1;
+		coefficients = new int[] { 1 << COEFFICIENT_SHIFT };
+		return;
+	    }
+
+	    int factor = Math.max(upFactor, downFactor);
+
+	    taps = (2 * ZERO_CROSSINGS * factor + upFactor - 1) / upFactor;
+
+	    int length = taps * upFactor;
+
+	    /*
+	     * Cutoff in cycles per sample at the upsampled rate.
+	     */
+	    double fc = CUTOFF * .5 / factor;
+
+	    double center = (length - 1) / 2.;
+
+	    double[] prototype = new double[length];
+
+	    double i0Beta = besselI0(KAISER_BETA);
+
+	    for (int i = 0; i < length; i++) {
+		double t = i - center;
+
+		double x = 2 * fc * t;
+
+		double sinc = x == 0 ? 1 : Math.sin(Math.PI * x) / (Math.PI * x);
+
+		double r = 2 * t / (length - 1);
+
+		double window =
+		    besselI0(KAISER_BETA * Math.sqrt(Math.max(0, 1 - r * r)))
+		    / i0Beta;
+
+		prototype[i] = sinc * window;
+	    }
+
+	    coefficients = new int[length];
+
+	    /*
+	     * Each phase is normalized to unity gain at DC so there
+	     * is no ripple at the output sample rate.
+	     */
+	    for (int p = 0; p < upFactor; p++) {
+		double sum = 0;
+
+		for (int k = 0; k < taps; k++) {
+		    sum += prototype[p + k * upFactor];
+		}
+
+		for (int k = 0; k < taps; k++) {
+		    coefficients[p * taps + k] = (int) Math.round(
+			prototype[p + k * upFactor] / sum
+			* (1 << COEFFICIENT_SHIFT));
+		}
+	    }
+	}
+
+	private static double besselI0(double x) {
+	    double sum = 1;
+	    double term = 1;
+
+	    for (int k = 1; k < 50; k++) {
+		term *= (x / (2 * k)) * (x / (2 * k));
+		sum += term;
+
+		if (term < sum * 1e-12) {
+		    break;
+		}
+	    }
+
+	    return sum;
+	}
+
+	public String toString() {
+	    return "L " + upFactor + " M " + downFactor + " taps/phase " + taps;
+	}
+    }
+
+}
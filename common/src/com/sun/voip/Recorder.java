@@ -23,27 +23,28 @@
 
 package com.sun.voip;
 
-import java.io.BufferedOutputStream;
-import java.io.DataOutputStream;
-import java.io.FileOutputStream;
 import java.io.File;
-import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.io.RandomAccessFile;
 
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
 import java.text.ParseException;
 
-import java.util.LinkedList;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 /**
  * Write audio data to a file
+ *
+ * Data is copied into a preallocated ring of blocks and written
+ * a block at a time by the RecordingService.  Each full block is
+ * written at a file offset which is a multiple of the block size.
  */
-public class Recorder extends Thread {
+public class Recorder {
     
-    private BufferedOutputStream bo;
-    private FileOutputStream fo;
-    
-    private static final int BUFFER_SIZE = 16 * 1024;
+    private static final int BLOCK_SIZE = 16 * 1024;
+    private static final int RING_BLOCKS = 8;
 
     private static String defaultRecordDirectory = ".";
 
@@ -53,6 +54,38 @@ public class Recorder extends Thread {
     private static String fileSeparator = System.getProperty("file.separator");
 
     private boolean done;
+    private boolean closed;
+    private boolean fileClosed;
+
+    private RandomAccessFile raf;
+    private FileChannel fileChannel;
+
+    /*
+     * Ring of blocks.  The block at fillIndex is being filled.
+     * The queuedBlocks blocks starting at writeIndex are full and 
+     * waiting to be written.
+     */
+    private byte[][] blocks = new byte[RING_BLOCKS][BLOCK_SIZE];
+    private int fillIndex;
+    private int fillLength;
+    private int writeIndex;
+    private int queuedBlocks;
+
+    private long filePosition;
+    private int dataSize;
+
+    private RecordingService.Writer writer;
+    private AtomicBoolean scheduled = new AtomicBoolean();
+
+    /*
+     * Reused to convert samples and to build RTP record headers
+     */
+    private byte[] byteData = new byte[0];
+    private byte[] rtpHeader = new byte[4];
+
+    /* Statistics */
+    private long bytesDropped;
+    private int overruns;
     
     public Recorder(String recordPath, String recordingType,
 	    MediaInfo mediaInfo) throws IOException {
@@ -73,7 +106,7 @@ public class Recorder extends Thread {
 
 	openFile(mediaInfo);
 
-        start();
+	writer = RecordingService.getWriter();
     }
 
     public static String getAbsolutePath(String recordDirectory, String recordPath) 
@@ -125,30 +158,34 @@ public class Recorder extends Thread {
 
                 recordFile.createNewFile();
 
-                fo = new FileOutputStream(recordFile);
-                bo = new BufferedOutputStream(fo, BUFFER_SIZE);
+                raf = new RandomAccessFile(recordFile, "rw");
+                fileChannel = raf.getChannel();
 
+		/*
+		 * The header is at the start of the first block
+		 * so the blocks line up with the file.
+		 */
                 if (recordRtp == false) {
                     writeAuHeader(mediaInfo);
                 } else {
                     /*  
                      * Write RTP header
                      */ 
-                    byte[] buf = new byte[16];
+                    byte[] buf = blocks[0];
                     buf[0] = (byte) 0x52;  // R
                     buf[1] = (byte) 0x54;  // T
                     buf[2] = (byte) 0x50;  // P
 
-                    bo.write(buf, 0, buf.length);
+                    fillLength = 16;
                 }
 	    }
         } catch (IOException e) {
-            fo = null;
-            bo = null;
-            Logger.error("can't create buffered output stream for " + recordPath
+            raf = null;
+            fileChannel = null;
+            Logger.error("can't create file channel for " + recordPath
 		+ " " + e.getMessage());
             throw new IOException(
-		"can't create buffered output stream for " + recordPath
+		"can't create file channel for " + recordPath
 		    + " " + e.getMessage());
         }
 
@@ -263,51 +300,33 @@ public class Recorder extends Thread {
         auHeader[22] = (byte)((channels >> 8) & 0xff);
         auHeader[23] = (byte)(channels & 0xff);
         
-        bo.write(auHeader, 0, auHeader.length);
-    }
-    
-    public void done() {
-        if (done) {
-            return;
-        }
-        
-        done = true;
-        
-        synchronized(dataToWrite) {
-            dataToWrite.notifyAll();
-        }
+        System.arraycopy(auHeader, 0, blocks[0], 0, auHeader.length);
+	fillLength = auHeader.length;
     }
     
     /*
-     * Write data to a file
+     * Stop recording.  The writer writes the remaining data,
+     * fixes up the header and closes the file.
      */
-    private LinkedList dataToWrite = new LinkedList();
-    
-    class DataToWrite {
-        public byte[] data;
-	public int offset;
-        public int length;
+    public void done() {
+	synchronized (this) {
+            if (done) {
+                return;
+            }
         
-        public DataToWrite(byte[] data, int offset, int length) {
-	    /*
-	     * We have to copy the data, otherwise caller could 
-	     * overwrite it.
-	     */
-            this.data = new byte[length];
-	    this.offset = offset;
-            this.length = length;
-
-	    System.arraycopy(data, offset, this.data, 0, length);
-        }
+            done = true;
+	}
+        
+	writer.schedule(this);
     }
     
     private long lastWriteTime;
 
-    public void writePacket(byte[] data, int offset, int dataLength) 
-	    throws IOException {
+    public synchronized void writePacket(byte[] data, int offset, 
+	    int dataLength) throws IOException {
 
 	if (recordRtp) {
-	    byte[] buf = new byte[dataLength + 4];
+	    int length = dataLength + 4;
 
             int timeChange;
 
@@ -321,130 +340,246 @@ public class Recorder extends Thread {
 
 	    lastWriteTime = now;
 
-            buf[0] = (byte) ((buf.length >> 8) & 0xff);
-            buf[1] = (byte) (buf.length & 0xff);
-            buf[2] = (byte) ((timeChange >> 8) & 0xff);
-            buf[3] = (byte) (timeChange & 0xff);
+            rtpHeader[0] = (byte) ((length >> 8) & 0xff);
+            rtpHeader[1] = (byte) (length & 0xff);
+            rtpHeader[2] = (byte) ((timeChange >> 8) & 0xff);
+            rtpHeader[3] = (byte) (timeChange & 0xff);
 
-	    System.arraycopy(data, offset, buf, 4, dataLength);
-	    write(buf, 0, buf.length);
+	    write(rtpHeader, 0, rtpHeader.length, data, offset, dataLength);
 	} else {
 	    write(data, offset, dataLength);
 	}
     }
 
-    public void write(int[] data, int offset, int length) throws IOException {
-	byte[] byteData = new byte[length * 2];
+    public synchronized void write(int[] data, int offset, int length) 
+	    throws IOException {
+
+	if (byteData.length < length * 2) {
+	    byteData = new byte[length * 2];
+	}
 
 	for (int i = 0; i < length; i++) {
 	    byteData[(2 * i)] = (byte) ((data[i + offset] >> 8) & 0xff);
 	    byteData[(2 * i) + 1] = (byte) (data[i + offset] & 0xff);
 	}
 
-        write(byteData, 0, byteData.length);
+        write(byteData, 0, length * 2);
+    }
+
+    public synchronized void write(short[] data, int offset, int length) 
+	    throws IOException {
+
+	if (byteData.length < length * 2) {
+	    byteData = new byte[length * 2];
+	}
+
+	AudioConversion.shortsToBytes(data, offset, length, byteData, 0);
+
+        write(byteData, 0, length * 2);
     }
 
     public void write(byte[] data, int offset, int length) throws IOException {
-        if (done) {
-            return;
-        }
-        
-        synchronized(dataToWrite) {
-            dataToWrite.add(new DataToWrite(data, offset, length));
-            dataToWrite.notifyAll();
-        }
+	write(data, offset, length, null, 0, 0);
     }
-    
-    private int dataSize;
 
-    public void run() {
-	long lastWriteTime = 0;
+    /*
+     * Copy data into the ring.  Both parts are dropped if there 
+     * isn't room for all of it so an RTP record is never split.
+     */
+    private void write(byte[] data, int offset, int length,
+	    byte[] data2, int offset2, int length2) {
+
+	boolean blockQueued;
 
-        while (true) {
-            synchronized(dataToWrite) {
-		if (done) {
-		    break;
-		}
+	synchronized (this) {
+            if (done) {
+                return;
+            }
 
-                if (dataToWrite.size() == 0) {
-                    try {
-                        dataToWrite.wait();
-                    } catch (InterruptedException e) {
-                    }
+	    int space = (BLOCK_SIZE - fillLength) 
+		+ (RING_BLOCKS - 1 - queuedBlocks) * BLOCK_SIZE;
 
-		    if (done) {
-			break;
-		    }
+	    if (length + length2 > space) {
+		if (overruns == 0) {
+		    Logger.println("Recording " + recordPath 
+			+ " can't keep up, dropping data");
 		}
 
-	        while (dataToWrite.size() > 0) {
-	    	    writeData((DataToWrite) dataToWrite.remove(0));
+		bytesDropped += length + length2;
+		overruns++;
+
+		RecordingService.dataDropped(length + length2, queuedBlocks);
+		return;
+	    }
+
+	    int queued = queuedBlocks;
+
+	    copyToRing(data, offset, length);
+
+	    if (data2 != null) {
+		copyToRing(data2, offset2, length2);
+	    }
+
+	    dataSize += length + length2;
+
+	    blockQueued = queuedBlocks > queued;
+	}
+
+	if (blockQueued) {
+	    writer.schedule(this);
+	}
+    }
+
+    private void copyToRing(byte[] data, int offset, int length) {
+	while (length > 0) {
+	    if (fillLength == BLOCK_SIZE) {
+		queuedBlocks++;
+		fillIndex = (fillIndex + 1) % RING_BLOCKS;
+		fillLength = 0;
+
+		RecordingService.blocksQueued(queuedBlocks);
+	    }
+
+	    int n = Math.min(length, BLOCK_SIZE - fillLength);
+
+	    System.arraycopy(data, offset, blocks[fillIndex], fillLength, n);
+
+	    fillLength += n;
+	    offset += n;
+	    length -= n;
+	}
+    }
+
+    boolean setScheduled() {
+	return scheduled.compareAndSet(false, true);
+    }
+
+    void clearScheduled() {
+	scheduled.set(false);
+    }
+
+    /*
+     * Called by the writer thread to write full blocks.
+     * The blocks are written without holding the lock because
+     * the caller doesn't touch blocks which are queued.
+     */
+    void writeQueuedBlocks() {
+	while (true) {
+	    byte[] block;
+
+	    synchronized (this) {
+		if (closed || queuedBlocks == 0) {
+		    break;
 		}
 
-                continue;
+		block = blocks[writeIndex];
+	    }
+
+	    if (writeBlock(block, BLOCK_SIZE) == false) {
+		return;
+	    }
+
+	    synchronized (this) {
+		writeIndex = (writeIndex + 1) % RING_BLOCKS;
+		queuedBlocks--;
 	    }
 	}
 
-	/*
-	 * Flush out remaining data
-	 */
-	synchronized (dataToWrite) {
-	    while (dataToWrite.size() > 0) {
-	        writeData((DataToWrite) dataToWrite.remove(0));
+	synchronized (this) {
+	    if (done == false || closed) {
+		return;
+	    }
+
+	    /*
+	     * Nothing can be added after done so the last block is ours.
+	     */
+	    closed = true;
+	}
+
+	if (fillLength > 0) {
+	    if (writeBlock(blocks[fillIndex], fillLength) == false) {
+		return;		// writeBlock closed the recording
 	    }
 	}
-                
+
 	writeDataSize();
     }
 
-    private void writeData(DataToWrite d) {
-        try {
-	    synchronized(this) {
-                bo.write(d.data, 0, d.length);
-		dataSize += d.length;
-            }
-        } catch (IOException e) {
-            Logger.println("Can't record to " + recordPath);
-	    done();
-        }
+    private boolean writeBlock(byte[] block, int length) {
+	long start = System.nanoTime();
+
+	try {
+	    ByteBuffer byteBuffer = ByteBuffer.wrap(block, 0, length);
+
+	    while (byteBuffer.hasRemaining()) {
+		filePosition += fileChannel.write(byteBuffer, filePosition);
+	    }
+	} catch (IOException e) {
+            Logger.println("Can't record to " + recordPath + " " 
+		+ e.getMessage());
+
+	    synchronized (this) {
+		done = true;
+		closed = true;
+	    }
+
+	    close();
+	    return false;
+	}
+
+	RecordingService.blockWritten(length, System.nanoTime() - start);
+	return true;
     }
         
     private void writeDataSize() {
-        try {
-	    synchronized(this) {
-		if (bo != null) {
-		    bo.flush();
-                    bo.close();
-		    fo.flush();
-                    fo.close();
-		}
+	if (auHeader != null) {
+	    /*
+	     * Now write the data size in the auHeader
+	     */
+	    byte[] size = new byte[4];
+
+	    size[0] = (byte) ((dataSize >> 24) & 0xff);
+	    size[1] = (byte) ((dataSize >> 16) & 0xff);
+	    size[2] = (byte) ((dataSize >> 8) & 0xff);
+	    size[3] = (byte) (dataSize & 0xff);
+
+	    try {
+		fileChannel.write(ByteBuffer.wrap(size), 8);
+	    } catch (IOException e) {
+		Logger.println("Unable to write data size to recording "
+		    + recordPath + " " + e.getMessage());
+	    }
+	}
 
-		if (auHeader != null) {
-		    /*
-		     * Now write the data size in the auHeader
-		     */
-		    auHeader[8]  = (byte) ((dataSize >> 24) & 0xff);
-		    auHeader[9]  = (byte) ((dataSize >> 16) & 0xff);
-		    auHeader[10] = (byte) ((dataSize >> 8) & 0xff);
-		    auHeader[11] = (byte) (dataSize & 0xff);
-
-		    try {
-                        RandomAccessFile raf = new RandomAccessFile(
-			    recordPath, "rw");
-
-		        raf.write(auHeader);
-			raf.close();
-		    } catch (FileNotFoundException e) {
-			Logger.println(
-			    "Unable to write data size to recording "
-			    + recordPath + " " + e.getMessage());
-		    }
-		}
+	close();
+
+	if (bytesDropped > 0) {
+	    Logger.println("Recording " + recordPath + " dropped "
+		+ bytesDropped + " bytes in " + overruns + " overruns");
+	}
+    }
+
+    /*
+     * Close the file and tell the RecordingService we're done, once.
+     */
+    private void close() {
+	synchronized (this) {
+	    if (fileClosed) {
+		return;
 	    }
+
+	    fileClosed = true;
+	}
+
+        try {
+	    fileChannel.close();
+	    raf.close();
         } catch (IOException e) {
 	    Logger.println("Exception closing recording " + recordPath
 		+ " " + e.getMessage());
         }
+
+	RecordingService.recordingDone();
     }
     
     public static void setDefaultRecordingDirectory(
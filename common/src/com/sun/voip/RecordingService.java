@@ -0,0 +1,229 @@
+/*
+ * Copyright 2007 Sun Microsystems, Inc.
+ *
+ * This file is part of jVoiceBridge.
+ *
+ * jVoiceBridge is free software: you can redistribute it and/or modify 
+ * it under the terms of the GNU General Public License version 2 as 
+ * published by the Free Software Foundation and distributed hereunder 
+ * to you.
+ *
+ * jVoiceBridge is distributed in the hope that it will be useful, 
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Sun designates this particular file as subject to the "Classpath"
+ * exception as provided by Sun in the License file that accompanied this 
+ * code. 
+ */
+
+package com.sun.voip;
+
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Writes the data of all Recorders with a small pool of writer threads.
+ *
+ * Each Recorder copies its data into a preallocated ring of blocks.
+ * When a block is full, the Recorder is queued to the writer it was
+ * assigned when it was created.  The writer writes the full blocks
+ * to the file and, after the Recorder is done, writes the last partial
+ * block and fixes up the header.
+ *
+ * When a writer can't keep up, the ring fills and a Recorder drops
+ * the data it can't buffer rather than blocking the caller, which is
+ * usually a sender or receiver thread.  The bytes dropped, the number
+ * of times the ring was full, and the deepest writer queue are kept
+ * so this can be seen.  The Recorders update these while holding their
+ * own locks so they're atomic rather than synchronized on this class.
+ */
+public class RecordingService {
+    private static final String RECORDING_WRITERS_PROPERTY =
+	"com.sun.voip.RECORDING_WRITERS";
+
+    private static int recordingWriters = 2;
+
+    static {
+	String s = System.getProperty(RECORDING_WRITERS_PROPERTY);
+
+	if (s != null) {
+	    try {
+		recordingWriters = Integer.parseInt(s);
+	    } catch (NumberFormatException e) {
+		Logger.println("Invalid number of recording writers " + s
+		    + ", using " + recordingWriters);
+	    }
+	}
+
+	if (recordingWriters < 1) {
+	    recordingWriters = 1;
+	}
+    }
+
+    private static Writer[] writers;
+
+    private static int nextWriter;
+
+    /* Statistics */
+    private static AtomicInteger activeRecordings = new AtomicInteger();
+    private static AtomicLong blocksWritten = new AtomicLong();
+    private static AtomicLong bytesWritten = new AtomicLong();
+    private static AtomicLong totalWriteTime = new AtomicLong();
+    private static AtomicLong bytesDropped = new AtomicLong();
+    private static AtomicInteger overruns = new AtomicInteger();
+    private static AtomicInteger maxQueuedBlocks = new AtomicInteger();
+    private static AtomicInteger maxWriterQueue = new AtomicInteger();
+
+    private RecordingService() {
+    }
+
+    public static int getRecordingWriters() {
+	return recordingWriters;
+    }
+
+    /*
+     * Writers are assigned round robin when recordings start.
+     */
+    static synchronized Writer getWriter() {
+	if (writers == null) {
+	    writers = new Writer[recordingWriters];
+
+	    for (int i = 0; i < writers.length; i++) {
+		writers[i] = new Writer(i);
+	    }
+
+	    Logger.println("Started " + writers.length
+		+ " recording writer threads");
+	}
+
+	activeRecordings.incrementAndGet();
+
+	Writer writer = writers[nextWriter];
+
+	nextWriter = (nextWriter + 1) % writers.length;
+	return writer;
+    }
+
+    static void recordingDone() {
+	activeRecordings.decrementAndGet();
+    }
+
+    static void blockWritten(int length, long elapsed) {
+	blocksWritten.incrementAndGet();
+	bytesWritten.addAndGet(length);
+	totalWriteTime.addAndGet(elapsed);
+    }
+
+    static void dataDropped(int length, int queuedBlocks) {
+	bytesDropped.addAndGet(length);
+	overruns.incrementAndGet();
+
+	setMax(maxQueuedBlocks, queuedBlocks);
+    }
+
+    static void blocksQueued(int queuedBlocks) {
+	setMax(maxQueuedBlocks, queuedBlocks);
+    }
+
+    private static void setMax(AtomicInteger max, int value) {
+	int current;
+
+	while (value > (current = max.get())) {
+	    if (max.compareAndSet(current, value)) {
+		return;
+	    }
+	}
+    }
+
+    /*
+     * This doesn't lock so it can be read by the metrics gauges.
+     */
+    public static int getActiveRecordings() {
+	return activeRecordings.get();
+    }
+
+    public static long getBytesDropped() {
+	return bytesDropped.get();
+    }
+
+    public static void printStatistics() {
+	long blocksWritten = RecordingService.blocksWritten.get();
+	long bytesDropped = RecordingService.bytesDropped.get();
+
+	if (blocksWritten == 0 && bytesDropped == 0) {
+	    return;
+	}
+
+	Logger.writeFile("Recordings:  " + getActiveRecordings() + " active, "
+	    + recordingWriters + " writers");
+
+	Logger.writeFile("Recordings:  " + bytesWritten + " bytes written in "
+	    + blocksWritten + " blocks, average write time "
+	    + (blocksWritten == 0 ? 0 :
+	    (totalWriteTime.get() / blocksWritten / 1000.)) + " us");
+
+	Logger.writeFile("Recordings:  " + bytesDropped + " bytes dropped, "
+	    + overruns + " overruns, max blocks queued " + maxQueuedBlocks
+	    + ", max recordings waiting for a writer " + maxWriterQueue);
+    }
+
+    static class Writer extends Thread {
+
+	private LinkedBlockingQueue<Recorder> recorders =
+	    new LinkedBlockingQueue<Recorder>();
+
+	public Writer(int i) {
+	    setName("RecordingWriter-" + i);
+	    setDaemon(true);
+	    start();
+	}
+
+	/*
+	 * Queue a recorder which has full blocks or is done.
+	 */
+	public void schedule(Recorder recorder) {
+	    if (recorder.setScheduled() == false) {
+		return;		// already queued
+	    }
+
+	    recorders.add(recorder);
+
+	    setMax(maxWriterQueue, recorders.size());
+	}
+
+	public void run() {
+	    while (true) {
+		Recorder recorder;
+
+		try {
+		    recorder = recorders.take();
+		} catch (InterruptedException e) {
+		    continue;
+		}
+
+		/*
+		 * Clear the flag first so that a block filled while
+		 * we're writing queues the recorder again.
+		 */
+		recorder.clearScheduled();
+
+		try {
+		    recorder.writeQueuedBlocks();
+		} catch (Exception e) {
+		    e.printStackTrace();
+
+		    Logger.println("Unable to write recording "
+			+ recorder.getRecordPath() + " " + e.getMessage());
+		}
+	    }
+	}
+
+    }
+
+}
@@ -98,21 +98,23 @@ public abstract class Resampler {
 
         length = length & ~1;   // round down
 
-        int[] ints = new int[length / 2];
+        short[] shorts = new short[length / 2];
 
-        AudioConversion.bytesToInts(inSamples, offset, length, ints);
+        AudioConversion.bytesToShorts(inSamples, offset, length, shorts);
 
-        ints = resample(ints);
+        shorts = resample(shorts);
 
-        byte[] bytes = new byte[ints.length * 2];
+        byte[] bytes = new byte[shorts.length * 2];
 
-        AudioConversion.intsToBytes(ints, bytes, offset);
+        AudioConversion.shortsToBytes(shorts, bytes, 0);
 
         return bytes;
     }
 
     protected abstract int[] resample(int[] inSamples) throws IOException;
 
+    protected abstract short[] resample(short[] inSamples) throws IOException;
+
     protected int[] reChannel(int[] inSamples) throws IOException {
 	if ((inSamples.length % inChannels) != 0) {
             Logger.println("length " + inSamples.length
@@ -140,6 +142,45 @@ public abstract class Resampler {
 	return outSamples;
     }
 
+    protected short[] reChannel(short[] inSamples) throws IOException {
+	if ((inSamples.length % inChannels) != 0) {
+            Logger.println("length " + inSamples.length
+                + " is not a multiple of the frame size " + inChannels);
+
+            throw new IOException("length " + inSamples.length
+                + " is not a multiple of the frame size " + inChannels);
+        }
+
+	if (inChannels > outChannels) {
+	    /*
+	     * inChannels is 2 and outChannels is 1
+	     */	
+	    short[] outSamples = new short[inSamples.length / 2];
+
+	    for (int i = 0; i < outSamples.length; i++) {
+		outSamples[i] = inSamples[2 * i];
+	    }
+
+	    return outSamples;
+	} 
+
+	if (inChannels < outChannels) {
+	    /*
+	     * inChannels is 1 and outChannels is 2
+	     */	
+	    short[] outSamples = new short[inSamples.length * 2];
+
+	    for (int i = 0; i < inSamples.length; i++) {
+		outSamples[2 * i] = inSamples[i];
+		outSamples[2 * i + 1] = inSamples[i];
+	    }
+
+	    return outSamples;
+	}
+
+	return inSamples;
+    }
+
     private int[] reduceChannels(int[] inSamples) {
 	/*
 	 * inChannels is 2 and outChannels is 1
@@ -0,0 +1,414 @@
+/*
+ * Copyright 2007 Sun Microsystems, Inc.
+ *
+ * This file is part of jVoiceBridge.
+ *
+ * jVoiceBridge is free software: you can redistribute it and/or modify 
+ * it under the terms of the GNU General Public License version 2 as 
+ * published by the Free Software Foundation and distributed hereunder 
+ * to you.
+ *
+ * jVoiceBridge is distributed in the hope that it will be useful, 
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Sun designates this particular file as subject to the "Classpath"
+ * exception as provided by Sun in the License file that accompanied this 
+ * code. 
+ */
+
+
+package com.sun.voip;
+
+import java.util.NoSuchElementException;
+
+/*
+ * A jitter manager which keeps the jitter buffer in a fixed size ring
+ * of preallocated JitterObjects indexed by RTP sequence number.
+ *
+ * Entry i of the buffer holds sequence firstSequence + i and lives in
+ * slot (firstSequence + i) & mask, so inserting a packet, finding the
+ * place for an out of order packet and removing the first packet don't
+ * walk a list or allocate anything.
+ *
+ * The policy (jitter index, silence insertion and removal, resets when
+ * the buffer is full or too many packets are missing, and plc) is the
+ * same as the LinkedList based JitterManager.
+ *
+ * The JitterObject returned by getFirstPacket() belongs to the ring.
+ * It's only valid until the next capacity packets have been inserted,
+ * which is fine for callers who take the data right away.
+ */
+public class RingJitterManager extends JitterManager {
+
+    private JitterObject[] ring;
+    private int mask;
+
+    private int size;
+
+    private short firstSequence;
+
+    private int resizes;
+
+    public RingJitterManager(String id) {
+	super(id);
+
+	allocateRing();
+
+	if (Logger.logLevel >= Logger.LOG_MOREINFO) {
+	    Logger.println(id + ":  ring jitter buffer capacity " 
+		+ ring.length);
+	}
+    }
+
+    /*
+     * The buffer is cleared before inserting when it has reached
+     * maxJitterBufferSize.  After that up to maxJitterBufferSize - 1
+     * missing packets plus the packet itself can be added, so the ring
+     * never needs more than 2 * maxJitterBufferSize slots.
+     */
+    private void allocateRing() {
+	int capacity = 2;
+
+	while (capacity < 2 * maxJitterBufferSize + 1) {
+	    capacity <<= 1;
+	}
+
+	if (ring != null && ring.length == capacity) {
+	    return;
+	}
+
+	JitterObject[] newRing = new JitterObject[capacity];
+
+	for (int i = 0; i < capacity; i++) {
+	    newRing[i] = new JitterObject(0, false, null);
+	}
+
+	int newMask = capacity - 1;
+
+	if (ring != null) {
+	    /*
+	     * Keep what's buffered as long as it fits.
+	     */
+	    if (size > capacity) {
+		size = 0;
+		plc.reset();
+	    }
+
+	    for (int i = 0; i < size; i++) {
+		JitterObject jo = ring[(firstSequence + i) & mask];
+
+		JitterObject newJo = newRing[(firstSequence + i) & newMask];
+
+		newJo.sequence = jo.sequence;
+		newJo.isMissing = jo.isMissing;
+		newJo.data = jo.data;
+	    }
+
+	    resizes++;
+	}
+
+	ring = newRing;
+	mask = newMask;
+    }
+
+    public void setMaxJitterBufferSize(int maxJitterBufferSize) {
+	super.setMaxJitterBufferSize(maxJitterBufferSize);
+
+	synchronized (this) {
+	    allocateRing();
+	}
+    }
+
+    public int getPacketListSize() {
+	return size;
+    }
+
+    private JitterObject get(int index) {
+	return ring[(firstSequence + index) & mask];
+    }
+
+    /*
+     * Claim the slot at the end of the buffer.
+     */
+    private void append(int sequence, boolean isMissing, Object data) {
+	JitterObject jo = ring[(firstSequence + size) & mask];
+
+	jo.sequence = (short) sequence;
+	jo.isMissing = isMissing;
+	jo.data = data;
+
+	size++;
+    }
+
+    private void clear() {
+	for (int i = 0; i < size; i++) {
+	    get(i).data = null;
+	}
+
+	size = 0;
+    }
+
+    protected int insertPacket(short sequence, Object data) {
+	if (maxJitterBufferSize > 0 &&
+		elapsed > maxJitterBufferSize * RtpPacket.PACKET_PERIOD) {
+
+	    if (size > 0) {
+	        if (Logger.logLevel >= Logger.LOG_DETAILINFO || 
+			Logger.logLevel == -19) {
+
+		    Logger.println(id 
+		        + ":  clearing jitter buffer, no data in a long time, "
+		        + "size " + size);
+	        }
+
+	        clear();
+	    }
+
+	    plc.reset();
+	}
+
+	if (maxJitterBufferSize > 0 && size >= maxJitterBufferSize) {
+	    if (Logger.logLevel >= Logger.LOG_MOREINFO ||
+		    Logger.logLevel == -19) {
+
+	        Logger.println(id + ": JitterBuffer full, clearing "
+		    + size + " packets");
+	    }
+
+	    clear();
+	    plc.reset();
+	}
+
+	int silenceCount = 0;
+
+	if (size == 0) {
+	    silenceCount = insertSilence(sequence);
+	} else if (canRemoveSilence(size)) {
+	    removeSilence();
+	}
+
+	short index = (short) (sequence - firstSequence);
+
+	if (index < 0) {
+	    /*
+	     * We've already delivered packets after this one so we
+	     * have no choice but to toss it.
+	     */
+	    if (Logger.logLevel >= Logger.LOG_MOREINFO ||
+                    Logger.logLevel == -19) {
+
+	        Logger.println(id + ":  tossing old packet "
+		    + (sequence & 0xffff) + " index " 
+		    + index + " firstSequence " + (firstSequence & 0xffff)
+		    + " size " + size + " elapsed " + elapsed);
+	    }
+
+	    oldTossed++;
+	    latePacketsMetric.increment();
+	    return silenceCount;
+	}
+
+	if (index < size) {
+	    /*
+	     * A missing packet arrived or a place holder is filled in.
+	     */
+	    JitterObject jo = get(index);
+
+	    if (jo.isMissing == false && jo.data != null) {
+		Logger.println(id 
+		    + ":  jitterManager overwriting valid packet!  index " 
+		    + index + " sequence " + (sequence & 0xffff) 
+		    + " firstSequence " + (firstSequence & 0xffff));
+	    }
+
+	    if (jo.isMissing && Logger.logLevel >= Logger.LOG_MOREINFO) {
+	        Logger.println(id + ":  got missing packet " 
+		    + (sequence & 0xffff)
+		    + " firstSequence " + (firstSequence & 0xffff)
+		    + " index " + index + " size " + size);
+	    }
+
+	    jo.sequence = sequence;
+	    jo.isMissing = false;
+	    jo.data = data;
+	    return silenceCount;
+	}
+
+	if (index > size) {
+	    handleOutOfOrderPackets(sequence, index);
+	}
+
+	if (Logger.logLevel >= Logger.LOG_MOREDETAIL ||
+	        Logger.logLevel == -20) {
+
+	    Logger.println(id + ":  appending " + (sequence & 0xffff)
+		+ " at " + size);
+	}
+
+	append(sequence, false, data);
+	return silenceCount;
+    }
+
+    private int insertSilence(short sequence) {
+	int jitterIndex = getJitterIndex();
+
+	insertedSilence++;
+
+	firstSequence = (short) (sequence - (short) jitterIndex);
+
+	if (jitterIndex > 0) {
+	    if (Logger.logLevel >= Logger.LOG_MOREINFO ||
+                    Logger.logLevel == -19) {
+
+	        Logger.println(id + ":  empty list, inserting " 
+		    + jitterIndex + " silence packets, sequence "
+		    + (sequence & 0xffff) + " firstSequence " 
+		    + (firstSequence & 0xffff) + ", elapsed " + elapsed);
+	    }
+
+	    for (int i = 0; i < jitterIndex; i++) {
+		append(firstSequence + i, false, null);
+	    }
+	}
+
+	return jitterIndex;
+    }
+
+    private void handleOutOfOrderPackets(short sequence, int index) {
+	/*
+	 * One or more packets is missing.
+	 * Reserve slots with the data of the last packet 
+	 * in case the missing packets arrive later.
+	 */
+	int missingPackets = index - size;
+
+	if (Logger.logLevel >= Logger.LOG_MOREINFO) {
+	    Logger.println(id + ":  expected " 
+	        + ((firstSequence + size) & 0xffff) + " got " 
+		+ (sequence & 0xffff) + ", " 
+		+ missingPackets + " missing packets"
+		+ " first sequence " + (firstSequence & 0xffff)
+		+ " size " + size + " elapsed " + elapsed);
+	}
+
+	outOfOrderPackets += missingPackets;
+
+	if (missingPackets >= maxJitterBufferSize) {
+	    if (Logger.logLevel >= Logger.LOG_MOREINFO ||
+		    Logger.logLevel == -19) {
+
+	        Logger.println(id + ":  resetting jitter buffer.  " 
+		   + " too many missing packets " + missingPackets);
+	    }
+	   
+	    clear();
+	    plc.reset();
+
+	    insertSilence(sequence);
+	    return;
+	}
+
+	Object data = null;
+
+	if (size > 0) {
+	    data = get(size - 1).data;
+	}
+
+	for (int i = 0; i < missingPackets; i++) {
+	    append(firstSequence + size, true, data);
+	}
+    }
+
+    private void removeSilence() {
+	if (size == 0) {
+	    return;
+	}
+
+	JitterObject jo = get(0);
+
+	if (jo.isMissing || jo.data != null) {
+	    return;
+	}
+
+	getFirstPacket();	// remove silence packet
+
+	if (Logger.logLevel == -19) {
+	    Logger.println(id + ":  removed silence packet size " + size);
+	}
+    }
+
+    public JitterObject getFirstPacket() throws NoSuchElementException {
+	JitterObject jo;
+
+	while (true) {
+	    if (size == 0) {
+		throw new NoSuchElementException();
+	    }
+
+	    jo = ring[firstSequence & mask];
+
+	    if (Logger.logLevel >= Logger.LOG_DETAILINFO) {
+	        Logger.println(id + ":  getting " 
+		    + (firstSequence & 0xffff) + " jitterObject:  " + jo);
+	        Logger.println("");
+	    }
+
+	    firstSequence++;
+	    size--;
+
+	    if (jo.isMissing) {
+	        /*
+	         * There are missing packets we didn't get.
+	         * Try to repair the damage.
+	         */
+	        failedToRecover++;
+	        lostPacketsMetric.increment();
+
+		if (Logger.logLevel >= Logger.LOG_INFO) {
+		    Logger.println(id + ":  Failed to recover packet "
+			+ (jo.sequence & 0xffff));
+		}
+
+	        plcMetric.increment();
+	        jo = plc.repair(jo);
+
+		if (jo != null) {
+		    /*
+		     * Update data field in missing packets after this one.
+		     */
+		    for (int i = 0; i < size; i++) {
+			JitterObject jitterObject = get(i);
+
+			if (jitterObject.isMissing == false) {
+			    break;
+			}
+
+			jitterObject.data = jo.data;
+		    }
+		    break;
+		}
+	    } else {
+	        if (jo.data != null) {
+	            plc.addPacket(jo);
+	        }
+		break;
+	    }
+	}
+
+	recordPlayoutDepth(size);
+	return jo;
+    }
+
+    public void printStatistics() {
+	super.printStatistics();
+
+	Logger.writeFile(id + ":  " + ring.length 
+	    + " ring jitter buffer capacity, " + resizes + " resizes");
+    }
+
+}
@@ -34,7 +34,10 @@ public class SampleRateConverter {
     public SampleRateConverter(String id, int inSampleRate, int inChannels,
 	    int outSampleRate, int outChannels) throws IOException {
 
-	if (inSampleRate < outSampleRate) {
+	if (PolyphaseResampler.usePolyphaseResampler()) {
+	    resampler = new PolyphaseResampler(id, inSampleRate, inChannels,
+		outSampleRate, outChannels);
+	} else if (inSampleRate < outSampleRate) {
 	    resampler = new Upsampler(id, inSampleRate, inChannels,
 		outSampleRate, outChannels);
 	} else {
@@ -63,6 +66,43 @@ public class SampleRateConverter {
 	return resampler.resample(inSamples);
     }
 
+    public short[] resample(short[] inSamples) throws IOException {
+	return resampler.resample(inSamples);
+    }
+
+    /*
+     * Resample into outSamples if it is exactly the size of the result.
+     * Otherwise a new buffer is returned which the caller can keep
+     * for the next packet.
+     */
+    public int[] resample(int[] inSamples, int[] outSamples) 
+	    throws IOException {
+
+	if (!(resampler instanceof PolyphaseResampler)) {
+	    return resampler.resample(inSamples);
+	}
+
+	PolyphaseResampler polyphaseResampler = 
+	    (PolyphaseResampler) resampler;
+
+	if (resampler.inSampleRate == resampler.outSampleRate
+		&& resampler.inChannels == resampler.outChannels) {
+
+	    return inSamples;
+	}
+
+	int outLength = polyphaseResampler.getOutputLength(inSamples.length);
+
+	if (outSamples == null || outSamples.length != outLength) {
+	    outSamples = new int[outLength];
+	}
+
+	polyphaseResampler.resample(inSamples, 0, inSamples.length, 
+	    outSamples, 0);
+
+	return outSamples;
+    }
+
     public void printStatistics() {
 	resampler.printStatistics();
     }
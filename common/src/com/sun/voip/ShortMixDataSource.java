@@ -0,0 +1,46 @@
+/*
+ * Copyright 2007 Sun Microsystems, Inc.
+ *
+ * This file is part of jVoiceBridge.
+ *
+ * jVoiceBridge is free software: you can redistribute it and/or modify 
+ * it under the terms of the GNU General Public License version 2 as 
+ * published by the Free Software Foundation and distributed hereunder 
+ * to you.
+ *
+ * jVoiceBridge is distributed in the hope that it will be useful, 
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Sun designates this particular file as subject to the "Classpath"
+ * exception as provided by Sun in the License file that accompanied this 
+ * code. 
+ */
+
+
+package com.sun.voip;
+
+/*
+ * A MixDataSource whose contributions are 16 bit samples.
+ *
+ * The mixer uses these methods when a source implements them and
+ * converts the int[] contributions of other sources.
+ */
+public interface ShortMixDataSource extends MixDataSource {
+
+    public short[] getPreviousShortContribution();
+
+    public short[] getCurrentShortContribution();
+
+    /*
+     * A source which is itself a mix, like a whisper group, keeps the 
+     * sum in ints so contributions can be subtracted from it before
+     * it is clipped.  Sources of 16 bit samples return null.
+     */
+    public int[] getCurrentMix();
+
+}
@@ -28,7 +28,7 @@ import java.io.IOException;
 /*
  * Generate sine waves
  */
-public class SineWaveAudioSource implements AudioSource {
+public class SineWaveAudioSource implements ShortAudioSource {
 
     private int frequency;
     private int duration;
@@ -57,10 +57,20 @@ public class SineWaveAudioSource implements AudioSource {
 	timeRemaining = duration;
     }
 
+    public int[] getLinearData(int sampleTime) throws IOException {
+	short[] data = getShortLinearData(sampleTime);
+
+	if (data == null) {
+	    return null;
+	}
+
+	return AudioConversion.shortsToInts(data);
+    }
+
     /*
      * Generate linear data
      */
-    public int[] getLinearData(int sampleTime) throws IOException {
+    public short[] getShortLinearData(int sampleTime) throws IOException {
 	if (timeRemaining <= 0) {
 	    return null;
 	}
@@ -69,7 +79,7 @@ public class SineWaveAudioSource implements AudioSource {
 
         int length = sampleRate * sampleTime * channels / 1000;
 
-	int[] linearData = new int[length];
+	short[] linearData = new short[length];
 
 	/*
 	 * twoPI represents one full cycle.  twoPI / sampleRate is the increment
@@ -79,10 +89,10 @@ public class SineWaveAudioSource implements AudioSource {
 	    int s = (int) (amplitude * volume * 
 		Math.sin(sample * twoPI * frequency / sampleRate));
 
-            linearData[i] = s;
+            linearData[i] = (short) AudioConversion.clip(s);
 
 	    if (channels == 2) {
-                linearData[i + 1] = s;
+                linearData[i + 1] = linearData[i];
 	    }
 
             sample++;
@@ -44,6 +44,8 @@ public class SpeechDetector {
     double sum       = 0;
     double cnt       = 0;
 
+    double energy    = 0;
+
     int speechDetectorCalls;
     long speechDetectorTime;
 
@@ -111,6 +113,7 @@ public class SpeechDetector {
 	sum = 0;
 	cnt = 0;
 	powthresh = POW_THRESH;
+	energy = 0;
 
 	boolean oldIsSpeaking = isSpeaking;
 
@@ -219,6 +222,44 @@ public class SpeechDetector {
 	return (speakingChanged());
     }
 
+    /*
+     * linearData contains 16-bit linear data in a short array.
+     * Returns true if speaking started or stopped.
+     */ 
+    public boolean processData(short[] linearData) {
+	speechDetectorCalls++;
+        long start = CurrentTime.getTime();
+
+	/*
+	 * Round down to 8 sample boundary
+	 */
+	int nSamples = (linearData.length / 8) * 8;
+
+	for (int i = 0;  i <= nSamples - 8; i += 8) {  
+	    /* 
+	     * average next 8 samples (MSB only), square result, 
+	     * add to running avg
+	     */
+	    double avg = (double) (
+		((linearData[i + 0] >> 8) +
+	    	 (linearData[i + 1] >> 8) +
+	    	 (linearData[i + 2] >> 8) +
+	    	 (linearData[i + 3] >> 8) +
+	    	 (linearData[i + 4] >> 8) +
+	    	 (linearData[i + 5] >> 8) +
+	    	 (linearData[i + 6] >> 8) +
+	    	 (linearData[i + 7] >> 8)) / 8.);
+
+	    avg /= mediaInfo.getChannels();
+
+	    sum += (avg * avg);
+	    cnt++;
+	}
+
+	speechDetectorTime += (CurrentTime.getTime() - start);
+	return (speakingChanged());
+    }
+
     /*
      * Returns true if speaker has started or stopped speaking
      */
@@ -231,6 +272,8 @@ public class SpeechDetector {
 
 	double value = sum / cnt;
 
+	energy = value;
+
         /* value is now the power in this sample set. */
         if (value > powthresh) {
             oncount++;
@@ -276,6 +319,14 @@ public class SpeechDetector {
 	return isSpeaking;
     }
 
+    /*
+     * Return the power of the most recent set of samples.
+     * It's updated every cnThresh averages.
+     */
+    public double getEnergy() {
+	return energy;
+    }
+
     public void printStatistics() {
 	String s = "";
 
@@ -88,6 +88,14 @@ public class SpeexDecoder {
 	return AudioConversion.bytesToInts(byteData);
     }
 
+    public short[] decodeToShortArray(byte[] data, int offset, int length) 
+            throws SpeexException {
+
+	byte[] byteData = decodeToByteArray(data, offset, length);
+
+	return AudioConversion.bytesToShorts(byteData);
+    }
+
     public byte[] decodeToByteArray(byte[] data, int offset, int length) 
             throws SpeexException {
 
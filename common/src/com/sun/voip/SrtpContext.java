@@ -0,0 +1,421 @@
+/*
+ * Copyright 2007 Sun Microsystems, Inc.
+ *
+ * This file is part of jVoiceBridge.
+ *
+ * jVoiceBridge is free software: you can redistribute it and/or modify 
+ * it under the terms of the GNU General Public License version 2 as 
+ * published by the Free Software Foundation and distributed hereunder 
+ * to you.
+ *
+ * jVoiceBridge is distributed in the hope that it will be useful, 
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Sun designates this particular file as subject to the "Classpath"
+ * exception as provided by Sun in the License file that accompanied this 
+ * code. 
+ */
+
+
+package com.sun.voip;
+
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+
+import javax.crypto.Cipher;
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+
+/*
+ * SRTP style media protection (RFC 3711 AES_CM_128_HMAC_SHA1_80).
+ *
+ * The payload is encrypted by XORing it with an AES counter mode
+ * keystream and the header and payload are authenticated with an
+ * HMAC-SHA1 tag truncated to 80 bits which is appended to the packet.
+ * The RTP header is sent in the clear so that sequence numbers and
+ * timestamps can still be used by the receiver.
+ *
+ * Each direction of a call has its own SrtpContext.  The ciphers,
+ * the counter blocks and the keystream buffer are allocated once and
+ * reused for every packet.  The counter part of the counter blocks 
+ * never changes and the SSRC part only changes when the SSRC does,
+ * so for each packet only the packet index has to be filled in before
+ * the whole keystream is generated with one call to the cipher.
+ *
+ * The master key and salt are derived from the encryption key string
+ * given with the call so both ends only need to agree on that string.
+ * Session keys are derived from them as in RFC 3711 with a key 
+ * derivation rate of 0.
+ *
+ * An SrtpContext isn't thread safe.
+ */
+public class SrtpContext {
+
+    /*
+     * Encryption algorithm name which selects SRTP.
+     */
+    public static final String ALGORITHM = "SRTP";
+
+    /*
+     * Number of bytes added to each packet for the authentication tag.
+     */
+    public static final int TAG_LENGTH = 10;
+
+    private static final int BLOCK_SIZE = 16;
+
+    private static final int SALT_LENGTH = 14;
+
+    private static final int REPLAY_WINDOW = 64;
+
+    private Cipher cipher;
+    private Mac mac;
+
+    private byte[] sessionSalt;
+
+    private byte[] counterBlocks = new byte[0];
+    private byte[] keystream = new byte[0];
+
+    /*
+     * The session salt with the SSRC XOR'd in.
+     */
+    private byte[] ivPrefix = new byte[SALT_LENGTH];
+    private int ivSsrc;
+    private boolean haveIvSsrc;
+
+    private byte[] macData = new byte[20];
+    private byte[] rocData = new byte[4];
+
+    /*
+     * Rollover counter and highest sequence number sent or received.
+     */
+    private int roc;
+    private int lastSequence = -1;
+
+    /*
+     * Receiver replay protection.
+     */
+    private long highestIndex = -1;
+    private long replayBits;
+
+    /* Statistics */
+    private int authenticationFailures;
+    private int replayedPackets;
+
+    public SrtpContext(String key) throws GeneralSecurityException {
+	MessageDigest md = MessageDigest.getInstance("SHA-256");
+
+	byte[] digest = md.digest(key.getBytes());
+
+	byte[] masterKey = new byte[16];
+	byte[] masterSalt = new byte[SALT_LENGTH];
+
+	System.arraycopy(digest, 0, masterKey, 0, masterKey.length);
+	System.arraycopy(digest, masterKey.length, masterSalt, 0, 
+	    masterSalt.length);
+
+	Cipher masterCipher = Cipher.getInstance("AES/ECB/NoPadding");
+
+	masterCipher.init(Cipher.ENCRYPT_MODE, 
+	    new SecretKeySpec(masterKey, "AES"));
+
+	byte[] sessionKey = deriveKey(masterCipher, masterSalt, 0, 16);
+	byte[] authKey = deriveKey(masterCipher, masterSalt, 1, 20);
+
+	sessionSalt = deriveKey(masterCipher, masterSalt, 2, SALT_LENGTH);
+
+	cipher = Cipher.getInstance("AES/ECB/NoPadding");
+	cipher.init(Cipher.ENCRYPT_MODE, new SecretKeySpec(sessionKey, "AES"));
+
+	mac = Mac.getInstance("HmacSHA1");
+	mac.init(new SecretKeySpec(authKey, "HmacSHA1"));
+    }
+
+    public static boolean isSrtp(String algorithm) {
+	return ALGORITHM.equalsIgnoreCase(algorithm);
+    }
+
+    /*
+     * RFC 3711 4.3.1 key derivation with a key derivation rate of 0.
+     */
+    private static byte[] deriveKey(Cipher masterCipher, byte[] masterSalt,
+	    int label, int length) throws GeneralSecurityException {
+
+	int blocks = (length + BLOCK_SIZE - 1) / BLOCK_SIZE;
+
+	byte[] in = new byte[blocks * BLOCK_SIZE];
+
+	for (int i = 0; i < blocks; i++) {
+	    int offset = i * BLOCK_SIZE;
+
+	    System.arraycopy(masterSalt, 0, in, offset, masterSalt.length);
+
+	    in[offset + 7] ^= (byte) label;
+	    in[offset + 14] = (byte) (i >> 8);
+	    in[offset + 15] = (byte) i;
+	}
+
+	byte[] out = masterCipher.doFinal(in);
+
+	byte[] key = new byte[length];
+
+	System.arraycopy(out, 0, key, 0, length);
+	return key;
+    }
+
+    /*
+     * Encrypt the payload of the RTP packet in data and add the
+     * authentication tag.  The protected packet is written to out 
+     * which may be data if data has room for the tag.
+     * Returns the length of the protected packet or -1 if the packet
+     * isn't a valid RTP packet.
+     */
+    public int protect(byte[] data, int length, byte[] out) 
+	    throws GeneralSecurityException {
+
+	int headerLength = getHeaderLength(data, length);
+
+	if (headerLength < 0 || out.length < length + TAG_LENGTH) {
+	    return -1;
+	}
+
+	int sequence = getSequence(data);
+
+	if (lastSequence >= 0 && sequence < lastSequence 
+		&& lastSequence - sequence > 0x8000) {
+
+	    roc++;
+	}
+
+	lastSequence = sequence;
+
+	long index = ((long) roc << 16) | sequence;
+
+	if (out != data) {
+	    System.arraycopy(data, 0, out, 0, headerLength);
+	}
+
+	applyKeystream(data, out, headerLength, length - headerLength,
+	    getSsrc(data), index);
+
+	computeTag(out, length, roc);
+
+	System.arraycopy(macData, 0, out, length, TAG_LENGTH);
+	return length + TAG_LENGTH;
+    }
+
+    /*
+     * Check the authentication tag of the SRTP packet in data and
+     * decrypt the payload in place.
+     * Returns the length of the RTP packet without the tag or -1 if
+     * the packet isn't authentic or has already been received.
+     */
+    public int unprotect(byte[] data, int length) 
+	    throws GeneralSecurityException {
+
+	int rtpLength = length - TAG_LENGTH;
+
+	int headerLength = getHeaderLength(data, rtpLength);
+
+	if (headerLength < 0) {
+	    authenticationFailures++;
+	    return -1;
+	}
+
+	int sequence = getSequence(data);
+
+	/*
+	 * RFC 3711 Appendix A, guess the rollover counter.
+	 */
+	int v = roc;
+
+	if (lastSequence >= 0) {
+	    if (lastSequence < 0x8000) {
+		if (sequence - lastSequence > 0x8000) {
+		    v = roc - 1;
+		}
+	    } else if (lastSequence - 0x8000 > sequence) {
+		v = roc + 1;
+	    }
+	}
+
+	long index = ((long) v << 16) | sequence;
+
+	if (highestIndex >= 0 && index <= highestIndex) {
+	    long delta = highestIndex - index;
+
+	    if (delta >= REPLAY_WINDOW || (replayBits & (1L << delta)) != 0) {
+		replayedPackets++;
+		return -1;
+	    }
+	}
+
+	computeTag(data, rtpLength, v);
+
+	int diff = 0;
+
+	for (int i = 0; i < TAG_LENGTH; i++) {
+	    diff |= macData[i] ^ data[rtpLength + i];
+	}
+
+	if (diff != 0) {
+	    authenticationFailures++;
+	    return -1;
+	}
+
+	applyKeystream(data, data, headerLength, rtpLength - headerLength,
+	    getSsrc(data), index);
+
+	if (index > highestIndex) {
+	    long shift = index - highestIndex;
+
+	    if (highestIndex < 0 || shift >= REPLAY_WINDOW) {
+		replayBits = 1;
+	    } else {
+		replayBits = (replayBits << shift) | 1;
+	    }
+
+	    highestIndex = index;
+	    roc = v;
+	    lastSequence = sequence;
+	} else {
+	    replayBits |= 1L << (highestIndex - index);
+	}
+
+	return rtpLength;
+    }
+
+    public int getAuthenticationFailures() {
+	return authenticationFailures;
+    }
+
+    public int getReplayedPackets() {
+	return replayedPackets;
+    }
+
+    private void computeTag(byte[] data, int length, int roc) 
+	    throws GeneralSecurityException {
+
+	rocData[0] = (byte) (roc >> 24);
+	rocData[1] = (byte) (roc >> 16);
+	rocData[2] = (byte) (roc >> 8);
+	rocData[3] = (byte) roc;
+
+	mac.update(data, 0, length);
+	mac.update(rocData);
+	mac.doFinal(macData, 0);
+    }
+
+    /*
+     * XOR length bytes of in starting at offset with the keystream
+     * for the packet and put the result at the same offset in out.
+     */
+    private void applyKeystream(byte[] in, byte[] out, int offset, 
+	    int length, int ssrc, long index) throws GeneralSecurityException {
+
+	if (length == 0) {
+	    return;
+	}
+
+	int blocks = (length + BLOCK_SIZE - 1) / BLOCK_SIZE;
+
+	if (counterBlocks.length < blocks * BLOCK_SIZE) {
+	    allocateBlocks(blocks);
+	}
+
+	if (haveIvSsrc == false || ssrc != ivSsrc) {
+	    System.arraycopy(sessionSalt, 0, ivPrefix, 0, SALT_LENGTH);
+
+	    ivPrefix[4] ^= (byte) (ssrc >> 24);
+	    ivPrefix[5] ^= (byte) (ssrc >> 16);
+	    ivPrefix[6] ^= (byte) (ssrc >> 8);
+	    ivPrefix[7] ^= (byte) ssrc;
+
+	    ivSsrc = ssrc;
+	    haveIvSsrc = true;
+	}
+
+	byte i0 = (byte) (ivPrefix[8] ^ (index >> 40));
+	byte i1 = (byte) (ivPrefix[9] ^ (index >> 32));
+	byte i2 = (byte) (ivPrefix[10] ^ (index >> 24));
+	byte i3 = (byte) (ivPrefix[11] ^ (index >> 16));
+	byte i4 = (byte) (ivPrefix[12] ^ (index >> 8));
+	byte i5 = (byte) (ivPrefix[13] ^ index);
+
+	for (int b = 0; b < blocks; b++) {
+	    int n = b * BLOCK_SIZE;
+
+	    System.arraycopy(ivPrefix, 0, counterBlocks, n, 8);
+
+	    counterBlocks[n + 8] = i0;
+	    counterBlocks[n + 9] = i1;
+	    counterBlocks[n + 10] = i2;
+	    counterBlocks[n + 11] = i3;
+	    counterBlocks[n + 12] = i4;
+	    counterBlocks[n + 13] = i5;
+	}
+
+	cipher.doFinal(counterBlocks, 0, blocks * BLOCK_SIZE, keystream, 0);
+
+	for (int i = 0; i < length; i++) {
+	    out[offset + i] = (byte) (in[offset + i] ^ keystream[i]);
+	}
+    }
+
+    /*
+     * The last two bytes of each counter block are the block number
+     * and never change.
+     */
+    private void allocateBlocks(int blocks) {
+	counterBlocks = new byte[blocks * BLOCK_SIZE];
+	keystream = new byte[blocks * BLOCK_SIZE];
+
+	for (int b = 0; b < blocks; b++) {
+	    counterBlocks[b * BLOCK_SIZE + 14] = (byte) (b >> 8);
+	    counterBlocks[b * BLOCK_SIZE + 15] = (byte) b;
+	}
+    }
+
+    /*
+     * Length of the RTP header including CSRCs and the header extension
+     * or -1 if the packet is too short.
+     */
+    private static int getHeaderLength(byte[] data, int length) {
+	if (length < RtpPacket.HEADER_SIZE) {
+	    return -1;
+	}
+
+	int headerLength = RtpPacket.HEADER_SIZE + 4 * (data[0] & 0x0f);
+
+	if ((data[0] & RtpPacket.X_BIT) != 0) {
+	    if (headerLength + 4 > length) {
+		return -1;
+	    }
+
+	    int extensionLength = ((data[headerLength + 2] & 0xff) << 8) 
+		| (data[headerLength + 3] & 0xff);
+
+	    headerLength += 4 + 4 * extensionLength;
+	}
+
+	if (headerLength > length) {
+	    return -1;
+	}
+
+	return headerLength;
+    }
+
+    private static int getSequence(byte[] data) {
+	return ((data[2] & 0xff) << 8) | (data[3] & 0xff);
+    }
+
+    private static int getSsrc(byte[] data) {
+	return ((data[8] & 0xff) << 24) | ((data[9] & 0xff) << 16) 
+	    | ((data[10] & 0xff) << 8) | (data[11] & 0xff);
+    }
+
+}
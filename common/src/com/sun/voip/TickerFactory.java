@@ -50,6 +50,13 @@ public class TickerFactory {
 	Ticker ticker = null;
 
 	if (tickerClassName != null && tickerClassName.length() > 0) {
+	    if (tickerClassName.indexOf('.') < 0) {
+		/*
+		 * Allow just the name of one of our tickers.
+		 */
+		tickerClassName = "com.sun.voip." + tickerClassName;
+	    }
+
 	    try {
 	        Class tickerClass = Class.forName(tickerClassName);
 
@@ -59,7 +66,7 @@ public class TickerFactory {
 
                 if (constructor != null) {
                     Object[] args = new Object[] {
-		        new String("TickerTest") 
+		        id
 	            };
 
                     ticker = (Ticker) (constructor.newInstance(args));
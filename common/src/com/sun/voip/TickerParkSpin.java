@@ -0,0 +1,295 @@
+/*
+ * Copyright 2007 Sun Microsystems, Inc.
+ *
+ * This file is part of jVoiceBridge.
+ *
+ * jVoiceBridge is free software: you can redistribute it and/or modify 
+ * it under the terms of the GNU General Public License version 2 as 
+ * published by the Free Software Foundation and distributed hereunder 
+ * to you.
+ *
+ * jVoiceBridge is distributed in the hope that it will be useful, 
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Sun designates this particular file as subject to the "Classpath"
+ * exception as provided by Sun in the License file that accompanied this 
+ * code. 
+ */
+
+
+package com.sun.voip;
+
+import java.util.concurrent.locks.LockSupport;
+
+/*
+ * A Ticker which ticks on absolute deadlines measured with 
+ * System.nanoTime() so that it doesn't drift.
+ *
+ * The thread parks until SPIN_MARGIN microseconds before the deadline
+ * and then spins for the rest of the time.  Parking gives the CPU back
+ * for most of the period and spinning makes up for the coarse wakeup
+ * of parkNanos() so that ticks are on time without a native timer.
+ *
+ * If a tick is late by less than a period, for example because sending
+ * took too long, the next tick returns right away to catch up.
+ * If a tick is late by a period or more, for example after a long
+ * GC pause, the missed ticks are skipped and the schedule starts over 
+ * from now rather than returning immediately for every missed tick.
+ */
+public class TickerParkSpin implements Ticker {
+
+    private static final String SPIN_MARGIN_PROPERTY =
+	"com.sun.voip.TICKER_SPIN_MARGIN";
+
+    private static int spinMargin = 500;	// microseconds
+
+    static {
+	String s = System.getProperty(SPIN_MARGIN_PROPERTY);
+
+	if (s != null) {
+	    try {
+		setSpinMargin(Integer.parseInt(s));
+	    } catch (NumberFormatException e) {
+		Logger.println("Invalid ticker spin margin:  " + s);
+	    }
+	}
+    }
+
+    /*
+     * Lateness histogram buckets are BUCKET_SIZE microseconds.
+     * The last bucket counts everything later than that.
+     */
+    private static final int BUCKET_SIZE = 50;
+    private static final int BUCKETS = 201;
+
+    private String id;
+
+    private long periodNanos;
+    private long deadline;
+
+    private boolean armed;
+
+    /* Statistics */
+    private long startTime;
+    private int count;
+    private int late;
+    private int resyncs;
+    private long skippedTicks;
+    private long totalLateness;
+    private long maxLateness;
+    private long totalSpinTime;
+
+    private int[] latenessDistribution = new int[BUCKETS];
+
+    public TickerParkSpin(String id) {
+	this.id = id;
+    }
+
+    public static void setSpinMargin(int spinMargin) {
+	if (spinMargin < 0) {
+	    spinMargin = 0;
+	}
+
+	TickerParkSpin.spinMargin = spinMargin;
+    }
+
+    public static int getSpinMargin() {
+	return spinMargin;
+    }
+
+    public void arm(long delay, long timePeriod) {
+	periodNanos = timePeriod * 1000000L;
+
+	startTime = System.nanoTime();
+	deadline = startTime + delay * 1000000L;
+
+	count = 0;
+	late = 0;
+	resyncs = 0;
+	skippedTicks = 0;
+	totalLateness = 0;
+	maxLateness = 0;
+	totalSpinTime = 0;
+
+	for (int i = 0; i < latenessDistribution.length; i++) {
+	    latenessDistribution[i] = 0;
+	}
+
+	armed = true;
+    }
+
+    public void disarm() {
+	armed = false;
+    }
+
+    public void tick() throws TickerException {
+	if (!armed) {
+	    throw new TickerException(id + ":  ticker not armed");
+	}
+
+	long now = System.nanoTime();
+
+	if (now - deadline >= periodNanos) {
+	    /*
+	     * We've missed at least a whole tick.  Start over from now.
+	     */
+	    skippedTicks += (now - deadline) / periodNanos;
+	    resyncs++;
+
+	    recordLateness(now - deadline);
+
+	    deadline = now + periodNanos;
+	    return;
+	}
+
+	if (now >= deadline) {
+	    late++;
+	} else {
+	    long marginNanos = spinMargin * 1000L;
+
+	    while (deadline - now > marginNanos) {
+		LockSupport.parkNanos(deadline - now - marginNanos);
+		now = System.nanoTime();
+	    }
+
+	    long spinStart = now;
+
+	    while (now < deadline) {
+		now = System.nanoTime();
+	    }
+
+	    totalSpinTime += now - spinStart;
+	}
+
+	recordLateness(now - deadline);
+
+	deadline += periodNanos;
+    }
+
+    private void recordLateness(long lateness) {
+	count++;
+
+	totalLateness += lateness;
+
+	if (lateness > maxLateness) {
+	    maxLateness = lateness;
+	}
+
+	int bucket = (int) (lateness / 1000 / BUCKET_SIZE);
+
+	if (bucket >= BUCKETS) {
+	    bucket = BUCKETS - 1;
+	}
+
+	latenessDistribution[bucket]++;
+
+	if (Logger.logLevel == -99) {
+	    Logger.println("lateness " + (lateness / 1000) + " us");
+	    Logger.logLevel = 3;
+	}
+    }
+
+    /*
+     * Get the lateness in microseconds which percentile percent 
+     * of ticks were no later than.  This is the upper bound of the 
+     * histogram bucket so it's accurate to BUCKET_SIZE microseconds.
+     */
+    public int getLatenessPercentile(int percentile) {
+	if (count == 0) {
+	    return 0;
+	}
+
+	long target = ((long) count * percentile + 99) / 100;
+
+	long n = 0;
+
+	for (int i = 0; i < latenessDistribution.length; i++) {
+	    n += latenessDistribution[i];
+
+	    if (n >= target) {
+		if (i == BUCKETS - 1) {
+		    return (int) (maxLateness / 1000);
+		}
+
+		return (i + 1) * BUCKET_SIZE;
+	    }
+	}
+
+	return (int) (maxLateness / 1000);
+    }
+
+    public int getMaxLateness() {
+	return (int) (maxLateness / 1000);
+    }
+
+    public double getAvg() {
+	return (System.nanoTime() - startTime) / 1000000. / count;
+    }
+
+    public void printStatistics() {
+	if (count == 0) {
+	    return;
+	}
+
+	Logger.println(id + " average time between ticks " 
+	    + (float) getAvg() + " ms");
+
+	Logger.println(id + " tick lateness average " 
+	    + (totalLateness / count / 1000) + " us, 50% " 
+	    + getLatenessPercentile(50) + " us, 99% " 
+	    + getLatenessPercentile(99) + " us, max " 
+	    + getMaxLateness() + " us");
+
+	if (Logger.logLevel >= Logger.LOG_INFO) {
+	    Logger.println("Total calls to TickerParkSpin " + count);
+	    Logger.println("Late count " + late);
+	    Logger.println("Resync count " + resyncs 
+		+ ", skipped ticks " + skippedTicks);
+	    Logger.println("Spin margin " + spinMargin + " us, average spin " 
+		+ (totalSpinTime / count / 1000) + " us");
+
+	    Logger.println("");
+
+	    Logger.println(id + " Lateness distribution");
+
+	    Logger.println(id + " us\tCount");
+
+	    for (int i = 0; i < latenessDistribution.length; i++) {
+		if (latenessDistribution[i] != 0) {
+		    String bucket = (i == BUCKETS - 1) ?
+			">= " + (i * BUCKET_SIZE) : "" + (i * BUCKET_SIZE);
+
+		    Logger.println(id + " " + bucket + "\t" 
+			+ latenessDistribution[i]);
+		}
+	    }
+
+	    Logger.println("");
+	}
+    }
+
+    public static void main(String args[]) {
+	TickerParkSpin ticker = new TickerParkSpin("Test");
+
+	ticker.arm(RtpPacket.PACKET_PERIOD, RtpPacket.PACKET_PERIOD);
+
+	for (int i = 1; ; i++) {
+	    try {
+	        ticker.tick();
+	    } catch (TickerException e) {
+		System.out.println("tick() failed! " + e.getMessage());
+		System.exit(1);
+	    }
+
+	    if ((i % 250) == 0) {
+		ticker.printStatistics();
+	    }
+	}
+    }
+
+}
@@ -31,7 +31,7 @@ import java.util.ArrayList;
 /** 
  * Read and manager audio treatments
  */
-public class TreatmentManager implements MixDataSource {
+public class TreatmentManager implements ShortMixDataSource {
     private String treatment;
     private int repeatCount;
     private int sampleRate;
@@ -131,8 +131,8 @@ public class TreatmentManager implements MixDataSource {
     }
 
     
-    private int[] previousContribution;
-    private int[] currentContribution;
+    private short[] previousContribution;
+    private short[] currentContribution;
 
     public String getSourceId() {
 	return treatment;
@@ -143,16 +143,28 @@ public class TreatmentManager implements MixDataSource {
     }
 
     public int[] getPreviousContribution() {
-	return previousContribution;
+	return toInts(previousContribution);
     }
 
     public int[] getCurrentContribution() {
+	return toInts(currentContribution);
+    }
+
+    public short[] getPreviousShortContribution() {
+	return previousContribution;
+    }
+
+    public short[] getCurrentShortContribution() {
 	return currentContribution;
     }
 
+    public int[] getCurrentMix() {
+	return null;
+    }
+
     public void saveCurrentContribution() {
 	previousContribution = currentContribution;
-	currentContribution = getLinearData(RtpPacket.PACKET_PERIOD);
+	currentContribution = getShortLinearData(RtpPacket.PACKET_PERIOD);
     }
 
     private int treatmentIndex = 0;
@@ -164,27 +176,20 @@ public class TreatmentManager implements MixDataSource {
 	    return null;
 	}
 
-	int[] intData = getLinearData(sampleTime);
+	short[] shortData = getShortLinearData(sampleTime);
 
-	if (intData == null) {
+	if (shortData == null) {
 	    return null;
 	}
 
-	byte[] byteData = new byte[intData.length * 2];
-
-	try {
-	    AudioConversion.intsToBytes(intData, byteData, 0);
-	} catch (Exception e) {
-	    Logger.println("getLinearDataBytes, intData len " 
-		+ intData.length + " byteData len " + byteData.length);
-	    e.printStackTrace();
-	    return null;
-	}
-
-	return byteData;
+	return AudioConversion.shortsToBytes(shortData);
     }
 
     public int[] getLinearData(int sampleTime) {
+	return toInts(getShortLinearData(sampleTime));
+    }
+
+    public short[] getShortLinearData(int sampleTime) {
 	synchronized (treatments) {
 	    audioSource = getAudioSource();
 
@@ -197,10 +202,10 @@ public class TreatmentManager implements MixDataSource {
 	    }
 	}
 
-	int[] linearData = null;
+	short[] linearData = null;
 
 	try {
-	    linearData = audioSource.getLinearData(sampleTime);
+	    linearData = getShortLinearData(audioSource, sampleTime);
 	} catch (IOException e) {
 	    Logger.println("Can't read linear data for " + treatment 
 		+ " " + e.getMessage());
@@ -257,7 +262,7 @@ public class TreatmentManager implements MixDataSource {
 	}
 
 	try {
-	    linearData = audioSource.getLinearData(sampleTime);
+	    linearData = getShortLinearData(audioSource, sampleTime);
 
 	    if (linearData != null && sampleRateConverter != null) {
 		linearData = sampleRateConverter.resample(linearData);
@@ -271,6 +276,38 @@ public class TreatmentManager implements MixDataSource {
 	return null;
     }
 
+    /*
+     * Samples from an AudioSource which doesn't produce shorts
+     * are clipped to 16 bits.
+     */
+    private static short[] getShortLinearData(AudioSource audioSource,
+	    int sampleTime) throws IOException {
+
+	if (audioSource instanceof ShortAudioSource) {
+	    return ((ShortAudioSource) audioSource).getShortLinearData(
+		sampleTime);
+	}
+
+	int[] intData = audioSource.getLinearData(sampleTime);
+
+	if (intData == null) {
+	    return null;
+	}
+
+	short[] shortData = new short[intData.length];
+
+	AudioConversion.clipToShorts(intData, shortData);
+	return shortData;
+    }
+
+    private static int[] toInts(short[] shortData) {
+	if (shortData == null) {
+	    return null;
+	}
+
+	return AudioConversion.shortsToInts(shortData);
+    }
+
     private AudioSource getAudioSource() {
 	synchronized (treatments) {
 	    if (treatments.size() == 0) {
@@ -65,15 +65,15 @@ public class Upsampler extends Resampler {
 
 	length = length & ~1;	// round down
 
-	int[] ints = new int[length / 2];
+	short[] shorts = new short[length / 2];
 
-	AudioConversion.bytesToInts(inSamples, offset, length, ints);
+	AudioConversion.bytesToShorts(inSamples, offset, length, shorts);
 
-	ints = resample(ints);
+	shorts = resample(shorts);
 
-	byte[] bytes = new byte[ints.length * 2];
+	byte[] bytes = new byte[shorts.length * 2];
 
-	AudioConversion.intsToBytes(ints, bytes, offset);
+	AudioConversion.shortsToBytes(shorts, bytes, 0);
 
 	return bytes;
     }
@@ -108,6 +108,99 @@ public class Upsampler extends Resampler {
 	return outSamples;
     }
 
+    public short[] resample(short[] inSamples) throws IOException {
+	if (inSampleRate == outSampleRate && inChannels == outChannels) {
+	    return inSamples;
+	}
+
+	resampleCount++;
+
+	long start = CurrentTime.getTime();
+
+	short[] outSamples = reChannel(inSamples);
+
+	if (inSampleRate == outSampleRate) {
+	    return outSamples;				// no need to resample
+	}
+
+	outSamples = upsample(outSamples);
+
+	outSamples = lowPassFilter.lpf(outSamples);
+
+	totalTime += (CurrentTime.getTime() - start);
+
+	return outSamples;
+    }
+
+    /*
+     * Same interpolation as upsample(int[]) for 16-bit samples.
+     */
+    private short[] upsample(short[] inSamples) {
+        int nSamples = inSamples.length / outChannels;
+
+        double sampleTime = (nSamples * 1000.0D) / inSampleRate;
+
+        int outLength = (int)(Math.round(
+            (sampleTime * outSampleRate * outChannels / 1000)));
+
+	if ((outLength & 1) != 0) {
+	    outLength++;
+	}
+
+        short[] outSamples = new short[outLength];
+
+	double frameIncr = (double)inSampleRate / (double)(outSampleRate);
+
+	int outIx = 0;
+
+	int[] last = new int[outChannels];
+
+	last[0] = inSamples[inSamples.length - outChannels];
+
+	if (outChannels == 2) {
+	    last[1] = inSamples[inSamples.length - outChannels + 1];
+	}
+
+	double i = 0;
+
+	while (true) {
+	    int intI = (int)i;
+
+	    int ix = intI * outChannels;
+
+	    if (ix >= inSamples.length || outIx + outChannels > outLength ) {
+		break;
+	    }
+
+	    double fraction = i - intI;
+
+	    for (int c = 0; c < outChannels; c++) {
+		int s1;
+
+		if (ix == 0) {
+		    s1 = lastSample[c];
+		} else {
+	            s1 = inSamples[ix - outChannels + c];
+		} 
+
+		int s2 = inSamples[ix + c];
+
+		outSamples[outIx] = (short) (s1 + ((s2 - s1) * fraction));
+
+		outIx++;
+	    }
+
+	    if (outIx >= outLength) {
+		break;
+	    }
+
+	    i += frameIncr;
+	}
+
+	lastSample = last;
+	return outSamples;
+    }
+
     private int[] upsample(int[] inSamples) {
         /*
          * Calculate the number of inSamples needed to produce an outSample.
@@ -42,6 +42,7 @@ import com.sun.voip.RtpReceiverPacket;
 import com.sun.voip.SdpManager;
 import com.sun.voip.SpeexDecoder;
 import com.sun.voip.SpeexException;
+import com.sun.voip.SrtpContext;
 import com.sun.voip.Ticker;
 import com.sun.voip.TickerException;
 import com.sun.voip.TickerFactory;
@@ -105,6 +106,7 @@ public class AudioReceiver extends Thread {
         "com.sun.mc.softphone.media.SWAP_SPEAKER_CHANNELS";
 
     private Cipher cipher;
+    private SrtpContext srtpContext;
 
     private boolean debugDtmf = false;
     private String dtmfKey;
@@ -156,7 +158,15 @@ public class AudioReceiver extends Thread {
 	    Logger.println("Sender will be verified...");
 	}
 
-	if (encryptionKey != null) {
+	if (encryptionKey != null && SrtpContext.isSrtp(encryptionAlgorithm)) {
+	    try {
+		srtpContext = new SrtpContext(encryptionKey);
+		Logger.println("SRTP initialized for receiving");
+	    } catch (Exception e) {
+		throw new IOException("Crytpo initialization failed.  " 
+		    + e.getMessage());
+	    }
+	} else if (encryptionKey != null) {
 	    try {
 	        if (encryptionKey.length() < 8) {
 	            encryptionKey += String.valueOf(System.currentTimeMillis());
@@ -206,9 +216,20 @@ public class AudioReceiver extends Thread {
 
 	isa = new InetSocketAddress(remoteHost, remotePort);
 
-        rtpReceiverPacket = 
-	    new RtpReceiverPacket("SIP-Communicator", 
-	    encoding, sampleRate, channels);
+	if (srtpContext != null) {
+	    /*
+	     * Leave room for the authentication tag.
+	     */
+            rtpReceiverPacket = 
+	        new RtpReceiverPacket("SIP-Communicator", 
+	        encoding, sampleRate, channels, RtpPacket.HEADER_SIZE 
+		+ RtpPacket.getDataSize(encoding, sampleRate, channels)
+		+ SrtpContext.TAG_LENGTH);
+	} else {
+            rtpReceiverPacket = 
+	        new RtpReceiverPacket("SIP-Communicator", 
+	        encoding, sampleRate, channels);
+	}
 
 	if (Logger.logLevel >= Logger.LOG_MOREINFO) {
 	    Logger.println("remote isa " + isa);
@@ -404,7 +425,7 @@ public class AudioReceiver extends Thread {
 		+ rtcpReceiverPacket.getSocketAddress());
 	}
 
-	jitterManager = new JitterManager("Softphone");
+	jitterManager = JitterManager.createJitterManager("Softphone");
 	
 	updateJitterParameters();
 
@@ -539,7 +560,16 @@ public class AudioReceiver extends Thread {
 
 		    rtpReceiverPacket.setBuffer(rtpData);
 		    length = rtpData.length;
-	 	} 
+	 	} else if (srtpContext != null) {
+		    length = unprotect(receivedData, length);
+
+		    if (length < 0) {
+			rejected++;
+			continue;
+		    }
+
+		    rtpReceiverPacket.setLength(length);
+		}
 
 	        recordPacket(rtpData, length);
             } catch (IOException e) {
@@ -1357,6 +1387,19 @@ public class AudioReceiver extends Thread {
         return true;
     }
 
+    /*
+     * Check and decrypt an SRTP packet in place.
+     */
+    private int unprotect(byte[] data, int length) {
+	try {
+	    return srtpContext.unprotect(data, length);
+	} catch (Exception e) {
+	    Logger.println("SipCommunicator:  SRTP failed:  "
+	        + "length " + length + " " + e.getMessage());
+	    return -1;
+	}
+    }
+
     private byte[] decrypt(byte[] data, int length) {
 	try {
 	    return cipher.doFinal(data, 0, length);
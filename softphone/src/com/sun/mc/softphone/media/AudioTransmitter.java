@@ -40,6 +40,7 @@ import com.sun.voip.SdpInfo;
 import com.sun.voip.SpeechDetector;
 import com.sun.voip.SpeexEncoder;
 import com.sun.voip.SpeexException;
+import com.sun.voip.SrtpContext;
 import com.sun.voip.Ticker;
 import com.sun.voip.TickerException;
 import com.sun.voip.TickerFactory;
@@ -77,6 +78,8 @@ public class AudioTransmitter extends Thread {
     private Microphone microphone;
 
     private Cipher cipher;
+    private SrtpContext srtpContext;
+    private byte[] srtpData;
     private String encryptionKey;
     private String encryptionAlgorithm;
 
@@ -204,7 +207,15 @@ public class AudioTransmitter extends Thread {
 	    debugDtmf = true;
 	}
 
-	if (encryptionKey != null) {
+	if (encryptionKey != null && SrtpContext.isSrtp(encryptionAlgorithm)) {
+	    try {
+		srtpContext = new SrtpContext(encryptionKey);
+		Logger.println("SRTP initialized for sending");
+	    } catch (Exception e) {
+		throw new IOException("Crytpo initialization failed.  " 
+		    + e.getMessage());
+	    }
+	} else if (encryptionKey != null) {
 	    try {
 	        if (encryptionKey.length() < 8) {
 		    encryptionKey += String.valueOf(System.currentTimeMillis());
@@ -1259,6 +1270,26 @@ if (false) {
     
                 rtpSenderPacket.setBuffer(data);
                 rtpSenderPacket.setLength(data.length);
+            } else if (srtpContext != null) {
+		int length = rtpSenderData.length;
+
+		if (srtpData == null || 
+			srtpData.length < length + SrtpContext.TAG_LENGTH) {
+
+		    srtpData = new byte[length + SrtpContext.TAG_LENGTH];
+		}
+
+	        try {
+		    length = srtpContext.protect(rtpSenderData, length, 
+			srtpData);
+	        } catch (Exception e) {
+                    Logger.println("SipCommunicator Encryption failed:  " 
+		        + e.getMessage());
+		    return false;
+		}
+
+                rtpSenderPacket.setBuffer(srtpData);
+                rtpSenderPacket.setLength(length);
             } else {
 		if (bo != null) {
 		    try {
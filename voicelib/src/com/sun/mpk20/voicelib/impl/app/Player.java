@@ -65,6 +65,24 @@ public class Player {
 
     private ArrayList<Player> playersInRange = new ArrayList<Player>();
 
+    /*
+     * Players who have this player in range
+     */
+    private ArrayList<Player> playersHearing = new ArrayList<Player>();
+
+    /*
+     * Used by the PlayerIndex
+     */
+    long cellKey;
+    boolean indexed;
+
+    /*
+     * Used by the WallIndex
+     */
+    int positionVersion;
+
+    WallIndex.OcclusionCache wallCache = new WallIndex.OcclusionCache();
+
     public Player(String callId, double x, double y, double z,
 	    double orientation) {
 
@@ -80,6 +98,10 @@ public class Player {
 
 	positionChanged = this.x != x || this.y != y | this.z != z;
 
+	if (positionChanged) {
+	    positionVersion++;
+	}
+
 	this.x = x;
 	this.y = y;
 	this.z = z;
@@ -164,6 +186,10 @@ public class Player {
 	privateSpatializers.remove(callId);
     }
 
+    public Collection<Spatializer> getPrivateSpatializers() {
+	return privateSpatializers.values();
+    }
+
     public void setTalkAttenuator(double talkAttenuator) {
 	if (talkAttenuator < 0) {
 	    talkAttenuator = 0;
@@ -213,6 +239,10 @@ public class Player {
 	    }
 	    playersInRange.add(p);
 	}
+
+	synchronized (p.playersHearing) {
+	    p.playersHearing.add(this);
+	}
     }
 
     public void removePlayerInRange(Player p) {
@@ -222,6 +252,22 @@ public class Player {
 	    }
 	    playersInRange.remove(p);
 	}
+
+	synchronized (p.playersHearing) {
+	    p.playersHearing.remove(this);
+	}
+    }
+
+    public Player[] getPlayersInRange() {
+	synchronized (playersInRange) {
+	    return playersInRange.toArray(new Player[playersInRange.size()]);
+	}
+    }
+
+    public Player[] getPlayersHearing() {
+	synchronized (playersHearing) {
+	    return playersHearing.toArray(new Player[playersHearing.size()]);
+	}
     }
 
     public String toString() {
@@ -0,0 +1,266 @@
+/*
+ * Copyright 2007 Sun Microsystems, Inc.
+ *
+ * This file is part of jVoiceBridge.
+ *
+ * jVoiceBridge is free software: you can redistribute it and/or modify 
+ * it under the terms of the GNU General Public License version 2 as 
+ * published by the Free Software Foundation and distributed hereunder 
+ * to you.
+ *
+ * jVoiceBridge is distributed in the hope that it will be useful, 
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Sun designates this particular file as subject to the "Classpath"
+ * exception as provided by Sun in the License file that accompanied this 
+ * code. 
+ */
+
+package com.sun.mpk20.voicelib.impl.app;
+
+import com.sun.mpk20.voicelib.app.DefaultSpatializer;
+import com.sun.mpk20.voicelib.app.Spatializer;
+import com.sun.mpk20.voicelib.app.ZeroVolumeSpatializer;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+
+/**
+ * Uniform grid of player positions used to find the players
+ * who might be able to hear each other.
+ *
+ * A DefaultSpatializer returns 0 volume beyond its zero volume radius
+ * so two players farther apart than the largest radius of any
+ * spatializer either of them uses can't hear each other.  The reach
+ * of a player is that largest radius.  Players who use any other
+ * spatializer may be heard at any distance so they're always candidates.
+ *
+ * Distance is measured in x and y only.  That's never more than the
+ * distance in 3-space so no player who can be heard is missed.
+ */
+class PlayerIndex {
+
+    private double cellSize;
+
+    private HashMap<Long, ArrayList<Player>> cells =
+	new HashMap<Long, ArrayList<Player>>();
+
+    private HashSet<Player> unbounded = new HashSet<Player>();
+
+    /*
+     * The largest reach of any bounded player since the last rebuild.
+     * It only grows between rebuilds.
+     */
+    private double maxReach;
+
+    private Spatializer[] defaultSpatializers;
+
+    public PlayerIndex(double cellSize, Spatializer[] defaultSpatializers) {
+	if (cellSize <= 0) {
+	    cellSize = .25;
+	}
+
+	this.cellSize = cellSize;
+	this.defaultSpatializers = defaultSpatializers;
+    }
+
+    /*
+     * Add a player or update its position and reach.
+     */
+    public synchronized void update(Player p) {
+	long key = getCellKey(p.x, p.y);
+
+	if (p.indexed == false || p.cellKey != key) {
+	    remove(p);
+
+	    ArrayList<Player> cell = cells.get(key);
+
+	    if (cell == null) {
+		cell = new ArrayList<Player>();
+		cells.put(key, cell);
+	    }
+
+	    cell.add(p);
+	    p.cellKey = key;
+	    p.indexed = true;
+	}
+
+	double reach = getReach(p);
+
+	if (reach == Double.MAX_VALUE) {
+	    unbounded.add(p);
+	} else {
+	    unbounded.remove(p);
+
+	    if (reach > maxReach) {
+		maxReach = reach;
+	    }
+	}
+    }
+
+    public synchronized void remove(Player p) {
+	if (p.indexed == false) {
+	    return;
+	}
+
+	ArrayList<Player> cell = cells.get(p.cellKey);
+
+	if (cell != null) {
+	    cell.remove(p);
+
+	    if (cell.size() == 0) {
+		cells.remove(p.cellKey);
+	    }
+	}
+
+	unbounded.remove(p);
+	p.indexed = false;
+    }
+
+    /*
+     * Recompute the reach of every player.  Called before
+     * all private mixes are recomputed.
+     */
+    public synchronized void rebuild(Collection<Player> players) {
+	cells.clear();
+	unbounded.clear();
+	maxReach = 0;
+
+	Iterator<Player> iterator = players.iterator();
+
+	while (iterator.hasNext()) {
+	    Player p = iterator.next();
+
+	    p.indexed = false;
+	    update(p);
+	}
+    }
+
+    /*
+     * Get the players who might hear p or be heard by p.
+     * Returns null if p might hear or be heard by everybody.
+     */
+    public synchronized HashSet<Player> getCandidates(Player p) {
+	double reach = getReach(p);
+
+	if (reach == Double.MAX_VALUE) {
+	    return null;
+	}
+
+	/*
+	 * The default spatializers may have been changed since
+	 * the last rebuild.
+	 */
+	reach = Math.max(reach, maxReach);
+
+	for (int i = 0; i < defaultSpatializers.length; i++) {
+	    reach = Math.max(reach, getRadius(defaultSpatializers[i]));
+	}
+
+	HashSet<Player> candidates = new HashSet<Player>(unbounded);
+
+	double reachSquared = reach * reach;
+
+	double span = 2 * reach / cellSize + 2;
+
+	if (span * span > cells.size()) {
+	    /*
+	     * The reach covers more cells than are occupied.
+	     */
+	    Iterator<ArrayList<Player>> iterator = cells.values().iterator();
+
+	    while (iterator.hasNext()) {
+		addCandidates(candidates, iterator.next(), p, reachSquared);
+	    }
+	} else {
+	    long minX = getCell(p.x - reach);
+	    long maxX = getCell(p.x + reach);
+	    long minY = getCell(p.y - reach);
+	    long maxY = getCell(p.y + reach);
+
+	    for (long cx = minX; cx <= maxX; cx++) {
+	        for (long cy = minY; cy <= maxY; cy++) {
+		    ArrayList<Player> cell = cells.get(getKey(cx, cy));
+
+		    if (cell != null) {
+		        addCandidates(candidates, cell, p, reachSquared);
+		    }
+		}
+	    }
+	}
+
+	candidates.remove(p);
+	return candidates;
+    }
+
+    private void addCandidates(HashSet<Player> candidates, 
+	    ArrayList<Player> cell, Player p, double reachSquared) {
+
+	for (int i = 0; i < cell.size(); i++) {
+	    Player candidate = cell.get(i);
+
+	    double xd = candidate.x - p.x;
+	    double yd = candidate.y - p.y;
+
+	    if (xd * xd + yd * yd <= reachSquared) {
+		candidates.add(candidate);
+	    }
+	}
+    }
+
+    /*
+     * The largest zero volume radius of any spatializer used
+     * when p hears someone or someone hears p.
+     */
+    private double getReach(Player p) {
+	double reach = getRadius(p.getPublicSpatializer());
+
+	reach = Math.max(reach, getRadius(p.getIncomingSpatializer()));
+
+	Iterator<Spatializer> iterator = p.getPrivateSpatializers().iterator();
+
+	while (iterator.hasNext()) {
+	    reach = Math.max(reach, getRadius(iterator.next()));
+	}
+
+	return reach;
+    }
+
+    private double getRadius(Spatializer spatializer) {
+	if (spatializer == null || spatializer instanceof ZeroVolumeSpatializer) {
+	    return 0;
+	}
+
+	if (spatializer instanceof DefaultSpatializer) {
+	    return ((DefaultSpatializer) spatializer).getZeroVolumeRadius();
+	}
+
+	return Double.MAX_VALUE;
+    }
+
+    private long getCell(double v) {
+	return (long) Math.floor(v / cellSize);
+    }
+
+    private long getCellKey(double x, double y) {
+	return getKey(getCell(x), getCell(y));
+    }
+
+    private long getKey(long cx, long cy) {
+	return (cx << 32) ^ (cy & 0xffffffffL);
+    }
+
+    public synchronized String toString() {
+	return "PlayerIndex cells " + cells.size() + " cell size " + cellSize
+	    + " max reach " + maxReach + " unbounded " + unbounded.size();
+    }
+
+}
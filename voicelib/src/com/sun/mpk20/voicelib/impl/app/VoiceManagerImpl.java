@@ -31,8 +31,6 @@ import com.sun.mpk20.voicelib.app.DefaultSpatializer;
 import com.sun.mpk20.voicelib.app.VoiceManager;
 import com.sun.mpk20.voicelib.app.VoiceManagerParameters;
 
-import java.awt.geom.Line2D;
-
 import java.io.IOException;
 import java.io.Serializable;
 
@@ -42,6 +40,7 @@ import java.util.concurrent.ConcurrentHashMap;
 
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.HashSet;
 import java.util.Iterator;
 import java.util.logging.Level;
 import java.util.logging.Logger;
@@ -73,6 +72,11 @@ public class VoiceManagerImpl implements VoiceManager {
 
     private ConcurrentHashMap<String, Player> players = new ConcurrentHashMap<String, Player>();
 
+    /*
+     * Grid of player positions used to find the players in range
+     */
+    private PlayerIndex playerIndex;
+
     private static final double LIVE_PLAYER_MAXIMUM_VOLUME = .8;
     private static final double LIVE_PLAYER_ZERO_VOLUME_RADIUS = .22;
     private static final double LIVE_PLAYER_FULL_VOLUME_RADIUS = .08;
@@ -130,6 +134,11 @@ public class VoiceManagerImpl implements VoiceManager {
 	    getPreference("OUTWORLDER_FULL_VOLUME_RADIUS", OUTWORLDER_FULL_VOLUME_RADIUS));
 	outworlderSpatializer.setFalloff(
 	    getPreference("OUTWORLDER_FALLOFF", OUTWORLDER_FALLOFF));
+
+	playerIndex = new PlayerIndex(livePlayerSpatializer.getZeroVolumeRadius(),
+	    new Spatializer[] {
+		livePlayerSpatializer, stationarySpatializer, outworlderSpatializer
+	    });
     }
 
     private String VOICEMANAGER_PREFIX = "COM.SUN.MPK20.VOICELIB.IMPL.APP.VOICEMANAGERIMPL.";
@@ -218,6 +227,8 @@ public class VoiceManagerImpl implements VoiceManager {
 	    logger.info("Player for " + callId + " already existed");
 	}
 
+	playerIndex.update(p);
+
 	logger.info("Created player for " + p + " number of players "
 	    + players.size());
     }
@@ -258,7 +269,11 @@ public class VoiceManagerImpl implements VoiceManager {
     public void removePlayer(String callId) {
 	logger.info("removed player " + callId);
 
-	players.remove(callId);
+	Player p = players.remove(callId);
+
+	if (p != null) {
+	    playerIndex.remove(p);
+	}
     }
 
     public void transferCall(String callId, String conferenceId) 
@@ -811,14 +826,12 @@ public class VoiceManagerImpl implements VoiceManager {
 	return outworlderSpatializer;
     }
 
-    private ArrayList<Wall> walls = new ArrayList<Wall>();
+    private WallIndex walls = new WallIndex();
 
     public void addWall(double startX, double startY, double endX,
 	    double endY, double characteristic) throws IOException {
 
-	synchronized (walls) {
-	    walls.add(new Wall(startX, startY, endX, endY, characteristic));
-	}
+	walls.add(new Wall(startX, startY, endX, endY, characteristic));
 
 	setPrivateMixes();
     }
@@ -855,33 +868,87 @@ public class VoiceManagerImpl implements VoiceManager {
 	Player[] playersArray = players.values().toArray(new Player[0]);
 
 	if (changedPlayer == null) {
+	    /*
+	     * Spatializers may have changed so recompute the reach
+	     * of every player.
+	     */
+	    playerIndex.rebuild(players.values());
+
 	    for (int i = 0; i < playersArray.length; i++) {
 	        Player p1 = playersArray[i];
 
-	        for (int j = 0; j < playersArray.length; j++) {
-		    Player p2 = playersArray[j];
+        	if (p1.isLivePerson() == false && p1.isRecording() == false) {
+		    /*
+             	     * We only set private mixes for live players
+             	     * and recorders.
+             	     */
+		    skipped += playersArray.length;
+	  	    continue;
+        	}
+
+		/*
+		 * Only players near p1 can be heard.  
+		 * Null means p1 might hear anybody.
+		 */
+		HashSet<Player> candidates = playerIndex.getCandidates(p1);
+
+		Player[] targets = playersArray;
+
+		if (candidates != null) {
+		    targets = candidates.toArray(new Player[candidates.size()]);
+		    skipped += playersArray.length - targets.length;
+		}
+
+	        for (int j = 0; j < targets.length; j++) {
+		    Player p2 = targets[j];
 
 		    if (p1 == p2 ) {
 		        skipped++;
 		        continue;
 		    }
    
-        	    if (p1.isLivePerson() == false && p1.isRecording() == false) {
-		        /*
-             	         * We only set private mixes for live players
-             	         * and recorders.
-             	         */
-		        skipped++;
-	  	        continue;
-        	    }
-
 		    /*
          	     * Set the private mix p1 has for p2
 	             */
 	            setPrivateMix(p1, p2);
 	        }
+
+		if (candidates == null) {
+		    continue;
+		}
+
+		/*
+		 * Players p1 could hear which have moved out of range.
+		 */
+		Player[] inRange = p1.getPlayersInRange();
+
+		for (int j = 0; j < inRange.length; j++) {
+		    Player p2 = inRange[j];
+
+		    if (candidates.contains(p2) || players.get(p2.callId) != p2) {
+			continue;
+		    }
+
+	            setPrivateMix(p1, p2);
+		}
 	    }
 	} else {
+	    playerIndex.update(changedPlayer);
+
+	    /*
+	     * Only players near the changed player can hear it
+	     * or be heard by it.  Null means anybody might.
+	     */
+	    HashSet<Player> candidates = playerIndex.getCandidates(changedPlayer);
+
+	    if (candidates != null) {
+		skipped += 2 * (playersArray.length - candidates.size());
+
+		playersArray = candidates.toArray(new Player[candidates.size()]);
+
+		setPrivateMixesOutOfRange(changedPlayer, candidates);
+	    }
+
 	    /*
 	     * We only need to adjust the private mixes between the
 	     * changed player and other calls.
@@ -956,6 +1023,8 @@ public class VoiceManagerImpl implements VoiceManager {
 		  (numberOfPrivateMixesSet + skipped))
 		+ ", out of range " + skipped);
 
+	    logger.info(walls.toString());
+
 	    numberOfPrivateMixesSet = 0;
 	    timeToSetMixes = 0;
 	    timeToSpatialize = 0;
@@ -963,6 +1032,45 @@ public class VoiceManagerImpl implements VoiceManager {
 	}
     }
 
+    /*
+     * The changed player has moved away from players it could hear
+     * or who could hear it.  Set those mixes so the players know
+     * they're out of range.
+     */
+    private void setPrivateMixesOutOfRange(Player changedPlayer,
+	    HashSet<Player> candidates) {
+
+	if (changedPlayer.isLivePerson() == true || changedPlayer.isRecording()) {
+	    Player[] inRange = changedPlayer.getPlayersInRange();
+
+	    for (int i = 0; i < inRange.length; i++) {
+		Player p = inRange[i];
+
+		if (candidates.contains(p) || players.get(p.callId) != p) {
+		    continue;
+		}
+
+		setPrivateMix(changedPlayer, p);
+	    }
+	}
+
+	if (changedPlayer.positionChanged == false) {
+	    return;
+	}
+
+	Player[] hearing = changedPlayer.getPlayersHearing();
+
+	for (int i = 0; i < hearing.length; i++) {
+	    Player p = hearing[i];
+
+	    if (candidates.contains(p) || players.get(p.callId) != p) {
+		continue;
+	    }
+
+	    setPrivateMix(p, changedPlayer);
+	}
+    }
+
     /*
      * Set the private mix p1 has for p2
      */
@@ -1095,7 +1203,14 @@ public class VoiceManagerImpl implements VoiceManager {
 
         privateMixParameters[3] *= (attenuator * p1.getMasterVolume());
 
-	double wallAttenuation = getWallAttenuation(p1, p2);
+	double wallAttenuation = 1.0;
+
+	if (privateMixParameters[3] != 0) {
+	    /*
+	     * There's no need to look for walls if p1 can't hear p2.
+	     */
+	    wallAttenuation = walls.getAttenuation(p1, p2);
+	}
 
 	logger.finest("volume before wall attenuation: " 
 	    + round(privateMixParameters[3]));
@@ -1128,22 +1243,6 @@ public class VoiceManagerImpl implements VoiceManager {
 	return p1GroupId == p2GroupId;
     }
 
-    private double getWallAttenuation(Player p1, Player p2) {
-	double wallAttenuation = 1.0;
-
-	for (Wall wall : walls) {
-	    if (Line2D.linesIntersect(p1.x, p1.y, p2.x, p2.y, 
-		wall.startX, wall.startY, wall.endX, wall.endY)) {
-
-		logger.finest(wall + " between " + p1 + " and " + p2);
-
-		return wall.characteristic;
-	    }
-	}
-
-	return wallAttenuation;
-    }
-
     public void addCallStatusListener(ManagedCallStatusListener mcsl) {
 	logger.finest("VoiceManager:  callStatusListener added");
 
@@ -33,6 +33,11 @@ class Wall {
     public double endY;
     public double characteristic;
 
+    /*
+     * Order in which the wall was added
+     */
+    int index;
+
     public Wall(double startX, double startY, double endX, double endY,
 	    double characteristic) {
 
@@ -0,0 +1,302 @@
+/*
+ * Copyright 2007 Sun Microsystems, Inc.
+ *
+ * This file is part of jVoiceBridge.
+ *
+ * jVoiceBridge is free software: you can redistribute it and/or modify 
+ * it under the terms of the GNU General Public License version 2 as 
+ * published by the Free Software Foundation and distributed hereunder 
+ * to you.
+ *
+ * jVoiceBridge is distributed in the hope that it will be useful, 
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Sun designates this particular file as subject to the "Classpath"
+ * exception as provided by Sun in the License file that accompanied this 
+ * code. 
+ */
+
+package com.sun.mpk20.voicelib.impl.app;
+
+import java.awt.geom.Line2D;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Uniform grid of walls used to find the wall between two players.
+ *
+ * Each wall is put in every cell its bounding box covers.  To find
+ * the walls between two players we walk the cells the line between
+ * them passes through and only test the walls in those cells.
+ * If there are more cells to walk than walls, we test every wall.
+ *
+ * The grid is rebuilt when a wall is added.  Walls don't move
+ * so there's nothing else to maintain.
+ *
+ * The attenuation for a pair of players is cached in the listener
+ * and is recomputed only when one of the players moves or a wall
+ * is added.
+ */
+class WallIndex {
+
+    /*
+     * Cached attenuations per listener
+     */
+    private static final int MAX_CACHED = 256;
+
+    /*
+     * Walls are put in cells slightly beyond their bounding box
+     * so a line through a cell corner can't miss a wall.
+     */
+    private static final double EPSILON = 1e-6;
+
+    private ArrayList<Wall> walls = new ArrayList<Wall>();
+
+    private HashMap<Long, ArrayList<Wall>> cells =
+	new HashMap<Long, ArrayList<Wall>>();
+
+    private double cellSize = 1;
+
+    private volatile int version;
+
+    /* Statistics */
+    private long queries;
+    private long cacheHits;
+    private long wallsTested;
+
+    public synchronized void add(Wall wall) {
+	wall.index = walls.size();
+	walls.add(wall);
+
+	rebuild();
+    }
+
+    /*
+     * The cell size is the average wall length so a
+     * wall is in just a few cells.
+     */
+    private void rebuild() {
+	double length = 0;
+
+	for (Wall wall : walls) {
+	    length += Math.hypot(wall.endX - wall.startX, 
+		wall.endY - wall.startY);
+	}
+
+	cellSize = Math.max(length / walls.size(), .01);
+
+	cells.clear();
+
+	for (Wall wall : walls) {
+	    long minX = getCell(Math.min(wall.startX, wall.endX) - EPSILON);
+	    long maxX = getCell(Math.max(wall.startX, wall.endX) + EPSILON);
+	    long minY = getCell(Math.min(wall.startY, wall.endY) - EPSILON);
+	    long maxY = getCell(Math.max(wall.startY, wall.endY) + EPSILON);
+
+	    for (long cx = minX; cx <= maxX; cx++) {
+		for (long cy = minY; cy <= maxY; cy++) {
+		    long key = getKey(cx, cy);
+
+		    ArrayList<Wall> cell = cells.get(key);
+
+		    if (cell == null) {
+			cell = new ArrayList<Wall>();
+			cells.put(key, cell);
+		    }
+
+		    cell.add(wall);
+		}
+	    }
+	}
+
+	version++;
+    }
+
+    /*
+     * Get the attenuation of the first wall added which is between
+     * the listener and the source.  Returns 1 if there's no wall.
+     */
+    public double getAttenuation(Player listener, Player source) {
+	synchronized (this) {
+	    queries++;
+
+	    if (walls.size() == 0) {
+		return 1.0;
+	    }
+	}
+
+	synchronized (listener.wallCache) {
+	    Occlusion occlusion = listener.wallCache.get(source);
+
+	    if (occlusion != null && occlusion.version == version &&
+		    occlusion.listenerPosition == listener.positionVersion &&
+		    occlusion.sourcePosition == source.positionVersion) {
+
+		synchronized (this) {
+		    cacheHits++;
+		}
+
+		return occlusion.attenuation;
+	    }
+	}
+
+	Occlusion occlusion = new Occlusion();
+
+	/*
+	 * Get the positions and versions before testing the walls
+	 * so a move while we're testing makes the entry stale.
+	 */
+	occlusion.listenerPosition = listener.positionVersion;
+	occlusion.sourcePosition = source.positionVersion;
+
+	double x1 = listener.x;
+	double y1 = listener.y;
+	double x2 = source.x;
+	double y2 = source.y;
+
+	synchronized (this) {
+	    occlusion.version = version;
+
+	    Wall wall = findWall(x1, y1, x2, y2);
+
+	    occlusion.attenuation = wall == null ? 1.0 : wall.characteristic;
+	}
+
+	synchronized (listener.wallCache) {
+	    listener.wallCache.put(source, occlusion);
+	}
+
+	return occlusion.attenuation;
+    }
+
+    private Wall findWall(double x1, double y1, double x2, double y2) {
+	long cx = getCell(x1);
+	long cy = getCell(y1);
+	long endX = getCell(x2);
+	long endY = getCell(y2);
+
+	long n = Math.abs(endX - cx) + Math.abs(endY - cy) + 1;
+
+	if (n > walls.size()) {
+	    /*
+	     * It's quicker to test every wall.
+	     */
+	    for (Wall wall : walls) {
+		if (intersects(wall, x1, y1, x2, y2)) {
+		    return wall;
+		}
+	    }
+
+	    return null;
+	}
+
+	/*
+	 * Walk the cells the line passes through.  A wall may be
+	 * in more than one cell so keep looking for an earlier wall
+	 * until all cells have been walked.
+	 */
+	double dx = x2 - x1;
+	double dy = y2 - y1;
+
+	int stepX = dx > 0 ? 1 : -1;
+	int stepY = dy > 0 ? 1 : -1;
+
+	double tDeltaX = dx == 0 ? Double.MAX_VALUE : cellSize / Math.abs(dx);
+	double tDeltaY = dy == 0 ? Double.MAX_VALUE : cellSize / Math.abs(dy);
+
+	double tMaxX = dx == 0 ? Double.MAX_VALUE : 
+	    ((dx > 0 ? cx + 1 : cx) * cellSize - x1) / dx;
+
+	double tMaxY = dy == 0 ? Double.MAX_VALUE : 
+	    ((dy > 0 ? cy + 1 : cy) * cellSize - y1) / dy;
+
+	Wall found = null;
+
+	for (long i = 0; i < n; i++) {
+	    ArrayList<Wall> cell = cells.get(getKey(cx, cy));
+
+	    if (cell != null) {
+		for (int j = 0; j < cell.size(); j++) {
+		    Wall wall = cell.get(j);
+
+		    if (found != null && wall.index >= found.index) {
+			continue;
+		    }
+
+		    if (intersects(wall, x1, y1, x2, y2)) {
+			found = wall;
+		    }
+		}
+	    }
+
+	    if (cx == endX && cy == endY) {
+		break;
+	    }
+
+	    if (tMaxX < tMaxY) {
+		tMaxX += tDeltaX;
+		cx += stepX;
+	    } else {
+		tMaxY += tDeltaY;
+		cy += stepY;
+	    }
+	}
+
+	return found;
+    }
+
+    private boolean intersects(Wall wall, double x1, double y1, 
+	    double x2, double y2) {
+
+	wallsTested++;
+
+	return Line2D.linesIntersect(x1, y1, x2, y2, 
+	    wall.startX, wall.startY, wall.endX, wall.endY);
+    }
+
+    private long getCell(double v) {
+	return (long) Math.floor(v / cellSize);
+    }
+
+    private long getKey(long cx, long cy) {
+	return (cx << 32) ^ (cy & 0xffffffffL);
+    }
+
+    public synchronized String toString() {
+	return "WallIndex walls " + walls.size() + " cells " + cells.size()
+	    + " cell size " + cellSize + " queries " + queries 
+	    + " cache hits " + cacheHits + " walls tested " + wallsTested;
+    }
+
+    /*
+     * Cached attenuation of the walls between two players
+     */
+    static class Occlusion {
+	int version;
+	int listenerPosition;
+	int sourcePosition;
+	double attenuation;
+    }
+
+    /*
+     * Least recently used cache of attenuations for one listener
+     */
+    static class OcclusionCache extends LinkedHashMap<Player, Occlusion> {
+	public OcclusionCache() {
+	    super(16, .75f, true);
+	}
+
+	protected boolean removeEldestEntry(Map.Entry<Player, Occlusion> eldest) {
+	    return size() > MAX_CACHED;
+	}
+    }
+
+}
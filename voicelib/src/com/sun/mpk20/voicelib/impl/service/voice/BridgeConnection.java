@@ -29,6 +29,7 @@ import com.sun.voip.client.connector.impl.VoiceBridgeConnection;
 import java.io.BufferedReader;
 import java.io.EOFException;
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.InputStreamReader;
 import java.io.OutputStreamWriter;
 import java.io.PrintWriter;
@@ -110,6 +111,15 @@ public class BridgeConnection extends VoiceBridgeConnection {
 
     private SocketChannel socketChannel;
 
+    /*
+     * Used to send private mixes if the bridge accepts binary frames
+     */
+    private PrivateMixEncoder privateMixEncoder;
+
+    private static boolean binaryPrivateMixes = true;
+
+    private static final int NEGOTIATE_TIMEOUT = 10000;
+
     static {
         String s = System.getProperty(
             "com.sun.sgs.impl.service.voice.watchdog.timeout");
@@ -138,6 +148,13 @@ public class BridgeConnection extends VoiceBridgeConnection {
         }
 
 	logger.info("Bridge ping timeout is " + bridgePingTimeout + " seconds");
+
+        s = System.getProperty(
+            "com.sun.sgs.impl.service.voice.binary.private.mixes");
+
+	if (s != null) {
+	    binaryPrivateMixes = Boolean.parseBoolean(s);
+	}
     }
 
     /**
@@ -191,6 +208,72 @@ public class BridgeConnection extends VoiceBridgeConnection {
 
 	logger.info("Created a socket channel to " + bridgeSocketAddress
 	    + " sendBufferSize " + socket.getSendBufferSize());
+
+	if (binaryPrivateMixes) {
+	    negotiatePrivateMixes(socket);
+	}
+    }
+
+    /*
+     * Ask the bridge to accept binary private mix frames on the
+     * socket channel.  Older bridges reply with an error and we
+     * send pmx commands instead.
+     */
+    private void negotiatePrivateMixes(Socket socket) throws IOException {
+	socket.setSoTimeout(NEGOTIATE_TIMEOUT);
+
+	write(ByteBuffer.wrap((PrivateMixEncoder.NEGOTIATE + "\n").getBytes()));
+
+	InputStream in = socket.getInputStream();
+
+	String line;
+
+	/*
+	 * Skip the bridge's greeting.
+	 */
+	while ((line = readLine(in)) != null) {
+	    if (line.equals(PrivateMixEncoder.NEGOTIATE)) {
+		logger.info("Sending binary private mixes to " + privateHost
+		    + ":" + privateControlPort);
+
+		privateMixEncoder = new PrivateMixEncoder();
+		break;
+	    }
+
+	    if (line.indexOf(PrivateMixEncoder.NEGOTIATE) >= 0) {
+		logger.info(privateHost + ":" + privateControlPort
+		    + " doesn't accept binary private mixes");
+		break;
+	    }
+	}
+
+	if (line == null) {
+	    throw new IOException("Connection closed by " + privateHost
+		+ ":" + privateControlPort);
+	}
+
+	socket.setSoTimeout(0);
+    }
+
+    /*
+     * Read a line without reading past it.  What follows isn't text.
+     */
+    private static String readLine(InputStream in) throws IOException {
+	StringBuffer sb = new StringBuffer();
+
+	int c;
+
+	while ((c = in.read()) >= 0) {
+	    if (c == '\n') {
+		return sb.toString();
+	    }
+
+	    if (c != '\r') {
+		sb.append((char) c);
+	    }
+	}
+
+	return null;
     }
 
     public void addBridgeOfflineListener(
@@ -441,44 +524,49 @@ public class BridgeConnection extends VoiceBridgeConnection {
     public void setPrivateMix(String sourceCallId, String targetCallId,
             double[] privateMixParameters) throws IOException {
 
-        String s = "pmx=" +  privateMixParameters[0] + ":" 
-	    +  privateMixParameters[1] + ":"
-	    +  privateMixParameters[2] + ":"
-	    +  privateMixParameters[3] + ":"
-	    + targetCallId + ":" + sourceCallId + "\n";
+	Work work = new Work(Work.SETPRIVATEMIX, sourceCallId);
 
-	int n = socketChannel.write(
-	    ByteBuffer.wrap(s.getBytes(), 0, s.length()));
+	work.fromCallId = targetCallId;
+	work.privateMixParameters = privateMixParameters;
 
-	if (n < s.length()) {
-	    logger.info("Tried to write " + s.length() 
-		+ ", actually wrote " + n);
-	}
+	ArrayList<Work> mixes = new ArrayList<Work>();
 
-if (false) {
-	BridgeResponse br = sendWithResponse(s + "\n");
+	mixes.add(work);
 
-        logger.finest("setPrivateMix status " + br.getStatus());
+	setPrivateMixes(mixes);
+    }
 
-        switch (br.getStatus()) {
-        case SUCCESS:
-            logger.finer("setPrivateMix success");
-	    return;
+    /*
+     * Send private mixes in one write.  Each Work has the mix
+     * targetCallId has for fromCallId.
+     */
+    public void setPrivateMixes(ArrayList<Work> mixes) throws IOException {
+	synchronized (socketChannel) {
+	    if (privateMixEncoder != null) {
+		write(privateMixEncoder.encode(mixes));
+		return;
+	    }
 
-        default:
-            throw new IOException("setPrivateMix failed:  "
-              + br.getMessage());
-        }
-}
-    }
+	    StringBuffer sb = new StringBuffer();
 
-    public void setPrivateMix(String commands) throws IOException {
-	int n = socketChannel.write(ByteBuffer.wrap(commands.getBytes(), 0, 
-	    commands.length()));
+	    for (Work work : mixes) {
+		double[] privateMixParameters = work.privateMixParameters;
+
+		sb.append("pmx=").append(privateMixParameters[0]).append(":")
+		    .append(privateMixParameters[1]).append(":")
+		    .append(privateMixParameters[2]).append(":")
+		    .append(privateMixParameters[3]).append(":")
+		    .append(work.fromCallId).append(":")
+		    .append(work.targetCallId).append("\n");
+	    }
+
+	    write(ByteBuffer.wrap(sb.toString().getBytes()));
+	}
+    }
 
-	if (n < commands.length()) {
-	    logger.info("Tried to write " + commands.length() 
-		+ ", actually wrote " + n);
+    private void write(ByteBuffer buffer) throws IOException {
+	while (buffer.hasRemaining()) {
+	    socketChannel.write(buffer);
 	}
     }
 
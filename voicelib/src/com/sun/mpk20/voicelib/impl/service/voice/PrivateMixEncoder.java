@@ -0,0 +1,129 @@
+/*
+ * Copyright 2007 Sun Microsystems, Inc.
+ *
+ * This file is part of jVoiceBridge.
+ *
+ * jVoiceBridge is free software: you can redistribute it and/or modify 
+ * it under the terms of the GNU General Public License version 2 as 
+ * published by the Free Software Foundation and distributed hereunder 
+ * to you.
+ *
+ * jVoiceBridge is distributed in the hope that it will be useful, 
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Sun designates this particular file as subject to the "Classpath"
+ * exception as provided by Sun in the License file that accompanied this 
+ * code. 
+ */
+
+package com.sun.mpk20.voicelib.impl.service.voice;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+
+import java.nio.ByteBuffer;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+
+/**
+ * Encodes private mixes as binary frames for the bridge.
+ *
+ * The format is described in com.sun.voip.server.PrivateMixDecoder.
+ * Each call id is sent once and then referred to by a number.
+ * Spatial values and volume are sent as thousandths in a short.
+ *
+ * One encoder is used for each connection to a bridge.  The caller
+ * must write the frames in the order they were encoded.
+ */
+class PrivateMixEncoder {
+
+    public static final String NEGOTIATE = "binaryPrivateMixes=1";
+
+    private static final int FRAME = 1;
+
+    private static final double SCALE = 1000.;
+
+    private static final int MAX_CALL_IDS = 65536;
+
+    private HashMap<String, Integer> callIds = new HashMap<String, Integer>();
+
+    private ByteArrayOutputStream bytes = new ByteArrayOutputStream(4096);
+
+    private DataOutputStream output = new DataOutputStream(bytes);
+
+    /*
+     * Encode one frame with all of the mixes.
+     */
+    public ByteBuffer encode(ArrayList<Work> mixes) throws IOException {
+	if (callIds.size() + 2 * mixes.size() > MAX_CALL_IDS) {
+	    /*
+	     * Start numbering over.  The bridge replaces old numbers
+	     * as they are defined again.
+	     */
+	    callIds.clear();
+	}
+
+	ArrayList<String> newCallIds = new ArrayList<String>();
+
+	for (Work work : mixes) {
+	    define(work.targetCallId, newCallIds);
+	    define(work.fromCallId, newCallIds);
+	}
+
+	bytes.reset();
+
+	output.writeByte(FRAME);
+	output.writeShort(newCallIds.size());
+
+	for (String callId : newCallIds) {
+	    output.writeShort(callIds.get(callId));
+	    output.writeUTF(callId);
+	}
+
+	output.writeInt(mixes.size());
+
+	for (Work work : mixes) {
+	    output.writeShort(callIds.get(work.targetCallId));
+	    output.writeShort(callIds.get(work.fromCallId));
+
+	    for (int i = 0; i < 4; i++) {
+		output.writeShort(quantize(work.privateMixParameters[i]));
+	    }
+	}
+
+	output.flush();
+
+	return ByteBuffer.wrap(bytes.toByteArray());
+    }
+
+    private void define(String callId, ArrayList<String> newCallIds) {
+	if (callIds.containsKey(callId)) {
+	    return;
+	}
+
+	callIds.put(callId, callIds.size());
+	newCallIds.add(callId);
+    }
+
+    private int quantize(double value) {
+	long v = Math.round(value * SCALE);
+
+	if (v > Short.MAX_VALUE) {
+	    return Short.MAX_VALUE;
+	}
+
+	if (v < Short.MIN_VALUE) {
+	    return Short.MIN_VALUE;
+	}
+
+	return (int) v;
+    }
+
+}
@@ -0,0 +1,337 @@
+/*
+ * Copyright 2007 Sun Microsystems, Inc.
+ *
+ * This file is part of jVoiceBridge.
+ *
+ * jVoiceBridge is free software: you can redistribute it and/or modify 
+ * it under the terms of the GNU General Public License version 2 as 
+ * published by the Free Software Foundation and distributed hereunder 
+ * to you.
+ *
+ * jVoiceBridge is distributed in the hope that it will be useful, 
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Sun designates this particular file as subject to the "Classpath"
+ * exception as provided by Sun in the License file that accompanied this 
+ * code. 
+ */
+
+package com.sun.mpk20.voicelib.impl.service.voice;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.Timer;
+import java.util.TimerTask;
+
+import java.util.concurrent.ConcurrentHashMap;
+
+import java.util.logging.Logger;
+
+/**
+ * Drops private mix updates the listener wouldn't notice and limits
+ * how often the mix for a pair of calls is sent.
+ *
+ * The parameters last sent for each pair are remembered.  An update
+ * is sent only if the volume or one of the spatial values differs from
+ * the last sent value by at least a threshold, or if the call becomes
+ * audible or inaudible.  Comparing with what was sent rather than the
+ * previous update means small changes can't add up unnoticed.
+ *
+ * A significant update which comes less than the minimum interval after
+ * the last one sent for the pair is held.  Later updates replace it and
+ * the newest one is sent when the interval is up, so the bridge always
+ * ends up with the final mix.
+ *
+ * The thresholds and interval are set with the properties
+ *
+ *	com.sun.sgs.impl.service.voice.pmx.volume.threshold
+ *	com.sun.sgs.impl.service.voice.pmx.pan.threshold
+ *	com.sun.sgs.impl.service.voice.pmx.min.interval (milliseconds)
+ *
+ * Setting all three to 0 sends every update.
+ */
+class PrivateMixFilter {
+
+    private static final Logger logger = Logger.getLogger(
+	PrivateMixFilter.class.getName());
+
+    private static double volumeThreshold = .02;
+
+    private static double panThreshold = .05;
+
+    private static long minInterval = 100;
+
+    private PrivateMixManager privateMixManager;
+
+    /*
+     * Last private mix sent for each pair, by fromCallId and targetCallId
+     */
+    private ConcurrentHashMap<String, ConcurrentHashMap<String, PairState>> 
+	pairs = new ConcurrentHashMap<String, 
+	ConcurrentHashMap<String, PairState>>();
+
+    /*
+     * Pairs with an update waiting for the interval to end
+     */
+    private ArrayList<PairState> delayedPairs = new ArrayList<PairState>();
+
+    private Timer timer;
+
+    /* Statistics */
+    private long received;
+    private long sent;
+    private long suppressed;
+    private long delayed;
+    private long flushed;
+
+    static {
+	volumeThreshold = getProperty(
+	    "com.sun.sgs.impl.service.voice.pmx.volume.threshold",
+	    volumeThreshold);
+
+	panThreshold = getProperty(
+	    "com.sun.sgs.impl.service.voice.pmx.pan.threshold",
+	    panThreshold);
+
+	minInterval = (long) getProperty(
+	    "com.sun.sgs.impl.service.voice.pmx.min.interval",
+	    minInterval);
+
+	logger.info("Private mix volume threshold " + volumeThreshold
+	    + ", pan threshold " + panThreshold + ", min interval "
+	    + minInterval + " ms");
+    }
+
+    private static double getProperty(String property, double defaultValue) {
+	String s = System.getProperty(property);
+
+	if (s == null) {
+	    return defaultValue;
+	}
+
+	try {
+	    return Double.parseDouble(s);
+	} catch (NumberFormatException e) {
+	    logger.info("Invalid value for " + property + ":  " + s
+		+ ".  Defaulting to " + defaultValue);
+	    return defaultValue;
+	}
+    }
+
+    public PrivateMixFilter(PrivateMixManager privateMixManager) {
+	this.privateMixManager = privateMixManager;
+
+	if (minInterval <= 0) {
+	    return;
+	}
+
+	long period = Math.max(minInterval / 2, 10);
+
+	timer = new Timer("PrivateMixFilter", true);
+
+	timer.schedule(new TimerTask() {
+	    public void run() {
+		flush();
+	    }}, period, period);
+    }
+
+    /*
+     * Returns true if the update should be sent now.
+     */
+    public boolean accept(Work work) {
+	PairState state = getPairState(work.fromCallId, work.targetCallId);
+
+	long now = System.currentTimeMillis();
+
+	boolean accept = false;
+	boolean isSuppressed = false;
+	boolean isDelayed = false;
+
+	synchronized (state) {
+	    if (state.sent != null && isSignificant(state.sent, 
+		    work.privateMixParameters) == false) {
+
+		/*
+		 * The newest mix is close enough to the one sent.
+		 * Anything held back is no longer needed.
+		 */
+		state.pending = null;
+		isSuppressed = true;
+	    } else if (state.sent != null && now - state.sentTime < minInterval) {
+		state.pending = work;
+
+		if (state.delayed == false) {
+		    state.delayed = true;
+		    isDelayed = true;
+		}
+	    } else {
+		state.pending = null;
+		state.sent = work.privateMixParameters;
+		state.sentTime = now;
+		accept = true;
+	    }
+	}
+
+	if (isDelayed) {
+	    synchronized (delayedPairs) {
+		delayedPairs.add(state);
+	    }
+	}
+
+	synchronized (this) {
+	    received++;
+
+	    if (accept) {
+		sent++;
+	    } else if (isSuppressed) {
+		suppressed++;
+	    } else {
+		delayed++;
+	    }
+
+	    if (received % 10000 == 0) {
+		logger.info(toString());
+	    }
+	}
+
+	return accept;
+    }
+
+    private boolean isSignificant(double[] sent, double[] privateMixParameters) {
+	boolean wasSilent = sent[3] == 0;
+	boolean isSilent = privateMixParameters[3] == 0;
+
+	if (wasSilent && isSilent) {
+	    return false;	// where a silent call is doesn't matter
+	}
+
+	if (wasSilent != isSilent) {
+	    return true;
+	}
+
+	if (Math.abs(privateMixParameters[3] - sent[3]) >= volumeThreshold) {
+	    return true;
+	}
+
+	for (int i = 0; i < 3; i++) {
+	    if (Math.abs(privateMixParameters[i] - sent[i]) >= panThreshold) {
+		return true;
+	    }
+	}
+
+	return false;
+    }
+
+    /*
+     * Send held updates whose interval is up.
+     */
+    private void flush() {
+	long now = System.currentTimeMillis();
+
+	ArrayList<Work> mixes = new ArrayList<Work>();
+
+	synchronized (delayedPairs) {
+	    Iterator<PairState> iterator = delayedPairs.iterator();
+
+	    while (iterator.hasNext()) {
+		PairState state = iterator.next();
+
+		synchronized (state) {
+		    if (state.pending != null) {
+			if (now - state.sentTime < minInterval) {
+			    continue;
+			}
+
+			mixes.add(state.pending);
+
+			state.sent = state.pending.privateMixParameters;
+			state.sentTime = now;
+			state.pending = null;
+		    }
+
+		    state.delayed = false;
+		    iterator.remove();
+		}
+	    }
+	}
+
+	if (mixes.size() == 0) {
+	    return;
+	}
+
+	synchronized (this) {
+	    flushed += mixes.size();
+	}
+
+	for (Work work : mixes) {
+	    privateMixManager.queuePrivateMix(work);
+	}
+
+	privateMixManager.commit();
+    }
+
+    private PairState getPairState(String fromCallId, String targetCallId) {
+	ConcurrentHashMap<String, PairState> targets = pairs.get(fromCallId);
+
+	if (targets == null) {
+	    targets = new ConcurrentHashMap<String, PairState>();
+
+	    ConcurrentHashMap<String, PairState> t = 
+		pairs.putIfAbsent(fromCallId, targets);
+
+	    if (t != null) {
+		targets = t;
+	    }
+	}
+
+	PairState state = targets.get(targetCallId);
+
+	if (state == null) {
+	    state = new PairState();
+
+	    PairState s = targets.putIfAbsent(targetCallId, state);
+
+	    if (s != null) {
+		state = s;
+	    }
+	}
+
+	return state;
+    }
+
+    /*
+     * Forget what was sent for a call.  The next update
+     * for every pair with the call will be sent.
+     */
+    public void reset(String callId) {
+	pairs.remove(callId);
+
+	for (ConcurrentHashMap<String, PairState> targets : pairs.values()) {
+	    targets.remove(callId);
+	}
+    }
+
+    public synchronized String toString() {
+	if (received == 0) {
+	    return "Private mixes:  none received";
+	}
+
+	return "Private mixes:  received " + received + ", sent " + sent 
+	    + ", suppressed " + suppressed + " (" 
+	    + Math.round(suppressed * 1000. / received) / 10. 
+	    + "%), delayed " + delayed + ", sent after delay " + flushed;
+    }
+
+    static class PairState {
+	public double[] sent;
+	public long sentTime;
+	public Work pending;
+	public boolean delayed;
+    }
+
+}
@@ -73,11 +73,15 @@ public class PrivateMixManager extends Thread {
     private CallEnder callEnder;
 
     private BridgeManager bridgeManager;
+
+    private PrivateMixFilter privateMixFilter;
   
     public PrivateMixManager(BridgeManager bridgeManager) {
 
 	this.bridgeManager = bridgeManager;
 
+	privateMixFilter = new PrivateMixFilter(this);
+
 	callEnder = new CallEnder();
 
 	int n = Runtime.getRuntime().availableProcessors(); 
@@ -185,8 +189,8 @@ public class PrivateMixManager extends Thread {
 	    }
 	}
 
-	HashMap<BridgeConnection, ArrayList<String>>  bridgeMap =
-	    new HashMap<BridgeConnection, ArrayList<String>>();
+	HashMap<BridgeConnection, ArrayList<Work>>  bridgeMap =
+	    new HashMap<BridgeConnection, ArrayList<Work>>();
 
 	private void processPrivateMixes(ConcurrentHashMap<String, Work> pm) {
 	    ArrayList<Work> mixList = new ArrayList<Work>(pm.values());
@@ -271,16 +275,11 @@ public class PrivateMixManager extends Thread {
             while (it.hasNext()) {
                 BridgeConnection bc = it.next();
 
-                ArrayList<String> commands = bridgeMap.get(bc);
-
-		String s = "";
-
-		for (int i = 0; i < commands.size(); i++) {
-		    s += commands.get(i) + "\n";
-		}
-
+		/*
+		 * All of the mixes for a bridge are sent in one frame.
+		 */
 		try {
-		    bc.setPrivateMix(s);
+		    bc.setPrivateMixes(bridgeMap.get(bc));
 		} catch (IOException e) {
 		    logger.info("Unable to send private mix command to "
 			+ bc + " " + e.getMessage());
@@ -294,21 +293,20 @@ public class PrivateMixManager extends Thread {
 	        String fromCallId, double[] privateMixParameters) 
 		throws IOException {
 
-	    ArrayList<String> commands = bridgeMap.get(bc);
+	    ArrayList<Work> mixes = bridgeMap.get(bc);
 
-	    if (commands == null) {
-		commands = new ArrayList<String>();
+	    if (mixes == null) {
+		mixes = new ArrayList<Work>();
 
-		bridgeMap.put(bc, commands);
+		bridgeMap.put(bc, mixes);
 	    }
 
-	    String s = "pmx=" +  privateMixParameters[0] + ":"
-                +  privateMixParameters[1] + ":"
-                +  privateMixParameters[2] + ":"
-                +  privateMixParameters[3] + ":"
-                + fromCallId + ":" + targetCallId;
+	    Work work = new Work(Work.SETPRIVATEMIX, targetCallId);
+
+	    work.fromCallId = fromCallId;
+	    work.privateMixParameters = privateMixParameters;
 
-	    commands.add(s);
+	    mixes.add(work);
 	}
 
         /*
@@ -679,6 +677,12 @@ public class PrivateMixManager extends Thread {
 
 	privateMixMap.put(callId, new ConcurrentHashMap<String, Work>());
 
+	/*
+	 * The call may have moved to another bridge which
+	 * doesn't have any of the mixes.
+	 */
+	privateMixFilter.reset(callId);
+
 	DeferredPrivateMix dpm = deferredPrivateMixes.remove(callId);
 
 	if (dpm != null && deferredPrivateMixes.size() > 0) {
@@ -708,6 +712,14 @@ public class PrivateMixManager extends Thread {
     private boolean privateMixSet;
 
     public void setPrivateMix(Work work) {
+	if (privateMixFilter.accept(work) == false) {
+	    return;	// not noticeable or sent later
+	}
+
+	queuePrivateMix(work);
+    }
+
+    void queuePrivateMix(Work work) {
 	ConcurrentHashMap<String, Work> mixMap = 
 	    privateMixMap.get(work.fromCallId);
 
@@ -781,6 +793,8 @@ public class PrivateMixManager extends Thread {
         
 	deferredPrivateMixes.remove(callId);
 
+	privateMixFilter.reset(callId);
+
 	/*
 	 * There could be calls on many machines starting
 	 * with V-<callId>.  We need to end all of them because
@@ -859,6 +873,8 @@ public class PrivateMixManager extends Thread {
     }
 
     public void dump() {
+	logger.info(privateMixFilter.toString());
+
 	logger.info("Virtual call map " + virtualCallMap.size());
 
 	Enumeration<String> keys = virtualCallMap.keys();
@@ -26,6 +26,9 @@ package com.sun.voip.server;
 import com.sun.voip.BridgeVersion;
 import com.sun.voip.FreeTTSClient;
 import com.sun.voip.Logger;
+import com.sun.voip.MetricsRegistry;
+import com.sun.voip.MetricsServer;
+import com.sun.voip.RecordingService;
 import com.sun.voip.NetworkTester;
 
 import java.io.File;
@@ -33,6 +36,8 @@ import java.io.DataOutputStream;
 import java.io.IOException;
 import java.io.InterruptedIOException;
 
+import java.lang.management.ManagementFactory;
+
 import java.net.DatagramPacket;
 import java.net.DatagramSocket;
 import java.net.InetAddress;
@@ -280,6 +285,8 @@ public class Bridge extends Thread {
             Logger.println("Outside line prefix set to '" + outsideLinePrefix + "'");
         } 
 
+	registerMetrics();
+
 	Logger.println("");
 	Logger.println("The Bridge is initialized and Ready");
 	Logger.println("");
@@ -287,6 +294,49 @@ public class Bridge extends Thread {
         start();
     }
     
+    /*
+     * Gauges are read when metrics are requested.  None of these lock.
+     */
+    private void registerMetrics() {
+	MetricsRegistry.gauge("conferences", "Number of conferences",
+	    new MetricsRegistry.Gauge() {
+		public long getValue() {
+		    return ConferenceManager.getNumberOfConferences();
+		}
+	    });
+
+	MetricsRegistry.gauge("members", "Number of conference members",
+	    new MetricsRegistry.Gauge() {
+		public long getValue() {
+		    return ConferenceManager.getTotalMembers();
+		}
+	    });
+
+	MetricsRegistry.gauge("threads", "Number of live threads",
+	    new MetricsRegistry.Gauge() {
+		public long getValue() {
+		    return ManagementFactory.getThreadMXBean().getThreadCount();
+		}
+	    });
+
+	MetricsRegistry.gauge("recordings", "Number of active recordings",
+	    new MetricsRegistry.Gauge() {
+		public long getValue() {
+		    return RecordingService.getActiveRecordings();
+		}
+	    });
+
+	MetricsRegistry.gauge("sender_tick_lateness_p99_us",
+	    "99th percentile of how late the sender tick is",
+	    new MetricsRegistry.Gauge() {
+		public long getValue() {
+		    return (long) (ConferenceSender.getTickLateness() * 1000);
+		}
+	    });
+
+	MetricsServer.start();
+    }
+
     public static void initAddresses() throws IOException {
         try {
             String localHostAddress =
@@ -43,8 +43,12 @@ import java.text.ParseException;
 
 /**
  * Common code for handling incoming outgoing calls.
+ *
+ * Call handlers don't have their own threads.  run() sets up the call
+ * on a CallSetupExecutor thread and returns.  The rest of the call is
+ * driven by call events.
  */
-public abstract class CallHandler extends Thread {
+public abstract class CallHandler implements Runnable {
     protected ConferenceManager conferenceManager;
     protected ConferenceMember member;
     protected MemberSender memberSender;
@@ -89,6 +93,13 @@ public abstract class CallHandler extends Thread {
      */
     protected CallHandler otherCall;
 
+    /*
+     * Start setting up the call.
+     */
+    public void start() {
+	CallSetupExecutor.execute(this);
+    }
+
     public void suppressStatus(boolean suppressStatus) {
 	this.suppressStatus = suppressStatus;
     }
@@ -28,15 +28,30 @@ import com.sun.voip.CallEvent;
 import com.sun.voip.CallState;
 import com.sun.voip.Logger;
 
-public class CallMigrator extends Thread {
+/*
+ * Migrate a call.  The new call is placed on a call setup thread and
+ * the migration is finished when the new call is established.
+ */
+public class CallMigrator implements Runnable, 
+	OutgoingCallHandler.CallProgressListener {
+
     RequestHandler requestHandler;
     CallParticipant cp;
 
+    private CallHandler previousCall;
+    private CallParticipant previousCp;
+    private String previousEndTreatment;
+    private String previousLeaveTreatment;
+
     public CallMigrator(RequestHandler requestHandler, CallParticipant cp) {
 	this.requestHandler = requestHandler;
 	this.cp = cp;
     }
 
+    public void start() {
+	CallSetupExecutor.execute(this);
+    }
+
     /*
      * Migrate a call.  Set up the new call, join the conference and 
      * terminate the original call.
@@ -54,7 +69,7 @@ public class CallMigrator extends Thread {
 	     callHandler.cancelRequest("new migration requested");
 	}
 
-	CallHandler previousCall = CallHandler.findCall(callId);
+	previousCall = CallHandler.findCall(callId);
 
 	if (previousCall == null) {
 	    if (cp.getConferenceId() == null) {
@@ -82,10 +97,10 @@ if (false) {
 	}
 }
 
-	CallParticipant previousCp = previousCall.getCallParticipant();
+	previousCp = previousCall.getCallParticipant();
 
-	String previousEndTreatment = previousCp.getCallEndTreatment();
-        String previousLeaveTreatment = previousCp.getConferenceLeaveTreatment();
+	previousEndTreatment = previousCp.getCallEndTreatment();
+        previousLeaveTreatment = previousCp.getConferenceLeaveTreatment();
 
 	previousCp.setCallEndTreatment(null);
 	previousCp.setConferenceLeaveTreatment(null);
@@ -157,52 +172,62 @@ if (false) {
 
 	    previousCall.getMember().migrating();
 
-	    synchronized(this) {
-	        newCall.suppressStatus = true;
+	    newCall.suppressStatus = true;
+
+	    newCall.whenEstablished(this);
+	    newCall.start();		// call new party
 
-	        newCall.start();		// call new party
+	    return;	// finished in callProgress() when call is established
+	}
 
-	        /*
-	         * Wait for call to be established
-	         */
-	        if (newCall.waitForCallToBeEstablished() == false) {
-		    String reason = newCall.getReasonCallEnded();
+	migrated();
+    }
 
-		    Logger.println("Migration failed: " + reason);
+    /*
+     * The new call is established or it ended.
+     */
+    public void callProgress(OutgoingCallHandler newCall, 
+	    boolean established) {
 
-		    previousCp.setConferenceLeaveTreatment(previousLeaveTreatment);
-		    previousCp.setCallEndTreatment(previousEndTreatment);
-		    CallEvent callEvent = new CallEvent(CallEvent.STATE_CHANGED);
+	if (established == false) {
+	    String reason = newCall.getReasonCallEnded();
 
-		    callEvent.setCallState(new CallState(CallState.ENDED));
+	    Logger.println("Migration failed: " + reason);
 
-		    callEvent.setInfo("Migration failed: " + reason);
+	    previousCp.setConferenceLeaveTreatment(previousLeaveTreatment);
+	    previousCp.setCallEndTreatment(previousEndTreatment);
+	    CallEvent callEvent = new CallEvent(CallEvent.STATE_CHANGED);
 
-		    newCall.suppressStatus = false;
-		    newCall.sendCallEventNotification(callEvent);
+	    callEvent.setCallState(new CallState(CallState.ENDED));
 
-		    previousCall.suppressStatus = false;
+	    callEvent.setInfo("Migration failed: " + reason);
 
-		    if (!previousCall.isCallEstablished()) {
-	 	        previousCall.sendCallEventNotification(callEvent);
-		    }
+	    newCall.suppressStatus = false;
+	    newCall.sendCallEventNotification(callEvent);
 
-		    //Logger.logLevel = logLevel;
-	            return;
-	        }
+	    previousCall.suppressStatus = false;
 
-	        newCall.suppressStatus = false;
+	    if (!previousCall.isCallEstablished()) {
+	        previousCall.sendCallEventNotification(callEvent);
 	    }
 
-	    if (previousCall.isCallEstablished() == true) {
-		Logger.println("migrate mix descriptors for " + previousCall);
-	        newCall.getMember().migrate(previousCall.getMember());
-	    } else {
-		Logger.println("migrate:  previous call is not established " 
-		    + previousCall);
-	    }
+	    return;
+	}
+
+	newCall.suppressStatus = false;
+
+	if (previousCall.isCallEstablished() == true) {
+	    Logger.println("migrate mix descriptors for " + previousCall);
+	    newCall.getMember().migrate(previousCall.getMember());
+	} else {
+	    Logger.println("migrate:  previous call is not established " 
+		+ previousCall);
 	}
 
+	migrated();
+    }
+
+    private void migrated() {
 	Logger.println("Call " + previousCp
 	    + " migrated to " + cp.getPhoneNumber());
 
@@ -237,30 +262,33 @@ if (false) {
     }
 
     private void migrateWithNoPreviousCall(RequestHandler requestHandler, 
-	    CallParticipant cp) {
+	    final CallParticipant cp) {
 
         cp.setPhoneNumber(cp.getSecondPartyNumber());
 	
 	OutgoingCallHandler callHandler = new OutgoingCallHandler(requestHandler, cp);
 
-	synchronized(this) {
-	    callHandler.start();		// call new party
+	callHandler.whenEstablished(
+		new OutgoingCallHandler.CallProgressListener() {
 
-	    /*
-	     * Wait for call to be established
-	     */
-	    if (callHandler.waitForCallToBeEstablished() == false) {
-	        return;
-	    }
-	}
+	    public void callProgress(OutgoingCallHandler callHandler,
+		    boolean established) {
 
-	cp.setMigrateCall(false);	// call is no longer migrating
+		if (established == false) {
+		    return;
+		}
 
-	CallEvent callEvent = new CallEvent(CallEvent.MIGRATED);
+		cp.setMigrateCall(false);	// call is no longer migrating
 
-	callEvent.setInfo("migrated to " + cp);
+		CallEvent callEvent = new CallEvent(CallEvent.MIGRATED);
+
+		callEvent.setInfo("migrated to " + cp);
+
+		callHandler.sendCallEventNotification(callEvent);
+	    }
+	});
 
-	callHandler.sendCallEventNotification(callEvent);
+	callHandler.start();		// call new party
     }
 
     /*
@@ -39,6 +39,8 @@ import java.text.ParseException;
 
 import java.util.NoSuchElementException;
 
+import java.util.concurrent.ScheduledFuture;
+
 /**
  * Super class with code common to both Sip User Agents and 
  * non-SIP Agents.
@@ -59,7 +61,7 @@ public class CallSetupAgent implements TreatmentDoneListener, Runnable {
     protected CallHandler callHandler;
     protected CallParticipant cp;
 
-    private Thread inviteTimeoutThread;
+    private ScheduledFuture inviteTimeout;
     private static int defaultCallAnswerTimeout = 90;  // 90 seconds
 
     /**
@@ -74,21 +76,10 @@ public class CallSetupAgent implements TreatmentDoneListener, Runnable {
     }
     
     /*
-     * INVITE timeout thread, handle call not answered
+     * INVITE timeout, handle call not answered
      */
     public void run() {
-        int timeout = cp.getCallAnswerTimeout();
-
-        if (timeout == 0) {
-            timeout = defaultCallAnswerTimeout;
-        }
-
-        try {
-            Thread.sleep(timeout * 1000);
-        } catch (InterruptedException e) {
-        }
-
-	inviteTimeoutThread = null;
+	inviteTimeout = null;
 
         if (reasonCallTerminated == null && getState() < CallState.ANSWERED) {
 	    Logger.println("Call answer time out " + cp);
@@ -177,9 +168,14 @@ public class CallSetupAgent implements TreatmentDoneListener, Runnable {
             }
 	}
 
-	if (inviteTimeoutThread == null && state == CallState.INVITED) {
-	    inviteTimeoutThread = new Thread(this);
-            inviteTimeoutThread.start();        // start invite timeout thread
+	if (inviteTimeout == null && state == CallState.INVITED) {
+            int timeout = cp.getCallAnswerTimeout();
+
+            if (timeout == 0) {
+                timeout = defaultCallAnswerTimeout;
+            }
+
+	    inviteTimeout = CallSetupExecutor.schedule(this, timeout * 1000);
 	}
     }
 
@@ -415,9 +411,9 @@ public class CallSetupAgent implements TreatmentDoneListener, Runnable {
 
 	reasonCallTerminated = s;
 
-        if (inviteTimeoutThread != null) {
-            inviteTimeoutThread.interrupt();
-            inviteTimeoutThread = null;
+        if (inviteTimeout != null) {
+            CallSetupExecutor.cancel(inviteTimeout);
+            inviteTimeout = null;
         }
 
 	if (Logger.logLevel >= Logger.LOG_INFO) {
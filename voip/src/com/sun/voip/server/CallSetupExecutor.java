@@ -0,0 +1,203 @@
+/*
+ * Copyright 2007 Sun Microsystems, Inc.
+ *
+ * This file is part of jVoiceBridge.
+ *
+ * jVoiceBridge is free software: you can redistribute it and/or modify 
+ * it under the terms of the GNU General Public License version 2 as 
+ * published by the Free Software Foundation and distributed hereunder 
+ * to you.
+ *
+ * jVoiceBridge is distributed in the hope that it will be useful, 
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Sun designates this particular file as subject to the "Classpath"
+ * exception as provided by Sun in the License file that accompanied this 
+ * code. 
+ */
+
+package com.sun.voip.server;
+
+import com.sun.voip.Logger;
+
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Shared threads which run call setup and teardown.
+ *
+ * Each call used to have its own thread which placed the call and then
+ * waited until the call ended.  Two party calls, call migration,
+ * invite timeouts and transfer timeouts each had another thread, most
+ * of which were asleep.  A bridge with thousands of calls had thousands
+ * of threads.
+ *
+ * Now call handlers are driven by call state changes.  Placing a call,
+ * handling a state change and tearing down a call are short tasks run
+ * by a bounded pool of threads.  Timeouts are scheduled on one timer
+ * thread which hands the work to the pool so a slow task can't delay
+ * other timeouts.  The number of threads doesn't grow with the number
+ * of calls.
+ */
+public class CallSetupExecutor {
+    private static final String CALL_SETUP_THREADS_PROPERTY =
+	"com.sun.voip.server.CALL_SETUP_THREADS";
+
+    private static int callSetupThreads = 16;
+
+    /*
+     * Cancelled timeouts stay in the timer's queue until they expire
+     * so purge them after this many are cancelled.
+     */
+    private static final int PURGE_INTERVAL = 64;
+
+    private static ThreadPoolExecutor executor;
+
+    private static ScheduledThreadPoolExecutor timer;
+
+    /* Statistics */
+    private static long tasksSubmitted;
+    private static long timersScheduled;
+    private static int timersCancelled;
+    private static int maxQueued;
+
+    static {
+	String s = System.getProperty(CALL_SETUP_THREADS_PROPERTY);
+
+	if (s != null) {
+	    try {
+		callSetupThreads = Integer.parseInt(s);
+	    } catch (NumberFormatException e) {
+		Logger.println("Invalid number of call setup threads:  " + s);
+	    }
+	}
+
+	if (callSetupThreads < 1) {
+	    callSetupThreads = 1;
+	}
+
+	/*
+	 * Threads are started as tasks are submitted and then stay
+	 * in the pool.
+	 */
+	executor = new ThreadPoolExecutor(callSetupThreads, callSetupThreads,
+	    60, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(),
+	    new NamedThreadFactory("CallSetup"));
+
+	timer = new ScheduledThreadPoolExecutor(1,
+	    new NamedThreadFactory("CallTimer"));
+    }
+
+    private CallSetupExecutor() {
+    }
+
+    public static void setCallSetupThreads(int callSetupThreads) {
+	if (callSetupThreads < 1) {
+	    callSetupThreads = 1;
+	}
+
+	synchronized (executor) {
+	    if (callSetupThreads > executor.getMaximumPoolSize()) {
+		executor.setMaximumPoolSize(callSetupThreads);
+		executor.setCorePoolSize(callSetupThreads);
+	    } else {
+		executor.setCorePoolSize(callSetupThreads);
+		executor.setMaximumPoolSize(callSetupThreads);
+	    }
+
+	    CallSetupExecutor.callSetupThreads = callSetupThreads;
+	}
+    }
+
+    public static int getCallSetupThreads() {
+	return callSetupThreads;
+    }
+
+    /*
+     * Run a call setup or teardown task.  The task must not wait
+     * for the call to change state.
+     */
+    public static void execute(Runnable task) {
+	executor.execute(task);
+
+	int queued = executor.getQueue().size();
+
+	synchronized (CallSetupExecutor.class) {
+	    tasksSubmitted++;
+
+	    if (queued > maxQueued) {
+		maxQueued = queued;
+	    }
+	}
+    }
+
+    /*
+     * Run a task on the pool after a delay in milliseconds.
+     * The returned future can be used to cancel the timeout.
+     */
+    public static ScheduledFuture schedule(final Runnable task, long delay) {
+	synchronized (CallSetupExecutor.class) {
+	    timersScheduled++;
+	}
+
+	return timer.schedule(new Runnable() {
+	    public void run() {
+		execute(task);
+	    }
+	}, delay, TimeUnit.MILLISECONDS);
+    }
+
+    /*
+     * Cancel a timeout returned by schedule().
+     */
+    public static void cancel(ScheduledFuture timeout) {
+	timeout.cancel(false);
+
+	synchronized (CallSetupExecutor.class) {
+	    if ((++timersCancelled % PURGE_INTERVAL) != 0) {
+		return;
+	    }
+	}
+
+	timer.purge();
+    }
+
+    public static synchronized void printStatistics() {
+	if (tasksSubmitted == 0) {
+	    return;
+	}
+
+	Logger.writeFile("Call setup:  " + executor.getPoolSize()
+	    + " threads, " + executor.getActiveCount() + " active, "
+	    + tasksSubmitted + " tasks, max queued " + maxQueued
+	    + ", " + timersScheduled + " timeouts scheduled, "
+	    + timersCancelled + " cancelled, "
+	    + timer.getQueue().size() + " pending");
+    }
+
+    private static class NamedThreadFactory implements ThreadFactory {
+	private String name;
+	private int n;
+
+	public NamedThreadFactory(String name) {
+	    this.name = name;
+	}
+
+	public synchronized Thread newThread(Runnable r) {
+	    Thread thread = new Thread(r, name + "-" + n++);
+
+	    thread.setDaemon(true);
+	    return thread;
+	}
+    }
+
+}
@@ -0,0 +1,123 @@
+/*
+ * Copyright 2007 Sun Microsystems, Inc.
+ *
+ * This file is part of jVoiceBridge.
+ *
+ * jVoiceBridge is free software: you can redistribute it and/or modify 
+ * it under the terms of the GNU General Public License version 2 as 
+ * published by the Free Software Foundation and distributed hereunder 
+ * to you.
+ *
+ * jVoiceBridge is distributed in the hope that it will be useful, 
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Sun designates this particular file as subject to the "Classpath"
+ * exception as provided by Sun in the License file that accompanied this 
+ * code. 
+ */
+
+package com.sun.voip.server;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Time to parse and execute each control command.
+ *
+ * Commands are counted by the name the client used, so a command
+ * sent with its long and short names shows up twice.  Requests which
+ * fail are counted as "(failed)" so garbage can't fill the table.
+ */
+class CommandTimer {
+
+    public static final String FAILED = "(failed)";
+
+    private static ConcurrentHashMap<String, CommandTime> commandTimes =
+	new ConcurrentHashMap<String, CommandTime>();
+
+    private CommandTimer() {
+    }
+
+    public static void record(String command, long nanos) {
+	CommandTime commandTime = commandTimes.get(command);
+
+	if (commandTime == null) {
+	    commandTime = new CommandTime(command);
+
+	    CommandTime c = commandTimes.putIfAbsent(command, commandTime);
+
+	    if (c != null) {
+		commandTime = c;
+	    }
+	}
+
+	commandTime.record(nanos);
+    }
+
+    /*
+     * One line per command, most total time first.
+     */
+    public static String getCommandTimes() {
+	ArrayList<CommandTime> times = 
+	    new ArrayList<CommandTime>(commandTimes.values());
+
+	Collections.sort(times, new Comparator<CommandTime>() {
+	    public int compare(CommandTime c1, CommandTime c2) {
+		long t1 = c1.getTotalNanos();
+		long t2 = c2.getTotalNanos();
+
+		return t1 > t2 ? -1 : (t1 < t2 ? 1 : 0);
+	    }
+	});
+
+	String s = "Command                   Count   Avg us   Max us\n";
+
+	for (CommandTime commandTime : times) {
+	    s += commandTime + "\n";
+	}
+
+	return s;
+    }
+
+    public static void reset() {
+	commandTimes.clear();
+    }
+
+    static class CommandTime {
+	private String command;
+	private long count;
+	private long totalNanos;
+	private long maxNanos;
+
+	public CommandTime(String command) {
+	    this.command = command;
+	}
+
+	public synchronized void record(long nanos) {
+	    count++;
+	    totalNanos += nanos;
+
+	    if (nanos > maxNanos) {
+		maxNanos = nanos;
+	    }
+	}
+
+	public synchronized long getTotalNanos() {
+	    return totalNanos;
+	}
+
+	public synchronized String toString() {
+	    return String.format("%-20s %10d %8.1f %8.1f", command, count,
+		totalNanos / 1000. / count, maxNanos / 1000.);
+	}
+    }
+
+}
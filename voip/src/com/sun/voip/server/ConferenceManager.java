@@ -28,6 +28,7 @@ import com.sun.voip.ConferenceEvent;
 import com.sun.voip.DistributedBridge;
 import com.sun.voip.Logger;
 import com.sun.voip.MediaInfo;
+import com.sun.voip.RecordingService;
 import com.sun.voip.RtpPacket;
 import com.sun.voip.SdpManager;
 import com.sun.voip.TreatmentManager;
@@ -44,6 +45,8 @@ import java.net.UnknownHostException;
 import java.util.NoSuchElementException;
 import java.util.ArrayList;
 
+import java.util.concurrent.atomic.AtomicBoolean;
+
 /**
  * Manage a conference consisting of members.
  * Each conference has a unique String identifying it.
@@ -72,8 +75,14 @@ public class ConferenceManager {
 
     private ConferenceSender   conferenceSender;      // sender thread
     private WGManager	       wgManager;	      // whisper group manager
+    private MixPlanner	       mixPlanner;	      // shared mixes
+    private EncodedAudioCache  encodedAudioCache;  // shared payloads
+    private TalkerSelector     talkerSelector;	      // loudest talkers
     private ConferenceReceiver conferenceReceiver;    // receiver thread
 
+    private volatile ConferenceTopology topology;     // sender's snapshot
+    private AtomicBoolean      topologyChanged = new AtomicBoolean();
+
     private boolean	       permanent = false;     
 
     private static int	       totalMembers = 0;
@@ -112,6 +121,12 @@ public class ConferenceManager {
 
 	memberList = new ArrayList();
 
+	mixPlanner = new MixPlanner(conferenceId);
+
+	encodedAudioCache = new EncodedAudioCache(conferenceId);
+
+	talkerSelector = new TalkerSelector(conferenceId);
+
 	try {
 	    setMediaInfo(mediaPreference);
 	} catch (ParseException e) {
@@ -155,10 +170,12 @@ public class ConferenceManager {
 	     * Use the conference Id as the name of the main conference
 	     * whisper group.
 	     */
-	    wgManager = new WGManager(conferenceId, mediaInfo);
+	    wgManager = new WGManager(this, mediaInfo);
 	} else {
 	    wgManager.setMediaInfo(mediaInfo);
 	}
+
+	ConferenceTopology.topologyChanged(this);
     }
 
     private MediaInfo parseMediaPreference(String mediaPreference) 
@@ -229,6 +246,61 @@ public class ConferenceManager {
 	return wgManager;
     }
 
+    public MixPlanner getMixPlanner() {
+	return mixPlanner;
+    }
+
+    public EncodedAudioCache getEncodedAudioCache() {
+	return encodedAudioCache;
+    }
+
+    public TalkerSelector getTalkerSelector() {
+	return talkerSelector;
+    }
+
+    /*
+     * The latest snapshot of members and whisper groups or null
+     * if the conference isn't initialized yet.
+     */
+    public ConferenceTopology getTopology() {
+	return topology;
+    }
+
+    void setTopology(ConferenceTopology topology) {
+	this.topology = topology;
+    }
+
+    /*
+     * Returns true if the topology wasn't already marked as changed.
+     */
+    boolean setTopologyChanged() {
+	return topologyChanged.compareAndSet(false, true);
+    }
+
+    void clearTopologyChanged() {
+	topologyChanged.set(false);
+    }
+
+    /*
+     * Limit the number of members whose data is mixed to the
+     * loudest maxTalkers.  0 means no limit.
+     */
+    public static void setMaxTalkers(String conferenceId, int maxTalkers)
+	    throws ParseException {
+
+        synchronized(conferenceList) {
+	    ConferenceManager conferenceManager;
+
+	    if ((conferenceManager = findConferenceManager(conferenceId)) != 
+		    null) {
+
+		conferenceManager.getTalkerSelector().setMaxTalkers(maxTalkers);
+		return;
+	    }
+	    throw new ParseException("No such conference " + conferenceId, 0);
+	}
+    }
+
     public static WhisperGroup createWhisperGroup(String conferenceId, 
 	    String whisperGroupId, double attenuation) throws ParseException {
 
@@ -624,6 +696,8 @@ public class ConferenceManager {
             memberList.add(member);
 	    totalMembers++;
 
+	    ConferenceTopology.topologyChanged(this);
+
 	    String s = "";
 
 	    conferenceReceiver.addMember(member);
@@ -700,6 +774,8 @@ public class ConferenceManager {
 	        memberList.remove(member);
 	        totalMembers--;
 
+	        ConferenceTopology.topologyChanged(this);
+
 	        if (keepMember == false) {
             	    member.end();
 	        }
@@ -1477,6 +1553,12 @@ public class ConferenceManager {
 		loneConferenceSender.printStatistics();
 	    }
 
+	    ReceiverShard.printStatistics();
+	    DecoderPool.printStatistics();
+	    CallSetupExecutor.printStatistics();
+	    ConferenceTopology.printStatistics();
+	    RecordingService.printStatistics();
+
             for (int i = 0; i < conferenceList.size(); i++) {
                 ConferenceManager conferenceManager = 
 		    (ConferenceManager) conferenceList.get(i);
@@ -1488,6 +1570,10 @@ public class ConferenceManager {
 		    conferenceSender.printStatistics();
 		}
 
+		conferenceManager.getMixPlanner().printStatistics();
+		conferenceManager.getEncodedAudioCache().printStatistics();
+		conferenceManager.getTalkerSelector().printStatistics();
+
                 ArrayList memberList = conferenceManager.getMemberList();
 
                 for (int n = 0; n < memberList.size(); n++) {
@@ -28,6 +28,7 @@ import com.sun.voip.CallEvent;
 import com.sun.voip.Logger;
 import com.sun.voip.MediaInfo;
 import com.sun.voip.MixDataSource;
+import com.sun.voip.ShortMixDataSource;
 import com.sun.voip.RtcpReceiver;
 import com.sun.voip.RtpPacket;
 import com.sun.voip.RtpSocket;
@@ -46,7 +47,9 @@ import java.nio.channels.DatagramChannel;
 
 import java.util.ArrayList;
 import java.util.HashMap;
-import java.util.Set;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
 
 import java.text.ParseException;
 
@@ -55,7 +58,7 @@ import java.text.ParseException;
  * and keep statistics.
  */
 public class ConferenceMember implements TreatmentDoneListener,
-	MixDataSource, JoinConfirmationListener {
+	ShortMixDataSource, JoinConfirmationListener {
 
     private ConferenceManager conferenceManager;
     private CallParticipant cp;
@@ -71,7 +74,11 @@ public class ConferenceMember implements TreatmentDoneListener,
 
     private ArrayList whisperGroups;
 
-    private boolean done = false;
+    /*
+     * Set by end().  The sender works from a topology snapshot which
+     * may still have this member in it for a tick after it has ended.
+     */
+    private volatile boolean done = false;
 
     private String timeStarted;
 
@@ -102,8 +109,15 @@ public class ConferenceMember implements TreatmentDoneListener,
     private static int applyCount;
     private static int pmCount;
     private static int replaced;
+    private static int deferred;
     private static long applyTime;
 
+    /*
+     * Maximum number of private mixes applied by the sender each tick.
+     * The rest are applied in following ticks.  0 means no limit.
+     */
+    private static int maxChangesPerTick = 0;
+
     static class CallbackListener implements SenderCallbackListener {
 
         public void senderCallback() {
@@ -136,12 +150,14 @@ public class ConferenceMember implements TreatmentDoneListener,
 		    + (secondsToApply / pmCount)
 		    + ", avg time to apply pm's " 
 		    + (secondsToApply / applyCount)
-		    + " seconds, replaced " + replaced);
+		    + " seconds, replaced " + replaced
+		    + ", deferred " + deferred);
 
 		applyCount = 0;
 		ConferenceMember.pmCount = 0;
 		applyTime = 0;
 		replaced = 0;
+		deferred = 0;
 	    }
         }
 
@@ -186,6 +202,17 @@ public class ConferenceMember implements TreatmentDoneListener,
                     "Invalid last RTP port, no limit set: " + s);
             }
 	}
+
+        s = System.getProperty("com.sun.voip.server.MAX_CHANGES_PER_TICK");
+
+        if (s != null && s.length() > 0) {
+            try {
+                maxChangesPerTick = Integer.parseInt(s);
+            } catch (NumberFormatException e) {
+                Logger.println(
+                    "Invalid max changes per tick, no limit set: " + s);
+            }
+	}
     }
 
     public ConferenceMember(ConferenceManager conferenceManager,
@@ -364,6 +391,14 @@ public class ConferenceMember implements TreatmentDoneListener,
 	return firstRtpPort;
     }
 
+    public static void setMaxChangesPerTick(int maxChangesPerTick) {
+	ConferenceMember.maxChangesPerTick = maxChangesPerTick;
+    }
+
+    public static int getMaxChangesPerTick() {
+	return maxChangesPerTick;
+    }
+
     public static void setLastRtpPort(int firstRtpPort) {
 	ConferenceMember.lastRtpPort = lastRtpPort;
     }
@@ -492,6 +527,10 @@ public class ConferenceMember implements TreatmentDoneListener,
 
 	MixManager oldMixManager = mixManager;
 
+	synchronized (oldMixManager) {
+	    oldMixManager.releaseMixPlan();
+	}
+
         mixManager = new MixManager(this, 
 	    conferenceManager.getMediaInfo().getSamplesPerPacket(),
 	    conferenceManager.getMediaInfo().getChannels());
@@ -884,6 +923,10 @@ public class ConferenceMember implements TreatmentDoneListener,
         mixManager.adjustVolume(data, volume);
     }
 
+    public void adjustVolume(short[] data, double volume) {
+        mixManager.adjustVolume(data, volume);
+    }
+
     private ArrayList privateMixesForMe = new ArrayList();
 
     public ArrayList getPrivateMixesForMe() {
@@ -913,10 +956,10 @@ public class ConferenceMember implements TreatmentDoneListener,
     }
 
     /*
-     * Map of members with private mixes
+     * Map of members with private mixes in the order they were set
      */
-    private static HashMap<ConferenceMember, HashMap> mixMap =
-        new HashMap<ConferenceMember, HashMap>();
+    private static LinkedHashMap<ConferenceMember, HashMap> mixMap =
+        new LinkedHashMap<ConferenceMember, HashMap>();
 
     /*
      * Set a private mix that this call has for member.
@@ -968,29 +1011,63 @@ public class ConferenceMember implements TreatmentDoneListener,
 	ArrayList<PrivateMix> mixes = new ArrayList();
 
         synchronized (mixMap) {
-            Set<ConferenceMember> keySet = mixMap.keySet();
+	    int limit = maxChangesPerTick > 0 ? 
+		maxChangesPerTick : Integer.MAX_VALUE;
 
-            for (ConferenceMember memberWithMix : keySet) {
-	        HashMap<ConferenceMember, double[]> mixesToApply =
-		    mixMap.get(memberWithMix);
+	    ConferenceMember partialMember = null;
+	    HashMap<ConferenceMember, double[]> partialMixes = null;
 
-                Set<ConferenceMember> memberSet = mixesToApply.keySet();
+	    Iterator<Map.Entry<ConferenceMember, HashMap>> it =
+		mixMap.entrySet().iterator();
+
+            while (it.hasNext() && mixes.size() < limit) {
+		Map.Entry<ConferenceMember, HashMap> entry = it.next();
+
+		ConferenceMember memberWithMix = entry.getKey();
+
+	        HashMap<ConferenceMember, double[]> mixesToApply =
+		    entry.getValue();
 
 		if (Logger.logLevel >= Logger.LOG_INFO) {
-	            Logger.println("Applying " + memberSet.size() 
+	            Logger.println("Applying " + mixesToApply.size() 
 			+ " private mixes for " + memberWithMix);
 		}
 
-		for (ConferenceMember member : memberSet) {
-                    double[] spatialValues = (double[]) mixesToApply.get(member);
-		
-		    mixes.add(new PrivateMix(memberWithMix, member, spatialValues));
+		Iterator<Map.Entry<ConferenceMember, double[]>> mixIt =
+		    mixesToApply.entrySet().iterator();
+
+		while (mixIt.hasNext() && mixes.size() < limit) {
+		    Map.Entry<ConferenceMember, double[]> mix = mixIt.next();
+
+		    mixes.add(new PrivateMix(memberWithMix, mix.getKey(), 
+			mix.getValue()));
 
+		    mixIt.remove();
 		    pmCount++;
 		}
+
+		it.remove();
+
+		if (mixesToApply.size() > 0) {
+		    partialMember = memberWithMix;
+		    partialMixes = mixesToApply;
+		}
             }
 
-            mixMap.clear();
+	    /*
+	     * Mixes we didn't get to this tick are applied first next tick
+	     * except for the member we stopped in the middle of which goes
+	     * to the end so one member's mixes can't hold up the others.
+	     */
+	    if (partialMember != null) {
+		mixMap.put(partialMember, partialMixes);
+	    }
+
+	    if (mixMap.size() > 0) {
+		for (HashMap mixesToApply : mixMap.values()) {
+		    deferred += mixesToApply.size();
+		}
+	    }
         }
 
 	for (PrivateMix mix : mixes) {
@@ -1314,6 +1391,10 @@ public class ConferenceMember implements TreatmentDoneListener,
 	        }
 	    }
 	}
+
+	synchronized (mixManager) {
+	    mixManager.releaseMixPlan();
+	}
          
 	printStatistics();
     }
@@ -2020,6 +2101,10 @@ public class ConferenceMember implements TreatmentDoneListener,
     }
 
     public void saveCurrentContribution() {
+	if (done) {
+	    return;
+	}
+
 	memberReceiver.saveCurrentContribution();
 	
 	synchronized (memberTreatments) {
@@ -2047,11 +2132,27 @@ public class ConferenceMember implements TreatmentDoneListener,
 	return memberReceiver.getCurrentContribution();
     }
 
+    public short[] getPreviousShortContribution() {
+	return memberReceiver.getPreviousShortContribution();
+    }
+
+    public short[] getCurrentShortContribution() {
+	return memberReceiver.getCurrentShortContribution();
+    }
+
+    public int[] getCurrentMix() {
+	return null;
+    }
+
     public void invalidateCurrentContribution() {
 	memberReceiver.invalidateCurrentContribution();
     }
 
     public boolean sendData() {
+	if (done) {
+	    return true;	// ended, still in the sender's snapshot
+	}
+
 	if (cp.getInputTreatment() != null && cp.getToRecordingFile() == null) {
 	    /*
 	     * We don't send data to a call playing an input treatment
@@ -2084,7 +2185,22 @@ public class ConferenceMember implements TreatmentDoneListener,
 	}
 
 	synchronized (mixManager) {
-            return memberSender.sendData(mixManager.mix());
+	    /*
+	     * end() releases the mix plan while holding the mixManager
+	     * lock so check again to avoid taking a plan nobody releases.
+	     */
+	    if (done) {
+		return true;
+	    }
+
+	    try {
+		int[] data = mixManager.mix();
+
+                return memberSender.sendData(data, mixManager.getMixSource(),
+		    conferenceManager.getConferenceSender().getSendBatcher());
+	    } finally {
+		mixManager.releaseBuffers();
+	    }
 	}
     }
 
@@ -25,6 +25,7 @@ package com.sun.voip.server;
 
 import com.sun.voip.CallParticipant;
 import com.sun.voip.Logger;
+import com.sun.voip.MetricsRegistry;
 import com.sun.voip.RtpPacket;
 import com.sun.voip.RtpSocket;
 
@@ -56,6 +57,13 @@ public class ConferenceReceiver extends Thread {
      */
     private static int receiverPause = 0;   // ms to pause	
 
+    /*
+     * Shared with the ReceiverShards
+     */
+    static final MetricsRegistry.Counter selectorWakeupsMetric =
+	MetricsRegistry.counter("selector_wakeups_total",
+	"Times a receiver returned from select");
+
     private String conferenceId;
 
     private Selector selector;
@@ -225,6 +233,10 @@ public class ConferenceReceiver extends Thread {
 	    return;
 	}
 
+	if (ReceiverShard.addMember(member)) {
+	    return;
+	}
+
 	synchronized(membersToRegister) {
 	    if (selector == null) {
 		return;
@@ -248,6 +260,10 @@ public class ConferenceReceiver extends Thread {
 	    }
 	}
 
+	if (ReceiverShard.removeMember(member)) {
+	    return;
+	}
+
 	synchronized(membersToRegister) {
 	    if (selector == null) {
 		return;
@@ -314,7 +330,11 @@ public class ConferenceReceiver extends Thread {
 		 */
 		int n;
 
-		if ((n = selector.select()) <= 0) {
+		n = selector.select();
+
+		selectorWakeupsMetric.increment();
+
+		if (n <= 0) {
 		    if (Logger.logLevel == -1) {
 		        Logger.println("select returned " + n
 			    + " isOpen " + selector.isOpen());
@@ -416,7 +436,7 @@ public class ConferenceReceiver extends Thread {
 		    /*
 		     * Dispatch to member
 		     */
-		    memberReceiver.receive(isa, data, dataLength);
+		    DecoderPool.receive(memberReceiver, isa, data, dataLength);
 
 		    if (memberReceiver.traceCall()) {
 			memberReceiver.traceCall(false);
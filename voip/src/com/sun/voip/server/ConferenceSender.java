@@ -24,10 +24,12 @@
 package com.sun.voip.server;
 
 import com.sun.voip.Logger;
+import com.sun.voip.MetricsRegistry;
 import com.sun.voip.RtpPacket;
 import com.sun.voip.Ticker;
 import com.sun.voip.TickerException;
 import com.sun.voip.TickerFactory;
+import com.sun.voip.TickerParkSpin;
 
 import java.util.ArrayList;
 import java.util.concurrent.ConcurrentLinkedQueue;
@@ -43,6 +45,16 @@ public class ConferenceSender extends Thread {
      */
     private static int senderThreads;
 
+    private static boolean useWorkStealing = false;
+
+    static {
+	String s = System.getProperty("com.sun.voip.server.WORK_STEALING_SENDER");
+
+	if (s != null && s.equalsIgnoreCase("true")) {
+	    useWorkStealing = true;
+	}
+    }
+
     private ArrayList conferenceList;
 
     private boolean done = false;
@@ -59,9 +71,16 @@ public class ConferenceSender extends Thread {
 
     private static long startTime;
     private static double timeBetweenSends;
+    private static double tickLateness;
+
+    private static final MetricsRegistry.Histogram sendTimeMetric =
+	MetricsRegistry.timeHistogram("sender_tick_us",
+	"Time to mix and send one tick to all conferences");
 
     Ticker ticker;
 
+    private SendBatcher sendBatcher;
+
     private static ArrayList<SenderCallbackListener> senderCallbackList =
         new ArrayList<SenderCallbackListener>();
 
@@ -84,6 +103,8 @@ public class ConferenceSender extends Thread {
     private void initialize() {
 	senderThreads = Runtime.getRuntime().availableProcessors();
 
+	sendBatcher = new SendBatcher(getName());
+
 	setPriority(Thread.MAX_PRIORITY);
 	start();
     }
@@ -143,6 +164,8 @@ public class ConferenceSender extends Thread {
 	    totalSendTime += elapsed;
 	    sendTime += elapsed;
 
+	    sendTimeMetric.recordNanos(elapsed);
+
 	    try {
                 ticker.tick();
             } catch (TickerException e) {
@@ -172,6 +195,15 @@ public class ConferenceSender extends Thread {
 		    + ", maxSendTime " + lastMaxSendTime
 		    + ", members speaking " + CallHandler.getTotalSpeaking();
 
+		if (ticker instanceof TickerParkSpin) {
+		    int lateness = 
+			((TickerParkSpin) ticker).getLatenessPercentile(99);
+
+		    tickLateness = lateness / 1000.;
+
+		    s += ", tick lateness 99% " + lateness + " us";
+		}
+
 	        if (Logger.logLevel >= Logger.LOG_DETAIL) {
 	            Logger.println(s);
 	        } else {
@@ -190,6 +222,14 @@ public class ConferenceSender extends Thread {
 	}
 
 	ticker.disarm();
+
+	/*
+	 * The pool's workers wait for this thread between ticks
+	 * so it has to be stopped here rather than in end().
+	 */
+	if (senderWorkerPool != null) {
+	    senderWorkerPool.done();
+	}
     }
    
     public static double getAverageSendTime() {
@@ -204,6 +244,26 @@ public class ConferenceSender extends Thread {
 	return timeBetweenSends;
     }
 
+    /*
+     * 99th percentile of how late the ticker's ticks are in ms
+     * or 0 if the ticker doesn't keep track.
+     */
+    public static double getTickLateness() {
+	return tickLateness;
+    }
+
+    /*
+     * Get the SendBatcher members should queue their packets to
+     * or null if packets should be sent right away.
+     */
+    public SendBatcher getSendBatcher() {
+	if (SendBatcher.useBatchedSend() == false) {
+	    return null;
+	}
+
+	return sendBatcher;
+    }
+
     private void sendDataToConferences() {
 	/*
 	 * Build a memberList containing the members of all conferences.
@@ -227,68 +287,74 @@ public class ConferenceSender extends Thread {
 	    //} 
 
 	    /*
-	     * Take a snapshot of all members and all whisper groups
-	     * in the conference.
+	     * The snapshot of members and whisper groups is published
+	     * when they change so we don't have to lock the conference.
 	     */
-	    synchronized (conferenceManager) {
-                WGManager wgManager = conferenceManager.getWGManager();
+	    ConferenceTopology topology = conferenceManager.getTopology();
 
-		if (wgManager == null) {
-		    continue;	// not initialized yet
-		}
-
-	        ArrayList whisperGroups = wgManager.getWhisperGroups();
-
-	        synchronized(whisperGroups) {
-                    for (int j = 0; j < whisperGroups.size(); j++) {
-                        WhisperGroup whisperGroup = (WhisperGroup)
-                            whisperGroups.get(j);
-
-		        ArrayList ml = whisperGroup.getMembers();
+	    if (topology == null) {
+		continue;	// not initialized yet
+	    }
 
-		        for (int k = 0; k < ml.size(); k++) {
-			    ConferenceMember member = (ConferenceMember) 
-			        ml.get(k);
+	    /*
+	     * Shared mixes and payloads from the last tick 
+	     * are no longer valid.
+	     */
+	    conferenceManager.getMixPlanner().startTick();
+	    conferenceManager.getEncodedAudioCache().startTick();
 
-			    if (member.getWhisperGroup() == whisperGroup) {
-				/*
-				 * Member is whispering in this whisper group
-				 */
-				try {
-			            member.saveCurrentContribution();
-				} catch (Exception e) {
-				    e.printStackTrace();
+	    WhisperGroup[] whisperGroups = topology.getWhisperGroups();
 
-				    Logger.println(
-					"conf " + getName() + ":  "
-					+ " can't save contribution for "
-					+ "member " + member);
+	    for (int j = 0; j < whisperGroups.length; j++) {
+		WhisperGroup whisperGroup = whisperGroups[j];
 
-				    member.getCallHandler().cancelRequest(
-					"Unexpected Exception");
-				    continue;
-				}
+		ConferenceMember[] ml = topology.getWhisperGroupMembers(j);
 
-			        memberList.add(member);
-			    }
-                        }
+		for (int k = 0; k < ml.length; k++) {
+		    ConferenceMember member = ml[k];
 
+		    if (member.getWhisperGroup() == whisperGroup) {
 			/*
-			 * At this point, the whisper group has the data
-			 * from each whisperer mixed in a buffer.
+			 * Member is whispering in this whisper group
 			 */
 			try {
-                            whisperGroup.saveCurrentContribution();
+			    member.saveCurrentContribution();
 			} catch (Exception e) {
-                            e.printStackTrace();
+			    e.printStackTrace();
 
 			    Logger.println("conf " + getName() + ":  "
-                                + " can't save contribution for whisper group "
-				+ whisperGroup);
-		 	}
+				+ " can't save contribution for "
+				+ "member " + member);
+
+			    member.getCallHandler().cancelRequest(
+				"Unexpected Exception");
+			    continue;
+			}
+
+			memberList.add(member);
 		    }
 		}
-            }
+
+		/*
+		 * At this point, the whisper group has the data
+		 * from each whisperer mixed in a buffer.
+		 */
+		try {
+		    whisperGroup.saveCurrentContribution();
+		} catch (Exception e) {
+		    e.printStackTrace();
+
+		    Logger.println("conf " + getName() + ":  "
+			+ " can't save contribution for whisper group "
+			+ whisperGroup);
+		}
+	    }
+
+	    /*
+	     * Decide who can talk in the next tick.
+	     */
+	    conferenceManager.getTalkerSelector().selectTalkers(
+		topology.getMemberList());
 	}
 
         /*
@@ -300,6 +366,11 @@ public class ConferenceSender extends Thread {
 
 	sendDataToMembers(memberList);
 
+	/*
+	 * Send the packets queued by the members.
+	 */
+	sendBatcher.flush();
+
 	for (int i = 0; i < memberList.size(); i++) {
 	    ConferenceMember member = (ConferenceMember) memberList.get(i);
 		    
@@ -309,6 +380,8 @@ public class ConferenceSender extends Thread {
  
     private ArrayList workerThreads = new ArrayList();
 
+    private SenderWorkerPool senderWorkerPool;
+
     private ConcurrentLinkedQueue workToDo = new ConcurrentLinkedQueue();
 
     private void sendDataToMembers(ArrayList memberList) {
@@ -340,11 +413,33 @@ public class ConferenceSender extends Thread {
 	    workerThreads.clear();
 	}
 
+	if (!useWorkStealing || senderThreads <= 1) {
+	    if (senderWorkerPool != null) {
+		senderWorkerPool.done();
+		senderWorkerPool = null;
+	    }
+	}
+
 	if (senderThreads <= 1) {
 	    singleThreadSendDataToMembers(memberList);
 	    return;
 	}
 
+	if (useWorkStealing) {
+	    for (int i = 0; i < workerThreads.size(); i++) {
+		((WorkerThread) workerThreads.get(i)).done();
+	    }
+
+	    workerThreads.clear();
+
+	    if (senderWorkerPool == null) {
+		senderWorkerPool = new SenderWorkerPool(getName());
+	    }
+
+	    senderWorkerPool.sendDataToMembers(memberList, senderThreads);
+	    return;
+	}
+
 	CountDownLatch doneSignal = new CountDownLatch(workerThreads.size());
 
 	if (workerThreads.size() != senderThreads) {
@@ -507,6 +602,17 @@ public class ConferenceSender extends Thread {
 		+ (totalSendTime / 1000000000. / packetsSent) + " seconds ");
 	}
 
+	if (senderWorkerPool != null) {
+	    senderWorkerPool.printStatistics();
+	}
+
+	sendBatcher.printStatistics();
+
+	if (MixBufferPool.usePooledBuffers()) {
+	    Logger.println(getName() + " mix buffers allocated "
+		+ MixBufferPool.getBuffersAllocated());
+	}
+
 	ticker.printStatistics();
     }
 
@@ -532,6 +638,14 @@ public class ConferenceSender extends Thread {
 	return senderThreads;
     }
 
+    public static void setUseWorkStealing(boolean useWorkStealing) {
+	ConferenceSender.useWorkStealing = useWorkStealing;
+    }
+
+    public static boolean useWorkStealing() {
+	return useWorkStealing;
+    }
+
     public String toString() {
 	return getName();
     }
@@ -0,0 +1,213 @@
+/*
+ * Copyright 2007 Sun Microsystems, Inc.
+ *
+ * This file is part of jVoiceBridge.
+ *
+ * jVoiceBridge is free software: you can redistribute it and/or modify 
+ * it under the terms of the GNU General Public License version 2 as 
+ * published by the Free Software Foundation and distributed hereunder 
+ * to you.
+ *
+ * jVoiceBridge is distributed in the hope that it will be useful, 
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Sun designates this particular file as subject to the "Classpath"
+ * exception as provided by Sun in the License file that accompanied this 
+ * code. 
+ */
+
+package com.sun.voip.server;
+
+import com.sun.voip.Logger;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/*
+ * An immutable snapshot of the members and whisper groups of a conference.
+ *
+ * The ConferenceSender used to lock each conference and its whisper
+ * group list on every tick.  Control commands which change members,
+ * whisper groups, or mixes take the same locks so a burst of commands
+ * delayed the tick.
+ *
+ * Now when the topology of a conference changes, the conference is
+ * queued to the publisher thread which takes the locks, copies the
+ * lists and publishes a new snapshot in the ConferenceManager.  The
+ * sender reads the latest snapshot without locking.  A change is
+ * seen by the sender at most one tick after it's published.
+ *
+ * Whether a member is whispering in a whisper group is still checked
+ * by the sender on each tick so the snapshot only changes when members
+ * or whisper groups are added or removed.
+ */
+public class ConferenceTopology {
+    private WhisperGroup[] whisperGroups;
+    private ConferenceMember[][] whisperGroupMembers;
+    private List memberList;
+
+    private static LinkedBlockingQueue<ConferenceManager> changedConferences =
+	new LinkedBlockingQueue<ConferenceManager>();
+
+    private static Publisher publisher;
+
+    /* Statistics */
+    private static AtomicInteger topologiesPublished = new AtomicInteger();
+    private static AtomicLong totalPublishTime = new AtomicLong();
+
+    /*
+     * The caller must hold the lock on the conference manager.
+     */
+    private ConferenceTopology(WGManager wgManager, ArrayList members) {
+	ArrayList groups = wgManager.getWhisperGroups();
+
+	synchronized (groups) {
+	    whisperGroups = (WhisperGroup[])
+		groups.toArray(new WhisperGroup[groups.size()]);
+
+	    whisperGroupMembers = new ConferenceMember[whisperGroups.length][];
+
+	    for (int i = 0; i < whisperGroups.length; i++) {
+		ArrayList ml = whisperGroups[i].getMembers();
+
+		whisperGroupMembers[i] = (ConferenceMember[])
+		    ml.toArray(new ConferenceMember[ml.size()]);
+	    }
+	}
+
+	synchronized (members) {
+	    memberList = Collections.unmodifiableList(Arrays.asList(
+		members.toArray(new ConferenceMember[members.size()])));
+	}
+    }
+
+    public WhisperGroup[] getWhisperGroups() {
+	return whisperGroups;
+    }
+
+    /*
+     * Members of the i'th whisper group
+     */
+    public ConferenceMember[] getWhisperGroupMembers(int i) {
+	return whisperGroupMembers[i];
+    }
+
+    public List getMemberList() {
+	return memberList;
+    }
+
+    /*
+     * Called when members or whisper groups of a conference change.
+     * This doesn't take any locks so it can be called with any locks held.
+     */
+    public static void topologyChanged(ConferenceManager conferenceManager) {
+	if (conferenceManager.setTopologyChanged() == false) {
+	    return;	// already queued
+	}
+
+	synchronized (changedConferences) {
+	    if (publisher == null) {
+		publisher = new Publisher();
+	    }
+	}
+
+	changedConferences.add(conferenceManager);
+    }
+
+    private static void publish(ConferenceManager conferenceManager) {
+	long start = System.nanoTime();
+
+	/*
+	 * Clear the flag first so that a change made while we're
+	 * building the snapshot queues the conference again.
+	 */
+	conferenceManager.clearTopologyChanged();
+
+	ConferenceTopology topology = null;
+
+	synchronized (conferenceManager) {
+	    WGManager wgManager = conferenceManager.getWGManager();
+
+	    if (wgManager != null) {
+		topology = new ConferenceTopology(wgManager,
+		    conferenceManager.getMemberList());
+	    }
+	}
+
+	conferenceManager.setTopology(topology);
+
+	topologiesPublished.incrementAndGet();
+	totalPublishTime.addAndGet(System.nanoTime() - start);
+
+	if (Logger.logLevel >= Logger.LOG_DETAIL) {
+	    Logger.println("Published topology for "
+		+ conferenceManager.getId() + " " + topology);
+	}
+    }
+
+    public static void printStatistics() {
+	int topologiesPublished = ConferenceTopology.topologiesPublished.get();
+
+	if (topologiesPublished == 0) {
+	    return;
+	}
+
+	Logger.writeFile("Conference topologies published:  "
+	    + topologiesPublished + ", average time to publish "
+	    + (totalPublishTime.get() / topologiesPublished / 1000.) + " us");
+    }
+
+    public String toString() {
+	String s = memberList.size() + " members, whisper groups";
+
+	for (int i = 0; i < whisperGroups.length; i++) {
+	    s += " " + whisperGroups[i].getId() + "/"
+		+ whisperGroupMembers[i].length;
+	}
+
+	return s;
+    }
+
+    private static class Publisher extends Thread {
+
+	public Publisher() {
+	    setName("TopologyPublisher");
+	    setDaemon(true);
+	    start();
+	}
+
+	public void run() {
+	    while (true) {
+		ConferenceManager conferenceManager;
+
+		try {
+		    conferenceManager = changedConferences.take();
+		} catch (InterruptedException e) {
+		    continue;
+		}
+
+		try {
+		    publish(conferenceManager);
+		} catch (Exception e) {
+		    e.printStackTrace();
+
+		    Logger.println("Unable to publish topology for "
+			+ conferenceManager.getId() + ":  " + e.getMessage());
+		}
+	    }
+	}
+
+    }
+
+}
@@ -0,0 +1,242 @@
+/*
+ * Copyright 2007 Sun Microsystems, Inc.
+ *
+ * This file is part of jVoiceBridge.
+ *
+ * jVoiceBridge is free software: you can redistribute it and/or modify 
+ * it under the terms of the GNU General Public License version 2 as 
+ * published by the Free Software Foundation and distributed hereunder 
+ * to you.
+ *
+ * jVoiceBridge is distributed in the hope that it will be useful, 
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Sun designates this particular file as subject to the "Classpath"
+ * exception as provided by Sun in the License file that accompanied this 
+ * code. 
+ */
+
+
+package com.sun.voip.server;
+
+import com.sun.voip.Logger;
+
+import java.net.InetSocketAddress;
+
+import java.util.ArrayList;
+
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Pool of threads which decode received packets.
+ *
+ * Without the decoder pool, the receiver thread decrypts, decodes,
+ * resamples and inserts each packet in the jitter buffer before
+ * reading from the next socket.  A slow Speex decode for one call
+ * delays every other call on the same selector.
+ *
+ * With the decoder pool, the receiver thread only copies the datagram 
+ * into the member's PacketRing and the decoder threads do the rest.
+ */
+public class DecoderPool {
+    private static final String DECODER_THREADS_PROPERTY =
+	"com.sun.voip.server.DECODER_THREADS";
+
+    private static final String RECEIVE_RING_SIZE_PROPERTY =
+	"com.sun.voip.server.RECEIVE_RING_SIZE";
+
+    private static int decoderThreads = 0;
+
+    private static int ringSize = 16;
+
+    private static LinkedBlockingQueue<PacketRing> readyRings =
+	new LinkedBlockingQueue<PacketRing>();
+
+    private static ArrayList<DecoderThread> threads = 
+	new ArrayList<DecoderThread>();
+
+    private static ArrayList<PacketRing> rings = new ArrayList<PacketRing>();
+
+    static {
+	String s = System.getProperty(RECEIVE_RING_SIZE_PROPERTY);
+
+	if (s != null) {
+	    try {
+		setRingSize(Integer.parseInt(s));
+	    } catch (NumberFormatException e) {
+		Logger.println("Invalid receive ring size:  " + s);
+	    }
+	}
+
+	s = System.getProperty(DECODER_THREADS_PROPERTY);
+
+	if (s != null) {
+	    try {
+		setDecoderThreads(Integer.parseInt(s));
+	    } catch (NumberFormatException e) {
+		Logger.println("Invalid number of decoder threads:  " + s);
+	    }
+	}
+    }
+
+    private DecoderPool() {
+    }
+
+    public static void setRingSize(int ringSize) {
+	if (ringSize < 2) {
+	    ringSize = 2;
+	}
+
+	DecoderPool.ringSize = ringSize;
+    }
+
+    public static int getRingSize() {
+	return ringSize;
+    }
+
+    /**
+     * Set the number of decoder threads.  0 means packets for new calls
+     * are decoded by the receiver thread.  Calls which already have
+     * a PacketRing keep using it so at least one decoder thread 
+     * is kept once the pool has been started.
+     */
+    public static void setDecoderThreads(int decoderThreads) {
+	if (decoderThreads < 0) {
+	    decoderThreads = 0;
+	}
+
+	synchronized (threads) {
+	    DecoderPool.decoderThreads = decoderThreads;
+
+	    int n = decoderThreads;
+
+	    if (n == 0 && threads.size() > 0) {
+		n = 1;
+	    }
+
+	    while (threads.size() < n) {
+		threads.add(new DecoderThread(threads.size()));
+	    }
+
+	    while (threads.size() > n) {
+		threads.remove(threads.size() - 1).done();
+	    }
+	}
+
+	Logger.println("Decoder threads set to " + decoderThreads);
+    }
+
+    public static int getDecoderThreads() {
+	return decoderThreads;
+    }
+
+    /**
+     * Called by a receiver thread when a packet arrives for a member.
+     */
+    public static void receive(MemberReceiver memberReceiver, 
+	    InetSocketAddress isa, byte[] data, int length) {
+
+	PacketRing packetRing = memberReceiver.getPacketRing();
+
+	if (packetRing == null) {
+	    if (decoderThreads == 0) {
+		memberReceiver.receive(isa, data, length);
+		return;
+	    }
+
+	    packetRing = new PacketRing(memberReceiver, ringSize);
+	    memberReceiver.setPacketRing(packetRing);
+
+	    synchronized (rings) {
+		rings.add(packetRing);
+	    }
+	}
+
+	if (packetRing.offer(isa, data, length) == false) {
+	    return;
+	}
+
+	if (packetRing.schedule()) {
+	    readyRings.add(packetRing);
+	}
+    }
+
+    public static void removePacketRing(PacketRing packetRing) {
+	synchronized (rings) {
+	    rings.remove(packetRing);
+	}
+    }
+
+    public static void printStatistics() {
+	synchronized (rings) {
+	    if (rings.size() == 0) {
+		return;
+	    }
+
+	    long queued = 0;
+	    int dropped = 0;
+	    int depth = 0;
+	    int maxDepth = 0;
+
+	    for (int i = 0; i < rings.size(); i++) {
+		PacketRing packetRing = rings.get(i);
+
+		queued += packetRing.getPacketsQueued();
+		dropped += packetRing.getPacketsDropped();
+		depth += packetRing.getDepth();
+		maxDepth = Math.max(maxDepth, packetRing.getMaxDepth());
+	    }
+
+	    Logger.println("Decoder pool:  " + threads.size() + " threads, "
+		+ rings.size() + " rings, " + queued + " packets queued, "
+		+ dropped + " dropped, " + depth + " waiting, max ring depth "
+		+ maxDepth + ", " + readyRings.size() + " rings ready");
+	}
+    }
+
+    static class DecoderThread extends Thread {
+	private volatile boolean done;
+
+	public DecoderThread(int i) {
+	    setName("DecoderThread-" + i);
+	    setPriority(Thread.MAX_PRIORITY);
+	    setDaemon(true);
+	    start();
+	}
+
+	public void done() {
+	    done = true;
+	}
+
+	public void run() {
+	    while (!done) {
+		PacketRing packetRing;
+
+		try {
+		    packetRing = readyRings.poll(1, TimeUnit.SECONDS);
+		} catch (InterruptedException e) {
+		    break;
+		}
+
+		if (packetRing == null) {
+		    continue;
+		}
+
+		if (packetRing.drain()) {
+		    readyRings.add(packetRing);
+		}
+	    }
+
+	    if (Logger.logLevel >= Logger.LOG_INFO) {
+		Logger.println(getName() + " done");
+	    }
+	}
+    }
+
+}
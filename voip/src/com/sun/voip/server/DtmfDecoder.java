@@ -96,7 +96,7 @@ public class DtmfDecoder {
 	 * silence so that the dtmf detector will return
 	 * the dtmf key.
 	 */
-        int[] silence = new int[mediaInfo.getSamplesPerPacket()];
+        short[] silence = new short[mediaInfo.getSamplesPerPacket()];
 
 	String dtmfKeys = null;
 
@@ -114,10 +114,14 @@ public class DtmfDecoder {
 	return dtmfKeys;
     }
 
+    public String processData(int[] linearData) {
+	return processData(AudioConversion.intsToShorts(linearData));
+    }
+
     /*
      * data starts at RtpPacket.HEADER_SIZE
      */ 
-    public String processData(int[] linearData) {
+    public String processData(short[] linearData) {
 	numberOfTimesCalled++;
 	long start = System.currentTimeMillis();
 
@@ -139,8 +143,7 @@ public class DtmfDecoder {
 
 	int keys[] = new int[MAX_KEYS];		// decoded key
 
-	int nkeys = decoder.decode(keys, 
-	    AudioConversion.intsToShorts(linearData), 0);
+	int nkeys = decoder.decode(keys, linearData, 0);
 
 	String dtmfKeys = null;
 
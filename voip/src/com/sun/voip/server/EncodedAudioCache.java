@@ -0,0 +1,188 @@
+/*
+ * Copyright 2007 Sun Microsystems, Inc.
+ *
+ * This file is part of jVoiceBridge.
+ *
+ * jVoiceBridge is free software: you can redistribute it and/or modify 
+ * it under the terms of the GNU General Public License version 2 as 
+ * published by the Free Software Foundation and distributed hereunder 
+ * to you.
+ *
+ * jVoiceBridge is distributed in the hope that it will be useful, 
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Sun designates this particular file as subject to the "Classpath"
+ * exception as provided by Sun in the License file that accompanied this 
+ * code. 
+ */
+
+
+package com.sun.voip.server;
+
+import com.sun.voip.Logger;
+
+import java.util.HashMap;
+
+/*
+ * Keeps the encoded payload of mixes which are sent unchanged to
+ * more than one member so that the mix is resampled and encoded once
+ * per tick rather than once per member.
+ *
+ * In a large conference most members aren't talking and receive
+ * exactly the same data, the common mix of their whisper group or a
+ * shared mix.  The MixManager tells the MemberSender where its mix
+ * came from and members with the same mix source, encoding, 
+ * sample rate and channels can share the encoded payload.
+ * Only the RTP header and encryption are done per member.
+ */
+public class EncodedAudioCache {
+    private static final String ENCODE_ONCE_PROPERTY =
+	"com.sun.voip.server.ENCODE_ONCE";
+
+    private static boolean useEncodeOnce = false;
+
+    static {
+	String s = System.getProperty(ENCODE_ONCE_PROPERTY);
+
+	if (s != null && s.equalsIgnoreCase("true")) {
+	    useEncodeOnce = true;
+	}
+    }
+
+    private HashMap<Key, Entry> entries = new HashMap<Key, Entry>();
+
+    private String conferenceId;
+
+    /* Statistics */
+    private int payloadsEncoded;
+    private int payloadsReused;
+
+    public EncodedAudioCache(String conferenceId) {
+	this.conferenceId = conferenceId;
+    }
+
+    public static void setUseEncodeOnce(boolean useEncodeOnce) {
+	EncodedAudioCache.useEncodeOnce = useEncodeOnce;
+
+	Logger.println("Encode once " 
+	    + (useEncodeOnce ? "enabled" : "disabled"));
+    }
+
+    public static boolean useEncodeOnce() {
+	return useEncodeOnce;
+    }
+
+    /*
+     * Called by the ConferenceSender before sending data to members.
+     * Payloads encoded during the previous tick are no longer valid.
+     */
+    public void startTick() {
+	synchronized (entries) {
+	    entries.clear();
+	}
+    }
+
+    /*
+     * Get the entry for the mix source and output format, creating
+     * it if there isn't one already.  The caller must synchronize on
+     * the entry while using it.
+     */
+    public Entry getEntry(Object mixSource, int encoding, int sampleRate,
+	    int channels) {
+
+	Key key = new Key(mixSource, encoding, sampleRate, channels);
+
+	synchronized (entries) {
+	    Entry entry = entries.get(key);
+
+	    if (entry == null) {
+		entry = new Entry();
+		entries.put(key, entry);
+	    }
+
+	    return entry;
+	}
+    }
+
+    public void printStatistics() {
+	if (payloadsEncoded == 0) {
+	    return;
+	}
+
+	Logger.println(conferenceId + ":  " + payloadsEncoded 
+	    + " shared payloads encoded, " + payloadsReused + " reused");
+    }
+
+    /*
+     * The encoded payload for one mix source and output format.
+     */
+    public class Entry {
+	private byte[] payload;
+	private int length;
+	private boolean hasPayload;
+
+	/*
+	 * Copy the cached payload to data at offset.
+	 * Returns the length of the payload or -1 if the payload
+	 * hasn't been encoded yet.
+	 */
+	public int getPayload(byte[] data, int offset) {
+	    if (hasPayload == false || offset + length > data.length) {
+		return -1;
+	    }
+
+	    System.arraycopy(payload, 0, data, offset, length);
+	    payloadsReused++;
+	    return length;
+	}
+
+	public void setPayload(byte[] data, int offset, int length) {
+	    if (payload == null || payload.length < length) {
+		payload = new byte[length];
+	    }
+
+	    System.arraycopy(data, offset, payload, 0, length);
+	    this.length = length;
+	    hasPayload = true;
+	    payloadsEncoded++;
+	}
+    }
+
+    private static class Key {
+	private Object mixSource;
+	private int encoding;
+	private int sampleRate;
+	private int channels;
+
+	public Key(Object mixSource, int encoding, int sampleRate,
+		int channels) {
+
+	    this.mixSource = mixSource;
+	    this.encoding = encoding;
+	    this.sampleRate = sampleRate;
+	    this.channels = channels;
+	}
+
+	public int hashCode() {
+	    return ((System.identityHashCode(mixSource) * 31 + encoding) * 31 
+		+ sampleRate) * 31 + channels;
+	}
+
+	public boolean equals(Object o) {
+	    if (o instanceof Key == false) {
+		return false;
+	    }
+
+	    Key key = (Key) o;
+
+	    return mixSource == key.mixSource && encoding == key.encoding 
+		&& sampleRate == key.sampleRate && channels == key.channels;
+	}
+    }
+
+}
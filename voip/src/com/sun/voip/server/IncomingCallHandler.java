@@ -51,6 +51,8 @@ public class IncomingCallHandler extends CallHandler
 
     private Integer stateChangeLock = new Integer(0);
 
+    private boolean callEnded;
+
     private ConferenceManager newConferenceManager;
 
     private TreatmentManager treatmentManager;
@@ -128,7 +130,7 @@ public class IncomingCallHandler extends CallHandler
 	super.cancelRequest(s);
     }
 
-    class TransferTimer extends Thread {
+    class TransferTimer implements Runnable {
 	private ConferenceMember member;
 	private String conferenceId;
 
@@ -137,15 +139,10 @@ public class IncomingCallHandler extends CallHandler
 	public TransferTimer(ConferenceMember member) {
 	    this.member = member;
 	    conferenceId = member.getCallParticipant().getConferenceId();
-	    start();
+	    CallSetupExecutor.schedule(this, TRANSFER_TIMEOUT);
 	}
 
 	public void run() {
-	    try {
-		Thread.sleep(TRANSFER_TIMEOUT);
-	    } catch (InterruptedException e) {
-	    }
-
 	    if (!done && member != null) {
 		if (member.getCallParticipant().getConferenceId().indexOf(
 		        defaultIncomingConferenceId) == 0) {
@@ -159,8 +156,9 @@ public class IncomingCallHandler extends CallHandler
     }
 
     /*
-     * Thread to process this incoming call.
+     * Process this incoming call.
      * Create a temporary conference and add this call.
+     * The call is torn down when it ends.
      */
     public void run() {
 	if (haveIncomingConferenceId == false) {
@@ -256,13 +254,24 @@ public class IncomingCallHandler extends CallHandler
 	}
 
 	synchronized(stateChangeLock) {
-	    if (csa.getState() != CallState.ENDED) {
-	        try {
-		    Logger.println("Call " + cp + " Waiting for call to end...");
-		    stateChangeLock.wait();	// wait for call to end
-	        } catch (InterruptedException e) {
-	        }
+	    if (callEnded || csa.getState() != CallState.ENDED) {
+		return;		// torn down when we get ENDED status
+	    }
+	}
+
+	callEnded();
+    }
+
+    /*
+     * Called once when the call ends.
+     */
+    private void callEnded() {
+	synchronized (stateChangeLock) {
+	    if (callEnded) {
+		return;
 	    }
+
+	    callEnded = true;
 	}
 
 	Logger.println("Call " + cp + " ended...");
@@ -337,9 +346,11 @@ public class IncomingCallHandler extends CallHandler
 
 	    Logger.println("Call " + cp + " Got ENDED status.");
 
-	    synchronized(stateChangeLock) {
-		stateChangeLock.notify();  // the call has ended
-	    }
+	    CallSetupExecutor.execute(new Runnable() {
+		public void run() {
+		    callEnded();
+		}
+	    });
 	}
 
 	/*
@@ -30,8 +30,9 @@ import com.sun.voip.DataUpdater;
 import com.sun.voip.JitterManager;
 import com.sun.voip.JitterObject;
 import com.sun.voip.Logger;
+import com.sun.voip.MetricsRegistry;
 import com.sun.voip.MediaInfo;
-import com.sun.voip.MixDataSource;
+import com.sun.voip.ShortMixDataSource;
 import com.sun.voip.Recorder;
 import com.sun.voip.RtcpReceiver;
 import com.sun.voip.RtpPacket;
@@ -42,6 +43,7 @@ import com.sun.voip.SdpManager;
 import com.sun.voip.SpeechDetector;
 import com.sun.voip.SpeexDecoder;
 import com.sun.voip.SpeexException;
+import com.sun.voip.SrtpContext;
 import com.sun.voip.TreatmentDoneListener;
 import com.sun.voip.TreatmentManager;
 import com.sun.voip.Util;
@@ -59,6 +61,7 @@ import java.nio.channels.SelectionKey;
 import java.nio.channels.Selector;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.NoSuchElementException;
 
 import javax.crypto.*;
@@ -72,7 +75,8 @@ import java.awt.Point;
  * Receive RTP data for this ConferenceMember, add it to the mix
  * and keep statistics.
  */
-public class MemberReceiver implements MixDataSource, TreatmentDoneListener {
+public class MemberReceiver implements ShortMixDataSource,
+	TreatmentDoneListener {
 
     private ConferenceManager conferenceManager;
     private ConferenceMember member;
@@ -107,6 +111,14 @@ public class MemberReceiver implements MixDataSource, TreatmentDoneListener {
 
     private static boolean forwardDtmfKeys = true;
 
+    private static final MetricsRegistry.Histogram receiveTimeMetric =
+	MetricsRegistry.timeHistogram("member_receive_us",
+	"Time to process a received media packet");
+
+    private static final MetricsRegistry.Histogram decodeTimeMetric =
+	MetricsRegistry.timeHistogram("member_decode_us",
+	"Time to decode a received media packet to linear");
+
     private RtpReceiverPacket packet;
 
     private SpeexDecoder speexDecoder;
@@ -145,13 +157,25 @@ public class MemberReceiver implements MixDataSource, TreatmentDoneListener {
 
     private Cipher decryptCipher;
 
+    private SrtpContext srtpContext;
+
     private String encryptionKey;
     private String encryptionAlgorithm;
 
     private SampleRateConverter inSampleRateConverter;
 
+    /*
+     * When the call's rate differs from the conference rate, packets
+     * are decoded into this buffer because only the resampler reads them.
+     * The resampled packet can't go in a buffer of ours.  The jitter
+     * buffer keeps it and repeats it for lost packets, so each
+     * resampled packet is a new array.
+     */
+    private short[] decodeBuffer;
+
     private DatagramChannel datagramChannel;
     private SelectionKey selectionKey;
+    private PacketRing packetRing;
     private RtcpReceiver rtcpReceiver;
 
     private JitterManager jitterManager;
@@ -175,7 +199,19 @@ public class MemberReceiver implements MixDataSource, TreatmentDoneListener {
 	encryptionKey = cp.getEncryptionKey();
 	encryptionAlgorithm = cp.getEncryptionAlgorithm();
 	
-	if (encryptionKey != null) {
+	if (encryptionKey != null && SrtpContext.isSrtp(encryptionAlgorithm)) {
+	    try {
+		srtpContext = new SrtpContext(encryptionKey);
+
+		Logger.println("Call " + cp + " Voice data will be verified "
+		    + "and decrypted using " + encryptionAlgorithm);
+	    } catch (Exception e) {
+		Logger.println("Call " + cp 
+		    + " Crypto initialization failed " + e.getMessage());
+                throw new IOException(" Crypto initialization failed " 
+		    + e.getMessage());
+	    }
+	} else if (encryptionKey != null) {
 	    try {
 		if (encryptionKey.length() < 8) {
 		    encryptionKey += 
@@ -242,6 +278,10 @@ public class MemberReceiver implements MixDataSource, TreatmentDoneListener {
 
 	s += ":JitterBufferSize=" + jitterManager.getJitterBufferSize();
 
+	s += ":PlayoutDelay=" + jitterManager.getAveragePlayoutDelay();
+
+	s += ":LatePackets=" + jitterManager.getLatePackets();
+
 	return s;
     }
 
@@ -303,6 +343,13 @@ public class MemberReceiver implements MixDataSource, TreatmentDoneListener {
 	    + " packets\n";
 	s += "\tJitter Buffer size " + jitterManager.getJitterBufferSize() 
 	    + "\n";
+	s += "\tAdaptive target depth " + jitterManager.getTargetDepth()
+	    + " packets\n";
+	s += "\tAverage playout delay " 
+	    + jitterManager.getAveragePlayoutDelay() + " ms\n";
+	s += "\tLate packets " + jitterManager.getLatePackets() + "\n";
+	s += "\tMissing packets " 
+	    + jitterManager.getNumberMissingPackets() + "\n";
 	s += "\tPacketLossConcealment class name " 
 	    + jitterManager.getPlcClassName() + "\n";
 
@@ -429,7 +476,7 @@ public class MemberReceiver implements MixDataSource, TreatmentDoneListener {
             }
         }
 
-	jitterManager = new JitterManager("Call " + cp.toString());
+	jitterManager = JitterManager.createJitterManager("Call " + cp.toString());
 
 	if (cp.getJoinConfirmationTimeout() == 0) {
             joinConfirmationReceived = true;
@@ -589,10 +636,15 @@ public class MemberReceiver implements MixDataSource, TreatmentDoneListener {
 
     private Object lock = new Object();
 
-    class InputTreatment extends Thread {
+    /*
+     * Creating a TreatmentManager reads the audio file so it's done
+     * on a call setup thread.
+     */
+    class InputTreatment implements Runnable {
 
 	TreatmentManager treatmentManager;
 	TreatmentDoneListener treatmentDoneListener;
+	private boolean finished;
 	private String treatment;
 	private int repeatCount;
 	private int sampleRate;
@@ -608,8 +660,7 @@ public class MemberReceiver implements MixDataSource, TreatmentDoneListener {
             this.sampleRate = sampleRate;
             this.channels = channels;
 
-	    start();
-
+	    CallSetupExecutor.execute(this);
  	}
 
 	public TreatmentManager getTreatmentManager() {
@@ -642,9 +693,14 @@ public class MemberReceiver implements MixDataSource, TreatmentDoneListener {
 		    } else {
 		        try {
 			    synchronized (iTreatment) {
-		                iTreatment.wait();
+				while (iTreatment.finished == false) {
+		                    iTreatment.wait();
+				}
 			    }
-	                    if (Logger.logLevel >= Logger.LOG_INFO) {
+
+	                    if (Logger.logLevel >= Logger.LOG_INFO &&
+				    iTreatment.getTreatmentManager() != null) {
+
 		                Logger.println(
 			            "Stopping previous input treatment after waiting "
 			            + iTreatment.getTreatmentManager().getId());
@@ -673,6 +729,7 @@ public class MemberReceiver implements MixDataSource, TreatmentDoneListener {
                     + treatment + ":  " + e.getMessage());
 
 		synchronized (this) {
+		    finished = true;
 		    notifyAll();
 		}
 
@@ -695,6 +752,7 @@ public class MemberReceiver implements MixDataSource, TreatmentDoneListener {
 	    }
 
 	    synchronized (this) {
+		finished = true;
 		notifyAll();
 	    }
 	}
@@ -723,6 +781,18 @@ public class MemberReceiver implements MixDataSource, TreatmentDoneListener {
 	}
     }
 
+    /*
+     * When the DecoderPool is used, received packets are queued
+     * in the packetRing and decoded by a decoder thread.
+     */
+    public PacketRing getPacketRing() {
+	return packetRing;
+    }
+
+    public void setPacketRing(PacketRing packetRing) {
+	this.packetRing = packetRing;
+    }
+
     private boolean datagramChannelRegistered;
 
     public SelectionKey register(Selector selector) throws IOException {
@@ -893,7 +963,7 @@ public class MemberReceiver implements MixDataSource, TreatmentDoneListener {
      * to the mix's linearMixBuffers.
      *
      * When a member receives data from the CallParticipant, the member
-     * adds an element of int[] to its own list.  The member then adds
+     * adds an element of short[] to its own list.  The member then adds
      * the data to the current whisper group.  The element index 
      * of the member's list is the same index used for the whisper group's 
      * linearMixBuffers.
@@ -921,7 +991,16 @@ public class MemberReceiver implements MixDataSource, TreatmentDoneListener {
 	return deferMixing;
     }
 
-    private void forwardData(int[] data) {
+    private void forwardData(short[] data) {
+	if (forwardMemberList.size() == 0) {
+	    return;
+	}
+
+	/*
+	 * The senders take the int[] data they mix
+	 */
+	int[] intData = AudioConversion.shortsToInts(data);
+
 	for (MemberSender memberSender : forwardMemberList) {
 	     if (Logger.logLevel == -88) {
 		Logger.println("Forwarding " + data.length + " to "
@@ -929,7 +1008,7 @@ public class MemberReceiver implements MixDataSource, TreatmentDoneListener {
 	     }
 
 	     if (memberSender.memberIsReadyForSenderData()) {
-	         memberSender.sendData(data);
+	         memberSender.sendData(intData);
 	     }
 	}
     }
@@ -980,12 +1059,20 @@ public class MemberReceiver implements MixDataSource, TreatmentDoneListener {
 	 */
 	long start = 0;
 
-	if (decryptCipher != null) {
+	if (decryptCipher != null || srtpContext != null) {
 	    if (traceCall || Logger.logLevel == -1) {
 	        start = System.nanoTime();
 	    }
 
-	    receivedData = decrypt(receivedData);
+	    if (srtpContext != null) {
+		length = unprotect(receivedData, length);
+
+		if (length < 0) {
+		    return;
+		}
+	    } else {
+	        receivedData = decrypt(receivedData);
+	    }
 
 	    if (traceCall || Logger.logLevel == -1) {
 		Logger.println("Call " + cp + " decrypt time " 
@@ -1021,13 +1108,19 @@ public class MemberReceiver implements MixDataSource, TreatmentDoneListener {
 	    }
 	}
 
- 	if (packet.isMarkSet() == true) {
+ 	boolean isMarkSet = packet.isMarkSet();
+
+ 	if (isMarkSet == true) {
 	    elapsedTime = RtpPacket.PACKET_PERIOD;
 	}
 
         totalTime += elapsedTime;
 
 	synchronized (jitterManager) {
+	    if (isMarkSet == true) {
+		jitterManager.startTalkSpurt();
+	    }
+
 	    /*
 	     * Insert place holder for this packet
 	     */
@@ -1067,9 +1160,7 @@ public class MemberReceiver implements MixDataSource, TreatmentDoneListener {
 
 	     Util.dump("bad payload 18 data", packet.getData(), 0, 16);
 	} else if (payload == myMediaInfo.getPayload()) {
-	    if (traceCall || Logger.logLevel == -1) {
-		start = System.nanoTime();
-	    }
+	    start = System.nanoTime();
 
 	    try {
 	        rtpTimestampAdjustment = receiveMedia(receivedData, length);
@@ -1080,6 +1171,8 @@ public class MemberReceiver implements MixDataSource, TreatmentDoneListener {
 		return;
 	    }
 
+	    receiveTimeMetric.recordNanos(System.nanoTime() - start);
+
             if (traceCall || Logger.logLevel == -1) {
                 Logger.println("Call " + cp + " receiveMedia time "
                     + ((System.nanoTime() - start) / 1000000000.)
@@ -1137,7 +1230,11 @@ public class MemberReceiver implements MixDataSource, TreatmentDoneListener {
 
 	long start = 0;
 
-	int[] data = decodeToLinear(receivedData, length);
+	long decodeStart = System.nanoTime();
+
+	short[] data = decodeToLinear(receivedData, length);
+
+	decodeTimeMetric.recordNanos(System.nanoTime() - decodeStart);
 
 	if (inputVolume != 1.0) {
 	    callHandler.getMember().adjustVolume(data, inputVolume);
@@ -1173,6 +1270,10 @@ public class MemberReceiver implements MixDataSource, TreatmentDoneListener {
 	     */
 	    try {
 	        data = inSampleRateConverter.resample(data);
+
+		if (data == decodeBuffer) {
+		    data = (short[]) data.clone();	// nothing to resample
+		}
 		//Logger.println("length after resample " + data.length);
 	    } catch (IOException e) {
 		Logger.println("Call " + cp 
@@ -1203,7 +1304,7 @@ public class MemberReceiver implements MixDataSource, TreatmentDoneListener {
 	forwardData(data);
 
 	/*
-	 * data is a int[] with no RTP header
+	 * data is a short[] with no RTP header
 	 */
 	handleMedia(data);
 
@@ -1220,13 +1321,30 @@ public class MemberReceiver implements MixDataSource, TreatmentDoneListener {
 	return numberOfSamples;
     }
 
-    private int[] decodeToLinear(byte[] receivedData, int length) 
+    private short[] decodeToLinear(byte[] receivedData, int length) 
 	    throws SpeexException {
 
 	/*
 	 * receivedData has the 12 byte RTP header.
 	 */
-	int[] data = new int[myMediaInfo.getSamplesPerPacket()];
+	int samplesPerPacket = myMediaInfo.getSamplesPerPacket();
+
+	short[] data;
+
+	if (inSampleRateConverter == null) {
+	    data = new short[samplesPerPacket];
+	} else {
+	    if (decodeBuffer == null || decodeBuffer.length != samplesPerPacket) {
+		decodeBuffer = new short[samplesPerPacket];
+	    } else {
+		/*
+		 * A short packet leaves the rest of the buffer as silence
+		 */
+		Arrays.fill(decodeBuffer, (short) 0);
+	    }
+
+	    data = decodeBuffer;
+	}
 
 	long start = 0;
 
@@ -1260,7 +1378,7 @@ public class MemberReceiver implements MixDataSource, TreatmentDoneListener {
                 start = System.nanoTime();
             }
 
-            data = speexDecoder.decodeToIntArray(receivedData, 
+            data = speexDecoder.decodeToShortArray(receivedData, 
 		RtpPacket.HEADER_SIZE, length - RtpPacket.HEADER_SIZE);
 
             if (traceCall || Logger.logLevel == -1) {
@@ -1269,7 +1387,7 @@ public class MemberReceiver implements MixDataSource, TreatmentDoneListener {
 		    + " seconds");
 	    }
 	} else {
-	    AudioConversion.bytesToInts(receivedData, RtpPacket.HEADER_SIZE, 
+	    AudioConversion.bytesToShorts(receivedData, RtpPacket.HEADER_SIZE, 
 		length - RtpPacket.HEADER_SIZE, data);
 	}
 
@@ -1277,10 +1395,10 @@ public class MemberReceiver implements MixDataSource, TreatmentDoneListener {
     }
 
     /*
-     * data is a int[] with no RTP data and has been decoded
+     * data is a short[] with no RTP data and has been decoded
      * and resampled to the conference sample rate.
      */
-    private void handleMedia(int[] data) {
+    private void handleMedia(short[] data) {
 	if (dtmfDecoder != null) {
 	    if (checkDtmf(data) == true) {
 		if (traceCall || Logger.logLevel >= Logger.LOG_MOREINFO) {
@@ -1350,7 +1468,7 @@ public class MemberReceiver implements MixDataSource, TreatmentDoneListener {
         }
     }
 
-    private boolean checkDtmf(int[] data) {
+    private boolean checkDtmf(short[] data) {
 	String dtmfKeys = dtmfDecoder.processData(data);
 
 	if (CallHandler.dtmfSuppression() == true && 
@@ -1585,10 +1703,41 @@ public class MemberReceiver implements MixDataSource, TreatmentDoneListener {
 
     private TreatmentManager inputTreatment;
 
-    private int[] previousContribution;
-    private int[] currentContribution;
+    private short[] previousContribution;
+    private short[] currentContribution;
     private boolean contributionValid = false;
 
+    /*
+     * Set by the conference's TalkerSelector
+     */
+    private volatile boolean talkerAdmitted = true;
+    private boolean hadContribution;
+    private int contributionsNotAdmitted;
+
+    public void setTalkerAdmitted(boolean talkerAdmitted) {
+	this.talkerAdmitted = talkerAdmitted;
+    }
+
+    public boolean isTalkerAdmitted() {
+	return talkerAdmitted;
+    }
+
+    /*
+     * True if the member had data to contribute this tick, 
+     * whether or not it was admitted to the mix.
+     */
+    public boolean hadContribution() {
+	return hadContribution;
+    }
+
+    public double getSpeechEnergy() {
+	if (speechDetector == null) {
+	    return 0;
+	}
+
+	return speechDetector.getEnergy();
+    }
+
     public String getSourceId() {
 	return cp.getCallId();
     }
@@ -1598,13 +1747,33 @@ public class MemberReceiver implements MixDataSource, TreatmentDoneListener {
     }
 
     public int[] getPreviousContribution() {
-	return previousContribution;
+	return toInts(previousContribution);
     }
 
     public int[] getCurrentContribution() {
+	return toInts(currentContribution);
+    }
+
+    public short[] getPreviousShortContribution() {
+	return previousContribution;
+    }
+
+    public short[] getCurrentShortContribution() {
 	return currentContribution;
     }
 
+    private static int[] toInts(short[] contribution) {
+	if (contribution == null) {
+	    return null;
+	}
+
+	return AudioConversion.shortsToInts(contribution);
+    }
+
+    public int[] getCurrentMix() {
+	return null;
+    }
+
     public void invalidateCurrentContribution() {
         synchronized (whisperGroup) {
 	    previousContribution = currentContribution;
@@ -1617,6 +1786,7 @@ public class MemberReceiver implements MixDataSource, TreatmentDoneListener {
 	if (readyToReceiveData == false || whisperGroup == null) {
 	    previousContribution = null;
 	    currentContribution = null;
+	    hadContribution = false;
 	    return;
 	}
 
@@ -1634,7 +1804,7 @@ public class MemberReceiver implements MixDataSource, TreatmentDoneListener {
 	            try {
 	                JitterObject jo = jitterManager.getFirstPacket();
 
-	                currentContribution = (int[]) jo.data;
+	                currentContribution = (short[]) jo.data;
 	            } catch (NoSuchElementException e) {
 	            }
 		}
@@ -1646,7 +1816,8 @@ public class MemberReceiver implements MixDataSource, TreatmentDoneListener {
 		 */
 		inputTreatment.saveCurrentContribution();
 
-		currentContribution = inputTreatment.getCurrentContribution();
+		currentContribution =
+		    inputTreatment.getCurrentShortContribution();
 
 		if (currentContribution == null) {
 		    if (Logger.logLevel >= Logger.LOG_INFO) {
@@ -1685,11 +1856,14 @@ public class MemberReceiver implements MixDataSource, TreatmentDoneListener {
         	}
 	    } 
 
+	    hadContribution = currentContribution != null;
+
 	    if (currentContribution != null) {
         	/*
          	 * Add this packet's data to the appropriate whisperGroup
+		 * unless there are louder talkers in the conference.
 	         */
-		if (whisperGroup.hasCommonMix()) {
+		if (talkerAdmitted && whisperGroup.hasCommonMix()) {
         	    whisperGroup.addToLinearDataMix(currentContribution, 
 			doNotRecord());
 		}
@@ -1700,6 +1874,14 @@ public class MemberReceiver implements MixDataSource, TreatmentDoneListener {
 		    Logger.println("Call " + cp
 			+ " MemberReceiver contributed");
 	        }
+
+		if (talkerAdmitted == false) {
+		    /*
+		     * Keep it out of private mixes too.
+		     */
+		    currentContribution = null;
+		    contributionsNotAdmitted++;
+		}
             }
 	}
     }
@@ -1783,6 +1965,10 @@ public class MemberReceiver implements MixDataSource, TreatmentDoneListener {
 
 	readyToReceiveData = false;
 
+	if (packetRing != null) {
+	    DecoderPool.removePacketRing(packetRing);
+	}
+
 	if (datagramChannelRegistered && datagramChannel != null) {
 	    try {
 	        datagramChannel.close();
@@ -1843,6 +2029,15 @@ public class MemberReceiver implements MixDataSource, TreatmentDoneListener {
 	        + " comfort payloads received");
 	    Logger.writeFile("Call " + cp + ":  Forced to defer mixing " 
 		+ forcedToDeferMixing);
+
+	    if (packetRing != null) {
+		Logger.writeFile("Call " + cp + ":  "
+		    + packetRing.getPacketsQueued() + " packets queued for "
+		    + "decoding, " + packetRing.getPacketsDropped() 
+		    + " dropped, depth " + packetRing.getDepth() 
+		    + ", max depth " + packetRing.getMaxDepth() 
+		    + " of " + packetRing.getCapacity());
+	    }
 	
 	    if (packetsReceived != 0) {
                 Logger.writeFile("Call " + cp + ":  " 
@@ -1858,6 +2053,12 @@ public class MemberReceiver implements MixDataSource, TreatmentDoneListener {
 		    + " average milliseconds to process a media packet");
 	    }
 
+	    if (contributionsNotAdmitted != 0) {
+		Logger.writeFile("Call " + cp + ":  "
+		    + contributionsNotAdmitted 
+		    + " packets not mixed because of louder talkers");
+	    }
+
 	    Logger.writeFile("Call " + cp + ":  "
 		+ decryptCount + " packets decrypted");
 
@@ -1867,6 +2068,14 @@ public class MemberReceiver implements MixDataSource, TreatmentDoneListener {
 		    + " microseconds average per decrypt");
 	    }
 
+	    if (srtpContext != null) {
+		Logger.writeFile("Call " + cp + ":  "
+		    + srtpContext.getAuthenticationFailures()
+		    + " packets failed authentication, "
+		    + srtpContext.getReplayedPackets() 
+		    + " replayed packets dropped");
+	    }
+
 	    if (speexDecoder != null) {
 		int decodes = speexDecoder.getDecodes();
 		long decodeTime = speexDecoder.getDecodeTime();
@@ -2099,7 +2308,7 @@ public class MemberReceiver implements MixDataSource, TreatmentDoneListener {
 	}
     }
 
-    private void recordAudio(int[] data, int length) {
+    private void recordAudio(short[] data, int length) {
         if (cp.getFromRecordingFile() == null) {
             return;
         }
@@ -2224,11 +2433,11 @@ public class MemberReceiver implements MixDataSource, TreatmentDoneListener {
     private byte[] decrypt(byte[] data) {
 	try {
 	    decryptCount++;
-	    long start = System.currentTimeMillis();
+	    long start = System.nanoTime();
 
 	    byte[]clearText = decryptCipher.doFinal(data, 0, data.length);
 
-	    decryptTime += (System.currentTimeMillis() - start);
+	    decryptTime += (System.nanoTime() - start);
 	    return clearText;
 	} catch (Exception e) {
 	    Logger.println("Call " + cp + " Decryption failed, length " 
@@ -2239,6 +2448,35 @@ public class MemberReceiver implements MixDataSource, TreatmentDoneListener {
 	}
     }
 
+    /*
+     * Check and decrypt an SRTP packet in place.
+     * Returns the length of the RTP packet or -1 if the packet
+     * should be dropped.
+     */
+    private int unprotect(byte[] data, int length) {
+	try {
+	    decryptCount++;
+	    long start = System.nanoTime();
+
+	    int rtpLength = srtpContext.unprotect(data, length);
+
+	    decryptTime += (System.nanoTime() - start);
+
+	    if (rtpLength < 0 && Logger.logLevel >= Logger.LOG_MOREINFO) {
+		Logger.println("Call " + cp + " dropping SRTP packet, length "
+		    + length + ", not authentic or replayed");
+	    }
+
+	    return rtpLength;
+	} catch (Exception e) {
+	    Logger.println("Call " + cp + " Decryption failed, length " 
+		+ length + ": " + e.getMessage());
+	    callHandler.cancelRequest("Decryption failed: " 
+		+ e.getMessage());
+	    return -1;
+	}
+    }
+
     public String toString() {
 	return myMemberNumber + " ===> " + cp.toString();
     }
@@ -26,6 +26,7 @@ package com.sun.voip.server;
 import com.sun.voip.AudioConversion;
 import com.sun.voip.CallParticipant;
 import com.sun.voip.Logger;
+import com.sun.voip.MetricsRegistry;
 import com.sun.voip.MediaInfo;
 import com.sun.voip.Recorder;
 import com.sun.voip.RtpPacket;
@@ -34,6 +35,7 @@ import com.sun.voip.SampleRateConverter;
 import com.sun.voip.SdpManager;
 import com.sun.voip.SpeexEncoder;
 import com.sun.voip.SpeexException;
+import com.sun.voip.SrtpContext;
 import com.sun.voip.TreatmentManager;
 import com.sun.voip.Util;
 
@@ -90,12 +92,31 @@ public class MemberSender {
 
     private Cipher encryptCipher;
 
+    private SrtpContext srtpContext;
+    private byte[] srtpData;
+
+    /*
+     * Batched sends
+     */
+    private static final int SEND_BUFFER_SIZE = RtpPacket.HEADER_SIZE
+	+ RtpPacket.getMaxDataSize() + SrtpContext.TAG_LENGTH;
+
+    private SendBatcher sendBatcher;
+    private ByteBuffer sendBuffer;
+    private InetSocketAddress queuedAddress;
+    private boolean packetQueued;
+
     private String encryptionKey;
     private String encryptionAlgorithm;
 
     private int mySamplesPerPacket;
 
     private SampleRateConverter outSampleRateConverter;
+    private int[] resampledData;
+
+    private static final MetricsRegistry.Histogram encodeTimeMetric =
+	MetricsRegistry.timeHistogram("member_encode_us",
+	"Time to resample and encode a packet for one member");
 
     private int outSampleRate;
     private int outChannels;
@@ -114,7 +135,19 @@ public class MemberSender {
 	encryptionKey = cp.getEncryptionKey();
 	encryptionAlgorithm = cp.getEncryptionAlgorithm();
 	
-	if (encryptionKey != null) {
+	if (encryptionKey != null && SrtpContext.isSrtp(encryptionAlgorithm)) {
+	    try {
+		srtpContext = new SrtpContext(encryptionKey);
+
+		Logger.println("Call " + cp + " Voice data will be protected "
+		    + "using " + encryptionAlgorithm);
+	    } catch (Exception e) {
+		Logger.println("Call " + cp 
+		    + " Crypto initialization failed " + e.getMessage());
+                throw new IOException(" Crypto initialization failed " 
+		    + e.getMessage());
+	    }
+	} else if (encryptionKey != null) {
 	    try {
 		if (encryptionKey.length() < 8) {
 		    encryptionKey += 
@@ -285,7 +318,33 @@ public class MemberSender {
 
     private long timePreviousPacketSent;
 
-    public synchronized boolean sendData(int[] dataToSend) {
+    public boolean sendData(int[] dataToSend) {
+	return sendData(dataToSend, null);
+    }
+
+    /*
+     * Send data to the member.  If sendBatcher isn't null the packet
+     * is queued and sent when the sendBatcher is flushed.
+     */
+    public synchronized boolean sendData(int[] dataToSend, Object mixSource,
+	    SendBatcher sendBatcher) {
+
+	this.sendBatcher = sendBatcher;
+
+	try {
+	    return sendData(dataToSend, mixSource);
+	} finally {
+	    this.sendBatcher = null;
+	}
+    }
+
+    /*
+     * Send data to the member.  mixSource is where the data came from
+     * if other members get exactly the same data, otherwise null.
+     * Members with the same mix source and output format share
+     * the resampled and encoded payload.
+     */
+    public synchronized boolean sendData(int[] dataToSend, Object mixSource) {
 	if (dtmfKeyToSend != null) {
 	    if (telephoneEventPayload != 0) {
 	        sendDtmfKey();
@@ -354,21 +413,6 @@ public class MemberSender {
 	    callHandler.getMember().adjustVolume(dataToSend, outputVolume);
 	}
 
-	try {
-	    /*
-	     * Resample if needed
-	     */
-	    if (outSampleRateConverter != null) {
-	        dataToSend = outSampleRateConverter.resample(dataToSend);
-	    }
-	} catch (IOException e) {
-	    Logger.println("Call " + cp + " can't resample data to send! "
-		+ e.getMessage());
-	    callHandler.cancelRequest("Call " + cp
-		+ " can't resample data to send! " + e.getMessage());
-	    return false;
-	}
-
 	byte[] rtpData = senderPacket.getData();
 
         if (Logger.logLevel == -37) {
@@ -394,31 +438,46 @@ public class MemberSender {
 
 	//Logger.println("Call " + cp + " Sending data...");
 
-	if (myMediaInfo.getEncoding() == RtpPacket.PCMU_ENCODING) {
-	    /*
-	     * Convert to ulaw
-	     */
-	    AudioConversion.linearToUlaw(dataToSend, rtpData, 
-		RtpPacket.HEADER_SIZE);
-	    //Util.dump("Call " + cp + " sending ulaw data " + rtpData.length,
-	    //    rtpData, 0, 16);
-	} else if (myMediaInfo.getEncoding() == RtpPacket.SPEEX_ENCODING) {
-	    try {
-                if (Logger.logLevel >= Logger.LOG_MOREDETAIL) {
-	            Logger.writeFile("Call " + cp + " speex encoding data ");
-	        }
+	EncodedAudioCache.Entry cacheEntry = null;
 
-	        int length = speexEncoder.encode(dataToSend, rtpData, 
-		    RtpPacket.HEADER_SIZE);
+	/*
+	 * Speex encoders have state so each member must do its own encoding.
+	 */
+	if (mixSource != null && EncodedAudioCache.useEncodeOnce() &&
+		outputVolume == 1.0 &&
+		myMediaInfo.getEncoding() != RtpPacket.SPEEX_ENCODING) {
 
-	        senderPacket.setLength(length + RtpPacket.HEADER_SIZE);
-            } catch (SpeexException e) {
-                Logger.println("Call " + this + ":  " + e.getMessage());
+	    cacheEntry = conferenceManager.getEncodedAudioCache().getEntry(
+		mixSource, myMediaInfo.getEncoding(), 
+		myMediaInfo.getSampleRate(), myMediaInfo.getChannels());
+	}
+
+	if (cacheEntry == null) {
+	    if (encode(dataToSend, rtpData) == false) {
 		return false;
 	    }
 	} else {
-	    AudioConversion.intsToBytes(dataToSend, rtpData, 
-		RtpPacket.HEADER_SIZE);
+	    /*
+	     * The first member to send the mix resamples and encodes it.
+	     * The others copy the payload so their sample rate converters
+	     * don't see this data which only affects the interpolation of
+	     * the first samples when they next resample their own data.
+	     */
+	    synchronized (cacheEntry) {
+		int length = cacheEntry.getPayload(rtpData, 
+		    RtpPacket.HEADER_SIZE);
+
+		if (length >= 0) {
+		    senderPacket.setLength(length + RtpPacket.HEADER_SIZE);
+		} else {
+		    if (encode(dataToSend, rtpData) == false) {
+			return false;
+		    }
+
+		    cacheEntry.setPayload(rtpData, RtpPacket.HEADER_SIZE,
+			senderPacket.getLength() - RtpPacket.HEADER_SIZE);
+		}
+	    }
 	}
 
 	recordPacket(rtpData, senderPacket.getLength());
@@ -450,9 +509,7 @@ public class MemberSender {
 	    try {
 	        senderPacket.setSocketAddress(memberAddress);
 
-	        datagramChannel.send(
-		    ByteBuffer.wrap(senderPacket.getData(), 0, 
-		        senderPacket.getLength()), memberAddress);
+	        send(senderPacket.getData(), senderPacket.getLength());
 
                 if (Logger.logLevel >= Logger.LOG_MOREDETAIL) {
 	            Logger.writeFile("Call " + cp + " back from sending data");
@@ -485,6 +542,67 @@ public class MemberSender {
 	return true;
     }
 
+    /*
+     * Resample and encode the data into rtpData after the RTP header.
+     */
+    private boolean encode(int[] dataToSend, byte[] rtpData) {
+	long start = System.nanoTime();
+
+	boolean encoded = resampleAndEncode(dataToSend, rtpData);
+
+	encodeTimeMetric.recordNanos(System.nanoTime() - start);
+	return encoded;
+    }
+
+    private boolean resampleAndEncode(int[] dataToSend, byte[] rtpData) {
+	try {
+	    /*
+	     * Resample if needed
+	     */
+	    if (outSampleRateConverter != null) {
+	        resampledData = outSampleRateConverter.resample(dataToSend,
+		    resampledData);
+
+	        dataToSend = resampledData;
+	    }
+	} catch (IOException e) {
+	    Logger.println("Call " + cp + " can't resample data to send! "
+		+ e.getMessage());
+	    callHandler.cancelRequest("Call " + cp
+		+ " can't resample data to send! " + e.getMessage());
+	    return false;
+	}
+
+	if (myMediaInfo.getEncoding() == RtpPacket.PCMU_ENCODING) {
+	    /*
+	     * Convert to ulaw
+	     */
+	    AudioConversion.linearToUlaw(dataToSend, rtpData, 
+		RtpPacket.HEADER_SIZE);
+	    //Util.dump("Call " + cp + " sending ulaw data " + rtpData.length,
+	    //    rtpData, 0, 16);
+	} else if (myMediaInfo.getEncoding() == RtpPacket.SPEEX_ENCODING) {
+	    try {
+                if (Logger.logLevel >= Logger.LOG_MOREDETAIL) {
+	            Logger.writeFile("Call " + cp + " speex encoding data ");
+	        }
+
+	        int length = speexEncoder.encode(dataToSend, rtpData, 
+		    RtpPacket.HEADER_SIZE);
+
+	        senderPacket.setLength(length + RtpPacket.HEADER_SIZE);
+            } catch (SpeexException e) {
+                Logger.println("Call " + this + ":  " + e.getMessage());
+		return false;
+	    }
+	} else {
+	    AudioConversion.intsToBytes(dataToSend, rtpData, 
+		RtpPacket.HEADER_SIZE);
+	}
+
+	return true;
+    }
+
     /*
      * It takes 12 packets to generate a dtmf key!
      * The first 3 are silence packets with the MARK bit set.
@@ -654,8 +772,7 @@ public class MemberSender {
 	try {
 	    senderPacket.setSocketAddress(memberAddress);
 
-	    datagramChannel.send(
-		ByteBuffer.wrap(senderPacket.getData()), memberAddress);
+	    send(senderPacket.getData(), senderPacket.getLength());
 	} catch (IOException e) {
 	    if (!done) {
 	        Logger.error("Call " + cp + " sendPacket:  "
@@ -664,6 +781,63 @@ public class MemberSender {
 	}
     }
 
+    /*
+     * Send a packet to the member now or, when called from the 
+     * ConferenceSender with batched sends enabled, copy it to the 
+     * send buffer and queue it to be sent at the end of the tick.
+     */
+    private void send(byte[] data, int length) throws IOException {
+	if (sendBatcher == null || length > SEND_BUFFER_SIZE) {
+	    datagramChannel.send(ByteBuffer.wrap(data, 0, length), 
+		memberAddress);
+	    return;
+	}
+
+	if (packetQueued) {
+	    /*
+	     * There's only one send buffer.  Keep the packets in order.
+	     */
+	    sendQueuedPacket();
+	}
+
+	if (sendBuffer == null) {
+	    sendBuffer = ByteBuffer.allocateDirect(SEND_BUFFER_SIZE);
+	}
+
+	sendBuffer.clear();
+	sendBuffer.put(data, 0, length);
+	sendBuffer.flip();
+
+	queuedAddress = memberAddress;
+	packetQueued = true;
+
+	sendBatcher.queue(datagramChannel, this);
+    }
+
+    /*
+     * Called by the SendBatcher to send the packet queued this tick.
+     * Returns true if a packet was sent.
+     */
+    public synchronized boolean sendQueuedPacket() {
+	if (packetQueued == false) {
+	    return false;
+	}
+
+	packetQueued = false;
+
+	try {
+	    datagramChannel.send(sendBuffer, queuedAddress);
+	} catch (IOException e) {
+	    if (!done) {
+		Logger.error("Call " + cp + " sendQueuedPacket " 
+		    + e.getMessage());
+	    }
+	    return false;
+	}
+
+	return true;
+    }
+
     private static final int CN_DISABLE     = 0;    // disable comfort noise
     private static final int CN_ADD_NOISE   = 1;    // add noise to every packet
     private static final int CN_USE_PAYLOAD = 2;    // use cn payload change
@@ -702,8 +876,7 @@ public class MemberSender {
         senderPacket.setSocketAddress(memberAddress);
 
 	try {
-	    datagramChannel.send(
-		ByteBuffer.wrap(senderPacket.getData()), memberAddress);
+	    send(senderPacket.getData(), senderPacket.getLength());
 	} catch (IOException e) {
 	    if (!done) {
 		Logger.println("Call " + cp + " sendComfortNoisePayload "
@@ -838,7 +1011,7 @@ public class MemberSender {
 	    if (encryptCount != 0) {
 		Logger.writeFile("Call " + cp + ":  "
 		    + (((float)encryptTime / (float)encryptCount) / 1000)
-		    + " milliseconds average per encrypt");
+		    + " microseconds average per encrypt");
 	    }
 
             if (speexEncoder != null) {
@@ -1025,17 +1198,42 @@ public class MemberSender {
     private long encryptTime;
 
     public boolean needToEncrypt() {
-        return encryptCipher != null;
+        return encryptCipher != null || srtpContext != null;
     }
 
     public void encrypt(byte[] data, int length) {
 
 	try {
 	    encryptCount++;
-	    long start = System.currentTimeMillis();
-	    byte[] cipherText = encryptCipher.doFinal(data, 0, length);
-	    encryptTime += (System.currentTimeMillis() - start);
-	    senderPacket.setBuffer(cipherText);
+	    long start = System.nanoTime();
+
+	    if (srtpContext != null) {
+		/*
+		 * The payload is encrypted into a buffer which is reused
+		 * for every packet and has room for the authentication tag.
+		 * The packet data itself is left alone so that it can
+		 * be reused for the next packet.
+		 */
+		if (srtpData == null || 
+			srtpData.length < length + SrtpContext.TAG_LENGTH) {
+
+		    srtpData = new byte[length + SrtpContext.TAG_LENGTH];
+		}
+
+		int srtpLength = srtpContext.protect(data, length, srtpData);
+
+		if (srtpLength < 0) {
+		    throw new IOException("Invalid RTP packet");
+		}
+
+		senderPacket.setBuffer(srtpData);
+		senderPacket.setLength(srtpLength);
+	    } else {
+	        byte[] cipherText = encryptCipher.doFinal(data, 0, length);
+	        senderPacket.setBuffer(cipherText);
+	    }
+
+	    encryptTime += (System.nanoTime() - start);
 	} catch (Exception e) {
             Logger.println("Call " + cp + " Encryption failed, length "
 		+ data.length + ": " + e.getMessage());
@@ -0,0 +1,172 @@
+/*
+ * Copyright 2007 Sun Microsystems, Inc.
+ *
+ * This file is part of jVoiceBridge.
+ *
+ * jVoiceBridge is free software: you can redistribute it and/or modify 
+ * it under the terms of the GNU General Public License version 2 as 
+ * published by the Free Software Foundation and distributed hereunder 
+ * to you.
+ *
+ * jVoiceBridge is distributed in the hope that it will be useful, 
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Sun designates this particular file as subject to the "Classpath"
+ * exception as provided by Sun in the License file that accompanied this 
+ * code. 
+ */
+
+
+package com.sun.voip.server;
+
+import com.sun.voip.Logger;
+
+import java.util.Arrays;
+
+/*
+ * Per-thread pool of the int[] buffers used while mixing data for a member.
+ *
+ * Each sender thread mixes one member at a time.  Every buffer handed out
+ * while mixing for a member (the output buffer, spatial audio scratch
+ * buffers, etc.) is returned to the pool once the data has been sent
+ * so that the same buffers are reused for the next member and the next
+ * tick.  In steady state nothing is allocated on the mix path.
+ *
+ * When pooling is disabled, getBuffer() simply allocates a new buffer.
+ */
+public class MixBufferPool {
+    private static final String POOLED_MIX_BUFFERS_PROPERTY =
+	"com.sun.voip.server.POOLED_MIX_BUFFERS";
+
+    private static boolean usePooledBuffers = false;
+
+    private static int buffersAllocated;
+
+    private static ThreadLocal<MixBufferPool> pools = 
+	    new ThreadLocal<MixBufferPool>() {
+
+	protected MixBufferPool initialValue() {
+	    return new MixBufferPool();
+	}
+    };
+
+    static {
+	String s = System.getProperty(POOLED_MIX_BUFFERS_PROPERTY);
+
+	if (s != null && s.equalsIgnoreCase("true")) {
+	    usePooledBuffers = true;
+	}
+    }
+
+    /*
+     * Buffers are grouped by length since conferences 
+     * may have different packet sizes.
+     */
+    private Arena[] arenas = new Arena[0];
+
+    private MixBufferPool() {
+    }
+
+    public static void setUsePooledBuffers(boolean usePooledBuffers) {
+	MixBufferPool.usePooledBuffers = usePooledBuffers;
+
+	Logger.println("Pooled mix buffers " 
+	    + (usePooledBuffers ? "enabled" : "disabled"));
+    }
+
+    public static boolean usePooledBuffers() {
+	return usePooledBuffers;
+    }
+
+    public static int getBuffersAllocated() {
+	return buffersAllocated;
+    }
+
+    /*
+     * Get a zero filled buffer of the specified length.
+     * The buffer belongs to the caller until releaseBuffers() is called
+     * by the same thread.
+     */
+    public static int[] getBuffer(int length) {
+	if (usePooledBuffers == false) {
+	    return new int[length];
+	}
+
+	return pools.get().getArena(length).getBuffer();
+    }
+
+    /*
+     * Return all of the buffers handed out to the current thread.
+     */
+    public static void releaseBuffers() {
+	MixBufferPool pool = pools.get();
+
+	for (int i = 0; i < pool.arenas.length; i++) {
+	    pool.arenas[i].inUse = 0;
+	}
+    }
+
+    private Arena getArena(int length) {
+	for (int i = 0; i < arenas.length; i++) {
+	    if (arenas[i].length == length) {
+		return arenas[i];
+	    }
+	}
+
+	Arena[] a = new Arena[arenas.length + 1];
+
+	System.arraycopy(arenas, 0, a, 0, arenas.length);
+
+	a[arenas.length] = new Arena(length);
+	arenas = a;
+	return a[arenas.length - 1];
+    }
+
+    private static synchronized void allocated() {
+	buffersAllocated++;
+    }
+
+    private static class Arena {
+	private int length;
+	private int[][] buffers = new int[4][];
+	private int inUse;
+
+	public Arena(int length) {
+	    this.length = length;
+	}
+
+	public int[] getBuffer() {
+	    if (inUse == buffers.length) {
+		int[][] b = new int[buffers.length * 2][];
+
+		System.arraycopy(buffers, 0, b, 0, buffers.length);
+		buffers = b;
+	    }
+
+	    int[] buffer = buffers[inUse];
+
+	    if (buffer == null) {
+		buffer = new int[length];
+		buffers[inUse] = buffer;
+		allocated();
+
+		if (Logger.logLevel >= Logger.LOG_DETAIL) {
+		    Logger.println(Thread.currentThread().getName()
+			+ " allocated mix buffer " + inUse 
+			+ " length " + length);
+		}
+	    } else {
+		Arrays.fill(buffer, 0);
+	    }
+
+	    inUse++;
+	    return buffer;
+	}
+    }
+
+}
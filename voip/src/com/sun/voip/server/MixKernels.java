@@ -0,0 +1,284 @@
+/*
+ * Copyright 2007 Sun Microsystems, Inc.
+ *
+ * This file is part of jVoiceBridge.
+ *
+ * jVoiceBridge is free software: you can redistribute it and/or modify 
+ * it under the terms of the GNU General Public License version 2 as 
+ * published by the Free Software Foundation and distributed hereunder 
+ * to you.
+ *
+ * jVoiceBridge is distributed in the hope that it will be useful, 
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Sun designates this particular file as subject to the "Classpath"
+ * exception as provided by Sun in the License file that accompanied this 
+ * code. 
+ */
+
+
+package com.sun.voip.server;
+
+/*
+ * Sample kernels used by the mixer, the spatializer and the senders.
+ *
+ * The loops are written so HotSpot's superword optimization can turn
+ * them into SIMD instructions:  the length is computed once up front so
+ * range checks can be hoisted, the bodies are unrolled by 4 with 
+ * independent lanes and clipping is done with min / max instead of
+ * branches.
+ *
+ * Mix sums are accumulated in ints and clipped once at the end.
+ * Gains are applied in Q15 fixed point.
+ */
+public final class MixKernels {
+
+    public static final int Q15_ONE = 1 << 15;
+
+    private static final int MAX_SAMPLE = 32767;
+    private static final int MIN_SAMPLE = -32768;
+
+    private MixKernels() {
+    }
+
+    /*
+     * mixData[i] += inData[i]
+     */
+    public static void add(int[] inData, int[] mixData, int length) {
+	int n = length & ~3;
+
+	int i = 0;
+
+	for (; i < n; i += 4) {
+	    mixData[i] += inData[i];
+	    mixData[i + 1] += inData[i + 1];
+	    mixData[i + 2] += inData[i + 2];
+	    mixData[i + 3] += inData[i + 3];
+	}
+
+	for (; i < length; i++) {
+	    mixData[i] += inData[i];
+	}
+    }
+
+    /*
+     * mixData[i] -= inData[i]
+     */
+    public static void subtract(int[] inData, int[] mixData, int length) {
+	int n = length & ~3;
+
+	int i = 0;
+
+	for (; i < n; i += 4) {
+	    mixData[i] -= inData[i];
+	    mixData[i + 1] -= inData[i + 1];
+	    mixData[i + 2] -= inData[i + 2];
+	    mixData[i + 3] -= inData[i + 3];
+	}
+
+	for (; i < length; i++) {
+	    mixData[i] -= inData[i];
+	}
+    }
+
+    /*
+     * mixData[i] += inData[i] for 16 bit contributions
+     */
+    public static void add(short[] inData, int[] mixData, int length) {
+	int n = length & ~3;
+
+	int i = 0;
+
+	for (; i < n; i += 4) {
+	    mixData[i] += inData[i];
+	    mixData[i + 1] += inData[i + 1];
+	    mixData[i + 2] += inData[i + 2];
+	    mixData[i + 3] += inData[i + 3];
+	}
+
+	for (; i < length; i++) {
+	    mixData[i] += inData[i];
+	}
+    }
+
+    /*
+     * mixData[i] -= inData[i] for 16 bit contributions
+     */
+    public static void subtract(short[] inData, int[] mixData, int length) {
+	int n = length & ~3;
+
+	int i = 0;
+
+	for (; i < n; i += 4) {
+	    mixData[i] -= inData[i];
+	    mixData[i + 1] -= inData[i + 1];
+	    mixData[i + 2] -= inData[i + 2];
+	    mixData[i + 3] -= inData[i + 3];
+	}
+
+	for (; i < length; i++) {
+	    mixData[i] -= inData[i];
+	}
+    }
+
+    /*
+     * outData[i] = a[i] - b[i]
+     */
+    public static void difference(int[] a, int[] b, int[] outData, 
+	    int length) {
+
+	int n = length & ~3;
+
+	int i = 0;
+
+	for (; i < n; i += 4) {
+	    outData[i] = a[i] - b[i];
+	    outData[i + 1] = a[i + 1] - b[i + 1];
+	    outData[i + 2] = a[i + 2] - b[i + 2];
+	    outData[i + 3] = a[i + 3] - b[i + 3];
+	}
+
+	for (; i < length; i++) {
+	    outData[i] = a[i] - b[i];
+	}
+    }
+
+    /*
+     * outData[i] = a[i] - b[i] where b is a 16 bit contribution
+     */
+    public static void difference(int[] a, short[] b, int[] outData, 
+	    int length) {
+
+	int n = length & ~3;
+
+	int i = 0;
+
+	for (; i < n; i += 4) {
+	    outData[i] = a[i] - b[i];
+	    outData[i + 1] = a[i + 1] - b[i + 1];
+	    outData[i + 2] = a[i + 2] - b[i + 2];
+	    outData[i + 3] = a[i + 3] - b[i + 3];
+	}
+
+	for (; i < length; i++) {
+	    outData[i] = a[i] - b[i];
+	}
+    }
+
+    public static int clip(int sample) {
+	return Math.max(MIN_SAMPLE, Math.min(MAX_SAMPLE, sample));
+    }
+
+    /*
+     * Clip int samples to 16 bits in place.
+     */
+    public static void clip(int[] data) {
+	int length = data.length;
+
+	int n = length & ~3;
+
+	int i = 0;
+
+	for (; i < n; i += 4) {
+	    data[i] = clip(data[i]);
+	    data[i + 1] = clip(data[i + 1]);
+	    data[i + 2] = clip(data[i + 2]);
+	    data[i + 3] = clip(data[i + 3]);
+	}
+
+	for (; i < length; i++) {
+	    data[i] = clip(data[i]);
+	}
+    }
+
+    /*
+     * Convert a volume to a Q15 gain.
+     */
+    public static int toQ15(double volume) {
+	return (int) Math.round(volume * Q15_ONE);
+    }
+
+    /*
+     * Multiply 16-bit samples by volume and clip, in place.
+     *
+     * With 16-bit input and a gain below 2.0 the Q15 product fits 
+     * in an int.  Larger gains use a long product.
+     */
+    public static void gain(int[] data, double volume) {
+	int length = data.length;
+
+	if (volume == 0) {
+	    for (int i = 0; i < length; i++) {
+		data[i] = 0;
+	    }
+	    return;
+	}
+
+	int gain = toQ15(volume);
+
+	if (gain > -2 * Q15_ONE && gain < 2 * Q15_ONE) {
+	    gainQ15(data, gain, length);
+	    return;
+	}
+
+	for (int i = 0; i < length; i++) {
+	    data[i] = clip((int) 
+		(((long) clip(data[i]) * gain + (Q15_ONE >> 1)) >> 15));
+	}
+    }
+
+    /*
+     * Multiply 16 bit samples by volume and clip, in place.
+     */
+    public static void gain(short[] data, double volume) {
+	int length = data.length;
+
+	if (volume == 0) {
+	    for (int i = 0; i < length; i++) {
+		data[i] = 0;
+	    }
+	    return;
+	}
+
+	int gain = toQ15(volume);
+
+	if (gain > -2 * Q15_ONE && gain < 2 * Q15_ONE) {
+	    final int round = Q15_ONE >> 1;
+
+	    for (int i = 0; i < length; i++) {
+		data[i] = (short) clip((data[i] * gain + round) >> 15);
+	    }
+	    return;
+	}
+
+	for (int i = 0; i < length; i++) {
+	    data[i] = (short) clip((int) 
+		(((long) data[i] * gain + (Q15_ONE >> 1)) >> 15));
+	}
+    }
+
+    private static void gainQ15(int[] data, int gain, int length) {
+	final int round = Q15_ONE >> 1;
+
+	int n = length & ~3;
+
+	int i = 0;
+
+	for (; i < n; i += 4) {
+	    data[i] = clip((clip(data[i]) * gain + round) >> 15);
+	    data[i + 1] = clip((clip(data[i + 1]) * gain + round) >> 15);
+	    data[i + 2] = clip((clip(data[i + 2]) * gain + round) >> 15);
+	    data[i + 3] = clip((clip(data[i + 3]) * gain + round) >> 15);
+	}
+
+	for (; i < length; i++) {
+	    data[i] = clip((clip(data[i]) * gain + round) >> 15);
+	}
+    }
+
+}
@@ -29,8 +29,10 @@ import java.util.ArrayList;
 
 import com.sun.voip.AudioConversion;
 import com.sun.voip.Logger;
+import com.sun.voip.ShortSpatialAudio;
 import com.sun.voip.SpatialAudio;
 import com.sun.voip.MixDataSource;
+import com.sun.voip.ShortMixDataSource;
 import com.sun.voip.RtpPacket;
 
 public class MixManager {
@@ -44,8 +46,27 @@ public class MixManager {
 
     private boolean useFastMix = false;
 
+    /*
+     * Mix shared with other members and the descriptors
+     * which are specific to this member.
+     */
+    private MixPlan mixPlan;
+
+    /*
+     * Where the data returned by mix() came from when it is the same
+     * data other members get, otherwise null.
+     */
+    private Object mixSource;
+    private ArrayList memberDescriptors = new ArrayList();
+
     private SpatialAudio sa;
 
+    /*
+     * Used to adjust the volume of a private mix without allocating
+     * a new array each time we mix.
+     */
+    private double[] adjustedSpatialValues = new double[4];
+
     public MixManager(ConferenceMember member, 
 	    int conferenceSamplesPerPacket, int channels) {
 
@@ -117,7 +138,7 @@ public class MixManager {
 	}
 
 	mixDescriptors.add(mixDescriptor);
-	setUseFastMix();
+	descriptorsChanged();
     }
 	
     public void addMix(MixDataSource mixDataSource, double attenuation) {
@@ -138,7 +159,7 @@ public class MixManager {
 		}
 	    }
 
-	    setUseFastMix();
+	    descriptorsChanged();
 	    return;
 	}
 
@@ -151,12 +172,12 @@ public class MixManager {
 		    + " " + attenuation);
 	    }
 
-	    setUseFastMix();
+	    descriptorsChanged();
 	    return;
 	}
 
 	mixDescriptor.setAttenuation(attenuation);
-	setUseFastMix();
+	descriptorsChanged();
     }
     
     public void removeMix(MixDataSource mixDataSource) {
@@ -180,18 +201,18 @@ public class MixManager {
 	    Logger.println("Call " + member
 		+ " removeMix removed " + mixDescriptor);
 	}
-	setUseFastMix();
+	descriptorsChanged();
     }
 
     public void setAttenuation(MixDescriptor md, double attenuation) {
 	md.setAttenuation(attenuation);
 
-	setUseFastMix();
+	descriptorsChanged();
     }
 
     public void setMuted(MixDescriptor md, boolean isMuted) {
 	md.setMuted(isMuted);
-	setUseFastMix();
+	descriptorsChanged();
     }
 
     public MixDescriptor findMixDescriptor(MixDataSource mixDataSource) {
@@ -217,6 +238,23 @@ public class MixManager {
         return null;
     }
 
+    /*
+     * The descriptors have changed.  The shared mix plan is no longer valid.
+     */
+    private void descriptorsChanged() {
+	releaseMixPlan();
+	setUseFastMix();
+    }
+
+    public void releaseMixPlan() {
+	if (mixPlan == null) {
+	    return;
+	}
+
+	mixPlan.getMixPlanner().releaseMixPlan(mixPlan);
+	mixPlan = null;
+    }
+
     private void setUseFastMix() {
         useFastMix = false;
 
@@ -355,13 +393,15 @@ public class MixManager {
 		+ mixDescriptor);
 	}
 
-	setUseFastMix();
+	descriptorsChanged();
 	return mixDescriptor;
     }
 
     public int[] mix() {
         int[] outData = null;
 
+	mixSource = null;
+
         if (mixDescriptors.size() == 0) {
             return null;
         }
@@ -387,100 +427,212 @@ public class MixManager {
 	    }
 	}
 
-        outData = new int[conferenceSamplesPerPacket];
+        outData = MixBufferPool.getBuffer(conferenceSamplesPerPacket);
 
-	//Logger.println("Call " + member + " MixManager mixing " 
-	//	+ mixDescriptors.size());
+	boolean needToSend;
 
-	boolean needToSend = false;
+	if (MixPlanner.useSharedMixes()) {
+	    needToSend = sharedMix(outData);
+	} else {
+	    //Logger.println("Call " + member + " MixManager mixing " 
+	    //	+ mixDescriptors.size());
 
-        for (int i = 0; i < mixDescriptors.size(); i++) {
-            MixDescriptor mixDescriptor = (MixDescriptor) mixDescriptors.get(i);
+	    needToSend = false;
 
-	    if (mixDescriptor.isMuted())  {
-		continue;
+            for (int i = 0; i < mixDescriptors.size(); i++) {
+		if (mix((MixDescriptor) mixDescriptors.get(i), outData)) {
+		    needToSend = true;
+		}
 	    }
+	}
 
-	    MixDataSource mixDataSource = mixDescriptor.getMixDataSource();
+	if (needToSend == false) {
+	    return null;
+	}
 
-            int[] contribution = mixDataSource.getCurrentContribution();
+	MixKernels.clip(outData);
 
-	    if (mixDescriptor.isPrivateMix() == true) {
-		double[] spatialValues = mixDescriptor.getSpatialValues();
+	if (Logger.logLevel == -39) {
+	    checkData(outData, false);
+	}
+
+        return outData;
+    }
 
-		if (MixDescriptor.isSpatiallyNeutral(spatialValues) &&
-			spatialValues[3] != 0) {
+    /*
+     * Use the mix shared with other members which have the same
+     * descriptors and then mix in the descriptors specific to this member.
+     */
+    private boolean sharedMix(int[] outData) {
+	if (mixPlan == null) {
+	    ArrayList sharedDescriptors = new ArrayList();
 
-		    /*
-		     * Since only the volume needs to be adjusted,
-		     * rather than subtracting out the contribution
-		     * and then adding in the volume we can
-		     * set the volume to volume - 1 and add that in.
-		     */
-		    if (mixDataSource.contributionIsInCommonMix()) {
-		        double[] sv = new double[4];
+	    memberDescriptors.clear();
 
-		        sv[0] = spatialValues[0];
-		        sv[1] = spatialValues[1];
-		        sv[2] = spatialValues[2];
-		        sv[3] = spatialValues[3] - 1;
+	    for (int i = 0; i < mixDescriptors.size(); i++) {
+		MixDescriptor md = (MixDescriptor) mixDescriptors.get(i);
 
-		        spatialValues = sv;
+		if (md.isMuted()) {
+		    continue;
+		}
 
-		        if (Logger.logLevel == -69) {
-			    Logger.println("Call " + member + " pm for " 
-			        + mixDataSource.toAbbreviatedString()
-			        + " s3 " + spatialValues[3]);
-			}
-		    }
+		if (md.getMixDataSource() == member.getMemberReceiver()) {
+		    memberDescriptors.add(md);
 		} else {
-		    /*
-		     * Subtract the current contribution from the mix
-		     */
-		    if (contribution != null && 
-			    mixDataSource.contributionIsInCommonMix()) {
-
-            		WhisperGroup.mixData(contribution, outData, false);
-
-		        if (spatialValues[3] == 0) {
-			    if (Logger.logLevel == -44) {
-				Logger.println("subtracted out "
-			            + mixDescriptor);
-			    }
-			    continue;  // we've already subtracted it out
-		        }
-		    }
+		    sharedDescriptors.add(md);
 		}
+	    }
+
+	    mixPlan = member.getConferenceManager().getMixPlanner().getMixPlan(
+		sharedDescriptors);
+	}
+
+	boolean needToSend = false;
+
+	boolean isShared = false;
+
+	if (mixPlan.getReferences() > 1) {
+	    int[] sharedData = mixPlan.getMix(this, outData.length);
 
-		contribution = sa.generateSpatialAudio(
-		    mixDataSource.getSourceId(), 
-                    mixDataSource.getPreviousContribution(),
-		    contribution, spatialValues);
+	    if (sharedData != null) {
+		System.arraycopy(sharedData, 0, outData, 0, outData.length);
+		needToSend = true;
+		isShared = true;
 	    }
+	} else {
+	    /*
+	     * Nobody else has the same mix, no need to save it.
+	     */
+	    if (mix(mixPlan.getMixDescriptors(), outData)) {
+		needToSend = true;
+	    }
+	}
 
-            if (contribution != null) {
-		/*
-		 * Mix into an int[] so that we can clip once after
-		 * we're done mixing.
-		 */
-		boolean add = mixDescriptor.getEffectiveVolume() != -1;
+	for (int i = 0; i < memberDescriptors.size(); i++) {
+	    if (mix((MixDescriptor) memberDescriptors.get(i), outData)) {
+		needToSend = true;
+		isShared = false;
+	    }
+	}
+
+	if (isShared) {
+	    mixSource = mixPlan;
+	}
 
-            	WhisperGroup.mixData(contribution, outData, add);
+	return needToSend;
+    }
+
+    /*
+     * Mix the data for the descriptors into outData.
+     * Returns true if anything was mixed.
+     */
+    boolean mix(MixDescriptor[] descriptors, int[] outData) {
+	boolean needToSend = false;
+
+	for (int i = 0; i < descriptors.length; i++) {
+	    if (mix(descriptors[i], outData)) {
 		needToSend = true;
-            }
-        }
+	    }
+	}
 
-	if (needToSend == false) {
-	    return null;
+	return needToSend;
+    }
+
+    /*
+     * Mix the data for one descriptor into outData.
+     * Returns true if data was mixed.
+     */
+    private boolean mix(MixDescriptor mixDescriptor, int[] outData) {
+	if (mixDescriptor.isMuted())  {
+	    return false;
 	}
 
-	AudioConversion.clip(outData);
+	MixDataSource mixDataSource = mixDescriptor.getMixDataSource();
 
-	if (Logger.logLevel == -39) {
-	    checkData(outData, false);
+	boolean add = mixDescriptor.getEffectiveVolume() != -1;
+
+	int[] mix = getCurrentMix(mixDataSource);
+
+	if (mix != null) {
+	    /*
+	     * A whisper group's mix
+	     */
+	    WhisperGroup.mixData(mix, outData, add);
+	    return true;
 	}
 
-        return outData;
+	short[] contribution = getCurrentContribution(mixDataSource);
+
+	if (mixDescriptor.isPrivateMix() == true) {
+	    double[] spatialValues = mixDescriptor.getSpatialValues();
+
+	    if (MixDescriptor.isSpatiallyNeutral(spatialValues) &&
+		    spatialValues[3] != 0) {
+
+		/*
+		 * Since only the volume needs to be adjusted,
+		 * rather than subtracting out the contribution
+		 * and then adding in the volume we can
+		 * set the volume to volume - 1 and add that in.
+		 */
+		if (mixDataSource.contributionIsInCommonMix()) {
+		    double[] sv = adjustedSpatialValues;
+
+		    sv[0] = spatialValues[0];
+		    sv[1] = spatialValues[1];
+		    sv[2] = spatialValues[2];
+		    sv[3] = spatialValues[3] - 1;
+
+		    spatialValues = sv;
+
+		    if (Logger.logLevel == -69) {
+			Logger.println("Call " + member + " pm for " 
+			    + mixDataSource.toAbbreviatedString()
+			    + " s3 " + spatialValues[3]);
+		    }
+		}
+	    } else {
+		/*
+		 * Subtract the current contribution from the mix
+		 */
+		if (contribution != null && 
+			mixDataSource.contributionIsInCommonMix()) {
+
+		    WhisperGroup.mixData(contribution, outData, false);
+
+		    if (spatialValues[3] == 0) {
+			if (Logger.logLevel == -44) {
+			    Logger.println("subtracted out "
+				+ mixDescriptor);
+			}
+			return false;  // we've already subtracted it out
+		    }
+		}
+	    }
+
+	    int[] spatialData = generateSpatialAudio(
+		mixDataSource.getSourceId(), 
+		getPreviousContribution(mixDataSource),
+		contribution, spatialValues);
+
+	    if (spatialData == null) {
+		return false;
+	    }
+
+	    WhisperGroup.mixData(spatialData, outData, add);
+	    return true;
+	}
+
+	if (contribution != null) {
+	    /*
+	     * Mix into an int[] so that we can clip once after
+	     * we're done mixing.
+	     */
+	    WhisperGroup.mixData(contribution, outData, add);
+	    return true;
+	}
+
+	return false;
     }
 
     /*
@@ -493,19 +645,19 @@ public class MixManager {
 	    mixDescriptors.get(0);
 
         int[] conferenceMixContribution =
-	    conferenceMixDescriptor.getMixDataSource().getCurrentContribution();
+	    getCurrentMix(conferenceMixDescriptor.getMixDataSource());
 
         if (conferenceMixContribution == null) {
 	    return null;
 	}
 
-	int[] outData = new int[conferenceSamplesPerPacket];
+	int[] outData = MixBufferPool.getBuffer(conferenceSamplesPerPacket);
 
 	MixDescriptor memberMixDescriptor = (MixDescriptor)
 	    mixDescriptors.get(1);
 
-        int[] memberContribution =
-            memberMixDescriptor.getMixDataSource().getCurrentContribution();
+        short[] memberContribution =
+            getCurrentContribution(memberMixDescriptor.getMixDataSource());
 
         if (memberContribution == null) {
 	    System.arraycopy(conferenceMixContribution, 0, outData, 0,
@@ -515,7 +667,13 @@ public class MixManager {
                 checkData(outData, useFastMix);
             }
 
-	    AudioConversion.clip(outData);
+	    MixKernels.clip(outData);
+
+	    /*
+	     * Every member of the whisper group which isn't talking
+	     * gets exactly the same data.
+	     */
+	    mixSource = conferenceMixContribution;
             return outData;
         }
 
@@ -526,10 +684,93 @@ public class MixManager {
             checkData(outData, useFastMix);
         }
 
-        AudioConversion.clip(outData);
+        MixKernels.clip(outData);
 	return outData;
     }
 
+    /*
+     * Sources which only implement MixDataSource contribute ints.
+     * These are clipped to 16 bits before they're mixed.
+     */
+    private static int[] getCurrentMix(MixDataSource mixDataSource) {
+	if (mixDataSource instanceof ShortMixDataSource) {
+	    return ((ShortMixDataSource) mixDataSource).getCurrentMix();
+	}
+
+	return null;
+    }
+
+    private static short[] getCurrentContribution(
+	    MixDataSource mixDataSource) {
+
+	if (mixDataSource instanceof ShortMixDataSource) {
+	    return ((ShortMixDataSource) 
+		mixDataSource).getCurrentShortContribution();
+	}
+
+	return toShorts(mixDataSource.getCurrentContribution());
+    }
+
+    private static short[] getPreviousContribution(
+	    MixDataSource mixDataSource) {
+
+	if (mixDataSource instanceof ShortMixDataSource) {
+	    return ((ShortMixDataSource) 
+		mixDataSource).getPreviousShortContribution();
+	}
+
+	return toShorts(mixDataSource.getPreviousContribution());
+    }
+
+    private static short[] toShorts(int[] contribution) {
+	if (contribution == null) {
+	    return null;
+	}
+
+	short[] data = new short[contribution.length];
+
+	AudioConversion.clipToShorts(contribution, data);
+	return data;
+    }
+
+    /*
+     * A spatial audio module which only implements SpatialAudio
+     * is given the contributions as ints.
+     */
+    private int[] generateSpatialAudio(String sourceId, 
+	    short[] previousContribution, short[] currentContribution, 
+	    double[] spatialValues) {
+
+	if (sa instanceof ShortSpatialAudio) {
+	    return ((ShortSpatialAudio) sa).generateSpatialAudio(sourceId,
+		previousContribution, currentContribution, spatialValues);
+	}
+
+	return sa.generateSpatialAudio(sourceId, 
+	    previousContribution == null ? 
+		null : AudioConversion.shortsToInts(previousContribution),
+	    currentContribution == null ? 
+		null : AudioConversion.shortsToInts(currentContribution),
+	    spatialValues);
+    }
+
+    /*
+     * Get the source of the data returned by the last call to mix()
+     * if the data is the same for all members with the same source.
+     * Returns null if the data is specific to this member.
+     */
+    public Object getMixSource() {
+	return mixSource;
+    }
+
+    /*
+     * Called after the data returned by mix() has been sent.
+     * The buffers used for mixing can now be reused.
+     */
+    public void releaseBuffers() {
+	MixBufferPool.releaseBuffers();
+    }
+
     private void checkData(int[] data, boolean useFastMix) {
 	for (int i = 0; i < data.length; i++) {
 	    if (data[i] != 0) {
@@ -555,16 +796,15 @@ public class MixManager {
 	    return;
 	}
 
-	if (volume == 0) {
-	    for (int i = 0; i < data.length; i++) {
-		data[i] = 0;	// optimize when volume is 0
-	    }
-	    return; 
+	MixKernels.gain(data, volume);
+    }
+
+    public void adjustVolume(short[] data, double volume) {
+	if (volume == 1) {
+	    return;
 	}
 
-	for (int i = 0; i < data.length; i++) {
-            data[i] = AudioConversion.clip((int)(data[i] * volume));
-        }
+	MixKernels.gain(data, volume);
     }
 
     public String toString() {
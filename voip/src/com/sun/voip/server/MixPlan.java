@@ -0,0 +1,186 @@
+/*
+ * Copyright 2007 Sun Microsystems, Inc.
+ *
+ * This file is part of jVoiceBridge.
+ *
+ * jVoiceBridge is free software: you can redistribute it and/or modify 
+ * it under the terms of the GNU General Public License version 2 as 
+ * published by the Free Software Foundation and distributed hereunder 
+ * to you.
+ *
+ * jVoiceBridge is distributed in the hope that it will be useful, 
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Sun designates this particular file as subject to the "Classpath"
+ * exception as provided by Sun in the License file that accompanied this 
+ * code. 
+ */
+
+
+package com.sun.voip.server;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+
+/*
+ * The part of a member's mix which can be shared with other members.
+ *
+ * A MixPlan is made from all of a member's MixDescriptors except the
+ * ones which are specific to the member (the mix-minus descriptor which
+ * subtracts the member's own data).  Members whose descriptors are
+ * the same share a MixPlan and the shared mix is computed once per tick
+ * by the first member to need it.
+ */
+class MixPlan {
+    private MixPlanner mixPlanner;
+
+    private MixDescriptor[] mixDescriptors;
+
+    private int hashCode;
+
+    private int references;
+
+    private int[] mixData;
+    private boolean hasData;
+    private long tick = -1;
+
+    public MixPlan(MixPlanner mixPlanner, ArrayList sharedDescriptors) {
+	this.mixPlanner = mixPlanner;
+
+	mixDescriptors = new MixDescriptor[sharedDescriptors.size()];
+
+	for (int i = 0; i < mixDescriptors.length; i++) {
+	    mixDescriptors[i] = (MixDescriptor)
+		((MixDescriptor) sharedDescriptors.get(i)).clone();
+	}
+
+	/*
+	 * Put the descriptors in a canonical order so that the same
+	 * set of descriptors always results in the same plan.
+	 */
+	for (int i = 1; i < mixDescriptors.length; i++) {
+	    MixDescriptor md = mixDescriptors[i];
+
+	    int h = System.identityHashCode(md.getMixDataSource());
+
+	    int j = i - 1;
+
+	    while (j >= 0 && System.identityHashCode(
+		    mixDescriptors[j].getMixDataSource()) > h) {
+
+		mixDescriptors[j + 1] = mixDescriptors[j];
+		j--;
+	    }
+
+	    mixDescriptors[j + 1] = md;
+	}
+
+	for (int i = 0; i < mixDescriptors.length; i++) {
+	    MixDescriptor md = mixDescriptors[i];
+
+	    hashCode = 31 * hashCode 
+		+ System.identityHashCode(md.getMixDataSource());
+
+	    long bits = Double.doubleToLongBits(md.getAttenuation());
+
+	    hashCode = 31 * hashCode + (int) (bits ^ (bits >>> 32));
+
+	    hashCode = 31 * hashCode + Arrays.hashCode(md.getSpatialValues());
+	}
+    }
+
+    public MixPlanner getMixPlanner() {
+	return mixPlanner;
+    }
+
+    public MixDescriptor[] getMixDescriptors() {
+	return mixDescriptors;
+    }
+
+    public void addReference() {
+	references++;
+    }
+
+    public int removeReference() {
+	return --references;
+    }
+
+    public int getReferences() {
+	return references;
+    }
+
+    /*
+     * Get the shared mix for the current tick, computing it if 
+     * no other member has done so yet.  The data must not be modified.
+     */
+    public synchronized int[] getMix(MixManager mixManager, int length) {
+	long currentTick = mixPlanner.getTick();
+
+	if (tick == currentTick) {
+	    mixPlanner.sharedMixReused();
+	    return hasData ? mixData : null;
+	}
+
+	if (mixData == null || mixData.length != length) {
+	    mixData = new int[length];
+	} else {
+	    Arrays.fill(mixData, 0);
+	}
+
+	hasData = mixManager.mix(mixDescriptors, mixData);
+	tick = currentTick;
+
+	mixPlanner.sharedMixComputed();
+	return hasData ? mixData : null;
+    }
+
+    public int hashCode() {
+	return hashCode;
+    }
+
+    public boolean equals(Object o) {
+	if (o instanceof MixPlan == false) {
+	    return false;
+	}
+
+	MixPlan mixPlan = (MixPlan) o;
+
+	if (mixPlanner != mixPlan.mixPlanner || 
+		mixDescriptors.length != mixPlan.mixDescriptors.length) {
+
+	    return false;
+	}
+
+	for (int i = 0; i < mixDescriptors.length; i++) {
+	    MixDescriptor md1 = mixDescriptors[i];
+	    MixDescriptor md2 = mixPlan.mixDescriptors[i];
+
+	    if (md1.getMixDataSource() != md2.getMixDataSource()) {
+		return false;
+	    }
+
+	    if (md1.getAttenuation() != md2.getAttenuation()) {
+		return false;
+	    }
+
+	    if (Arrays.equals(md1.getSpatialValues(), 
+		    md2.getSpatialValues()) == false) {
+
+		return false;
+	    }
+	}
+
+	return true;
+    }
+
+    public String toString() {
+	return "MixPlan " + mixDescriptors.length + " descriptors, "
+	    + references + " members";
+    }
+
+}
@@ -0,0 +1,152 @@
+/*
+ * Copyright 2007 Sun Microsystems, Inc.
+ *
+ * This file is part of jVoiceBridge.
+ *
+ * jVoiceBridge is free software: you can redistribute it and/or modify 
+ * it under the terms of the GNU General Public License version 2 as 
+ * published by the Free Software Foundation and distributed hereunder 
+ * to you.
+ *
+ * jVoiceBridge is distributed in the hope that it will be useful, 
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Sun designates this particular file as subject to the "Classpath"
+ * exception as provided by Sun in the License file that accompanied this 
+ * code. 
+ */
+
+
+package com.sun.voip.server;
+
+import com.sun.voip.Logger;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+
+/*
+ * Keeps track of the MixPlans for a conference so that members with the
+ * same MixDescriptors can share the work of mixing.
+ *
+ * Without shared mixes, each member which can't use the fast mix
+ * walks all of its MixDescriptors every tick so the cost grows as 
+ * members x descriptors.  With shared mixes, each distinct mix is 
+ * computed once per tick and each member only subtracts its own data.
+ */
+public class MixPlanner {
+    private static final String SHARED_MIXES_PROPERTY =
+	"com.sun.voip.server.SHARED_MIXES";
+
+    private static boolean useSharedMixes = false;
+
+    static {
+	String s = System.getProperty(SHARED_MIXES_PROPERTY);
+
+	if (s != null && s.equalsIgnoreCase("true")) {
+	    useSharedMixes = true;
+	}
+    }
+
+    private HashMap<MixPlan, MixPlan> mixPlans = 
+	new HashMap<MixPlan, MixPlan>();
+
+    private String conferenceId;
+
+    private volatile long tick;
+
+    /* Statistics */
+    private int sharedMixesComputed;
+    private int sharedMixesReused;
+
+    public MixPlanner(String conferenceId) {
+	this.conferenceId = conferenceId;
+    }
+
+    public static void setUseSharedMixes(boolean useSharedMixes) {
+	MixPlanner.useSharedMixes = useSharedMixes;
+
+	Logger.println("Shared mixes " 
+	    + (useSharedMixes ? "enabled" : "disabled"));
+    }
+
+    public static boolean useSharedMixes() {
+	return useSharedMixes;
+    }
+
+    /*
+     * Called by the ConferenceSender before sending data to members.
+     * Shared mixes computed during the previous tick are no longer valid.
+     */
+    public void startTick() {
+	tick++;
+    }
+
+    public long getTick() {
+	return tick;
+    }
+
+    /*
+     * Get the plan for the shared descriptors, creating it if there
+     * isn't one already.  The caller must call releaseMixPlan() 
+     * when it no longer uses the plan.
+     */
+    public MixPlan getMixPlan(ArrayList sharedDescriptors) {
+	MixPlan mixPlan = new MixPlan(this, sharedDescriptors);
+
+	synchronized (mixPlans) {
+	    MixPlan existingPlan = mixPlans.get(mixPlan);
+
+	    if (existingPlan != null) {
+		mixPlan = existingPlan;
+	    } else {
+		mixPlans.put(mixPlan, mixPlan);
+	    }
+
+	    mixPlan.addReference();
+	}
+
+	if (Logger.logLevel >= Logger.LOG_DETAIL) {
+	    Logger.println(conferenceId + ":  " + mixPlan);
+	}
+
+	return mixPlan;
+    }
+
+    public void releaseMixPlan(MixPlan mixPlan) {
+	synchronized (mixPlans) {
+	    if (mixPlan.removeReference() <= 0) {
+		mixPlans.remove(mixPlan);
+	    }
+	}
+    }
+
+    public int getNumberOfMixPlans() {
+	synchronized (mixPlans) {
+	    return mixPlans.size();
+	}
+    }
+
+    void sharedMixComputed() {
+	sharedMixesComputed++;
+    }
+
+    void sharedMixReused() {
+	sharedMixesReused++;
+    }
+
+    public void printStatistics() {
+	if (sharedMixesComputed == 0) {
+	    return;
+	}
+
+	Logger.println(conferenceId + ":  " + getNumberOfMixPlans() 
+	    + " mix plans, " + sharedMixesComputed + " shared mixes computed, "
+	    + sharedMixesReused + " reused");
+    }
+
+}
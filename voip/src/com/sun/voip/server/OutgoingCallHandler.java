@@ -55,11 +55,18 @@ public class OutgoingCallHandler extends CallHandler
     
     private Integer callInitiatedLock = new Integer(0);
     private Integer stateChangeLock = new Integer(0);
-    private Integer waitCallAnswerLock = new Integer(0);
-    private Integer waitCallEstablishedLock = new Integer(0);
+    private Integer progressLock = new Integer(0);
     
     private boolean lastGateway = false;
     private boolean onlyOneGateway = false;
+
+    private ArrayList voIPGateways;
+    private int gatewayIndex;
+
+    private boolean callEnded;
+
+    private CallProgressListener answeredListener;
+    private CallProgressListener establishedListener;
     
     public OutgoingCallHandler(CallEventListener callEventListener,
             CallParticipant cp) {
@@ -67,8 +74,6 @@ public class OutgoingCallHandler extends CallHandler
 	addCallEventListener(this);
         csl = callEventListener;
         this.cp = cp;
-
-	setName("Outgoing CallHandler for " + cp);
     }
     
     public CallEventListener getRequestHandler() {
@@ -76,7 +81,7 @@ public class OutgoingCallHandler extends CallHandler
     }
     
     /*
-     * Thread to start a new call and join a conference.
+     * Start a new call and join a conference.
      */
     private static int nCalls = 0;	// for debugging two gateways
     
@@ -118,9 +123,10 @@ public class OutgoingCallHandler extends CallHandler
 	onlyOneGateway = false;
         
         /*
-         * Start the call (INVITE) and wait for it to end (BYE).
+         * Start the call (INVITE).  When it ends (BYE), the call is
+         * tried again with the next gateway or it's torn down.
          */
-        ArrayList voIPGateways = SipServer.getVoIPGateways();
+        voIPGateways = SipServer.getVoIPGateways();
         String gateway = cp.getVoIPGateway();
         
         if (gateway != null) {
@@ -138,26 +144,7 @@ public class OutgoingCallHandler extends CallHandler
 		onlyOneGateway = true;
 	    }
 
-            /*
-             * Try each gateway until one works.
-             */
-            for (int i = 0; i < voIPGateways.size(); i++) {
-                reasonCallEnded = null;
-
-                String voIPGateway = (String) voIPGateways.get(i);
-                
-                cp.setVoIPGateway(voIPGateway);
-                
-                if (i == voIPGateways.size() - 1) {
-                    lastGateway = true;
-                }
-                
-                placeCall();
-                
-                if (reasonCallEnded.indexOf("gateway error") < 0) {
-                    break;
-                }
-            }
+            placeCallWithNextGateway();
         } else {
             Logger.println("Call " + this + " placed without gateway");
             
@@ -165,7 +152,39 @@ public class OutgoingCallHandler extends CallHandler
             lastGateway = true;
             placeCall();
         }
-        
+    }
+
+    /*
+     * Try each gateway until one works.
+     */
+    private void placeCallWithNextGateway() {
+        reasonCallEnded = null;
+
+        String voIPGateway = (String) voIPGateways.get(gatewayIndex);
+                
+        cp.setVoIPGateway(voIPGateway);
+                
+        if (gatewayIndex == voIPGateways.size() - 1) {
+            lastGateway = true;
+        }
+
+        gatewayIndex++;
+
+        placeCall();
+    }
+
+    /*
+     * Called once after the call has ended on the last gateway.
+     */
+    private void callEnded() {
+	synchronized (stateChangeLock) {
+	    if (callEnded) {
+		return;
+	    }
+
+	    callEnded = true;
+	}
+
         conferenceManager.leave(member); // Remove member from conference.
         
         removeCall(this);		 // remove call from active call list
@@ -193,6 +212,7 @@ public class OutgoingCallHandler extends CallHandler
 		new CallEvent(CallEvent.H323_NOT_IMPLEMENTED));
 
 	    Logger.println("Call " + cp + ":  " + reasonCallEnded);
+	    callEnded();
 	    return;
 	}
         
@@ -203,24 +223,14 @@ public class OutgoingCallHandler extends CallHandler
 	        callInitiatedLock.notifyAll();
 	    }
 
-            synchronized(stateChangeLock) {
-                if (reasonCallEnded == null) {
-
-		    //if (protocol.equalsIgnoreCase("SIP") == false) {
-		    //    /*
-		    //     * Leave Conference and rejoin with the right local media parameters
-		    //     * XXX Need to somehow get the socket from the h323 stack!
-		    //     */
-		    //    member.getMemberReceiver().setReceiveSocket();
-		    //    conferenceManager.transferMember(conferenceManager, member);
-		    //}
-
-                    try {
-                        stateChangeLock.wait();	// wait for call to end
-                    } catch (InterruptedException e) {
-                    }
-                }
-            }
+	    //if (protocol.equalsIgnoreCase("SIP") == false) {
+	    //    /*
+	    //     * Leave Conference and rejoin with the right local media parameters
+	    //     * XXX Need to somehow get the socket from the h323 stack!
+	    //     */
+	    //    member.getMemberReceiver().setReceiveSocket();
+	    //    conferenceManager.transferMember(conferenceManager, member);
+	    //}
         } catch (IOException e) {
 	    synchronized (callInitiatedLock) {
 	        callInitiatedLock.notifyAll();
@@ -231,6 +241,7 @@ public class OutgoingCallHandler extends CallHandler
 	    }
 
             Logger.println("Call " + this + " Exception " + e.getMessage());
+	    callEnded();
         }
     }
     
@@ -250,16 +261,12 @@ public class OutgoingCallHandler extends CallHandler
                 /*
                  * For two party calls
                  */
-                synchronized(waitCallAnswerLock) {
-                    waitCallAnswerLock.notify();
-                }
+                notifyProgress(takeAnsweredListener());
             } else if (callEvent.getCallState().equals(CallState.ESTABLISHED)) {
                 /*
                  * For migrating calls
                  */
-                synchronized(waitCallEstablishedLock) {
-                    waitCallEstablishedLock.notify();
-                }
+                notifyProgress(takeEstablishedListener());
             } else if (callEvent.getCallState().equals(CallState.ENDING)) {
                 CallHandler callHandler =
                     CallHandler.findMigratingCall(cp.getCallId());
@@ -284,47 +291,32 @@ public class OutgoingCallHandler extends CallHandler
             } else if (callEvent.getCallState().equals(CallState.ENDED)) {
                 reasonCallEnded = callEvent.getInfo();
             
-                synchronized(waitCallAnswerLock) {
-                    waitCallAnswerLock.notify();
-                }
-            
-                if (reasonCallEnded.indexOf("gateway error") >= 0 &&
-                        lastGateway == false) {
-                
-                    CallHandler callHandler =
-                        CallHandler.findMigratingCall(cp.getCallId());
-                
-                    if (callHandler == this) {
-                        synchronized(stateChangeLock) {
-                            /*
-                             * Let the outgoing call handler know so
-                             * it can try another gateway.
-                             */
-                            stateChangeLock.notify();
-                        }
-                        return;	// don't tell the migrator yet
-                    }
-                }
-            
-                synchronized(waitCallEstablishedLock) {
-                    waitCallEstablishedLock.notify();
-                }
-            
-                synchronized(stateChangeLock) {
-                    stateChangeLock.notify();	// the call has ended
-                }
-            
                 /*
                  * If it's a gateway error and not the last gateway,
                  * don't end the call.  It will be retried with the
-                 * alternate gateway.
+                 * alternate gateway.  Don't tell a two party call or
+                 * the migrator yet.
                  */
                 if (reasonCallEnded.indexOf("gateway error") >= 0 &&
                         lastGateway == false) {
                 
+		    CallSetupExecutor.execute(new Runnable() {
+			public void run() {
+			    placeCallWithNextGateway();
+			}
+		    });
                     return;
                 }
             
+                notifyProgress(takeAnsweredListener());
+                notifyProgress(takeEstablishedListener());
+
+		CallSetupExecutor.execute(new Runnable() {
+		    public void run() {
+			callEnded();
+		    }
+		});
+            
                 cancelRequest(reasonCallEnded);
             }
 	}
@@ -432,9 +424,7 @@ public class OutgoingCallHandler extends CallHandler
             csa.cancelRequest(reason);
         }
         
-        synchronized(waitCallAnswerLock) {
-            waitCallAnswerLock.notify();
-        }
+        notifyProgress(takeAnsweredListener());
         
         CallHandler otherCall = this.otherCall;
         
@@ -471,51 +461,75 @@ public class OutgoingCallHandler extends CallHandler
     }
     
     /*
-     * For two party calls, we wait until the first party answers
-     * before calling the second party.
+     * Told once when a call is answered or established, or when the
+     * call ends before that.  success is false if the call ended.
+     */
+    public interface CallProgressListener {
+	public void callProgress(OutgoingCallHandler callHandler,
+	    boolean success);
+    }
+
+    /*
+     * For two party calls, the second party is called after the
+     * first party answers.
      *
      * When the first party answers, the second party is called and
      * the treatment is played to the first party.
      *
      * When the second party answers, the treatment to the first party
      * is stopped.
+     *
+     * The listener must be set before the call is started.
      */
-    public boolean waitForCallToBeAnswered() {
-        synchronized(waitCallAnswerLock) {
-            if (done || reasonCallEnded != null) {
-                return false;
-            }
-            
-            try {
-                waitCallAnswerLock.wait();
-            } catch (InterruptedException e) {
-            }
-        }
-        
-        if (done || reasonCallEnded != null) {
-            return false;
-        }
-        
-        return true;
+    public void whenAnswered(CallProgressListener listener) {
+	synchronized (progressLock) {
+	    answeredListener = listener;
+	}
     }
     
-    public boolean waitForCallToBeEstablished() {
-        synchronized(waitCallEstablishedLock) {
-            if (done || reasonCallEnded != null) {
-                return false;
-            }
-            
-            try {
-                waitCallEstablishedLock.wait();
-            } catch (InterruptedException e) {
-            }
-        }
-        
-        if (done || reasonCallEnded != null) {
-            return false;
-        }
-        
-        return true;
+    /*
+     * For call migration.  The listener must be set before the call 
+     * is started.
+     */
+    public void whenEstablished(CallProgressListener listener) {
+	synchronized (progressLock) {
+	    establishedListener = listener;
+	}
+    }
+
+    private CallProgressListener takeAnsweredListener() {
+	synchronized (progressLock) {
+	    CallProgressListener listener = answeredListener;
+
+	    answeredListener = null;
+	    return listener;
+	}
+    }
+
+    private CallProgressListener takeEstablishedListener() {
+	synchronized (progressLock) {
+	    CallProgressListener listener = establishedListener;
+
+	    establishedListener = null;
+	    return listener;
+	}
+    }
+
+    /*
+     * The listener is called on a call setup thread so it doesn't
+     * hold up the thread delivering the call event.
+     */
+    private void notifyProgress(final CallProgressListener listener) {
+	if (listener == null) {
+	    return;
+	}
+
+	CallSetupExecutor.execute(new Runnable() {
+	    public void run() {
+		listener.callProgress(OutgoingCallHandler.this,
+		    done == false && reasonCallEnded == null);
+	    }
+	});
     }
     
     /*
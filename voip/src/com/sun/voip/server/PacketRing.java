@@ -0,0 +1,180 @@
+/*
+ * Copyright 2007 Sun Microsystems, Inc.
+ *
+ * This file is part of jVoiceBridge.
+ *
+ * jVoiceBridge is free software: you can redistribute it and/or modify 
+ * it under the terms of the GNU General Public License version 2 as 
+ * published by the Free Software Foundation and distributed hereunder 
+ * to you.
+ *
+ * jVoiceBridge is distributed in the hope that it will be useful, 
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Sun designates this particular file as subject to the "Classpath"
+ * exception as provided by Sun in the License file that accompanied this 
+ * code. 
+ */
+
+
+package com.sun.voip.server;
+
+import com.sun.voip.Logger;
+import com.sun.voip.RtpPacket;
+
+import java.net.InetSocketAddress;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Single producer, single consumer ring of received datagrams for a member.
+ *
+ * The receiver thread (the producer) copies each datagram into a 
+ * preallocated slot.  A decoder thread (the consumer) hands the datagrams
+ * to the MemberReceiver.  Only one decoder thread drains a ring at a time
+ * so a member's packets are always processed in order by one thread.
+ */
+public class PacketRing {
+    private MemberReceiver memberReceiver;
+
+    private byte[][] packets;
+    private int[] lengths;
+    private InetSocketAddress[] addresses;
+
+    private int mask;
+
+    private volatile long head;		// next packet to decode
+    private volatile long tail;		// next slot to fill
+
+    private AtomicBoolean scheduled = new AtomicBoolean();
+
+    /* Statistics */
+    private long packetsQueued;
+    private int packetsDropped;
+    private int maxDepth;
+
+    public PacketRing(MemberReceiver memberReceiver, int size) {
+	this.memberReceiver = memberReceiver;
+
+	/*
+	 * Round up to a power of 2
+	 */
+	int capacity = 1;
+
+	while (capacity < size) {
+	    capacity <<= 1;
+	}
+
+	mask = capacity - 1;
+
+	packets = new byte[capacity][];
+	lengths = new int[capacity];
+	addresses = new InetSocketAddress[capacity];
+
+	for (int i = 0; i < capacity; i++) {
+	    packets[i] = new byte[RtpPacket.getMaxDataSize()];
+	}
+    }
+
+    public MemberReceiver getMemberReceiver() {
+	return memberReceiver;
+    }
+
+    /*
+     * Called by the receiver thread.
+     * Returns false if the ring is full and the packet was dropped.
+     */
+    public boolean offer(InetSocketAddress isa, byte[] data, int length) {
+	long t = tail;
+
+	int depth = (int) (t - head);
+
+	if (depth > mask) {
+	    packetsDropped++;
+
+	    if (Logger.logLevel >= Logger.LOG_MOREINFO) {
+		Logger.println("Call " + memberReceiver 
+		    + " receive ring full, dropping packet");
+	    }
+	    return false;
+	}
+
+	int ix = (int) t & mask;
+
+	System.arraycopy(data, 0, packets[ix], 0, length);
+	lengths[ix] = length;
+	addresses[ix] = isa;
+
+	tail = t + 1;	// publish
+
+	packetsQueued++;
+
+	if (depth + 1 > maxDepth) {
+	    maxDepth = depth + 1;
+	}
+
+	return true;
+    }
+
+    /*
+     * Returns true if the caller must queue this ring for a decoder thread.
+     */
+    public boolean schedule() {
+	return scheduled.compareAndSet(false, true);
+    }
+
+    /*
+     * Called by a decoder thread.  Give the packets to the MemberReceiver.
+     * Returns true if more packets arrived and the ring must be queued again.
+     */
+    public boolean drain() {
+	long h = head;
+
+	while (h != tail) {
+	    int ix = (int) h & mask;
+
+	    try {
+		memberReceiver.receive(addresses[ix], packets[ix], lengths[ix]);
+	    } catch (Exception e) {
+		Logger.println("Call " + memberReceiver 
+		    + " decode failed:  " + e.getMessage());
+		e.printStackTrace();
+	    }
+
+	    addresses[ix] = null;
+
+	    h++;
+	    head = h;	// release the slot
+	}
+
+	scheduled.set(false);
+
+	return h != tail && schedule();
+    }
+
+    public int getDepth() {
+	return (int) (tail - head);
+    }
+
+    public int getMaxDepth() {
+	return maxDepth;
+    }
+
+    public long getPacketsQueued() {
+	return packetsQueued;
+    }
+
+    public int getPacketsDropped() {
+	return packetsDropped;
+    }
+
+    public int getCapacity() {
+	return mask + 1;
+    }
+
+}
@@ -0,0 +1,176 @@
+/*
+ * Copyright 2007 Sun Microsystems, Inc.
+ *
+ * This file is part of jVoiceBridge.
+ *
+ * jVoiceBridge is free software: you can redistribute it and/or modify 
+ * it under the terms of the GNU General Public License version 2 as 
+ * published by the Free Software Foundation and distributed hereunder 
+ * to you.
+ *
+ * jVoiceBridge is distributed in the hope that it will be useful, 
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Sun designates this particular file as subject to the "Classpath"
+ * exception as provided by Sun in the License file that accompanied this 
+ * code. 
+ */
+
+package com.sun.voip.server;
+
+import com.sun.voip.Logger;
+import com.sun.voip.MetricsRegistry;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Reads binary private mix frames from a control connection.
+ *
+ * A client which sends many private mixes may send the line
+ * "binaryPrivateMixes=1" instead of any other command.  If the bridge
+ * echoes the line, everything else on the connection is a stream
+ * of frames.  Older bridges reply with an error and the client
+ * keeps sending pmx commands.
+ *
+ * A frame is the private mixes for one update.  All values are big endian.
+ *
+ *	byte	1 (frame type)
+ *	short	number of call id definitions
+ *		    short	call id number
+ *		    UTF		call id
+ *	int	number of private mixes
+ *		    short	number of the call which has the private mix
+ *		    short	number of the call the private mix is for
+ *		    short	front/back * 1000
+ *		    short	left/right * 1000
+ *		    short	up/down * 1000
+ *		    short	volume * 1000
+ *
+ * A call id is sent once and then referred to by number.  A number may
+ * be defined again for a different call id.  The definition replaces
+ * the old one.
+ */
+class PrivateMixDecoder {
+
+    public static final String NEGOTIATE = "binaryPrivateMixes=1";
+
+    public static final int FRAME = 1;
+
+    public static final double SCALE = 1000.;
+
+    private static final MetricsRegistry.Counter framesMetric =
+	MetricsRegistry.counter("private_mix_frames",
+	"Binary private mix frames received");
+
+    private static final MetricsRegistry.Counter mixesMetric =
+	MetricsRegistry.counter("private_mix_frame_mixes",
+	"Private mixes received in binary frames");
+
+    private RequestHandler requestHandler;
+
+    private DataInputStream input;
+
+    private String[] callIds = new String[256];
+
+    public PrivateMixDecoder(RequestHandler requestHandler, InputStream in) {
+	this.requestHandler = requestHandler;
+
+	input = new DataInputStream(new BufferedInputStream(in, 64 * 1024));
+    }
+
+    /*
+     * Read frames until the connection is closed.
+     */
+    public void decode() throws IOException {
+	int type;
+
+	while ((type = input.read()) >= 0) {
+	    if (type != FRAME) {
+		throw new IOException("Invalid private mix frame type " + type);
+	    }
+
+	    readFrame();
+	}
+    }
+
+    private void readFrame() throws IOException {
+	int n = input.readUnsignedShort();
+
+	for (int i = 0; i < n; i++) {
+	    int id = input.readUnsignedShort();
+
+	    if (id >= callIds.length) {
+		String[] c = new String[Math.max(id + 1, callIds.length * 2)];
+
+		System.arraycopy(callIds, 0, c, 0, callIds.length);
+		callIds = c;
+	    }
+
+	    callIds[id] = input.readUTF();
+	}
+
+	n = input.readInt();
+
+	boolean ignore = RequestHandler.isIgnoringPmx() || 
+	    requestHandler.isSuspended();
+
+	for (int i = 0; i < n; i++) {
+	    String callId = getCallId(input.readUnsignedShort());
+	    String fromCallId = getCallId(input.readUnsignedShort());
+
+	    double[] spatialValues = new double[4];
+
+	    for (int j = 0; j < 4; j++) {
+		spatialValues[j] = input.readShort() / SCALE;
+	    }
+
+	    if (ignore == false) {
+		setPrivateMix(callId, fromCallId, spatialValues);
+	    }
+	}
+
+	framesMetric.increment();
+	mixesMetric.add(n);
+    }
+
+    private String getCallId(int id) throws IOException {
+	if (id >= callIds.length || callIds[id] == null) {
+	    throw new IOException("Undefined call id number " + id);
+	}
+
+	return callIds[id];
+    }
+
+    /*
+     * Set the private mix callId has for fromCallId.
+     */
+    private void setPrivateMix(String callId, String fromCallId, 
+	    double[] spatialValues) {
+
+	CallHandler callHandler = CallHandler.findCall(callId);
+
+	if (callHandler == null) {
+	    Logger.println("Invalid callId for private mix:  " + callId);
+	    return;
+	}
+
+	CallHandler fromCallHandler = CallHandler.findCall(fromCallId);
+
+	if (fromCallHandler == null) {
+	    Logger.println("Invalid callId for private mix:  " + fromCallId);
+	    return;
+	}
+
+	callHandler.getMember().setPrivateMix(fromCallHandler.getMember(),
+	    spatialValues);
+    }
+
+}
@@ -0,0 +1,413 @@
+/*
+ * Copyright 2007 Sun Microsystems, Inc.
+ *
+ * This file is part of jVoiceBridge.
+ *
+ * jVoiceBridge is free software: you can redistribute it and/or modify 
+ * it under the terms of the GNU General Public License version 2 as 
+ * published by the Free Software Foundation and distributed hereunder 
+ * to you.
+ *
+ * jVoiceBridge is distributed in the hope that it will be useful, 
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Sun designates this particular file as subject to the "Classpath"
+ * exception as provided by Sun in the License file that accompanied this 
+ * code. 
+ */
+
+
+package com.sun.voip.server;
+
+import com.sun.voip.Logger;
+import com.sun.voip.RtpPacket;
+
+import java.io.IOException;
+
+import java.net.InetSocketAddress;
+
+import java.nio.ByteBuffer;
+
+import java.nio.channels.DatagramChannel;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Vector;
+
+import com.sun.stun.StunServerImpl;
+
+/**
+ * A receiver thread with its own Selector which receives data for 
+ * a subset of the members of any number of conferences.
+ *
+ * With a single ConferenceReceiver, one thread does the select, receive,
+ * decrypt, decode and jitter buffer insert for every member of 
+ * a conference.  When receiver shards are enabled, each member's channel 
+ * is registered with the least loaded shard so the receive work is 
+ * spread across several threads.
+ *
+ * The lone receiver channel is a single socket and is still handled
+ * by the ConferenceReceiver.
+ */
+public class ReceiverShard extends Thread {
+    private static final String RECEIVER_SHARDS_PROPERTY =
+	"com.sun.voip.server.RECEIVER_SHARDS";
+
+    private static int numberOfShards = 0;
+
+    private static ArrayList<ReceiverShard> shards = 
+	new ArrayList<ReceiverShard>();
+
+    private static HashMap<ConferenceMember, ReceiverShard> memberShards =
+	new HashMap<ConferenceMember, ReceiverShard>();
+
+    static {
+	String s = System.getProperty(RECEIVER_SHARDS_PROPERTY);
+
+	if (s != null) {
+	    try {
+		setNumberOfShards(Integer.parseInt(s));
+	    } catch (NumberFormatException e) {
+		Logger.println("Invalid number of receiver shards:  " + s);
+	    }
+	}
+    }
+
+    private int shardNumber;
+
+    private Selector selector;
+
+    private StunServerImpl stunServerImpl;
+
+    private boolean done;
+
+    private Vector<ConferenceMember> membersToRegister = 
+	new Vector<ConferenceMember>();
+
+    private Vector<ConferenceMember> membersToUnregister = 
+	new Vector<ConferenceMember>();
+
+    private int memberCount;
+
+    /* Statistics */
+    private long packetsReceived;
+    private long selectorWakeups;
+    private long lastPacketsReceived;
+    private long lastStatisticsTime = System.currentTimeMillis();
+
+    private ReceiverShard(int shardNumber) throws IOException {
+	this.shardNumber = shardNumber;
+
+	setName("ReceiverShard-" + shardNumber);
+	setPriority(Thread.MAX_PRIORITY);
+
+	selector = Selector.open();
+
+	stunServerImpl = new StunServerImpl();
+
+	start();
+    }
+
+    /**
+     * Set the number of receiver shards.  0 disables receiver shards.
+     * Members already assigned to a shard stay with that shard.
+     */
+    public static void setNumberOfShards(int numberOfShards) {
+	if (numberOfShards < 0) {
+	    numberOfShards = 0;
+	}
+
+	synchronized (shards) {
+	    ReceiverShard.numberOfShards = numberOfShards;
+
+	    /*
+	     * End unused shards we no longer need.
+	     */
+	    for (int i = shards.size() - 1; i >= numberOfShards; i--) {
+		ReceiverShard shard = shards.get(i);
+
+		if (shard.getMemberCount() > 0) {
+		    break;
+		}
+
+		shard.end();
+		shards.remove(i);
+	    }
+	}
+
+	Logger.println("Number of receiver shards set to " + numberOfShards);
+    }
+
+    public static int getNumberOfShards() {
+	return numberOfShards;
+    }
+
+    /**
+     * Assign a member to the least loaded shard.
+     * Returns false if receiver shards are not enabled.
+     */
+    public static boolean addMember(ConferenceMember member) 
+	    throws IOException {
+
+	synchronized (shards) {
+	    if (numberOfShards == 0) {
+		return false;
+	    }
+
+	    while (shards.size() < numberOfShards) {
+		shards.add(new ReceiverShard(shards.size()));
+	    }
+
+	    ReceiverShard shard = shards.get(0);
+
+	    for (int i = 1; i < numberOfShards; i++) {
+		if (shards.get(i).getMemberCount() < shard.getMemberCount()) {
+		    shard = shards.get(i);
+		}
+	    }
+
+	    memberShards.put(member, shard);
+	    shard.register(member);
+	}
+
+	return true;
+    }
+
+    /**
+     * Remove a member from its shard.
+     * Returns false if the member isn't handled by a shard.
+     */
+    public static boolean removeMember(ConferenceMember member) {
+	synchronized (shards) {
+	    ReceiverShard shard = memberShards.remove(member);
+
+	    if (shard == null) {
+		return false;
+	    }
+
+	    shard.unregister(member);
+	}
+
+	return true;
+    }
+
+    public static void printStatistics() {
+	synchronized (shards) {
+	    for (int i = 0; i < shards.size(); i++) {
+		shards.get(i).printShardStatistics();
+	    }
+	}
+    }
+
+    public static String getShardInfo() {
+	String s = "";
+
+	synchronized (shards) {
+	    for (int i = 0; i < shards.size(); i++) {
+		s += shards.get(i).toString() + "\n";
+	    }
+	}
+
+	return s;
+    }
+
+    private int getMemberCount() {
+	return memberCount + membersToRegister.size() 
+	    - membersToUnregister.size();
+    }
+
+    private void register(ConferenceMember member) {
+	synchronized (membersToRegister) {
+	    membersToRegister.add(member);
+
+	    Logger.writeFile(getName() + " adding member to register "
+		+ member + " size " + membersToRegister.size());
+
+	    selector.wakeup();
+	}
+    }
+
+    private void unregister(ConferenceMember member) {
+	synchronized (membersToRegister) {
+	    membersToUnregister.add(member);
+
+	    Logger.writeFile(getName() + " adding member to unregister "
+		+ member + " size " + membersToUnregister.size());
+
+	    selector.wakeup();
+	}
+    }
+
+    private void registerMembers() {
+	synchronized (membersToRegister) {
+	    for (int i = 0; i < membersToRegister.size(); i++) {
+		ConferenceMember member = membersToRegister.get(i);
+
+		Logger.writeFile(getName() + " registering " + member);
+
+		try {
+		    member.getMemberReceiver().register(selector);
+		    memberCount++;
+		} catch (Exception e) {
+		    Logger.println(getName() + " failed to register member "
+			+ member + " " + e.getMessage());
+
+		    synchronized (shards) {
+			memberShards.remove(member);
+		    }
+
+		    if (member.getCallHandler() != null) {
+			member.getCallHandler().cancelRequest(
+			    "ReceiverShard failed to register member ");
+		    }
+		}
+	    }
+
+	    membersToRegister.clear();
+
+	    for (int i = 0; i < membersToUnregister.size(); i++) {
+		ConferenceMember member = membersToUnregister.get(i);
+
+		Logger.writeFile(getName() + " unregistering " + member);
+
+		member.getMemberReceiver().unregister();
+		memberCount--;
+	    }
+
+	    membersToUnregister.clear();
+	}
+    }
+
+    /**
+     * Receive data and dispatch the data to the appropriate member.
+     */
+    public void run() {
+	while (!done) {
+	    try {
+		registerMembers();
+
+		int n = selector.select();
+
+		selectorWakeups++;
+		ConferenceReceiver.selectorWakeupsMetric.increment();
+
+		if (n <= 0) {
+		    continue;
+		}
+
+		Iterator it = selector.selectedKeys().iterator();
+
+		byte[] data = new byte[RtpPacket.getMaxDataSize()];
+
+		ByteBuffer byteBuffer = ByteBuffer.wrap(data);
+
+		while (it.hasNext()) {
+		    SelectionKey sk = (SelectionKey) it.next();
+
+		    it.remove();
+
+		    DatagramChannel datagramChannel = 
+			(DatagramChannel) sk.channel();
+
+		    byteBuffer.clear();
+
+		    InetSocketAddress isa = (InetSocketAddress)
+			datagramChannel.receive(byteBuffer);
+
+		    if (isa == null) {
+			continue;
+		    }
+
+		    int dataLength = byteBuffer.position();
+
+		    if (data[0] == 0 && data[1] == 1) {
+			/*
+			 * STUN Binding request
+			 */
+			stunServerImpl.processStunRequest(datagramChannel, isa,
+			    data);
+			continue;
+		    }
+
+		    MemberReceiver memberReceiver = 
+			(MemberReceiver) sk.attachment();
+
+		    if (memberReceiver == null) {
+			continue;
+		    }
+
+		    if (memberReceiver.readyToReceiveData() == false) {
+			if (memberReceiver.traceCall() || 
+				Logger.logLevel == -11) {
+
+			    Logger.println(getName() + " receiver not ready, "
+				+ memberReceiver + " address " 
+				+ memberReceiver.getReceiveAddress());
+			}
+			continue;
+		    }
+
+		    packetsReceived++;
+
+		    DecoderPool.receive(memberReceiver, isa, data, dataLength);
+		}
+	    } catch (IOException e) {
+		if (!done) {
+		    Logger.error(getName() + ":  receive failed! " 
+			+ e.getMessage());
+		    e.printStackTrace();
+		}
+	    } catch (Exception e) {
+		if (!done) {
+		    Logger.error(getName() + ":  unexpected exception "
+			+ e.getMessage());
+		    e.printStackTrace();
+		}
+	    }
+	}
+    }
+
+    private void end() {
+	done = true;
+
+	synchronized (membersToRegister) {
+	    try {
+		selector.close();
+	    } catch (IOException e) {
+		Logger.println(getName() + " failed to close selector "
+		    + e.getMessage());
+	    }
+	}
+    }
+
+    private void printShardStatistics() {
+	Logger.println(toString());
+
+	lastPacketsReceived = packetsReceived;
+	lastStatisticsTime = System.currentTimeMillis();
+    }
+
+    public String toString() {
+	long elapsed = System.currentTimeMillis() - lastStatisticsTime;
+
+	double rate = 0;
+
+	if (elapsed > 0) {
+	    rate = (packetsReceived - lastPacketsReceived) * 1000. / elapsed;
+	}
+
+	return getName() + ":  " + memberCount + " members, " 
+	    + packetsReceived + " packets received, "
+	    + (Math.round(rate * 10) / 10.) + " packets/second, "
+	    + selectorWakeups + " selector wakeups";
+    }
+
+}
@@ -27,6 +27,8 @@ import com.sun.voip.CallEvent;
 import com.sun.voip.CallEventListener;
 import com.sun.voip.CallParticipant;
 import com.sun.voip.Logger;
+import com.sun.voip.MetricsRegistry;
+import com.sun.voip.RecordingService;
 
 import java.io.BufferedReader;
 import java.io.InputStreamReader;
@@ -69,6 +71,10 @@ class RequestHandler extends Thread implements CallEventListener {
 
     private static boolean bridgeSuspended;
 
+    private static final MetricsRegistry.Histogram commandTimeMetric =
+	MetricsRegistry.timeHistogram("control_command_us",
+	"Time to parse and execute a control command");
+
     private static ArrayList<RequestHandler> handlers = 
 	new ArrayList<RequestHandler>();
 
@@ -194,6 +200,27 @@ class RequestHandler extends Thread implements CallEventListener {
 		    }
 		}
 
+		if (request.equals(PrivateMixDecoder.NEGOTIATE)) {
+		    /*
+		     * The rest of the input is binary private mix frames.
+		     * The client waits for our reply before it sends any
+		     * so the reader hasn't buffered any of them.
+		     */
+		    writeToSocket(request);
+
+		    try {
+			new PrivateMixDecoder(this, 
+			    socket.getInputStream()).decode();
+		    } catch (IOException e) {
+			Logger.println("Private mix connection failed:  "
+			    + e.getMessage());
+		    }
+
+		    endAllCalls("client socket closed");
+		    removeHandler(this);
+		    return;
+		}
+
 		if (request.indexOf("pm=") == 0 || 
 			request.indexOf("privateMix=") == 0 ||
 			request.indexOf("pmx") == 0) {
@@ -297,12 +324,18 @@ class RequestHandler extends Thread implements CallEventListener {
 		    return;
 	        }
 
+		long start = System.nanoTime();
+
+		String command = CommandTimer.FAILED;
+
 	        try {
 	            if (requestParser.parseRequest(request) == true) {
 		        if (synchronousMode) {
 			    writeToSocket("END -- SUCCESS");
 		        }
 		    }
+
+		    command = requestParser.getCommandName();
 	        } catch (ParseException e) {
 	            Logger.error(e.getMessage());
 	            writeToSocket(e.getMessage());
@@ -311,6 +344,11 @@ class RequestHandler extends Thread implements CallEventListener {
 		        writeToSocket("END -- FAILED:  " + e.getMessage());
 		    }
 	        }
+
+		long elapsed = System.nanoTime() - start;
+
+		commandTimeMetric.recordNanos(elapsed);
+		CommandTimer.record(command, elapsed);
 	    }
 
 	    if (synchronousMode) {
@@ -329,6 +367,10 @@ class RequestHandler extends Thread implements CallEventListener {
 	RequestHandler.ignorePmx = ignorePmx;
     }
 
+    public static boolean isIgnoringPmx() {
+	return ignorePmx;
+    }
+
     private void removeHandler(RequestHandler handler) {
 	synchronized (handlers) {
 	    handlers.remove(handler);
@@ -971,6 +1013,27 @@ class RequestHandler extends Thread implements CallEventListener {
 		    + (Math.round(ConferenceSender.getMaxSendTime() * 10000) / 10000.)
 		    + " ms");
 
+		if (ConferenceSender.getTickLateness() != 0) {
+		    writeToSocket("Tick lateness 99%:   "
+			+ (Math.round(ConferenceSender.getTickLateness() * 10000) / 10000.)
+			+ " ms");
+		}
+
+		if (SendBatcher.useBatchedSend()) {
+		    writeToSocket("Sends per tick:      "
+			+ (Math.round(SendBatcher.getSendsPerTick() * 100) / 100.));
+
+		    writeToSocket("Average Flush time:  "
+			+ (Math.round(SendBatcher.getAverageFlushTime() * 10000) / 10000.)
+			+ " ms");
+		}
+
+		if (RecordingService.getActiveRecordings() > 0) {
+		    writeToSocket("Recordings:          "
+			+ RecordingService.getActiveRecordings()
+			+ ", bytes dropped " + RecordingService.getBytesDropped());
+		}
+
 		writeToSocket("");
 
 	        try {
@@ -1169,6 +1232,10 @@ class RequestHandler extends Thread implements CallEventListener {
 
     private boolean suspended;
 
+    public boolean isSuspended() {
+	return suspended;
+    }
+
     public void suspendBridge(int seconds) {
 	ArrayList<RequestHandler> handlers = 
 	    new ArrayList<RequestHandler>();
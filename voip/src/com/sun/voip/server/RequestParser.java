@@ -30,7 +30,9 @@ package com.sun.voip.server;
 import com.sun.voip.CallParticipant;
 import com.sun.voip.CallEvent;
 import com.sun.voip.CallEventListener;
+import com.sun.voip.JitterManager;
 import com.sun.voip.Logger;
+import com.sun.voip.PolyphaseResampler;
 import com.sun.voip.Recorder;
 import com.sun.voip.RtpPacket;
 import com.sun.voip.RtpSocket;
@@ -58,9 +60,12 @@ import java.net.Socket;
 
 import java.util.logging.Level;
 
+import java.util.HashMap;
 import java.util.NoSuchElementException;
 import java.util.Vector;
 
+import java.util.concurrent.ConcurrentHashMap;
+
 /* 
  * Parse requests.
  *
@@ -133,12 +138,18 @@ import java.util.Vector;
  *
  *	addCallToWhisperGroup | acwg = <whisperGroupId> : <callId>
  *
+ *	adaptiveJitterBuffer | ajb = true | false
+ *
  *	allowShortNames | asn     = <true> | <false>
  *
+ *	batchedSend | bs          = true | false
+ *
  *	bridgeLocation | bl       = <3 charaction location of bridge>
  *
  *      callAnswerTimeout | cat   = <seconds>
  *
+ *	callSetupThreads | cst    = <int>
+ *
  *	cancel			  = <callId>
  *
  *	cancelMigration | cm      = <callId>
@@ -149,6 +160,8 @@ import java.util.Vector;
  *
  *	comfortNoiseLevel | cnl   = <byte level>*
  *
+ *	commandTimes | cmt        [= reset]
+ *
  *	conferenceInfo | ci
  *
  *	conferenceInfoLong | cil
@@ -158,6 +171,8 @@ import java.util.Vector;
  *
  *	createWhisperGroup | cwg  = <whisperGroupId> [:<whisper attenuation factor>]
  *
+ *	decoderThreads | dt       = <int>
+ *
  *	deferMixing | dm          = true | false
  *
  *	destroyWhisperGroup | dwg = <whisperGroupId>
@@ -172,6 +187,8 @@ import java.util.Vector;
  *
  *	duplicateCallLimit | dcl  = <int>
  *
+ *	encodeOnce | eo           = true | false
+ *
  *	endConference             = <conferenceId>
  *
  *	firstRtpPort | frp = <int>
@@ -198,6 +215,8 @@ import java.util.Vector;
  *
  *      internationalPrefix       = <String>
  *
+ *	jitterPercentile | jp     = <int 1 - 100>
+ *
  *	incomingCallVoiceDetection | icvd = true | false
  *
  *	localhostSecurity	  = true | false
@@ -214,6 +233,10 @@ import java.util.Vector;
  *
  *      maxJitterBufferSize | maxjb = <int> : <callId>
  *
+ *	maxChangesPerTick | mcpt  = <int>
+ *
+ *	maxTalkers | mt           = <int> [: <conferenceId>]
+ *
  *	migrate			  = <existing callId> : 
  * 	    <new Phone Number> | Id-<new CallId>
  *
@@ -247,6 +270,10 @@ import java.util.Vector;
  *
  *	packetLossConcealmentClass | plcc = <String class name> : <callId>
  *
+ *	polyphaseResampler | prs  = true | false
+ *
+ *	pooledMixBuffers | pmb    = true | false
+ *
  *	powerThresholdLimit       = <double> : <callId>
  *
  *	prefixPhoneNumber | ppn   = true | false
@@ -257,6 +284,10 @@ import java.util.Vector;
  *	   			    <c1 left volume> : <c1 right vol> :<callId>:
  *				    <callId with private mix>
  *
+ *	receiverShards | rs       = <int>
+ *
+ *	receiverShardInfo | rsi
+ *
  *	recordConference | rc     = true | false : <conferenceId> [: <file path> [: type]]
  *
  *	recordingDirectory | rd   = <directory path>
@@ -277,6 +308,8 @@ import java.util.Vector;
  *
  *	resumeTreatmentToConference = <conferenceId>
  *
+ *	ringJitterBuffer | rjb    = true | false
+ *
  *	sendSipUriToProxy	  = true | false
  *
  * 	senderThreads | st	  = <int>
@@ -285,6 +318,8 @@ import java.util.Vector;
  *
  *	setOutVolume | sov        = <volume> : <callId>
  *
+ *	sharedMixes | shm         = true | false
+ *
  *	showWhisperGroups | swg
  *
  *	silenceMainConference | smc = true | false : <callId>
@@ -327,6 +362,8 @@ import java.util.Vector;
  *
  *	whisperAttenuation	  = <double>
  *
+ *	workStealingSender | wss  = true | false
+ *
  *      writeThru | wt		  = true | false
  * 
  * A call is identified by a unique <callId> String.
@@ -368,11 +405,39 @@ public class RequestParser {
      * Parse a request and handle it if it's an immediate request
      */
     public boolean parseRequest(String request) throws ParseException {
+	if (request == null) {
+	    throw new ParseException("null parameter", 0);
+	}
+
+	tokenize(request);
+
+	String name = requestName.toLowerCase();
+
+	Integer command = dispatchTable.get(name);
+
+	if (command != null) {
+	    return dispatch(command.intValue());
+	}
+
+	if (callParameterNames.containsKey(name)) {
+	    parseCallParameters(request);
+	    return false;
+	}
+
+	parameterMatched = false;
+
 	if (parseImmediateRequest(request)) {
 	    return true;	// it's been handled
 	}
 
+	boolean immediateMatched = parameterMatched;
+
 	parseCallParameters(request);
+
+	if (immediateMatched == false) {
+	    callParameterNames.put(name, Boolean.TRUE);
+	}
+
 	return false;
     }
 
@@ -382,6 +447,153 @@ public class RequestParser {
 	}
     }
 
+    /*
+     * A mismatch is thrown for almost every parameter tried
+     * so there's one of these and it has no stack trace.
+     */
+    class ParameterNotFoundException extends ParameterException {
+	public ParameterNotFoundException() {
+	    super("parameter not found");
+	}
+
+	public Throwable fillInStackTrace() {
+	    return this;
+	}
+    }
+
+    private ParameterException parameterNotFound =
+	new ParameterNotFoundException();
+
+    /*
+     * The request being parsed split into its name and value.
+     * The value is null if there's no '='.
+     */
+    private String request;
+    private String requestName;
+    private String requestValue;
+
+    private void tokenize(String s) {
+	if (s == request) {
+	    return;
+	}
+
+	int n = s.indexOf('=');
+
+	if (n < 0) {
+	    requestName = s.trim();
+	    requestValue = null;
+	} else {
+	    requestName = s.substring(0, n).trim();
+
+	    int start = n + 1;
+
+	    while (start < s.length() && s.charAt(start) == ' ') {
+		start++;	// get rid of leading spaces
+	    }
+
+	    requestValue = s.substring(start);
+	}
+
+	request = s;
+    }
+
+    /*
+     * Name of the last request parsed in lower case
+     */
+    public String getCommandName() {
+	if (requestName == null) {
+	    return "";
+	}
+
+	return requestName.toLowerCase();
+    }
+
+    /*
+     * Commands which are handled without trying every parameter.
+     * Each long and short name in lower case maps to a handler.
+     * A name must not also be handled by parseImmediateRequest or
+     * parseCallParameters under different rules.
+     */
+    private static final int CALL_ID = 1;
+    private static final int CONFERENCE_ID = 2;
+    private static final int NAME = 3;
+    private static final int PHONE_NUMBER = 4;
+    private static final int PMX = 5;
+    private static final int PRIVATE_MIX = 6;
+
+    private static final HashMap<String, Integer> dispatchTable =
+	new HashMap<String, Integer>();
+
+    /*
+     * Names which are call parameters and not immediate requests.
+     * A name is added the first time it's parsed by parseCallParameters
+     * without matching anything in parseImmediateRequest.  After that
+     * parseImmediateRequest is skipped for it.
+     */
+    private static ConcurrentHashMap<String, Boolean> callParameterNames =
+	new ConcurrentHashMap<String, Boolean>();
+
+    /*
+     * Set when a parameter name matches the request
+     */
+    private boolean parameterMatched;
+
+    static {
+	addCommand("callId", "id", CALL_ID);
+	addCommand("conferenceId", "c", CONFERENCE_ID);
+	addCommand("name", "n", NAME);
+	addCommand("phoneNumber", "pn", PHONE_NUMBER);
+	addCommand("pmx", "", PMX);
+	addCommand("privateMix", "pm", PRIVATE_MIX);
+    }
+
+    private static void addCommand(String name, String shortName, int command) {
+	dispatchTable.put(name.toLowerCase(), command);
+
+	if (shortName.length() > 0) {
+	    dispatchTable.put(shortName.toLowerCase(), command);
+	}
+    }
+
+    /*
+     * Handle a command in the dispatch table.
+     * Returns true if it was an immediate request.
+     */
+    private boolean dispatch(int command) throws ParseException {
+	if (requestValue == null || requestValue.length() == 0) {
+	    throw new ParseException("Invalid specification, '" + request
+		+ "', must be <request>=<value>", 0);
+	}
+
+	switch (command) {
+	case CALL_ID:
+	    setCallId(requestValue);
+	    return false;
+
+	case CONFERENCE_ID:
+	    setConferenceId(requestValue);
+	    return false;
+
+	case NAME:
+	    setName(requestValue);
+	    return false;
+
+	case PHONE_NUMBER:
+	    setPhoneNumber(requestValue);
+	    return false;
+
+	case PMX:
+	    setPrivateMix(requestValue);
+	    return true;
+
+	case PRIVATE_MIX:
+	    setPrivateMixVolumes(requestValue);
+	    return true;
+	}
+
+	throw new ParseException("Invalid request ignored:  " + request, 0);
+    }
+
     /**
      * Parse a request and gather call parameters.
      * @param request String with command terminated with "\n"
@@ -413,9 +625,7 @@ public class RequestParser {
         }
 
         try {
-            value = getValue("callId", "id", request);
-	    cp.setCallId(value);
-	    lastCallId = value;
+            setCallId(getValue("callId", "id", request));
             return;
         } catch (ParameterException e) {
         }
@@ -428,20 +638,7 @@ public class RequestParser {
         }
 
 	try {
-            value = getValue("conferenceId", "c", request);
-
-	    String[] tokens = value.split(":");
-
-	    cp.setConferenceId(tokens[0].trim());
-
-	    if (tokens.length > 1) {
-		cp.setMediaPreference(tokens[1]);
-	    }
-
-	    if (tokens.length > 2) {
-	        cp.setConferenceDisplayName(tokens[2]);
-	    }
-
+            setConferenceId(getValue("conferenceId", "c", request));
 	    return;
 	} catch (ParameterException e) {
         }
@@ -611,15 +808,13 @@ public class RequestParser {
         }
 	   
 	try {
-	    value = getValue("name", "n", request);
-	    cp.setName(value);
+	    setName(getValue("name", "n", request));
 	    return;
         } catch (ParameterException e) {
         }
 
 	try {
-	    value = getValue("phoneNumber", "pn", request);
-	    cp.setPhoneNumber(value);
+	    setPhoneNumber(getValue("phoneNumber", "pn", request));
 	    return;
         } catch (ParameterException e) {
         }
@@ -843,7 +1038,188 @@ public class RequestParser {
         } catch (ParameterException e) {
         }
 
-	throw new ParameterException("parameter not found");
+	throw parameterNotFound;
+    }
+
+    private void setCallId(String value) {
+	cp.setCallId(value);
+	lastCallId = value;
+    }
+
+    private void setConferenceId(String value) {
+	String[] tokens = value.split(":");
+
+	cp.setConferenceId(tokens[0].trim());
+
+	if (tokens.length > 1) {
+	    cp.setMediaPreference(tokens[1]);
+	}
+
+	if (tokens.length > 2) {
+	    cp.setConferenceDisplayName(tokens[2]);
+	}
+    }
+
+    private void setName(String value) {
+	cp.setName(value);
+    }
+
+    private void setPhoneNumber(String value) {
+	cp.setPhoneNumber(value);
+    }
+
+    /*
+     * pmx = <FrontBack> : <LeftRight> : <upDown> : <volume> : <callId> : <pmCallId>
+     */
+    private void setPrivateMix(String s) throws ParseException {
+	String[] tokens = s.split(":");
+
+	if (tokens.length < 6) {
+	    if (tokens.length != 5) {
+		throw new ParseException("missing parameters " + s, 0);
+	    }
+
+	    /*
+	     * For compatibility before up/down was added
+	     */
+	    String[] t = new String[6];
+
+	    t[0] = tokens[0];
+	    t[1] = tokens[1];
+	    t[2] = "0";
+	    t[3] = tokens[2];
+	    t[4] = tokens[3];
+	    t[5] = tokens[4];
+
+	    tokens = t;
+	}
+
+	double[] spatialValues = new double[4];
+
+	try {
+	    // frontBack
+	    spatialValues[0] = Double.parseDouble(tokens[0]);
+	} catch (NumberFormatException e) {
+	    throw new ParseException("Invalid front/back value:  "
+		+ tokens[0], 0);
+	}
+
+	try {
+	    // leftRight
+	    spatialValues[1] = Double.parseDouble(tokens[1]);
+	} catch (NumberFormatException e) {
+	    throw new ParseException("Invalid left/right value:  "
+		+ tokens[1], 0);
+	}
+
+	try {
+	    // upDown 
+	    spatialValues[2] = Double.parseDouble(tokens[2]);
+	} catch (NumberFormatException e) {
+	    throw new ParseException("Invalid up/down value:  "
+		+ tokens[2], 0);
+	}
+
+	try {
+	    spatialValues[3] = Double.parseDouble(tokens[3]);
+	} catch (NumberFormatException e) {
+	    throw new ParseException("Invalid volume value:  " 
+		+ tokens[3], 0);
+	}
+
+	String callId = tokens[4];
+
+	CallHandler callHandler = CallHandler.findCall(callId);
+
+	if (callHandler == null) {
+	    throw new ParseException("Invalid callId:  " + callId, 0);
+	}
+
+	String privateMixCallId = tokens[5];
+
+	CallHandler privateMixCallHandler = 
+	    CallHandler.findCall(privateMixCallId);
+
+	if (privateMixCallHandler == null) {
+	    throw new ParseException("Invalid callId:  " 
+		+ privateMixCallId, 0);
+	}
+
+	privateMixCallHandler.getMember().setPrivateMix(
+	    callHandler.getMember(), spatialValues);
+
+    }
+
+    /*
+     * privateMix | pm = <volumes> : <callId> : <pmCallId>
+     */
+    private void setPrivateMixVolumes(String s) throws ParseException {
+	String tokens[] = s.split(":");
+
+	if (tokens.length < 3) {
+	    throw new ParseException("missing parameters " + s, 0);
+	}
+
+	String callId = tokens[tokens.length - 2];
+
+	CallHandler callHandler = CallHandler.findCall(callId);
+
+	if (callHandler == null) {
+	    throw new ParseException("Invalid callId:  " + callId, 0);
+	}
+
+	String privateMixCallId = tokens[tokens.length - 1];
+
+	//if (callId.equals(privateMixCallId)) {
+	//    throw new ParseException(
+	//	    "Can't set private mix for self " + callId, 0);
+	//}
+
+	CallHandler privateMixCallHandler = 
+	    CallHandler.findCall(privateMixCallId);
+
+	if (privateMixCallHandler == null) {
+	    throw new ParseException("Invalid callId:  " 
+		+ privateMixCallId, 0);
+	}
+
+	double[] volume = new double[tokens.length - 2];
+
+	for (int i = 0; i < volume.length; i++) {
+	    try {
+		volume[i] = Double.parseDouble(tokens[i]);
+	    } catch (NumberFormatException e) {
+		throw new ParseException("Invalid floating point value:  " 
+		    + tokens[i], 0);
+	    }
+	}
+
+	if (volume.length == 1) {
+	    double v = volume[0];
+
+	    volume = new double[4];
+
+	    volume[0] = v;
+	    volume[3] = v;
+	}
+
+	double[] spatialValues = new double[4];   
+
+	spatialValues[0] = 1;	// front/back
+	spatialValues[2] = 0;	// up/down
+
+	if (volume[1] == 0) {
+	    spatialValues[1] = -volume[2];  // leftRight
+	    spatialValues[3] = volume[0];	// volume
+	} else if (volume[2] == 0) {
+	    spatialValues[1] = volume[1];  // leftRight
+	    spatialValues[3] = volume[3];	// volume
+	} else {
+	    throw new ParseException("Invalid private mix:  ", 0);
+	}
+
+	privateMixCallHandler.getMember().setPrivateMix(
+	    callHandler.getMember(), spatialValues);
     }
 
     /*
@@ -852,15 +1228,16 @@ public class RequestParser {
     private void parameterMatch(String name, String shortName, String s) 
 	    throws ParameterException {
 	
-	String command = s.trim();
+	tokenize(s);
 
-	if (name.equalsIgnoreCase(command) 
-		|| shortName.equalsIgnoreCase(command)) {
+	if (requestValue == null && (name.equalsIgnoreCase(requestName) 
+		|| shortName.equalsIgnoreCase(requestName))) {
 
+	    parameterMatched = true;
 	    return;
 	}
 
-	throw new ParameterException("parameter not found");
+	throw parameterNotFound;
     }
 
     /*
@@ -873,37 +1250,22 @@ public class RequestParser {
 	    throw new ParseException("null parameter", 0);
 	}
 
-	int n;
-
-        if ((n = s.indexOf('=')) < 0) {
-            n = s.length();
-        }
- 
-	String command = s.substring(0, n).trim();
+	tokenize(s);
 
-	if (!name.equalsIgnoreCase(command) &&
-	        !shortName.equalsIgnoreCase(command)) {
+	if (!name.equalsIgnoreCase(requestName) &&
+	        !shortName.equalsIgnoreCase(requestName)) {
 	
-	    throw new ParameterException("parameter not found");
+	    throw parameterNotFound;
 	}
 
-	if ((n = s.indexOf('=')) < 0) {
+	parameterMatched = true;
+
+	if (requestValue == null || requestValue.length() == 0) {
 	    throw new ParseException("Invalid specification, '" + s
 		+ "', must be <request>=<value>", 0);
 	}
 
-        s = s.substring(n + 1);
-
-	while (s.startsWith(" ")) {
-	    s = s.substring(1);	   // get rid of leading spaces	
-	}
-
-        if (s.length() == 0) {
-            throw new ParseException("Invalid specification, '" + s
-                + "', must be <request>=<value>", 0);
-        }
-
-        return s;
+        return requestValue;
     }
 
     /*
@@ -933,32 +1295,22 @@ public class RequestParser {
 	    throw new ParseException("null parameter", 0);
 	}
 
-	int n;
+	tokenize(s);
 
-        if ((n = s.indexOf('=')) < 0) {
-            n = s.length();
-        }
+	if (!name.equalsIgnoreCase(requestName) &&
+	        !shortName.equalsIgnoreCase(requestName)) {
 
-	String command = s.substring(0, n).trim();
-
-	if (!name.equalsIgnoreCase(command) &&
-	        !shortName.equalsIgnoreCase(command)) {
-
-	    throw new ParameterException("parameter not found:  " + s);
+	    throw parameterNotFound;
 	}
 
-	if ((n = s.indexOf('=')) < 0) {
+	parameterMatched = true;
+
+	if (requestValue == null) {
 	    throw new ParseException("Invalid specification, '" + s
                 + "', must be <request>=<value>", 0);
 	}
 
-        s = s.substring(n + 1);
-
-	while (s.startsWith(" ")) {
-	    s = s.substring(1);	   // get rid of leading spaces	
-	}
-
-	return stringToBoolean(s);
+	return stringToBoolean(requestValue);
     }
 
     /*
@@ -1377,6 +1729,13 @@ public class RequestParser {
 	} catch (ParameterException e) {
 	}
 
+        try {
+            DecoderPool.setDecoderThreads(
+                getIntegerValue("decoderThreads", "dt", request));
+            return true;
+        } catch (ParameterException e) {
+        }
+
         try {
             MemberReceiver.deferMixing(
                 getBooleanValue("deferMixing", "dm", request));
@@ -1406,6 +1765,34 @@ public class RequestParser {
         } catch (ParameterException e) {
         }
 
+        try {
+            CallSetupExecutor.setCallSetupThreads(
+                getIntegerValue("callSetupThreads", "cst", request));
+            return true;
+        } catch (ParameterException e) {
+        }
+
+        try {
+            parameterMatch("commandTimes", "cmt", request);
+
+            requestHandler.writeToSocket(CommandTimer.getCommandTimes());
+            return true;
+        } catch (ParameterException e) {
+        }
+
+        try {
+            value = getValue("commandTimes", "cmt", request);
+
+	    if (value.equalsIgnoreCase("reset") == false) {
+		throw new ParseException("Invalid commandTimes value:  " 
+		    + value, 0);
+	    }
+
+            CommandTimer.reset();
+            return true;
+        } catch (ParameterException e) {
+        }
+
 	try {
 	    value = getValue("doNotRecord" , "dnr", request);
 	    booleanValue = getBoolean(value);
@@ -1847,6 +2234,14 @@ public class RequestParser {
         } catch (ParameterException e) {
         }
 
+        try {
+            ConferenceSender.setUseWorkStealing(
+		getBooleanValue("workStealingSender" , "wss", request));
+
+            return true;
+        } catch (ParameterException e) {
+        }
+
         try {
             value = getValue("minJitterBufferSize" , "minjb", request);
 
@@ -1897,6 +2292,33 @@ public class RequestParser {
         } catch (ParameterException e) {
         }
 
+        try {
+            ConferenceMember.setMaxChangesPerTick(
+                getIntegerValue("maxChangesPerTick", "mcpt", request));
+	    return true;
+        } catch (ParameterException e) {
+        }
+
+        try {
+            value = getValue("maxTalkers" , "mt", request);
+
+            String[] tokens = value.split(":");
+
+            int maxTalkers = getInteger(tokens[0]);
+
+	    if (tokens.length < 2) {
+		/*
+		 * Default for new conferences
+		 */
+		TalkerSelector.setDefaultMaxTalkers(maxTalkers);
+	    } else {
+		ConferenceManager.setMaxTalkers(tokens[1], maxTalkers);
+	    }
+
+	    return true;
+        } catch (ParameterException e) {
+        }
+
 	try {
 	    value = getValue("monitorCallStatus" , "mcs", request);
 	    booleanValue = getBoolean(value);
@@ -2170,6 +2592,20 @@ public class RequestParser {
         } catch (ParameterException e) {
         }
 
+        try {
+            PolyphaseResampler.setUsePolyphaseResampler(
+                getBooleanValue("polyphaseResampler", "prs", request));
+	    return true;
+        } catch (ParameterException e) {
+        }
+
+        try {
+            MixBufferPool.setUsePooledBuffers(
+                getBooleanValue("pooledMixBuffers", "pmb", request));
+	    return true;
+        } catch (ParameterException e) {
+        }
+
         try {
             value = getValue("powerThresholdLimit" , "ptl", request);
 
@@ -2199,74 +2635,7 @@ public class RequestParser {
 	}
 
 	try {
-	    String s = getValue("privateMix", "pm", request);
-
-	    String tokens[] = s.split(":");
-
-	    if (tokens.length < 3) {
-		throw new ParseException("missing parameters " + s, 0);
-	    }
-
-	    String callId = tokens[tokens.length - 2];
-
-	    CallHandler callHandler = CallHandler.findCall(callId);
-
-	    if (callHandler == null) {
-                throw new ParseException("Invalid callId:  " + callId, 0);
-	    }
-
-	    String privateMixCallId = tokens[tokens.length - 1];
-
-	    //if (callId.equals(privateMixCallId)) {
-            //    throw new ParseException(
-	    //	    "Can't set private mix for self " + callId, 0);
-	    //}
-
-	    CallHandler privateMixCallHandler = 
-		CallHandler.findCall(privateMixCallId);
-
-	    if (privateMixCallHandler == null) {
-                throw new ParseException("Invalid callId:  " 
-		    + privateMixCallId, 0);
-	    }
-
-	    double[] volume = new double[tokens.length - 2];
-
-	    for (int i = 0; i < volume.length; i++) {
-		try {
-		    volume[i] = Double.parseDouble(tokens[i]);
-		} catch (NumberFormatException e) {
-	    	    throw new ParseException("Invalid floating point value:  " 
-			+ tokens[i], 0);
-		}
-	    }
-
-	    if (volume.length == 1) {
-		double v = volume[0];
-	
-		volume = new double[4];
-
-		volume[0] = v;
-		volume[3] = v;
-	    }
-
-	    double[] spatialValues = new double[4];   
-
-	    spatialValues[0] = 1;	// front/back
-	    spatialValues[2] = 0;	// up/down
-
-	    if (volume[1] == 0) {
-		spatialValues[1] = -volume[2];  // leftRight
-	        spatialValues[3] = volume[0];	// volume
-	    } else if (volume[2] == 0) {
-		spatialValues[1] = volume[1];  // leftRight
-	        spatialValues[3] = volume[3];	// volume
-	    } else {
-		throw new ParseException("Invalid private mix:  ", 0);
-	    }
-
-	    privateMixCallHandler.getMember().setPrivateMix(
-		callHandler.getMember(), spatialValues);
+	    setPrivateMixVolumes(getValue("privateMix", "pm", request));
             return true;
         } catch (ParameterException e) {
         }
@@ -2279,87 +2648,43 @@ public class RequestParser {
         }
 
 	try {
-	    /*
-	     * pmx = <FrontBack> : <LeftRight> : <upDown> : <volume> : <callId> : <pmCallId>
-	     */
-	    String s = getValue("pmx", "", request);
-
-	    String[] tokens = s.split(":");
-
-	    if (tokens.length < 6) {
-		if (tokens.length != 5) {
-		    throw new ParseException("missing parameters " + s, 0);
-		}
-
-		/*
-		 * For compatibility before up/down was added
-		 */
-		String[] t = new String[6];
-
-		t[0] = tokens[0];
-		t[1] = tokens[1];
-		t[2] = "0";
-		t[3] = tokens[2];
-		t[4] = tokens[3];
-		t[5] = tokens[4];
-
-		tokens = t;
-	    }
-
-	    double[] spatialValues = new double[4];
-
-	    try {
-		// frontBack
-                spatialValues[0] = Double.parseDouble(tokens[0]);
-            } catch (NumberFormatException e) {
-                throw new ParseException("Invalid front/back value:  "
-                    + tokens[0], 0);
-            }
-
-	    try {
-		// leftRight
-                spatialValues[1] = Double.parseDouble(tokens[1]);
-            } catch (NumberFormatException e) {
-                throw new ParseException("Invalid left/right value:  "
-                    + tokens[1], 0);
-            }
-
-	    try {
-		// upDown 
-                spatialValues[2] = Double.parseDouble(tokens[2]);
-            } catch (NumberFormatException e) {
-                throw new ParseException("Invalid up/down value:  "
-                    + tokens[2], 0);
-            }
-
-	    try {
-		spatialValues[3] = Double.parseDouble(tokens[3]);
-	    } catch (NumberFormatException e) {
-	    	throw new ParseException("Invalid volume value:  " 
-		    + tokens[3], 0);
-	    }
-
-	    String callId = tokens[4];
-
-	    CallHandler callHandler = CallHandler.findCall(callId);
+	    setPrivateMix(getValue("pmx", "", request));
+            return true;
+        } catch (ParameterException e) {
+        }
 
-	    if (callHandler == null) {
-                throw new ParseException("Invalid callId:  " + callId, 0);
-	    }
+        try {
+            ReceiverShard.setNumberOfShards(
+		getIntegerValue("receiverShards", "rs", request));
+            return true;
+        } catch (ParameterException e) {
+        }
 
-	    String privateMixCallId = tokens[5];
+        try {
+            parameterMatch("receiverShardInfo", "rsi", request);
 
-	    CallHandler privateMixCallHandler = 
-		CallHandler.findCall(privateMixCallId);
+            requestHandler.writeToSocket(ReceiverShard.getShardInfo());
+            return true;
+        } catch (ParameterException e) {
+        }
 
-	    if (privateMixCallHandler == null) {
-                throw new ParseException("Invalid callId:  " 
-		    + privateMixCallId, 0);
-	    }
+        try {
+            JitterManager.setUseRingJitterBuffer(
+		getBooleanValue("ringJitterBuffer", "rjb", request));
+            return true;
+        } catch (ParameterException e) {
+        }
 
-	    privateMixCallHandler.getMember().setPrivateMix(
-		callHandler.getMember(), spatialValues);
+        try {
+            JitterManager.setUseAdaptiveJitterBuffer(
+		getBooleanValue("adaptiveJitterBuffer", "ajb", request));
+            return true;
+        } catch (ParameterException e) {
+        }
 
+        try {
+            JitterManager.setJitterPercentile(
+		getIntegerValue("jitterPercentile", "jp", request));
             return true;
         } catch (ParameterException e) {
         }
@@ -2713,6 +3038,27 @@ public class RequestParser {
         } catch (ParameterException e) {
         }
 
+        try {
+            SendBatcher.setUseBatchedSend(
+                getBooleanValue("batchedSend", "bs", request));
+	    return true;
+        } catch (ParameterException e) {
+        }
+
+        try {
+            EncodedAudioCache.setUseEncodeOnce(
+                getBooleanValue("encodeOnce", "eo", request));
+	    return true;
+        } catch (ParameterException e) {
+        }
+
+        try {
+            MixPlanner.setUseSharedMixes(
+                getBooleanValue("sharedMixes", "shm", request));
+	    return true;
+        } catch (ParameterException e) {
+        }
+
         try {
             parameterMatch("showWhisperGroups" , "swg", request);
 
@@ -3222,12 +3568,18 @@ public class RequestParser {
     private void displayTuneableParameters() {
 	requestHandler.writeToSocket("Build date			= " + BuildDate.getBuildDate());
 
+	requestHandler.writeToSocket("adaptiveJitterBuffer		= "
+	    + JitterManager.useAdaptiveJitterBuffer());
+
 	requestHandler.writeToSocket("allowShortNames			= "
 	    + ConferenceManager.allowShortNames());
 
 	requestHandler.writeToSocket("available processors		= "
 	    + Runtime.getRuntime().availableProcessors());
 
+	requestHandler.writeToSocket("batchedSend			= "
+	    + SendBatcher.useBatchedSend());
+
 	requestHandler.writeToSocket("bridgeSuspended			= "
 	    + RequestHandler.isBridgeSuspended());
 
@@ -3249,12 +3601,18 @@ public class RequestParser {
         requestHandler.writeToSocket("callAnswerTimeout		= "
             + CallSetupAgent.getDefaultCallAnswerTimeout());
 
+	requestHandler.writeToSocket("callSetupThreads		= "
+	    + CallSetupExecutor.getCallSetupThreads());
+
 	requestHandler.writeToSocket("defaultProtocol  		= "
 	    + Bridge.getDefaultProtocol());
 
 	requestHandler.writeToSocket("defaultSipProxy  		= "
 	    + SipServer.getDefaultSipProxy());
 
+	requestHandler.writeToSocket("decoderThreads			= "
+	    + DecoderPool.getDecoderThreads());
+
 	requestHandler.writeToSocket("defermixing  			= "
 	    + MemberReceiver.deferMixing());
 
@@ -3270,6 +3628,9 @@ public class RequestParser {
 	requestHandler.writeToSocket("enablePSTNCalls			= "
 	    + CallHandler.enablePSTNCalls());
 
+	requestHandler.writeToSocket("encodeOnce			= "
+	    + EncodedAudioCache.useEncodeOnce());
+
  	requestHandler.writeToSocket("firstRtpPort			= "
 	    + ConferenceMember.getFirstRtpPort());
 
@@ -3297,6 +3658,9 @@ public class RequestParser {
  	requestHandler.writeToSocket("lastRtpPort			= "
 	    + ConferenceMember.getLastRtpPort());
 
+	requestHandler.writeToSocket("jitterPercentile		= "
+	    + JitterManager.getJitterPercentile());
+
 	requestHandler.writeToSocket("localhostSecurity		= "
 	    + Bridge.getLocalhostSecurity());
 
@@ -3312,18 +3676,36 @@ public class RequestParser {
 	requestHandler.writeToSocket("lpfVolumeAdjustment		= "
 	    + LowPassFilter.getLpfVolumeAdjustment());
 
+	requestHandler.writeToSocket("maxChangesPerTick		= "
+	    + ConferenceMember.getMaxChangesPerTick());
+
+	requestHandler.writeToSocket("maxTalkers			= "
+	    + TalkerSelector.getDefaultMaxTalkers());
+
 	requestHandler.writeToSocket("nAvg 				= "
 	    + LowPassFilter.getNAvg());
 
 	requestHandler.writeToSocket("outsideLinePrefix		= "
 	    + RequestHandler.getOutsideLinePrefix());
 
+	requestHandler.writeToSocket("polyphaseResampler		= "
+	    + PolyphaseResampler.usePolyphaseResampler());
+
+	requestHandler.writeToSocket("pooledMixBuffers		= "
+	    + MixBufferPool.usePooledBuffers());
+
 	requestHandler.writeToSocket("prefixPhoneNumber		= "
 	    + RequestHandler.prefixPhoneNumber());
 
+	requestHandler.writeToSocket("receiverShards			= "
+	    + ReceiverShard.getNumberOfShards());
+
 	requestHandler.writeToSocket("recordingDirectory		= "
 	    + Recorder.getRecordingDirectory());
 
+	requestHandler.writeToSocket("ringJitterBuffer		= "
+	    + JitterManager.useRingJitterBuffer());
+
 	requestHandler.writeToSocket("rtpTimeout			= "
 	    + RtpSocket.getRtpTimeout());
 
@@ -3333,6 +3715,9 @@ public class RequestParser {
 	requestHandler.writeToSocket("sendSipUriToProxy		= "
 	    + SipServer.getSendSipUriToProxy());
 
+	requestHandler.writeToSocket("sharedMixes			= "
+	    + MixPlanner.useSharedMixes());
+
  	requestHandler.writeToSocket("spatialBehindVolume		= "
 	    + SunSpatialAudio.getSpatialBehindVolume());
 
@@ -3360,6 +3745,9 @@ public class RequestParser {
         requestHandler.writeToSocket("whisperAttenuation		= "
             + WhisperGroup.getDefaultAttenuation());
 
+	requestHandler.writeToSocket("workStealingSender		= "
+	    + ConferenceSender.useWorkStealing());
+
 	requestHandler.writeToSocket("writeThru         		= "
 	    + Logger.writeThru);
 
@@ -3484,8 +3872,13 @@ public class RequestParser {
  	requestHandler.writeToSocket("addCallToWhisperGroup | acwg = "
 	    + "<whisperGroupId> : <callId>");
 
+	requestHandler.writeToSocket(
+	    "adaptiveJitterBuffer | ajb = true | false");
+
  	requestHandler.writeToSocket("allowShortNames | asn = true | false");
 
+	requestHandler.writeToSocket("batchedSend | bs = true | false");
+
 	requestHandler.writeToSocket(
 	    "bridgeLocation | bl = <3 character bridge location>");
 
@@ -3494,6 +3887,8 @@ public class RequestParser {
 	requestHandler.writeToSocket(
 	    "callAnsweredTreatment | at = <answer treatment>: <conferenceId>");
 
+	requestHandler.writeToSocket("callSetupThreads | cst = <int>");
+
 	requestHandler.writeToSocket("cancel = <callId>");
 
 	requestHandler.writeToSocket("cancelMigration | cm = <callId>");
@@ -3502,6 +3897,8 @@ public class RequestParser {
 
 	requestHandler.writeToSocket("comfortNoiseLevel | cnl = <byte level>");
 
+	requestHandler.writeToSocket("commandTimes | cmt [= reset]");
+
 	requestHandler.writeToSocket("commonMixDefault | cmd = true | false");
 
 	requestHandler.writeToSocket("conferenceInfo | ci");
@@ -3516,6 +3913,8 @@ public class RequestParser {
 
 	requestHandler.writeToSocket("endConference | ec = <conferenceId>");
 
+	requestHandler.writeToSocket("decoderThreads | dt = <int>");
+
 	requestHandler.writeToSocket("deferMixing | dm = true | false");
 
 	requestHandler.writeToSocket(
@@ -3532,6 +3931,8 @@ public class RequestParser {
 	requestHandler.writeToSocket(
 	    "doNotRecord | dnr = true | false [:<callId>]");
 
+	requestHandler.writeToSocket("encodeOnce | eo = true | false");
+
         requestHandler.writeToSocket("prefixPhoneNumber | ppn = true | false");
 
 	requestHandler.writeToSocket("flush");
@@ -3559,6 +3960,8 @@ public class RequestParser {
 
 	requestHandler.writeToSocket("internationalPrefix | ip = <String>");
 
+	requestHandler.writeToSocket("jitterPercentile | jp = <int 1 - 100>");
+
 	requestHandler.writeToSocket("localhostSecurity | lhs = true | false");
 
 	requestHandler.writeToSocket("logLevel | l = [0 - 10]");
@@ -3567,6 +3970,11 @@ public class RequestParser {
 
         requestHandler.writeToSocket("maxJitterBufferSize | maxjb = <int> : <callId>");
 
+	requestHandler.writeToSocket("maxChangesPerTick | mcpt = <int>");
+
+	requestHandler.writeToSocket(
+	    "maxTalkers | mt = <int> [: <conferenceId>]");
+
         requestHandler.writeToSocket("minJitterBufferSize | minjb = <int> : <callId>");
 
 	requestHandler.writeToSocket(
@@ -3616,6 +4024,11 @@ public class RequestParser {
 	    "packetLossConcealmentClass | plcc = <String plc class name> "
 	    + ": <callId>");
 
+	requestHandler.writeToSocket(
+	    "polyphaseResampler | prs = true | false");
+
+	requestHandler.writeToSocket("pooledMixBuffers | pmb = true | false");
+
 	requestHandler.writeToSocket("powerThresholdLimit | ptl = <double>");
 
 	requestHandler.writeToSocket("printStatistics | ps"); 
@@ -3627,6 +4040,10 @@ public class RequestParser {
 	requestHandler.writeToSocket(
  	    "privateMix | pm = <volumes> : <callId> : <callId with private Mix>");
 
+	requestHandler.writeToSocket("receiverShards | rs = <int>");
+
+	requestHandler.writeToSocket("receiverShardInfo | rsi");
+
 	requestHandler.writeToSocket(
 	    "recordConference | rc = true | false :<conferenceId> "
 	    + ":<recording file path>");
@@ -3650,6 +4067,8 @@ public class RequestParser {
 	requestHandler.writeToSocket(
 	    "removeConference | rconf = <conferenceId");
 
+	requestHandler.writeToSocket("ringJitterBuffer | rjb = true | false");
+
 	requestHandler.writeToSocket("restartInputTreatment | rit = <callId>");
 
 	requestHandler.writeToSocket("resumeTreatmentToCall = <callId>");
@@ -3663,6 +4082,8 @@ public class RequestParser {
 	requestHandler.writeToSocket(
 	    "conferenceJoinTreatment | jt = <join treatment>:<conferenceId>");
 
+	requestHandler.writeToSocket("sharedMixes | shm = true | false");
+
 	requestHandler.writeToSocket("showWhisperGroups | swg");
 
 	requestHandler.writeToSocket("setInputVolume | siv = <volume> : <callId>");
@@ -3716,6 +4137,8 @@ public class RequestParser {
 
 	requestHandler.writeToSocket("whisperAttenuation | wa = <double>");
 
+	requestHandler.writeToSocket("workStealingSender | wss = true | false");
+
 	requestHandler.writeToSocket("writeThru | wt = true | false");
 
 	requestHandler.writeToSocket(
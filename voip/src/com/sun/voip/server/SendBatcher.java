@@ -0,0 +1,204 @@
+/*
+ * Copyright 2007 Sun Microsystems, Inc.
+ *
+ * This file is part of jVoiceBridge.
+ *
+ * jVoiceBridge is free software: you can redistribute it and/or modify 
+ * it under the terms of the GNU General Public License version 2 as 
+ * published by the Free Software Foundation and distributed hereunder 
+ * to you.
+ *
+ * jVoiceBridge is distributed in the hope that it will be useful, 
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Sun designates this particular file as subject to the "Classpath"
+ * exception as provided by Sun in the License file that accompanied this 
+ * code. 
+ */
+
+
+package com.sun.voip.server;
+
+import com.sun.voip.Logger;
+
+import java.io.IOException;
+
+import java.nio.channels.DatagramChannel;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+
+/*
+ * Collects the packets sent to members during a tick and sends them
+ * all at the end of the tick.
+ *
+ * When batched sends are enabled, a MemberSender copies each finished
+ * packet into its own preallocated direct ByteBuffer and queues itself
+ * here for its DatagramChannel instead of sending right away.  Sending
+ * from a direct buffer avoids the temporary direct buffer the channel
+ * otherwise uses to copy a heap buffer, and the sends for each channel
+ * are done back to back by the ConferenceSender once all of the mixing
+ * and encoding for the tick is done.
+ */
+public class SendBatcher {
+    private static final String BATCHED_SEND_PROPERTY =
+	"com.sun.voip.server.BATCHED_SEND";
+
+    private static boolean useBatchedSend = false;
+
+    static {
+	String s = System.getProperty(BATCHED_SEND_PROPERTY);
+
+	if (s != null && s.equalsIgnoreCase("true")) {
+	    useBatchedSend = true;
+	}
+    }
+
+    private static final int STATISTICS_TICKS = 250;
+
+    private HashMap<DatagramChannel, ArrayList<MemberSender>> batches =
+	new HashMap<DatagramChannel, ArrayList<MemberSender>>();
+
+    private String name;
+
+    /* Statistics */
+    private long flushes;
+    private long totalSends;
+    private long totalFlushTime;
+    private long maxFlushTime;
+
+    private int ticks;
+    private int sends;
+    private long flushTime;
+
+    private static double sendsPerTick;
+    private static double averageFlushTime;
+
+    public SendBatcher(String name) {
+	this.name = name;
+    }
+
+    public static void setUseBatchedSend(boolean useBatchedSend) {
+	SendBatcher.useBatchedSend = useBatchedSend;
+
+	Logger.println("Batched send " 
+	    + (useBatchedSend ? "enabled" : "disabled"));
+    }
+
+    public static boolean useBatchedSend() {
+	return useBatchedSend;
+    }
+
+    /*
+     * Called by a MemberSender which has a packet ready to send.
+     */
+    public void queue(DatagramChannel datagramChannel, 
+	    MemberSender memberSender) {
+
+	synchronized (batches) {
+	    ArrayList<MemberSender> batch = batches.get(datagramChannel);
+
+	    if (batch == null) {
+		batch = new ArrayList<MemberSender>();
+		batches.put(datagramChannel, batch);
+	    }
+
+	    batch.add(memberSender);
+	}
+    }
+
+    /*
+     * Called by the ConferenceSender after all members have been
+     * given their data for this tick.
+     */
+    public void flush() {
+	long start = System.nanoTime();
+
+	int n = 0;
+
+	synchronized (batches) {
+	    Iterator<Map.Entry<DatagramChannel, ArrayList<MemberSender>>> it =
+		batches.entrySet().iterator();
+
+	    while (it.hasNext()) {
+		Map.Entry<DatagramChannel, ArrayList<MemberSender>> entry = 
+		    it.next();
+
+		ArrayList<MemberSender> batch = entry.getValue();
+
+		if (batch.size() == 0) {
+		    /*
+		     * Nothing was sent on this channel for a whole tick.
+		     */
+		    it.remove();
+		    continue;
+		}
+
+		for (int i = 0; i < batch.size(); i++) {
+		    if (batch.get(i).sendQueuedPacket()) {
+			n++;
+		    }
+		}
+
+		batch.clear();
+	    }
+	}
+
+	long elapsed = System.nanoTime() - start;
+
+	flushes++;
+	totalSends += n;
+	totalFlushTime += elapsed;
+
+	if (elapsed > maxFlushTime) {
+	    maxFlushTime = elapsed;
+	}
+
+	ticks++;
+	sends += n;
+	flushTime += elapsed;
+
+	if (ticks == STATISTICS_TICKS) {
+	    sendsPerTick = (double) sends / ticks;
+	    averageFlushTime = flushTime / 1000000. / ticks;
+
+	    ticks = 0;
+	    sends = 0;
+	    flushTime = 0;
+	}
+    }
+
+    /*
+     * Average number of datagrams sent per tick over the last 5 seconds.
+     */
+    public static double getSendsPerTick() {
+	return sendsPerTick;
+    }
+
+    /*
+     * Average time in milliseconds to flush a tick's packets
+     * over the last 5 seconds.
+     */
+    public static double getAverageFlushTime() {
+	return averageFlushTime;
+    }
+
+    public void printStatistics() {
+	if (flushes == 0) {
+	    return;
+	}
+
+	Logger.println(name + " batched sends " + totalSends + ", "
+	    + ((double) totalSends / flushes) + " sends per tick, "
+	    + (totalFlushTime / 1000000. / flushes) + " ms average flush, "
+	    + (maxFlushTime / 1000000.) + " ms max flush");
+    }
+
+}
@@ -0,0 +1,349 @@
+/*
+ * Copyright 2007 Sun Microsystems, Inc.
+ *
+ * This file is part of jVoiceBridge.
+ *
+ * jVoiceBridge is free software: you can redistribute it and/or modify 
+ * it under the terms of the GNU General Public License version 2 as 
+ * published by the Free Software Foundation and distributed hereunder 
+ * to you.
+ *
+ * jVoiceBridge is distributed in the hope that it will be useful, 
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Sun designates this particular file as subject to the "Classpath"
+ * exception as provided by Sun in the License file that accompanied this 
+ * code. 
+ */
+
+
+package com.sun.voip.server;
+
+import com.sun.voip.Logger;
+
+import java.util.ArrayList;
+
+import java.util.concurrent.BrokenBarrierException;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Persistent pool of sender worker threads.
+ *
+ * The members to send to are divided into chunks of adjacent members.
+ * Each worker owns a contiguous range of chunks.  Since the member list 
+ * is built in the same order every tick, a worker keeps sending to the 
+ * same members from one tick to the next.  A worker which finishes its
+ * own chunks steals chunks from the other workers.
+ *
+ * The start and end of each tick are barriers which the sender and
+ * the workers reuse every tick so there's no need for a new latch or
+ * a notify() for each worker every tick.  When the number of sender
+ * threads changes, the workers are retired and a new set of workers
+ * is started with new barriers.
+ *
+ * Only the sender thread calls sendDataToMembers() and done().
+ */
+public class SenderWorkerPool {
+    private static final String CHUNK_SIZE_PROPERTY =
+	"com.sun.voip.server.SENDER_CHUNK_SIZE";
+
+    private static int chunkSize = 8;
+
+    static {
+	String s = System.getProperty(CHUNK_SIZE_PROPERTY);
+
+	if (s != null) {
+	    try {
+		setChunkSize(Integer.parseInt(s));
+	    } catch (NumberFormatException e) {
+		Logger.println("Invalid sender chunk size:  " + s);
+	    }
+	}
+    }
+
+    private String name;
+
+    /*
+     * The sender thread and the workers are the parties.
+     */
+    private CyclicBarrier startBarrier;
+    private CyclicBarrier doneBarrier;
+
+    private ArrayList<Worker> workers = new ArrayList<Worker>();
+
+    private ConferenceMember[] members = new ConferenceMember[0];
+    private volatile int nMembers;
+    private volatile int nChunks;
+
+    /* Statistics */
+    private int ticks;
+    private final AtomicLong chunksStolen = new AtomicLong();
+
+    public SenderWorkerPool(String name) {
+	this.name = name;
+    }
+
+    public static void setChunkSize(int chunkSize) {
+	if (chunkSize < 1) {
+	    chunkSize = 1;
+	}
+
+	SenderWorkerPool.chunkSize = chunkSize;
+    }
+
+    public static int getChunkSize() {
+	return chunkSize;
+    }
+
+    public int getWorkers() {
+	return workers.size();
+    }
+
+    /**
+     * Send data to the members using nThreads workers.  
+     * Returns when data has been sent to every member.
+     */
+    public void sendDataToMembers(ArrayList memberList, int nThreads) {
+	setWorkers(nThreads);
+
+	if (members.length < memberList.size()) {
+	    members = new ConferenceMember[memberList.size()];
+	}
+
+	int n = 0;
+
+	for (int i = 0; i < memberList.size(); i++) {
+	    ConferenceMember member = (ConferenceMember) memberList.get(i);
+
+	    if (member.getMemberSender().memberIsReadyForSenderData()) {
+		members[n++] = member;
+	    }
+	}
+
+	nMembers = n;
+	nChunks = (n + chunkSize - 1) / chunkSize;
+
+	int chunksPerWorker = (nChunks + workers.size() - 1) / workers.size();
+
+	int firstChunk = 0;
+
+	for (int i = 0; i < workers.size(); i++) {
+	    int lastChunk = Math.min(firstChunk + chunksPerWorker, nChunks);
+
+	    workers.get(i).setChunks(firstChunk, lastChunk);
+
+	    firstChunk = lastChunk;
+	}
+
+	ticks++;
+
+	if (await(startBarrier) == false || await(doneBarrier) == false) {
+	    /*
+	     * The sender was interrupted and the workers have quit.
+	     * Start new workers on the next tick.
+	     */
+	    workers.clear();
+	    return;
+	}
+
+	/*
+	 * Don't hold on to members which may have left.
+	 */
+	for (int i = 0; i < n; i++) {
+	    members[i] = null;
+	}
+    }
+
+    private void setWorkers(int nThreads) {
+	if (nThreads < 1) {
+	    nThreads = 1;
+	}
+
+	if (nThreads == workers.size()) {
+	    return;
+	}
+
+	retireWorkers();
+
+	startBarrier = new CyclicBarrier(nThreads + 1);
+	doneBarrier = new CyclicBarrier(nThreads + 1);
+
+	for (int i = 0; i < nThreads; i++) {
+	    workers.add(new Worker(i, startBarrier, doneBarrier));
+	}
+
+	Logger.println(name + " using " + workers.size() 
+	    + " work stealing sender threads");
+    }
+
+    /*
+     * Between ticks the workers are all waiting at the start barrier.
+     * Tell them to quit and let them go.
+     */
+    private void retireWorkers() {
+	if (workers.size() == 0) {
+	    return;
+	}
+
+	for (int i = 0; i < workers.size(); i++) {
+	    workers.get(i).retire();
+	}
+
+	await(startBarrier);
+
+	workers.clear();
+    }
+
+    /*
+     * Returns false if the barrier is broken because a party
+     * was interrupted.
+     */
+    private static boolean await(CyclicBarrier barrier) {
+	try {
+	    barrier.await();
+	    return true;
+	} catch (InterruptedException e) {
+	} catch (BrokenBarrierException e) {
+	}
+
+	return false;
+    }
+
+    /*
+     * Send data to the members in a chunk
+     */
+    private void sendChunk(int chunk) {
+	int end = Math.min((chunk + 1) * chunkSize, nMembers);
+
+	for (int i = chunk * chunkSize; i < end; i++) {
+	    ConferenceMember member = members[i];
+
+	    try {
+		member.sendData();
+	    } catch (Exception e) {
+		e.printStackTrace();
+
+		Logger.println("Can't send data to " + member
+		    + " " + e.getMessage());
+
+		member.getCallHandler().cancelRequest("Unexpected Exception");
+	    }
+	}
+    }
+
+    /*
+     * Called by a worker which has finished its own chunks.
+     */
+    private void stealChunks(Worker thief) {
+	int n = workers.size();
+
+	for (int i = 1; i < n; i++) {
+	    Worker victim = workers.get((thief.index + i) % n);
+
+	    int chunk;
+
+	    while ((chunk = victim.nextChunk()) >= 0) {
+		sendChunk(chunk);
+		chunksStolen.incrementAndGet();
+	    }
+	}
+    }
+
+    public void done() {
+	retireWorkers();
+    }
+
+    public void printStatistics() {
+	if (ticks == 0) {
+	    return;
+	}
+
+	Logger.println(name + " " + workers.size() + " sender workers, "
+	    + "chunk size " + chunkSize + ", " + chunksStolen.get()
+	    + " chunks stolen in " + ticks + " ticks");
+    }
+
+    class Worker extends Thread {
+	private int index;
+
+	private CyclicBarrier startBarrier;
+	private CyclicBarrier doneBarrier;
+
+	private volatile boolean retire;
+
+	private volatile int lastChunk;
+	private AtomicInteger next = new AtomicInteger();
+
+	public Worker(int index, CyclicBarrier startBarrier,
+		CyclicBarrier doneBarrier) {
+
+	    this.index = index;
+	    this.startBarrier = startBarrier;
+	    this.doneBarrier = doneBarrier;
+
+	    setName("Sender-WorkStealer-" + index + "-" + name);
+	    setPriority(Thread.MAX_PRIORITY);
+	    setDaemon(true);
+	    start();
+	}
+
+	public void setChunks(int firstChunk, int lastChunk) {
+	    this.lastChunk = lastChunk;
+	    next.set(firstChunk);
+	}
+
+	/*
+	 * Claim the next chunk owned by this worker.
+	 * Returns -1 if there are no more.
+	 */
+	public int nextChunk() {
+	    if (next.get() >= lastChunk) {
+		return -1;
+	    }
+
+	    int chunk = next.getAndIncrement();
+
+	    if (chunk >= lastChunk) {
+		return -1;
+	    }
+
+	    return chunk;
+	}
+
+	public void retire() {
+	    retire = true;
+	}
+
+	public void run() {
+	    while (true) {
+		if (await(startBarrier) == false || retire) {
+		    break;
+		}
+
+		int chunk;
+
+		while ((chunk = nextChunk()) >= 0) {
+		    sendChunk(chunk);
+		}
+
+		stealChunks(this);
+
+		if (await(doneBarrier) == false) {
+		    break;
+		}
+	    }
+
+	    if (Logger.logLevel >= Logger.LOG_INFO) {
+		Logger.println(getName() + " done");
+	    }
+	}
+    }
+
+}
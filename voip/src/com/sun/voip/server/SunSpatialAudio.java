@@ -23,11 +23,12 @@
 
 package com.sun.voip.server;
 
+import com.sun.voip.AudioConversion;
 import com.sun.voip.Logger;
 import com.sun.voip.Util;
-import com.sun.voip.SpatialAudio;
+import com.sun.voip.ShortSpatialAudio;
 
-public class SunSpatialAudio implements SpatialAudio {
+public class SunSpatialAudio implements ShortSpatialAudio {
 
     private static final double MAX_DELAY = .63;
 
@@ -157,14 +158,25 @@ public class SunSpatialAudio implements SpatialAudio {
     int count = 0;
 
     /*
-     * Generate spatial audio.
+     * Generate spatial audio from contributions which aren't 16 bit samples.
      */
     public int[] generateSpatialAudio(String sourceId, 
 	    int[] previousContribution, int[] currentContribution, 
 	    double[] spatialValues) {
 
+	return generateSpatialAudio(sourceId, toShorts(previousContribution),
+	    toShorts(currentContribution), spatialValues);
+    }
+
+    /*
+     * Generate spatial audio.
+     */
+    public int[] generateSpatialAudio(String sourceId, 
+	    short[] previousContribution, short[] currentContribution, 
+	    double[] spatialValues) {
+
 	if (channels == 1) {
-	    return currentContribution;  // no support for 1 channel conference
+	    return toInts(currentContribution);  // no support for 1 channel
 	}
 
 	if (previousContribution == null && currentContribution == null) {
@@ -216,14 +228,10 @@ public class SunSpatialAudio implements SpatialAudio {
 		 * There are no adjustments to be made.  Just return
 		 * the current contribution.
 		 */
-		if (Logger.logLevel == -88) {
-		    Util.dump("Current contribution", currentContribution, 0, 
-			16);
-		}
-		return currentContribution;
+		return toInts(currentContribution);
 	    }
 		
-	    newContribution = new int[packetLength];
+	    newContribution = MixBufferPool.getBuffer(packetLength);
 
 	    if (Logger.logLevel == -88) {
 		Logger.println("need to make new contribution");
@@ -232,8 +240,8 @@ public class SunSpatialAudio implements SpatialAudio {
 	    if (currentContribution != null) {
                 int copyLength = Math.min(packetLength, 
                                           currentContribution.length);
-                System.arraycopy(currentContribution, 0, newContribution, 0, 
-		    copyLength);
+
+		copy(currentContribution, newContribution, copyLength);
 	    }
 	} else {
 	    if (Logger.logLevel == -88) {
@@ -267,8 +275,8 @@ public class SunSpatialAudio implements SpatialAudio {
 	return adjustVolumes(newContribution, volume);
     }
 
-    private int[] doLeftRight(int[] previousContribution, 
-	    int[] currentContribution, int delayLength, 
+    private int[] doLeftRight(short[] previousContribution, 
+	    short[] currentContribution, int delayLength, 
 	    double nonDominantChannelVolume) {
 
 	int channelOffset;
@@ -280,7 +288,7 @@ public class SunSpatialAudio implements SpatialAudio {
 	    channelOffset = 0;   // delay left channel
 	}
 
-        int[] newContribution = new int[packetLength];
+        int[] newContribution = MixBufferPool.getBuffer(packetLength);
 
 	if (currentContribution == null) {
 	    /* 
@@ -307,8 +315,7 @@ public class SunSpatialAudio implements SpatialAudio {
 	 * be a previous contribution.  We must not modify the
 	 * current contribution so we make a copy.
 	 */
-	System.arraycopy(currentContribution, 0, newContribution, 0, 
-	    packetLength);
+	copy(currentContribution, newContribution, packetLength);
 
 	//Util.dump("new contrib", newContribution, 0, newContribution.length);
 
@@ -321,7 +328,7 @@ public class SunSpatialAudio implements SpatialAudio {
 	 * good data.  Otherwise, we'd have to start the copy at the
 	 * end of the buffer and move downward.
 	 */
-	int[] c = new int[newContribution.length - delayLength];
+	int[] c = MixBufferPool.getBuffer(newContribution.length - delayLength);
 
 	for (int i = channelOffset; i < c.length; i += 2) {
 	    c[i] = newContribution[i];
@@ -356,8 +363,9 @@ public class SunSpatialAudio implements SpatialAudio {
 
     private int count1 = 0;
 
-    private void doFrontBack(int[] previousContribution, int[] newContribution,
-	    double frontBack, int delayLength, double nonDominantChannelVolume) {
+    private void doFrontBack(short[] previousContribution, 
+	    int[] newContribution, double frontBack, int delayLength, 
+	    double nonDominantChannelVolume) {
 
         //Util.dump("result before, p 1, c 3", newContribution, 0, 
 	//    newContribution.length);
@@ -395,7 +403,7 @@ public class SunSpatialAudio implements SpatialAudio {
 	/*
 	 * Copy newContribution
 	 */
-	int[] c = new int[packetLength];
+	int[] c = MixBufferPool.getBuffer(packetLength);
 
 	System.arraycopy(newContribution, 0, c, 0, c.length);
 	
@@ -492,17 +500,44 @@ public class SunSpatialAudio implements SpatialAudio {
 	count1++;
     }
  
-    private int[] adjustVolumes(int[] contribution, double volume) {
-	/*
-	 * Adjust the volume
-	 */
-	int[] c = new int[contribution.length];
+    private static short[] toShorts(int[] contribution) {
+	if (contribution == null) {
+	    return null;
+	}
 
-	for (int i = 0; i < contribution.length; i++) {
-	    c[i] = clip((int) (contribution[i] * volume));
+	short[] data = new short[contribution.length];
+
+	AudioConversion.clipToShorts(contribution, data);
+	return data;
+    }
+
+    /*
+     * The contribution widened to ints in a mix buffer.
+     */
+    private int[] toInts(short[] contribution) {
+	if (contribution == null) {
+	    return null;
 	}
 
-	return c;
+	int[] data = MixBufferPool.getBuffer(packetLength);
+
+	copy(contribution, data, Math.min(packetLength, contribution.length));
+	return data;
+    }
+
+    private void copy(short[] inData, int[] outData, int length) {
+	for (int i = 0; i < length; i++) {
+	    outData[i] = inData[i];
+	}
+    }
+
+    private int[] adjustVolumes(int[] contribution, double volume) {
+	/*
+	 * Adjust the volume.  The contribution is always a copy
+	 * we made above so there's no need to make another one.
+	 */
+	MixKernels.gain(contribution, volume);
+	return contribution;
     }
 
     private int clip(int sample) {
@@ -0,0 +1,311 @@
+/*
+ * Copyright 2007 Sun Microsystems, Inc.
+ *
+ * This file is part of jVoiceBridge.
+ *
+ * jVoiceBridge is free software: you can redistribute it and/or modify 
+ * it under the terms of the GNU General Public License version 2 as 
+ * published by the Free Software Foundation and distributed hereunder 
+ * to you.
+ *
+ * jVoiceBridge is distributed in the hope that it will be useful, 
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Sun designates this particular file as subject to the "Classpath"
+ * exception as provided by Sun in the License file that accompanied this 
+ * code. 
+ */
+
+
+package com.sun.voip.server;
+
+import com.sun.voip.Logger;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+
+/*
+ * Limits the number of members of a conference whose data is mixed.
+ *
+ * In a very large conference only a few people talk at once but every
+ * member with data above the speech threshold is added to the common 
+ * mix and to each private mix.  When maxTalkers is set, the members
+ * with data are ranked every tick by the energy their SpeechDetector 
+ * computes and only the loudest maxTalkers are admitted.  The data
+ * of the others isn't mixed at all.
+ *
+ * To keep voices from flapping in and out of the mix:
+ *
+ *	A talker keeps its place for HOLD_TICKS after being admitted.
+ *
+ *	A new talker only replaces the quietest admitted talker if 
+ *	it is louder by a factor of HYSTERESIS.
+ *
+ *	An admitted talker keeps its place through pauses shorter 
+ *	than RELEASE_TICKS.
+ *
+ * Members contribute their data from the receiver or the sender thread
+ * so the decision made at the end of one tick applies to the next.
+ */
+public class TalkerSelector {
+    private static final String MAX_TALKERS_PROPERTY =
+	"com.sun.voip.server.MAX_TALKERS";
+
+    private static int defaultMaxTalkers = 0;
+
+    static {
+	String s = System.getProperty(MAX_TALKERS_PROPERTY);
+
+	if (s != null) {
+	    try {
+		setDefaultMaxTalkers(Integer.parseInt(s));
+	    } catch (NumberFormatException e) {
+		Logger.println("Invalid max talkers:  " + s);
+	    }
+	}
+    }
+
+    private static final int HOLD_TICKS = 25;		// 500ms
+    private static final int RELEASE_TICKS = 15;	// 300ms
+    private static final double HYSTERESIS = 2.0;	// 3dB
+    private static final double SMOOTHING = .25;
+
+    private String conferenceId;
+
+    private int maxTalkers;
+
+    private HashMap<MemberReceiver, Talker> talkers =
+	new HashMap<MemberReceiver, Talker>();
+
+    private ArrayList<Talker> candidates = new ArrayList<Talker>();
+
+    private long tick;
+
+    /* Statistics */
+    private int admissions;
+    private int replacements;
+
+    public TalkerSelector(String conferenceId) {
+	this.conferenceId = conferenceId;
+
+	maxTalkers = defaultMaxTalkers;
+    }
+
+    /*
+     * Max talkers for new conferences.  0 means no limit.
+     */
+    public static void setDefaultMaxTalkers(int defaultMaxTalkers) {
+	if (defaultMaxTalkers < 0) {
+	    defaultMaxTalkers = 0;
+	}
+
+	TalkerSelector.defaultMaxTalkers = defaultMaxTalkers;
+    }
+
+    public static int getDefaultMaxTalkers() {
+	return defaultMaxTalkers;
+    }
+
+    public synchronized void setMaxTalkers(int maxTalkers) {
+	if (maxTalkers < 0) {
+	    maxTalkers = 0;
+	}
+
+	this.maxTalkers = maxTalkers;
+
+	Logger.println(conferenceId + ":  max talkers " 
+	    + (maxTalkers == 0 ? "unlimited" : String.valueOf(maxTalkers)));
+    }
+
+    public int getMaxTalkers() {
+	return maxTalkers;
+    }
+
+    /*
+     * Called by the ConferenceSender once each tick after the members
+     * of the conference have saved their contributions.
+     */
+    public synchronized void selectTalkers(List memberList) {
+	if (maxTalkers == 0) {
+	    if (talkers.size() > 0) {
+		admitAll(memberList);
+	    }
+	    return;
+	}
+
+	tick++;
+
+	candidates.clear();
+
+	int admitted = 0;
+
+	for (int i = 0; i < memberList.size(); i++) {
+	    ConferenceMember member = (ConferenceMember) memberList.get(i);
+
+	    MemberReceiver memberReceiver = member.getMemberReceiver();
+
+	    Talker talker = talkers.get(memberReceiver);
+
+	    if (talker == null) {
+		talker = new Talker(memberReceiver);
+		talkers.put(memberReceiver, talker);
+	    }
+
+	    talker.seen = tick;
+
+	    double energy = 0;
+
+	    if (memberReceiver.hadContribution()) {
+		energy = memberReceiver.getSpeechEnergy();
+		talker.lastActive = tick;
+	    }
+
+	    talker.energy += (energy - talker.energy) * SMOOTHING;
+
+	    if (talker.admitted && tick - talker.lastActive > RELEASE_TICKS) {
+		talker.admitted = false;
+	    }
+
+	    if (talker.admitted) {
+		admitted++;
+	    } else if (talker.lastActive == tick) {
+		candidates.add(talker);
+	    }
+	}
+
+	/*
+	 * Forget members which have left.
+	 */
+	Iterator<Talker> it = talkers.values().iterator();
+
+	while (it.hasNext()) {
+	    if (it.next().seen != tick) {
+		it.remove();
+	    }
+	}
+
+	Collections.sort(candidates, louder);
+
+	for (int i = 0; i < candidates.size(); i++) {
+	    Talker candidate = candidates.get(i);
+
+	    if (admitted < maxTalkers) {
+		admit(candidate);
+		admitted++;
+		continue;
+	    }
+
+	    Talker quietest = getQuietestReplaceable();
+
+	    if (quietest == null || 
+		    candidate.energy <= quietest.energy * HYSTERESIS) {
+
+		break;	// the rest of the candidates are quieter
+	    }
+
+	    quietest.admitted = false;
+	    quietest.memberReceiver.setTalkerAdmitted(false);
+
+	    admit(candidate);
+	    replacements++;
+	}
+
+	for (Talker talker : talkers.values()) {
+	    talker.memberReceiver.setTalkerAdmitted(talker.admitted);
+	}
+    }
+
+    private void admit(Talker talker) {
+	talker.admitted = true;
+	talker.admittedTick = tick;
+	admissions++;
+
+	if (Logger.logLevel >= Logger.LOG_MOREINFO) {
+	    Logger.println(conferenceId + ":  admitting talker " 
+		+ talker.memberReceiver + " energy " + talker.energy);
+	}
+    }
+
+    private Talker getQuietestReplaceable() {
+	Talker quietest = null;
+
+	for (Talker talker : talkers.values()) {
+	    if (talker.admitted == false || 
+		    tick - talker.admittedTick < HOLD_TICKS) {
+
+		continue;
+	    }
+
+	    if (quietest == null || talker.energy < quietest.energy) {
+		quietest = talker;
+	    }
+	}
+
+	return quietest;
+    }
+
+    private void admitAll(List memberList) {
+	for (int i = 0; i < memberList.size(); i++) {
+	    ConferenceMember member = (ConferenceMember) memberList.get(i);
+
+	    member.getMemberReceiver().setTalkerAdmitted(true);
+	}
+
+	talkers.clear();
+    }
+
+    public int getNumberOfTalkers() {
+	int n = 0;
+
+	synchronized (this) {
+	    for (Talker talker : talkers.values()) {
+		if (talker.admitted) {
+		    n++;
+		}
+	    }
+	}
+
+	return n;
+    }
+
+    public void printStatistics() {
+	if (admissions == 0) {
+	    return;
+	}
+
+	Logger.println(conferenceId + ":  max talkers " + maxTalkers
+	    + ", " + admissions + " talkers admitted, " 
+	    + replacements + " replaced by louder talkers");
+    }
+
+    private static Comparator<Talker> louder = new Comparator<Talker>() {
+	public int compare(Talker t1, Talker t2) {
+	    return Double.compare(t2.energy, t1.energy);
+	}
+    };
+
+    private static class Talker {
+	MemberReceiver memberReceiver;
+
+	double energy;
+
+	boolean admitted;
+	long admittedTick;
+	long lastActive = -1;
+	long seen;
+
+	public Talker(MemberReceiver memberReceiver) {
+	    this.memberReceiver = memberReceiver;
+	}
+    }
+
+}
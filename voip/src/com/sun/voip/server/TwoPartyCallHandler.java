@@ -27,10 +27,19 @@ import com.sun.voip.CallParticipant;
 import com.sun.voip.Logger;
 import com.sun.voip.CallEventListener;
 
-public class TwoPartyCallHandler extends Thread {
+/*
+ * Call the first party and when the first party answers, 
+ * call the second party.
+ */
+public class TwoPartyCallHandler 
+	implements OutgoingCallHandler.CallProgressListener {
+
     private CallEventListener callEventListener;
     private CallParticipant cp;
 
+    private OutgoingCallHandler callHandler1;
+    private OutgoingCallHandler callHandler2;
+
     public TwoPartyCallHandler(CallEventListener csl, CallParticipant cp) {
 	this.callEventListener = csl;
 	this.cp = cp;
@@ -39,21 +48,32 @@ public class TwoPartyCallHandler extends Thread {
     /*
      * start a two party call
      */
-    public void run() {
-	OutgoingCallHandler callHandler1 = 
-	    new OutgoingCallHandler(callEventListener, cp);
+    public void start() {
+	callHandler1 = new OutgoingCallHandler(callEventListener, cp);
 
-	synchronized(this) {
-	    callHandler1.start();		// call first party
+	callHandler1.whenAnswered(this);
+	callHandler1.start();		// call first party
+    }
+
+    public void callProgress(OutgoingCallHandler callHandler, 
+	    boolean answered) {
 
+	if (answered == false) {
+	    return;
+	}
+
+	if (callHandler == callHandler1) {
+	    callSecondParty();
+	} else {
 	    /*
-	     * Wait for first party to answer.
+	     * Second party answered, stop treatment to first party.
 	     */
-	    if (callHandler1.waitForCallToBeAnswered() == false) {
-	        return;
-	    }
+	    callHandler1.stopCallAnsweredTreatment();
+	    callHandler1.stopCallEstablishedTreatment();
 	}
+    }
 
+    private void callSecondParty() {
 	CallParticipant cp2 = new CallParticipant();
 			
 	cp2.setCallAnswerTimeout(cp.getCallAnswerTimeout());
@@ -77,27 +97,17 @@ public class TwoPartyCallHandler extends Thread {
 	cp2.setPhoneNumber(cp.getSecondPartyNumber());
 	cp2.setVoiceDetection(cp.getSecondPartyVoiceDetection());
 			
-	OutgoingCallHandler callHandler2 = 
-	    new OutgoingCallHandler(callEventListener, cp2);
+	callHandler2 = new OutgoingCallHandler(callEventListener, cp2);
 
-	synchronized(this) {
- 	    /*
-	     * Each call has to know about the other so that when
-	     * one hangs up, the other call is terminated.
-	     */
-	    callHandler1.setOtherCall(callHandler2);
-	    callHandler2.setOtherCall(callHandler1);
-
-	    callHandler2.start();		// call second party
-
-	    if (callHandler2.waitForCallToBeAnswered() == true) {
-	        /*
-	         * Second party answered, stop treatment to first party.
-	         */
-	        callHandler1.stopCallAnsweredTreatment();
-		callHandler1.stopCallEstablishedTreatment();
-	    }
-	}
+ 	/*
+	 * Each call has to know about the other so that when
+	 * one hangs up, the other call is terminated.
+	 */
+	callHandler1.setOtherCall(callHandler2);
+	callHandler2.setOtherCall(callHandler1);
+
+	callHandler2.whenAnswered(this);
+	callHandler2.start();		// call second party
     }
 
 }
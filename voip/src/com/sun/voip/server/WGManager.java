@@ -40,10 +40,17 @@ public class WGManager {
     private MediaInfo mediaInfo;
 
     private WhisperGroup conferenceWhisperGroup;
+
+    private ConferenceManager conferenceManager;
    
-    public WGManager(String conferenceId, MediaInfo mediaInfo) {
+    public WGManager(ConferenceManager conferenceManager, 
+	    MediaInfo mediaInfo) {
+
+	this.conferenceManager = conferenceManager;
 	this.mediaInfo = mediaInfo;
 
+	String conferenceId = conferenceManager.getId();
+
 	int channels = mediaInfo.getChannels();
 
 	conferenceWhisperGroup = createWhisperGroup(
@@ -119,6 +126,8 @@ public class WGManager {
 
             whisperGroups.add(whisperGroup);
 
+	    ConferenceTopology.topologyChanged(conferenceManager);
+
             if (Logger.logLevel >= Logger.LOG_INFO) {
                 Logger.println("New Whisper group " + toString());
             }
@@ -212,6 +221,8 @@ public class WGManager {
             }
 
             whisperGroups.remove(whisperGroup);
+
+	    ConferenceTopology.topologyChanged(conferenceManager);
         }
 
         if (Logger.logLevel >= Logger.LOG_INFO) {
@@ -27,7 +27,7 @@ import com.sun.voip.AudioConversion;
 import com.sun.voip.CallParticipant;
 import com.sun.voip.Logger;
 import com.sun.voip.MediaInfo;
-import com.sun.voip.MixDataSource;
+import com.sun.voip.ShortMixDataSource;
 import com.sun.voip.Recorder;
 import com.sun.voip.RtpPacket;
 import com.sun.voip.TreatmentManager;
@@ -40,7 +40,8 @@ import java.io.IOException;
 
 import java.text.ParseException;
 
-public class WhisperGroup implements MixDataSource, TreatmentDoneListener {
+public class WhisperGroup implements ShortMixDataSource,
+	TreatmentDoneListener {
     private String id;
 
     private static double defaultAttenuation = .13;
@@ -143,6 +144,8 @@ public class WhisperGroup implements MixDataSource, TreatmentDoneListener {
 	}
 
         members.add(member);
+
+	ConferenceTopology.topologyChanged(member.getConferenceManager());
     }      
 
     public void removeCall(ConferenceMember member) {
@@ -154,6 +157,8 @@ public class WhisperGroup implements MixDataSource, TreatmentDoneListener {
 	}
 
 	members.remove(member);
+
+	ConferenceTopology.topologyChanged(member.getConferenceManager());
     }
 
     public void setWhispering(boolean isWhispering, ConferenceMember member) {
@@ -229,17 +234,19 @@ public class WhisperGroup implements MixDataSource, TreatmentDoneListener {
 	}
     }
 
+    public void addToLinearDataMix(int[] contribution, boolean doNotRecord) {
+	addToLinearDataMix(AudioConversion.intsToShorts(contribution),
+	    doNotRecord);
+    }
+
     /*
      * This is called when data is received from a conference member
      * The member has already converted its contribution to linear.
      */
-    public void addToLinearDataMix(int[] contribution, boolean doNotRecord) {
+    public void addToLinearDataMix(short[] contribution, boolean doNotRecord) {
 	if (doNotRecord) {
             if (doNotRecordMix == null) {
-                doNotRecordMix = new int[contribution.length];
-
-                System.arraycopy(contribution, 0, doNotRecordMix, 0,
-                    contribution.length);
+                doNotRecordMix = AudioConversion.shortsToInts(contribution);
                 return;
             }
 
@@ -248,10 +255,7 @@ public class WhisperGroup implements MixDataSource, TreatmentDoneListener {
 	}
 
 	if (linearMixBuffer == null) {
-            linearMixBuffer = new int[contribution.length];
-
-            System.arraycopy(contribution, 0, linearMixBuffer, 0,
-                contribution.length);
+            linearMixBuffer = AudioConversion.shortsToInts(contribution);
             return;
         }
 
@@ -259,40 +263,81 @@ public class WhisperGroup implements MixDataSource, TreatmentDoneListener {
     }
 
     public static void mixData(int[] inData, int[] mixData, boolean add) {
-	try {
-	    if (add) {
-	        for (int i = 0; i < inData.length; i++) {
-                    mixData[i] = mixData[i] + inData[i];
-	        }
-    	    } else {
-	        for (int i = 0; i < inData.length; i++) {
-                    mixData[i] = mixData[i] - inData[i];
-	        }
-	    }
-	} catch (IndexOutOfBoundsException e) {
-	    Logger.println("Exception!  inData length " + inData.length
+	int length = inData.length;
+
+	if (length > mixData.length) {
+	    Logger.println("Length mismatch!  inData length " + inData.length
 		+ " mixData length " + mixData.length + " add " + add);
 
-	    e.printStackTrace();
+	    length = mixData.length;
+	}
+
+	if (add) {
+	    MixKernels.add(inData, mixData, length);
+	} else {
+	    MixKernels.subtract(inData, mixData, length);
+	}
+    }
+
+    /*
+     * Add or subtract a 16 bit contribution to or from an int mix.
+     */
+    public static void mixData(short[] inData, int[] mixData, boolean add) {
+	int length = inData.length;
+
+	if (length > mixData.length) {
+	    Logger.println("Length mismatch!  inData length " + inData.length
+		+ " mixData length " + mixData.length + " add " + add);
+
+	    length = mixData.length;
+	}
+
+	if (add) {
+	    MixKernels.add(inData, mixData, length);
+	} else {
+	    MixKernels.subtract(inData, mixData, length);
+	}
+    }
+
+    /*
+     * outData = conferenceData - memberData
+     */
+    public static void mixData(int[] conferenceData, short[] memberData,
+	    int[] outData) {
+
+	int length = outData.length;
+
+	if (length > conferenceData.length || length > memberData.length) {
+	    Logger.println("Length mismatch!  conferenceData length " 
+		+ conferenceData.length +" memberData.length " 
+		+ memberData.length + " outData length " + outData.length);
+
+	    length = Math.min(conferenceData.length, memberData.length);
 	}
+
+	MixKernels.difference(conferenceData, memberData, outData, length);
     }
 
     public static void mixData(int[] conferenceData, int[] memberData,
 	    int[] outData) {
 
-	try {
-	    for (int i = 0; i < outData.length; i ++) {
-	        outData[i] = conferenceData[i] - memberData[i];
-	    }
-	} catch (IndexOutOfBoundsException e) {
-	    Logger.println("Exception!  conferenceData length " 
+	int length = outData.length;
+
+	if (length > conferenceData.length || length > memberData.length) {
+	    Logger.println("Length mismatch!  conferenceData length " 
 		+ conferenceData.length +" memberData.length " 
 		+ memberData.length + " outData length " + outData.length);
 
-	    e.printStackTrace();
+	    length = Math.min(conferenceData.length, memberData.length);
 	}
+
+	MixKernels.difference(conferenceData, memberData, outData, length);
     }
 
+    /*
+     * The mix is kept in ints so members' contributions can be 
+     * subtracted from it before it is clipped.
+     */
     private int[] previousContribution;
     private int[] currentContribution;
 
@@ -313,6 +358,21 @@ public class WhisperGroup implements MixDataSource, TreatmentDoneListener {
 	return currentContribution;
     }
 
+    /*
+     * A whisper group contributes a mix rather than 16 bit samples.
+     */
+    public short[] getPreviousShortContribution() {
+	return null;
+    }
+
+    public short[] getCurrentShortContribution() {
+	return null;
+    }
+
+    public int[] getCurrentMix() {
+	return currentContribution;
+    }
+
     public void saveCurrentContribution() {
 	currentContribution = linearMixBuffer;
 	linearMixBuffer = null;
@@ -321,7 +381,8 @@ public class WhisperGroup implements MixDataSource, TreatmentDoneListener {
             synchronized (conferenceTreatments) {
 	        currentTreatment.saveCurrentContribution();
 
-	        int[] treatmentData = currentTreatment.getCurrentContribution();	
+	        short[] treatmentData = 
+		    currentTreatment.getCurrentShortContribution();	
 	
 		if (treatmentDone) {
 	            conferenceTreatments.remove(currentTreatment);
@@ -331,7 +392,8 @@ public class WhisperGroup implements MixDataSource, TreatmentDoneListener {
 
 	        if (treatmentData != null) {
 	            if (currentContribution == null) {
-		        currentContribution = treatmentData;
+		        currentContribution = 
+			    AudioConversion.shortsToInts(treatmentData);
 	            } else {
 	                mixData(treatmentData, currentContribution, true);
 	            }